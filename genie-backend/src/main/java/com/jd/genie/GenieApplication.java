@@ -1,5 +1,6 @@
 package com.jd.genie;
 
+import com.jd.genie.agent.util.CheckpointLog;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
@@ -8,5 +9,7 @@ public class GenieApplication {
     public static void main(String[] args) {
         // 启动 Spring Boot 应用
         SpringApplication.run(GenieApplication.class, args);
+        // 启动检查点写线程，清理过期的检查点
+        CheckpointLog.start();
     }
 }
\ No newline at end of file
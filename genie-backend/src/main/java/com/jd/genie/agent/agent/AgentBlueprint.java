@@ -0,0 +1,157 @@
+package com.jd.genie.agent.agent;
+
+import com.jd.genie.agent.prompt.PlanningPrompt;
+import com.jd.genie.agent.prompt.PromptTemplate;
+import com.jd.genie.agent.prompt.ToolCallPrompt;
+import com.jd.genie.agent.tool.BaseTool;
+import com.jd.genie.agent.tool.ToolCollection;
+import com.jd.genie.config.GenieConfig;
+import lombok.Getter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 智能体蓝图：同一配置、同一工具集下某类智能体不变的部分（已解析并绑定工具描述等配置级变量的提示词模板、模型、步数）
+ * - 按 智能体类型 + 配置实例 + 工具描述 缓存，构造智能体时只需绑定请求级变量（query、date、sopPrompt 等）
+ * - 绑定后的模板仅剩每步变化的 {{files}}，think() 时按段追加渲染
+ */
+@Getter
+public final class AgentBlueprint {
+    private static final int MAX_BLUEPRINTS = 64;
+    private static final Map<Key, AgentBlueprint> blueprints = new ConcurrentHashMap<>();
+
+    public enum Kind {
+        PLANNING, EXECUTOR, REACT
+    }
+
+    private final Kind kind;                       // 智能体类型
+    private final PromptTemplate systemPrompt;     // 系统提示词模板
+    private final PromptTemplate nextStepPrompt;   // 下一步提示词模板
+    private final String modelName;                // 模型名称
+    private final Integer maxSteps;                // 最大步数
+
+    private AgentBlueprint(Kind kind, PromptTemplate systemPrompt, PromptTemplate nextStepPrompt, String modelName, Integer maxSteps) {
+        this.kind = kind;
+        this.systemPrompt = systemPrompt;
+        this.nextStepPrompt = nextStepPrompt;
+        this.modelName = modelName;
+        this.maxSteps = maxSteps;
+    }
+
+    /**
+     * 获取智能体蓝图，配置或工具描述变化时重建
+     */
+    public static AgentBlueprint of(Kind kind, GenieConfig genieConfig, ToolCollection tools) {
+        Key key = new Key(kind, genieConfig, toolPrompt(tools));
+        AgentBlueprint blueprint = blueprints.get(key);
+        if (blueprint == null) {
+            blueprint = build(key);
+            if (blueprints.size() >= MAX_BLUEPRINTS) {
+                blueprints.clear();
+            }
+            blueprints.putIfAbsent(key, blueprint);
+        }
+        return blueprint;
+    }
+
+    private static AgentBlueprint build(Key key) {
+        GenieConfig genieConfig = key.genieConfig;
+        String promptKey = "default";
+        String nextPromptKey = "default";
+        Map<String, String> values = new HashMap<>();
+        values.put("tools", key.toolPrompt);
+        switch (key.kind) {
+            case PLANNING:
+                return new AgentBlueprint(key.kind,
+                        PromptTemplate.compile(genieConfig.getPlannerSystemPromptMap().getOrDefault(promptKey, PlanningPrompt.SYSTEM_PROMPT)).bind(values),
+                        PromptTemplate.compile(genieConfig.getPlannerNextStepPromptMap().getOrDefault(nextPromptKey, PlanningPrompt.NEXT_STEP_PROMPT)).bind(values),
+                        genieConfig.getPlannerModelName(),
+                        genieConfig.getPlannerMaxSteps());
+            case EXECUTOR:
+                String sopPromptKey = "default";
+                values.put("executorSopPrompt", genieConfig.getExecutorSopPromptMap().getOrDefault(sopPromptKey, ""));
+                return new AgentBlueprint(key.kind,
+                        PromptTemplate.compile(genieConfig.getExecutorSystemPromptMap().getOrDefault(promptKey, ToolCallPrompt.SYSTEM_PROMPT)).bind(values),
+                        PromptTemplate.compile(genieConfig.getExecutorNextStepPromptMap().getOrDefault(nextPromptKey, ToolCallPrompt.NEXT_STEP_PROMPT)).bind(values),
+                        genieConfig.getExecutorModelName(),
+                        genieConfig.getPlannerMaxSteps());
+            default:
+                return new AgentBlueprint(key.kind,
+                        PromptTemplate.compile(genieConfig.getReactSystemPromptMap().getOrDefault(promptKey, ToolCallPrompt.SYSTEM_PROMPT)).bind(values),
+                        PromptTemplate.compile(genieConfig.getReactNextStepPromptMap().getOrDefault(nextPromptKey, ToolCallPrompt.NEXT_STEP_PROMPT)).bind(values),
+                        genieConfig.getReactModelName(),
+                        genieConfig.getReactMaxSteps());
+        }
+    }
+
+    /**
+     * 绑定请求级变量后的系统提示词模板（仅剩 {{files}} 等每步变化的变量）
+     */
+    public PromptTemplate bindSystemPrompt(AgentContext context) {
+        return systemPrompt.bind(requestValues(context));
+    }
+
+    /**
+     * 绑定请求级变量后的下一步提示词模板
+     */
+    public PromptTemplate bindNextStepPrompt(AgentContext context) {
+        return nextStepPrompt.bind(requestValues(context));
+    }
+
+    private Map<String, String> requestValues(AgentContext context) {
+        Map<String, String> values = new HashMap<>();
+        values.put("query", context.getQuery());
+        values.put("date", context.getDateInfo());
+        if (kind == Kind.REACT) {
+            values.put("basePrompt", context.getBasePrompt());
+        } else {
+            values.put("sopPrompt", context.getSopPrompt());
+        }
+        return values;
+    }
+
+    /**
+     * 工具描述（工具名 + 描述，每行一个），工具集合未变更时复用
+     */
+    public static String toolPrompt(ToolCollection tools) {
+        return tools.getOrBuildSchema("tool_prompt", () -> {
+            StringBuilder toolPrompt = new StringBuilder();
+            for (BaseTool tool : tools.getToolMap().values()) {
+                toolPrompt.append("工具名：").append(tool.getName()).append(" 工具描述：").append(tool.getDescription()).append('\n');
+            }
+            return toolPrompt.toString();
+        });
+    }
+
+    /**
+     * 蓝图缓存 key：配置实例按引用比较
+     */
+    private static final class Key {
+        private final Kind kind;
+        private final GenieConfig genieConfig;
+        private final String toolPrompt;
+
+        private Key(Kind kind, GenieConfig genieConfig, String toolPrompt) {
+            this.kind = kind;
+            this.genieConfig = genieConfig;
+            this.toolPrompt = toolPrompt;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return kind == other.kind && genieConfig == other.genieConfig && toolPrompt.equals(other.toolPrompt);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(kind, System.identityHashCode(genieConfig), toolPrompt);
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package com.jd.genie.agent.agent;
 
 import com.jd.genie.agent.dto.File;
+import com.jd.genie.agent.llm.MemoryCompactor;
+import com.jd.genie.agent.llm.RequestBudget;
 import com.jd.genie.agent.printer.Printer;
 import com.jd.genie.agent.tool.ToolCollection;
+import com.jd.genie.agent.tool.ToolMemo;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -140,4 +143,28 @@ public class AgentContext {
      * 例如：1-REACT智能体, 2-PLAN_SOLVE智能体, 3-ROUTER等
      */
     Integer agentType;
+
+    // ==================== 记忆压缩 ====================
+
+    /**
+     * 记忆压缩器
+     * 同一请求内的智能体共享，由 MemoryCompactor.of 按需创建
+     */
+    MemoryCompactor memoryCompactor;
+
+    // ==================== 请求预算 ====================
+
+    /**
+     * 请求预算
+     * 累计 token、耗时与费用，为空表示不限制
+     */
+    RequestBudget budget;
+
+    // ==================== 工具结果复用 ====================
+
+    /**
+     * 工具结果复用表
+     * 同一请求内的智能体（含并行子任务）共享，由 ToolMemo.of 按需创建
+     */
+    ToolMemo toolMemo;
 }
\ No newline at end of file
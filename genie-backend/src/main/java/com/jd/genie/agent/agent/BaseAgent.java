@@ -4,22 +4,40 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jd.genie.agent.dto.Memory;
 import com.jd.genie.agent.dto.Message;
 import com.jd.genie.agent.dto.tool.ToolCall;
+import com.jd.genie.agent.dto.tool.ToolResult;
 import com.jd.genie.agent.enums.AgentState;
 import com.jd.genie.agent.enums.RoleType;
 import com.jd.genie.agent.llm.LLM;
+import com.jd.genie.agent.llm.MemoryCompactor;
+import com.jd.genie.agent.llm.RequestBudget;
 import com.jd.genie.agent.printer.Printer;
+import com.jd.genie.agent.tool.DigitalEmployees;
 import com.jd.genie.agent.tool.ToolCollection;
+import com.jd.genie.agent.tool.ToolDeadlines;
+import com.jd.genie.agent.tool.ToolExecution;
+import com.jd.genie.agent.tool.ToolMemo;
+import com.jd.genie.agent.util.SpringContextHolder;
+import com.jd.genie.agent.util.TaskScope;
 import com.jd.genie.agent.util.ThreadUtil;
+import com.jd.genie.config.GenieConfig;
 import lombok.Data;
 import lombok.experimental.Accessors;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * 代理基类
@@ -47,7 +65,10 @@ public abstract class BaseAgent {
     private AgentState state = AgentState.IDLE;  // 当前状态
     private int maxSteps = 10;                   // 最大执行步数
     private int currentStep = 0;                // 当前步数
-    private int duplicateThreshold = 2;
+    private int duplicateThreshold = 2;         // 相同工具调用达到该次数时提示智能体换一种做法
+
+    // 本轮 run 内各调用签名（工具名 + 规范化参数）的调用次数，用于识别重复调用与循环
+    private Map<String, Integer> toolCallCounts = new HashMap<>();
 
     // 输出组件
     Printer printer;                        // 输出器(SSE等)
@@ -55,6 +76,15 @@ public abstract class BaseAgent {
     // 数字员工命名提示词
     private String digitalEmployeePrompt;
 
+    // 当前任务的数字员工命名（异步生成），工具执行时传入
+    private DigitalEmployees digitalEmployees;
+
+    // 后台进行中的记忆压缩，在步骤边界应用
+    private MemoryCompactor.Pending pendingCompaction;
+
+    // 流式阶段已提前启动的工具调用（key 为工具调用 ID），由 executeTools 等待结果
+    private Map<String, ToolExecution> dispatchedTools = new ConcurrentHashMap<>();
+
 
     /**
      * 执行单个步骤（由子类实现具体逻辑）
@@ -76,18 +106,41 @@ public abstract class BaseAgent {
         }
         // 执行循环
         List<String> results = new ArrayList<>();
+        toolCallCounts.clear();
+        RequestBudget budget = context.getBudget();
+        int stepLimit = maxSteps;
         try {
-            while (currentStep < maxSteps && state != AgentState.FINISHED) {
+            while (currentStep < stepLimit && state != AgentState.FINISHED) {
+                if (Objects.nonNull(budget)) {
+                    RequestBudget.Level level = budget.level();
+                    if (level == RequestBudget.Level.EXHAUSTED) {
+                        log.info("{} {} request budget exhausted at step {}", context.getRequestId(), getName(), currentStep);
+                        results.add("Terminated: Request budget exhausted");
+                        state = AgentState.FINISHED;
+                        break;
+                    }
+                    if (level == RequestBudget.Level.LOW && stepLimit == maxSteps) {
+                        // 预算紧张：本轮最多再执行 lowSteps 步
+                        stepLimit = Math.min(maxSteps, currentStep + budget.getLowSteps());
+                        log.info("{} {} request budget low, step limit {}", context.getRequestId(), getName(), stepLimit);
+                    }
+                }
                 currentStep++;
                 log.info("{} {} Executing step {}/{}", context.getRequestId(), getName(), currentStep, maxSteps);
+                applyCompaction();
                 String stepResult = step();  // 调用子类的具体实现
                 results.add(stepResult);
+                scheduleCompaction();
             }
 
             if (currentStep >= maxSteps) {
                 currentStep = 0;
                 state = AgentState.IDLE;
                 results.add("Terminated: Reached max steps (" + maxSteps + ")");
+            } else if (currentStep >= stepLimit && state != AgentState.FINISHED) {
+                currentStep = 0;
+                state = AgentState.FINISHED;
+                results.add("Terminated: Request budget low, reached step limit (" + stepLimit + ")");
             }
         } catch (Exception e) {
             state = AgentState.ERROR; // 将异常透出给上层流程
@@ -121,51 +174,266 @@ public abstract class BaseAgent {
         memory.addMessage(message);
     }
 
+    /**
+     * 应用已完成的后台记忆压缩
+     */
+    private void applyCompaction() {
+        MemoryCompactor compactor;
+        if (pendingCompaction == null || (compactor = MemoryCompactor.of(context)) == null) {
+            return;
+        }
+        if (compactor.apply(memory, pendingCompaction, llm)) {
+            pendingCompaction = null;
+        }
+    }
+
+    /**
+     * 步骤结束后检查历史长度，超过阈值时启动后台压缩（不阻塞下一步）
+     */
+    private void scheduleCompaction() {
+        MemoryCompactor compactor;
+        if (pendingCompaction != null || state == AgentState.FINISHED || llm == null
+                || (compactor = MemoryCompactor.of(context)) == null) {
+            return;
+        }
+        pendingCompaction = compactor.schedule(memory, llm);
+    }
+
     // 工具执行
     public String executeTool(ToolCall command) {
+        ToolResult toolResult = runTool(command);
+        ToolDeadlines.record(toolResult);
+        trackRepeat(command, toolResult);
+        return toObservation(toolResult);
+    }
+
+    /**
+     * 在当前线程执行单个工具调用（不设截止时间），返回带状态与耗时的结果
+     */
+    public ToolResult runTool(ToolCall command) {
         if (command == null || command.getFunction() == null || command.getFunction().getName() == null) {
-            return "Error: Invalid function call format";
+            return ToolResult.failed(null, "Error: Invalid function call format", null);
         }
 
         String name = command.getFunction().getName();
+        long startTime = System.currentTimeMillis();
+        Object args = null;
+        ToolResult toolResult;
         try {
             // 解析参数
             ObjectMapper mapper = new ObjectMapper();
-            Object args = mapper.readValue(command.getFunction().getArguments(), Object.class);
-
-            // 执行工具
-            Object result = availableTools.execute(name, args);
-            log.info("{} execute tool: {} {} result {}", context.getRequestId(), name, args, result);
-            // 格式化结果
-            if (Objects.nonNull(result)) {
-                return (String) result;
-            }
+            args = mapper.readValue(command.getFunction().getArguments(), Object.class);
+
+            // 执行工具（只读工具在请求内复用相同调用的结果）
+            Object toolArgs = args;
+            ToolMemo toolMemo = ToolMemo.of(context);
+            toolResult = Objects.isNull(toolMemo)
+                    ? invokeTool(name, toolArgs)
+                    : toolMemo.execute(name, toolArgs, () -> invokeTool(name, toolArgs));
         } catch (Exception e) {
             log.error("{} execute tool {} failed ", context.getRequestId(), name, e);
+            toolResult = ToolResult.failed(name, e.getMessage(), args);
+        }
+        toolResult.setExecutionTime(System.currentTimeMillis() - startTime);
+        return toolResult;
+    }
+
+    private ToolResult invokeTool(String name, Object args) {
+        Object result = availableTools.execute(name, args, digitalEmployees);
+        log.info("{} execute tool: {} {} result {}", context.getRequestId(), name, args, result);
+        return Objects.nonNull(result)
+                ? ToolResult.success(name, (String) result, args)
+                : ToolResult.failed(name, "empty result", args);
+    }
+
+    /**
+     * 统计相同工具调用的次数：达到 duplicateThreshold 时在观察内容中提示，达到循环上限时结束当前智能体
+     */
+    private void trackRepeat(ToolCall command, ToolResult toolResult) {
+        if (Objects.isNull(toolResult) || Objects.isNull(command.getFunction()) || Objects.isNull(command.getFunction().getName())) {
+            return;
+        }
+        String signature = ToolMemo.signature(command.getFunction().getName(), command.getFunction().getArguments());
+        int repeatCount = toolCallCounts.merge(signature, 1, Integer::sum);
+        toolResult.setRepeatCount(repeatCount);
+        if (repeatCount < duplicateThreshold) {
+            return;
+        }
+        GenieConfig genieConfig = SpringContextHolder.getApplicationContext().getBean(GenieConfig.class);
+        boolean loop = repeatCount >= genieConfig.getToolLoopMaxRepeats();
+        ToolMemo.recordDuplicate(loop);
+        if (loop) {
+            log.warn("{} {} stuck in loop, tool {} called {} times with same arguments", context.getRequestId(), getName(),
+                    command.getFunction().getName(), repeatCount);
+            state = AgentState.FINISHED;
+        } else {
+            log.info("{} {} duplicate tool call {} {} times", context.getRequestId(), getName(),
+                    command.getFunction().getName(), repeatCount);
+        }
+    }
+
+    /**
+     * 工具执行结果转为写入记忆的观察内容（重复调用时在前面加上提示）
+     */
+    public String toObservation(ToolResult toolResult) {
+        String observation = observe(toolResult);
+        Integer repeatCount = toolResult.getRepeatCount();
+        if (Objects.isNull(repeatCount) || repeatCount < duplicateThreshold) {
+            return observation;
+        }
+        GenieConfig genieConfig = SpringContextHolder.getApplicationContext().getBean(GenieConfig.class);
+        String notice = repeatCount >= genieConfig.getToolLoopMaxRepeats()
+                ? String.format("【提示】相同参数的工具调用已重复 %d 次，判定为陷入循环，当前任务已结束。\n", repeatCount)
+                : String.format("【提示】这是第 %d 次使用相同参数调用该工具，结果不会变化，请调整参数或直接基于已有信息完成任务。\n", repeatCount);
+        return notice + observation;
+    }
+
+    private String observe(ToolResult toolResult) {
+        String name = toolResult.getToolName();
+        switch (toolResult.getStatus()) {
+            case SUCCESS:
+                return (String) toolResult.getResult();
+            case TIMEOUT:
+                return "Tool" + name + " Timeout: " + toolResult.getError();
+            case CANCELLED:
+                return "Tool" + name + " Cancelled: " + toolResult.getErrorOrDefault("工具调用已取消");
+            case SKIPPED:
+                return "Tool" + name + " Skipped: " + toolResult.getErrorOrDefault("工具调用已跳过");
+            default:
+                return Objects.isNull(name) ? toolResult.getError() : "Tool" + name + " Error.";
+        }
+    }
+
+    /**
+     * 是否在流式输出阶段提前执行工具调用
+     */
+    public boolean isToolStreamDispatch() {
+        GenieConfig genieConfig = SpringContextHolder.getApplicationContext().getBean(GenieConfig.class);
+        return "1".equals(genieConfig.getToolStreamDispatch()) && Boolean.TRUE.equals(context.getIsStream());
+    }
+
+    /**
+     * 流式输出阶段提前启动工具调用（LLM 读流线程回调，不阻塞），同一 ID 只启动一次
+     * 执行器饱和时不提前启动，留给 executeTools 执行
+     */
+    public void dispatchTool(ToolCall command) {
+        if (command == null || command.getId() == null || dispatchedTools.containsKey(command.getId())) {
+            return;
+        }
+        ToolExecution execution = new ToolExecution(command.getFunction().getName());
+        CompletableFuture<ToolResult> future = new CompletableFuture<>();
+        execution.setFuture(future);
+        if (dispatchedTools.putIfAbsent(command.getId(), execution) != null) {
+            return;
+        }
+        if (ThreadUtil.tryExecute(() -> future.complete(execution.run(() -> runTool(command))))) {
+            log.info("{} dispatch tool {} {} before llm stream end", context.getRequestId(), command.getFunction().getName(), command.getId());
+        } else {
+            dispatchedTools.remove(command.getId());
         }
-        return "Tool" + name + " Error.";
+    }
+
+    /**
+     * 取消流式阶段提前启动、但不在最终工具调用列表中的调用（LLM 请求失败时传空列表全部取消）
+     * 已完成的副作用无法撤销，取消只中断仍在执行的调用，其结果不会被使用
+     */
+    public void cancelDispatchedTools(List<ToolCall> toolCalls) {
+        if (dispatchedTools.isEmpty()) {
+            return;
+        }
+        Set<String> keep = new HashSet<>();
+        if (Objects.nonNull(toolCalls)) {
+            for (ToolCall toolCall : toolCalls) {
+                keep.add(toolCall.getId());
+            }
+        }
+        dispatchedTools.entrySet().removeIf(entry -> {
+            if (keep.contains(entry.getKey())) {
+                return false;
+            }
+            log.info("{} cancel dispatched tool {} {}", context.getRequestId(), entry.getValue().getToolName(), entry.getKey());
+            entry.getValue().cancel();
+            return true;
+        });
     }
 
     /**
      * 并发执行多个工具调用命令并返回执行结果
+     * - 已在流式阶段提前启动的工具调用直接等待其结果，不重复执行
+     * - 每个工具调用受自身截止时间（ToolDeadlines，按历史耗时自适应）和本步截止时间约束，
+     *   超时后取消底层 HTTP 调用并中断执行线程，结果为 TIMEOUT（工具超时）或 CANCELLED（本步时间用尽）
+     * - 任务级执行器饱和时不在当前线程执行（否则截止时间失效），该工具调用直接返回失败
      *
      * @param commands 工具调用命令列表
      * @return 返回工具执行结果映射，key为工具ID，value为执行结果
      */
-    public Map<String, String> executeTools(List<ToolCall> commands) {
-        Map<String, String> result = new ConcurrentHashMap<>();
-        CountDownLatch taskCount = ThreadUtil.getCountDownLatch(commands.size());
-        for (ToolCall tooCall : commands) {
-            ThreadUtil.execute(() -> {
-                String toolResult = executeTool(tooCall);
-                result.put(tooCall.getId(), toolResult);
-                taskCount.countDown();
-            });
-        }
-        ThreadUtil.await(taskCount);
+    public Map<String, ToolResult> executeTools(List<ToolCall> commands) {
+        Map<String, ToolResult> result = new ConcurrentHashMap<>();
+        List<ToolExecution> executions = new ArrayList<>(commands.size());
+        long stepDeadline = System.currentTimeMillis() + ToolDeadlines.stepTimeoutMillis();
+        try (TaskScope scope = ThreadUtil.openScope()) {
+            for (ToolCall tooCall : commands) {
+                ToolExecution execution = Objects.isNull(tooCall.getId()) ? null : dispatchedTools.remove(tooCall.getId());
+                if (Objects.isNull(execution)) {
+                    ToolExecution created = new ToolExecution(Objects.isNull(tooCall.getFunction()) ? null : tooCall.getFunction().getName());
+                    try {
+                        created.setFuture(scope.fork(() -> created.run(() -> runTool(tooCall))));
+                    } catch (RejectedExecutionException e) {
+                        log.warn("{} tool {} rejected, task executor saturated", context.getRequestId(), created.getToolName());
+                        created.setFuture(CompletableFuture.completedFuture(ToolResult.failed(created.getToolName(),
+                                "工具执行繁忙，调用未执行，请稍后重试",
+                                Objects.isNull(tooCall.getFunction()) ? null : tooCall.getFunction().getArguments())));
+                    }
+                    execution = created;
+                }
+                executions.add(execution);
+            }
+            for (int i = 0; i < commands.size(); i++) {
+                ToolResult toolResult = awaitTool(executions.get(i), commands.get(i), stepDeadline);
+                ToolDeadlines.record(toolResult);
+                trackRepeat(commands.get(i), toolResult);
+                result.put(commands.get(i).getId(), toolResult);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("{} execute tools interrupted", context.getRequestId());
+        } finally {
+            for (ToolExecution execution : executions) {
+                if (!execution.getFuture().isDone()) {
+                    execution.cancel();
+                }
+            }
+        }
         return result;
     }
 
-
+    /**
+     * 在工具截止时间与本步截止时间内等待单个工具调用，超时则取消
+     */
+    private ToolResult awaitTool(ToolExecution execution, ToolCall toolCall, long stepDeadline) throws InterruptedException {
+        String name = execution.getToolName();
+        String args = Objects.isNull(toolCall.getFunction()) ? null : toolCall.getFunction().getArguments();
+        long toolRemaining = ToolDeadlines.toolTimeoutMillis(name) - execution.elapsedMillis();
+        long stepRemaining = stepDeadline - System.currentTimeMillis();
+        try {
+            return execution.getFuture().get(Math.max(0, Math.min(toolRemaining, stepRemaining)), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            execution.cancel();
+            boolean stepExpired = stepRemaining < toolRemaining;
+            log.warn("{} tool {} {} after {}ms, cancelled", context.getRequestId(), name,
+                    stepExpired ? "step deadline exceeded" : "timeout", execution.elapsedMillis());
+            ToolResult toolResult = stepExpired ? ToolResult.cancelled(name, args) : ToolResult.timeout(name, args);
+            toolResult.setError(stepExpired
+                    ? "本步工具执行时间已用尽，调用已取消"
+                    : "执行超过 " + TimeUnit.MILLISECONDS.toSeconds(execution.elapsedMillis()) + " 秒未返回，调用已取消");
+            toolResult.setExecutionTime(execution.elapsedMillis());
+            return toolResult;
+        } catch (ExecutionException e) {
+            log.error("{} execute tool {} failed ", context.getRequestId(), name, e);
+            return ToolResult.failed(name, String.valueOf(e.getCause()), args);
+        } catch (CancellationException e) {
+            return ToolResult.cancelled(name, args);
+        }
+    }
 
 }
\ No newline at end of file
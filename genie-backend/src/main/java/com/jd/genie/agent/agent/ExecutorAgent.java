@@ -4,12 +4,12 @@ import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.serializer.SerializerFeature;
 import com.jd.genie.agent.dto.Message;
 import com.jd.genie.agent.dto.tool.ToolCall;
+import com.jd.genie.agent.dto.tool.ToolResult;
 import com.jd.genie.agent.dto.tool.ToolChoice;
 import com.jd.genie.agent.enums.AgentState;
 import com.jd.genie.agent.enums.RoleType;
 import com.jd.genie.agent.llm.LLM;
-import com.jd.genie.agent.prompt.ToolCallPrompt;
-import com.jd.genie.agent.tool.BaseTool;
+import com.jd.genie.agent.prompt.PromptTemplate;
 import com.jd.genie.agent.util.FileUtil;
 import com.jd.genie.agent.util.SpringContextHolder;
 import com.jd.genie.config.GenieConfig;
@@ -36,8 +36,8 @@ public class ExecutorAgent extends ReActAgent {
 
     private List<ToolCall> toolCalls;
     private Integer maxObserve;
-    private String systemPromptSnapshot;
-    private String nextStepPromptSnapshot;
+    private PromptTemplate systemPromptTemplate;
+    private PromptTemplate nextStepPromptTemplate;
 
     private Integer taskId;
 
@@ -47,33 +47,16 @@ public class ExecutorAgent extends ReActAgent {
         ApplicationContext applicationContext = SpringContextHolder.getApplicationContext();
         GenieConfig genieConfig = applicationContext.getBean(GenieConfig.class);
 
-        StringBuilder toolPrompt = new StringBuilder();
-        for (BaseTool tool : context.getToolCollection().getToolMap().values()) {
-            toolPrompt.append(String.format("工具名：%s 工具描述：%s\n", tool.getName(), tool.getDescription()));
-        }
-
-        String promptKey = "default";
-        String sopPromptKey = "default";
-        String nextPromptKey = "default";
-        setSystemPrompt(genieConfig.getExecutorSystemPromptMap().getOrDefault(promptKey, ToolCallPrompt.SYSTEM_PROMPT)
-                .replace("{{tools}}", toolPrompt.toString())
-                .replace("{{query}}", context.getQuery())
-                .replace("{{date}}", context.getDateInfo())
-                .replace("{{sopPrompt}}", context.getSopPrompt())
-                .replace("{{executorSopPrompt}}", genieConfig.getExecutorSopPromptMap().getOrDefault(sopPromptKey, "")));
-        setNextStepPrompt(genieConfig.getExecutorNextStepPromptMap().getOrDefault(nextPromptKey, ToolCallPrompt.NEXT_STEP_PROMPT)
-                .replace("{{tools}}", toolPrompt.toString())
-                .replace("{{query}}", context.getQuery())
-                .replace("{{date}}", context.getDateInfo())
-                .replace("{{sopPrompt}}", context.getSopPrompt())
-                .replace("{{executorSopPrompt}}", genieConfig.getExecutorSopPromptMap().getOrDefault(sopPromptKey, "")));
-
-        setSystemPromptSnapshot(getSystemPrompt());
-        setNextStepPromptSnapshot(getNextStepPrompt());
+        // 提示词模板按配置与工具集缓存，这里只绑定请求级变量，{{files}} 每步渲染
+        AgentBlueprint blueprint = AgentBlueprint.of(AgentBlueprint.Kind.EXECUTOR, genieConfig, context.getToolCollection());
+        setSystemPromptTemplate(blueprint.bindSystemPrompt(context));
+        setNextStepPromptTemplate(blueprint.bindNextStepPrompt(context));
+        setSystemPrompt(getSystemPromptTemplate().toString());
+        setNextStepPrompt(getNextStepPromptTemplate().toString());
 
         setPrinter(context.printer);
-        setMaxSteps(genieConfig.getPlannerMaxSteps());
-        setLlm(new LLM(genieConfig.getExecutorModelName(), ""));
+        setMaxSteps(blueprint.getMaxSteps());
+        setLlm(new LLM(blueprint.getModelName(), ""));
 
         setContext(context);
         setMaxObserve(Integer.parseInt(genieConfig.getMaxObserve()));
@@ -89,8 +72,8 @@ public class ExecutorAgent extends ReActAgent {
     public boolean think() {
         // 获取文件内容摘要，注入到提示词中
         String filesStr = FileUtil.formatFileInfo(context.getProductFiles(), true);
-        setSystemPrompt(getSystemPromptSnapshot().replace("{{files}}", filesStr));
-        setNextStepPrompt(getNextStepPromptSnapshot().replace("{{files}}", filesStr));
+        setSystemPrompt(getSystemPromptTemplate().render("files", filesStr));
+        setNextStepPrompt(getNextStepPromptTemplate().render("files", filesStr));
 
         if (!getMemory().getLastMessage().getRole().equals(RoleType.USER)) {
             Message userMsg = Message.userMessage(getNextStepPrompt(), null);
@@ -100,15 +83,21 @@ public class ExecutorAgent extends ReActAgent {
         try {
             // 获取带工具选项的响应（function call/structured output）
             log.info("{} executor ask tool {}", context.getRequestId(), JSON.toJSONString(availableTools, SerializerFeature.PrettyFormat));
+            // 开启 stream_dispatch 时改为流式请求，参数完整的工具调用在流式阶段即开始执行
+            // 流式阶段不输出内容：没有工具调用时内容会作为 task_summary 输出，提前以 tool_thought 输出会重复展示
+            boolean streamDispatch = isToolStreamDispatch();
+            getDispatchedTools().clear();
             CompletableFuture<LLM.ToolCallResponse> future = getLlm().askTool(
                     context,
                     getMemory().getMessages(),
                     Message.systemMessage(getSystemPrompt(), null),
                     availableTools,
-                    ToolChoice.AUTO, null, false, 300
+                    ToolChoice.AUTO, null, streamDispatch, 300, null,
+                    streamDispatch ? this::dispatchTool : null
             );
 
             LLM.ToolCallResponse response = future.get();
+            cancelDispatchedTools(response.getToolCalls());
             setToolCalls(response.getToolCalls());
 
             // 记录响应信息（若没有工具调用，则认为是阶段性总结）
@@ -137,6 +126,7 @@ public class ExecutorAgent extends ReActAgent {
         } catch (Exception e) {
 
             log.error("Oops! The " + getName() + "'s thinking process hit a snag: " + e.getMessage());
+            cancelDispatchedTools(Collections.emptyList());
             getMemory().addMessage(Message.assistantMessage(
                     "Error encountered while processing: " + e.getMessage(), null));
             setState(AgentState.FINISHED);
@@ -161,10 +151,10 @@ public class ExecutorAgent extends ReActAgent {
             return getMemory().getLastMessage().getContent();
         }
 
-        Map<String, String> toolResults = executeTools(toolCalls); // 逐个执行工具
+        Map<String, ToolResult> toolResults = executeTools(toolCalls); // 逐个执行工具
         List<String> results = new ArrayList<>();
         for (ToolCall command : toolCalls) {
-            String result = toolResults.get(command.getId());
+            String result = toObservation(toolResults.get(command.getId()));
             if (!Arrays.asList("code_interpreter", "report_tool", "file_tool", "deep_search").contains(command.getFunction().getName())) {
                 String toolName = command.getFunction().getName();
                 printer.send("tool_result", AgentResponse.ToolResult.builder()
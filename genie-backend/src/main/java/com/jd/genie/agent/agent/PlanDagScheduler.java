@@ -0,0 +1,257 @@
+package com.jd.genie.agent.agent;
+
+import com.jd.genie.agent.dto.Plan;
+import com.jd.genie.agent.enums.AgentState;
+import com.jd.genie.agent.util.TaskScope;
+import com.jd.genie.agent.util.ThreadUtil;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 计划 DAG 调度器
+ * - 计划中每个未完成步骤按 <sep> 拆成若干节点，节点依赖其前置步骤（Plan.getStepDependencies）的全部节点
+ * - 依赖就绪的节点立即在独立的 ExecutorAgent 上执行（fork 主执行器当前记忆），不再等待同批次最慢的任务
+ * - 节点完成后在调度线程合并记忆、更新步骤状态并推送 plan；节点失败后不再启动新节点，等待在途节点结束后返回，由规划器处理
+ * - 成功的节点记录到 Plan.completedTasks，步骤失败（blocked）后再次调度只执行未完成的子任务，已成功的子任务不会重复执行
+ * 记忆合并与计划状态只在调度线程（调用 run 的线程）修改
+ */
+@Slf4j
+public class PlanDagScheduler {
+
+    private final AgentContext context;
+    private final ExecutorAgent executor;
+    private final Function<AgentContext, ExecutorAgent> executorFactory;
+
+    public PlanDagScheduler(AgentContext context, ExecutorAgent executor) {
+        this(context, executor, ExecutorAgent::new);
+    }
+
+    /**
+     * @param executorFactory 为每个节点创建执行器
+     */
+    PlanDagScheduler(AgentContext context, ExecutorAgent executor, Function<AgentContext, ExecutorAgent> executorFactory) {
+        this.context = context;
+        this.executor = executor;
+        this.executorFactory = executorFactory;
+    }
+
+    /**
+     * 执行计划中全部未完成步骤，直到全部完成或出现失败节点
+     */
+    public Result run(Plan plan) {
+        List<Node> nodes = buildNodes(plan);
+        BlockingQueue<Node> finished = new LinkedBlockingQueue<>();
+        long startTime = System.currentTimeMillis();
+        boolean failed = false;
+        int running = 0;
+
+        try (TaskScope scope = ThreadUtil.openScope()) {
+            running += launchReady(plan, nodes, scope, finished);
+            while (running > 0) {
+                Node node = finished.take();
+                running--;
+                merge(node);
+                if (node.failed) {
+                    failed = true;
+                    plan.updateStepStatus(node.stepIndex, "blocked", node.error);
+                } else {
+                    plan.markTaskCompleted(node.stepIndex, node.subIndex);
+                    if (nodes.stream().allMatch(n -> n.stepIndex != node.stepIndex || (n.done && !n.failed))) {
+                        plan.updateStepStatus(node.stepIndex, "completed", "");
+                    }
+                }
+                log.info("{} plan node {}-{} {} in {}ms", context.getRequestId(), node.stepIndex, node.subIndex,
+                        node.failed ? "failed" : "finished", node.endTime - node.startTime);
+                context.getPrinter().send("plan", plan);
+                if (!failed) {
+                    running += launchReady(plan, nodes, scope, finished);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failed = true;
+            log.error("{} plan dag interrupted", context.getRequestId());
+        }
+
+        long wallTime = System.currentTimeMillis() - startTime;
+        log.info("{} plan dag nodes {} failed {} wall {}ms criticalPath {}ms stepBarrier {}ms", context.getRequestId(),
+                nodes.size(), failed, wallTime, criticalPath(plan, nodes), stepBarrierTime(nodes));
+        String output = nodes.stream()
+                .filter(n -> n.done && n.result != null)
+                .map(n -> n.result)
+                .collect(Collectors.joining("\n"));
+        return new Result(output, failed, wallTime);
+    }
+
+    private List<Node> buildNodes(Plan plan) {
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 0; i < plan.getSteps().size(); i++) {
+            if ("completed".equals(plan.getStepStatus().get(i))) {
+                continue;
+            }
+            String[] tasks = plan.getSteps().get(i).split("<sep>");
+            List<Integer> completed = plan.getCompletedTasks(i);
+            int remaining = 0;
+            for (int j = 0; j < tasks.length; j++) {
+                if (!completed.contains(j)) {
+                    nodes.add(new Node(i, j, tasks[j]));
+                    remaining++;
+                }
+            }
+            if (remaining == 0) {
+                // 子任务在之前的调度中已全部完成
+                plan.updateStepStatus(i, "completed", "");
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * 启动全部依赖已就绪的节点，返回启动数
+     */
+    private int launchReady(Plan plan, List<Node> nodes, TaskScope scope, BlockingQueue<Node> finished) {
+        int launched = 0;
+        for (Node node : nodes) {
+            if (node.started || !isReady(plan, node)) {
+                continue;
+            }
+            node.started = true;
+            node.startTime = System.currentTimeMillis();
+            if (!"in_progress".equals(plan.getStepStatus().get(node.stepIndex))) {
+                plan.updateStepStatus(node.stepIndex, "in_progress", "");
+            }
+            context.getPrinter().send("task", node.task);
+
+            ExecutorAgent slaveExecutor = executorFactory.apply(context);
+            slaveExecutor.setState(executor.getState());
+            slaveExecutor.setMemory(executor.getMemory().fork()); // 共享主执行器当前记忆
+            node.executor = slaveExecutor;
+
+            try {
+                scope.fork(() -> {
+                    try {
+                        node.result = slaveExecutor.run("你的任务是：" + node.task);
+                        node.failed = slaveExecutor.getState() == AgentState.ERROR;
+                    } catch (Exception e) {
+                        log.error("{} plan node {}-{} error", context.getRequestId(), node.stepIndex, node.subIndex, e);
+                        node.failed = true;
+                        node.error = e.getMessage();
+                    } finally {
+                        node.endTime = System.currentTimeMillis();
+                        finished.add(node);
+                    }
+                    return node.result;
+                });
+            } catch (RejectedExecutionException e) {
+                // 执行器饱和：节点按失败处理，由规划器重新规划
+                log.warn("{} plan node {}-{} rejected, task executor saturated", context.getRequestId(), node.stepIndex, node.subIndex);
+                node.failed = true;
+                node.error = "执行繁忙，子任务未执行";
+                node.endTime = System.currentTimeMillis();
+                finished.add(node);
+            }
+            launched++;
+        }
+        return launched;
+    }
+
+    private boolean isReady(Plan plan, Node node) {
+        for (Integer dependency : plan.getStepDependencies(node.stepIndex)) {
+            if (!"completed".equals(plan.getStepStatus().get(dependency))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 合并节点执行器新增的记忆到主执行器，并释放节点记忆
+     */
+    private void merge(Node node) {
+        node.done = true;
+        executor.getMemory().merge(node.executor.getMemory());
+        if (!node.failed) {
+            executor.setState(node.executor.getState());
+        }
+    }
+
+    /**
+     * 关键路径耗时：沿依赖链的最长节点耗时之和
+     */
+    private long criticalPath(Plan plan, List<Node> nodes) {
+        Map<Integer, Long> stepFinish = new LinkedHashMap<>();
+        long longest = 0;
+        for (Node node : nodes) {
+            if (!node.done) {
+                continue;
+            }
+            long ready = 0;
+            for (Integer dependency : plan.getStepDependencies(node.stepIndex)) {
+                ready = Math.max(ready, stepFinish.getOrDefault(dependency, 0L));
+            }
+            long finish = ready + node.endTime - node.startTime;
+            stepFinish.merge(node.stepIndex, finish, Math::max);
+            longest = Math.max(longest, finish);
+        }
+        return longest;
+    }
+
+    /**
+     * 按步骤逐批执行（每步等待最慢节点）时的耗时，用于与关键路径对比
+     */
+    private long stepBarrierTime(List<Node> nodes) {
+        Map<Integer, Long> stepMax = new LinkedHashMap<>();
+        for (Node node : nodes) {
+            if (node.done) {
+                stepMax.merge(node.stepIndex, node.endTime - node.startTime, Math::max);
+            }
+        }
+        return stepMax.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    private static class Node {
+        private final int stepIndex;
+        private final int subIndex;
+        private final String task;
+        private ExecutorAgent executor;
+        private boolean started;
+        private boolean done;
+        private volatile boolean failed;
+        private volatile String result;
+        private volatile String error;
+        private volatile long startTime;
+        private volatile long endTime;
+
+        Node(int stepIndex, int subIndex, String task) {
+            this.stepIndex = stepIndex;
+            this.subIndex = subIndex;
+            this.task = task;
+        }
+    }
+
+    /**
+     * 一次调度的结果
+     */
+    @Getter
+    public static class Result {
+        private final String output;    // 已完成节点的执行结果（按计划顺序）
+        private final boolean failed;   // 是否有节点失败
+        private final long wallTime;    // 调度总耗时（毫秒）
+
+        Result(String output, boolean failed, long wallTime) {
+            this.output = output;
+            this.failed = failed;
+            this.wallTime = wallTime;
+        }
+    }
+}
@@ -6,8 +6,7 @@ import com.jd.genie.agent.dto.tool.ToolChoice;
 import com.jd.genie.agent.enums.AgentState;
 import com.jd.genie.agent.enums.RoleType;
 import com.jd.genie.agent.llm.LLM;
-import com.jd.genie.agent.prompt.PlanningPrompt;
-import com.jd.genie.agent.tool.BaseTool;
+import com.jd.genie.agent.prompt.PromptTemplate;
 import com.jd.genie.agent.tool.common.PlanningTool;
 import com.jd.genie.agent.util.FileUtil;
 import com.jd.genie.agent.util.SpringContextHolder;
@@ -38,8 +37,9 @@ public class PlanningAgent extends ReActAgent {
     private Integer maxObserve;                 // 观测信息最大长度
     private PlanningTool planningTool = new PlanningTool(); // 内置规划工具
     private Boolean isColseUpdate;              // 是否关闭动态更新
-    private String systemPromptSnapshot;        // systemPrompt 快照（带 {{files}} 占位）
-    private String nextStepPromptSnapshot;      // nextStepPrompt 快照（带 {{files}} 占位）
+    private Boolean isDagSchedule;              // 是否由 PlanDagScheduler 按依赖调度子任务（步骤状态由调度器维护）
+    private PromptTemplate systemPromptTemplate;    // systemPrompt 模板（仅剩 {{files}} 占位）
+    private PromptTemplate nextStepPromptTemplate;  // nextStepPrompt 模板（仅剩 {{files}} 占位）
     private String planId;                      // 计划ID
 
     public PlanningAgent(AgentContext context) {
@@ -48,34 +48,21 @@ public class PlanningAgent extends ReActAgent {
         ApplicationContext applicationContext = SpringContextHolder.getApplicationContext();
         GenieConfig genieConfig = applicationContext.getBean(GenieConfig.class);
 
-        StringBuilder toolPrompt = new StringBuilder();
-        for (BaseTool tool : context.getToolCollection().getToolMap().values()) {
-            toolPrompt.append(String.format("工具名：%s 工具描述：%s\n", tool.getName(), tool.getDescription()));
-        }
-
-        String promptKey = "default";
-        String nextPromptKey = "default";
-        setSystemPrompt(genieConfig.getPlannerSystemPromptMap().getOrDefault(promptKey, PlanningPrompt.SYSTEM_PROMPT)
-                .replace("{{tools}}", toolPrompt.toString())
-                .replace("{{query}}", context.getQuery())
-                .replace("{{date}}", context.getDateInfo())
-                .replace("{{sopPrompt}}", context.getSopPrompt()));
-        setNextStepPrompt(genieConfig.getPlannerNextStepPromptMap().getOrDefault(nextPromptKey, PlanningPrompt.NEXT_STEP_PROMPT)
-                .replace("{{tools}}", toolPrompt.toString())
-                .replace("{{query}}", context.getQuery())
-                .replace("{{date}}", context.getDateInfo())
-                .replace("{{sopPrompt}}", context.getSopPrompt()));
-
-        setSystemPromptSnapshot(getSystemPrompt());
-        setNextStepPromptSnapshot(getNextStepPrompt());
+        // 提示词模板按配置与工具集缓存，这里只绑定请求级变量，{{files}} 每步渲染
+        AgentBlueprint blueprint = AgentBlueprint.of(AgentBlueprint.Kind.PLANNING, genieConfig, context.getToolCollection());
+        setSystemPromptTemplate(blueprint.bindSystemPrompt(context));
+        setNextStepPromptTemplate(blueprint.bindNextStepPrompt(context));
+        setSystemPrompt(getSystemPromptTemplate().toString());
+        setNextStepPrompt(getNextStepPromptTemplate().toString());
 
         setPrinter(context.printer);
-        setMaxSteps(genieConfig.getPlannerMaxSteps());
-        setLlm(new LLM(genieConfig.getPlannerModelName(), ""));
+        setMaxSteps(blueprint.getMaxSteps());
+        setLlm(new LLM(blueprint.getModelName(), ""));
 
         setContext(context);
         // 是否关闭动态更新  1==1
         setIsColseUpdate("1".equals(genieConfig.getPlanningCloseUpdate()));
+        setIsDagSchedule("1".equals(genieConfig.getPlanningDagSchedule()));
 
         // 初始化工具集合：将 planningTool 注入到可用工具
         availableTools.addTool(planningTool);
@@ -87,14 +74,16 @@ public class PlanningAgent extends ReActAgent {
         long startTime = System.currentTimeMillis();
         // 获取文件内容摘要，注入 Prompt
         String filesStr = FileUtil.formatFileInfo(context.getProductFiles(), false);
-        setSystemPrompt(getSystemPromptSnapshot().replace("{{files}}", filesStr));
-        setNextStepPrompt(getNextStepPromptSnapshot().replace("{{files}}", filesStr));
+        setSystemPrompt(getSystemPromptTemplate().render("files", filesStr));
+        setNextStepPrompt(getNextStepPromptTemplate().render("files", filesStr));
         log.info("{} planer fileStr {}", context.getRequestId(), filesStr);
 
         // 若关闭动态更新Plan，则优先推进已有计划
         if (isColseUpdate) {
             if (Objects.nonNull(planningTool.getPlan())) {
-                planningTool.stepPlan();
+                if (!isDagSchedule) {
+                    planningTool.stepPlan();
+                }
                 return true;
             }
         }
@@ -177,7 +166,7 @@ public class PlanningAgent extends ReActAgent {
         // 上面假如有工具调用则 生成Plan对象
         if (Objects.nonNull(planningTool.getPlan())) {
             // 关闭动态更新 (isColseUpdate = true) 目前是关闭的
-            if (isColseUpdate) {
+            if (isColseUpdate && !isDagSchedule) {
                 // 推进计划
                 planningTool.stepPlan();
             }
@@ -228,6 +217,13 @@ public class PlanningAgent extends ReActAgent {
             return "finish";
         }
 
+        // 按依赖调度时由调度器选择并下发可执行的子任务
+        if (isDagSchedule) {
+            setState(AgentState.FINISHED);
+            printer.send("plan", planningTool.getPlan());
+            return planningTool.getFormatPlan();
+        }
+
         // 步骤3：处理有正在进行的任务的情况
         if (!planningTool.getPlan().getCurrentStep().isEmpty()) {
             // 设置智能体状态为完成（单个任务视角）
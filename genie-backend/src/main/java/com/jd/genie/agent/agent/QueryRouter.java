@@ -0,0 +1,198 @@
+package com.jd.genie.agent.agent;
+
+import com.jd.genie.agent.dto.Message;
+import com.jd.genie.agent.enums.AgentType;
+import com.jd.genie.agent.llm.LLM;
+import com.jd.genie.agent.prompt.PromptTemplate;
+import com.jd.genie.agent.prompt.RouterPrompt;
+import com.jd.genie.config.GenieConfig;
+import com.jd.genie.model.req.AgentRequest;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * 问题路由：判断问题直接回答（DIRECT）、按原模式执行，还是升级为 PLAN_SOLVE
+ * - 先用规则：简单计算、问候直接回答；有交付物格式、超长或含复杂任务特征的升级为 PLAN_SOLVE；带文件或含工具特征的按原模式
+ * - 规则无法确定的短问题，只有小模型明确判定为 DIRECT 时才直接回答，未配置小模型、超时或失败均按原模式
+ * - 带文件的请求不会直接回答
+ * - 按路由统计耗时，直接回答的请求按原模式的平均耗时估算节省的时间
+ */
+@Slf4j
+public class QueryRouter {
+    private static final Pattern ARITHMETIC = Pattern.compile("^(计算|算一下|请问|what is|what's|calculate)?[\\s\\d.+\\-*/×÷()（）=%^]+(等于多少|等于几|是多少|得多少)?[\\s?？=]*$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern GREETING = Pattern.compile("^(你好|您好|嗨|hi|hello|hey|谢谢|感谢|早上好|中午好|晚上好|再见|你是谁)[\\s!！。.,，~？?]*$", Pattern.CASE_INSENSITIVE);
+    private static final String[] TOOL_WORDS = {"搜索", "搜一下", "查询", "查一下", "最新", "今天", "今日", "昨天", "本周", "新闻", "天气",
+            "股价", "汇率", "实时", "文件", "附件", "代码", "脚本", "运行", "网页", "网址", "链接", "http", "下载", "画图", "图表", "绘制"};
+    private static final String[] COMPLEX_WORDS = {"报告", "调研", "研究", "对比分析", "方案", "规划", "ppt", "excel", "表格", "html"};
+
+    public enum Route {
+        DIRECT, REACT, PLAN_SOLVE
+    }
+
+    /**
+     * 路由结果
+     */
+    @Getter
+    public static class Decision {
+        private final Route route;      // 路由
+        private final Route fallback;   // 不直接回答时的原模式
+        private final String reason;    // 判定依据，用于日志
+        private final long costMs;      // 分类耗时
+
+        public Decision(Route route, Route fallback, String reason, long costMs) {
+            this.route = route;
+            this.fallback = fallback;
+            this.reason = reason;
+            this.costMs = costMs;
+        }
+    }
+
+    // 路由统计
+    private static final Map<Route, LongAdder> counts = new EnumMap<>(Route.class);
+    private static final Map<Route, LongAdder> costs = new EnumMap<>(Route.class);
+    private static final Map<Route, LongAdder> classifyCosts = new EnumMap<>(Route.class);
+    private static final AtomicLong modelCalls = new AtomicLong();
+    private static final AtomicLong modelFailures = new AtomicLong();
+    private static final AtomicLong savedMs = new AtomicLong();
+    private static final AtomicLong savedCount = new AtomicLong();
+
+    static {
+        for (Route route : Route.values()) {
+            counts.put(route, new LongAdder());
+            costs.put(route, new LongAdder());
+            classifyCosts.put(route, new LongAdder());
+        }
+    }
+
+    /**
+     * 对请求分类
+     */
+    public static Decision route(AgentContext context, AgentRequest request, GenieConfig genieConfig) {
+        long start = System.currentTimeMillis();
+        Route fallback = AgentType.PLAN_SOLVE.getValue().equals(request.getFallbackAgentType()) ? Route.PLAN_SOLVE : Route.REACT;
+        String query = StringUtils.trimToEmpty(request.getQuery());
+        String lowerQuery = query.toLowerCase(Locale.ROOT);
+
+        if (StringUtils.isNotEmpty(request.getOutputStyle())) {
+            return new Decision(Route.PLAN_SOLVE, fallback, "outputStyle", System.currentTimeMillis() - start);
+        }
+        boolean hasFiles = hasFiles(request);
+        if (!hasFiles && (ARITHMETIC.matcher(query).matches() || GREETING.matcher(query).matches())) {
+            return new Decision(Route.DIRECT, fallback, "simple", System.currentTimeMillis() - start);
+        }
+        if (query.length() >= genieConfig.getRouterComplexMinLength() || StringUtils.containsAny(lowerQuery, COMPLEX_WORDS)) {
+            return new Decision(Route.PLAN_SOLVE, fallback, "complex", System.currentTimeMillis() - start);
+        }
+        if (hasFiles) {
+            return new Decision(fallback, fallback, "files", System.currentTimeMillis() - start);
+        }
+        if (StringUtils.containsAny(lowerQuery, TOOL_WORDS)) {
+            return new Decision(fallback, fallback, "tool", System.currentTimeMillis() - start);
+        }
+
+        // 规则无法判定：只有短问题交给小模型分类，其余按原模式
+        if (query.length() > genieConfig.getRouterDirectMaxLength() || StringUtils.isEmpty(genieConfig.getRouterModelName())) {
+            return new Decision(fallback, fallback, "default", System.currentTimeMillis() - start);
+        }
+        Route classified = classify(context, query, fallback, genieConfig);
+        return Objects.isNull(classified)
+                ? new Decision(fallback, fallback, "default", System.currentTimeMillis() - start)
+                : new Decision(classified, fallback, "model", System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 对话历史中是否带有上传文件或历史文件
+     */
+    private static boolean hasFiles(AgentRequest request) {
+        if (Objects.isNull(request.getMessages())) {
+            return false;
+        }
+        for (AgentRequest.Message message : request.getMessages()) {
+            if ((Objects.nonNull(message.getUploadFile()) && !message.getUploadFile().isEmpty())
+                    || (Objects.nonNull(message.getFiles()) && !message.getFiles().isEmpty())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 小模型分类，失败或超时返回 null
+     */
+    private static Route classify(AgentContext context, String query, Route fallback, GenieConfig genieConfig) {
+        modelCalls.incrementAndGet();
+        String prompt = PromptTemplate.compile(RouterPrompt.CLASSIFY_PROMPT).render("query", query);
+        CompletableFuture<String> future = new LLM(genieConfig.getRouterModelName(), "").ask(
+                context,
+                Collections.singletonList(Message.userMessage(prompt, null)),
+                Collections.emptyList(),
+                false,
+                0.0);
+        try {
+            String label = StringUtils.upperCase(StringUtils.trimToEmpty(future.get(genieConfig.getRouterTimeoutMs(), TimeUnit.MILLISECONDS)));
+            if (label.startsWith("DIRECT")) {
+                return Route.DIRECT;
+            } else if (label.startsWith("PLAN")) {
+                return Route.PLAN_SOLVE;
+            } else if (label.startsWith("TOOL")) {
+                return fallback;
+            }
+            log.warn("{} router unknown label: {}", context.getRequestId(), label);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            future.cancel(true);
+            log.warn("{} router classify failed: {}", context.getRequestId(), e.toString());
+        }
+        modelFailures.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * 记录一次路由的总耗时；直接回答时按原模式的平均耗时累计节省时间
+     */
+    public static void record(Decision decision, long totalMs) {
+        Route route = decision.getRoute();
+        if (route == Route.DIRECT) {
+            long baselineCount = counts.get(decision.getFallback()).sum();
+            if (baselineCount > 0) {
+                long baseline = costs.get(decision.getFallback()).sum() / baselineCount;
+                savedMs.addAndGet(Math.max(0, baseline - totalMs));
+                savedCount.incrementAndGet();
+            }
+        }
+        counts.get(route).increment();
+        costs.get(route).add(totalMs);
+        classifyCosts.get(route).add(decision.getCostMs());
+    }
+
+    public static Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (Route route : Route.values()) {
+            long count = counts.get(route).sum();
+            Map<String, Object> routeStats = new LinkedHashMap<>();
+            routeStats.put("count", count);
+            routeStats.put("avgMs", count == 0 ? 0 : costs.get(route).sum() / count);
+            routeStats.put("avgClassifyMs", count == 0 ? 0 : classifyCosts.get(route).sum() / count);
+            stats.put(route.name(), routeStats);
+        }
+        stats.put("modelCalls", modelCalls.get());
+        stats.put("modelFailures", modelFailures.get());
+        stats.put("savedMs", savedMs.get());
+        stats.put("avgSavedMs", savedCount.get() == 0 ? 0 : savedMs.get() / savedCount.get());
+        return stats;
+    }
+}
@@ -3,13 +3,15 @@ package com.jd.genie.agent.agent;
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
 import com.jd.genie.agent.dto.Message;
-import com.jd.genie.agent.tool.BaseTool;
+import com.jd.genie.agent.prompt.PromptTemplate;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -46,40 +48,48 @@ public abstract class ReActAgent extends BaseAgent {
         return act();
     }
 
+    /**
+     * 为当前任务生成数字员工命名：异步调用 LLM，与首次 think() 并行，不阻塞任务执行
+     * - 同一请求内相同任务复用已生成的命名
+     * - 命名完成后，本任务工具输出的事件带上岗位名
+     */
     public void generateDigitalEmployee(String task) {
         // 1、参数检查
         if (StringUtils.isEmpty(task)) {
+            setDigitalEmployees(null);
             return;
         }
+        setDigitalEmployees(context.getToolCollection().getOrGenerateDigitalEmployees(task, () -> requestDigitalEmployee(task)));
+    }
+
+    private CompletableFuture<JSONObject> requestDigitalEmployee(String task) {
         try {
             // 2. 构建系统消息（提取为独立方法）
             String formattedPrompt = formatSystemPrompt(task);
             Message userMessage = Message.userMessage(formattedPrompt, null);
 
-            // 3. 调用LLM并处理结果
-            CompletableFuture<String> summaryFuture = getLlm().ask(
+            // 3. 调用LLM，在响应回调中解析
+            return getLlm().ask(
                     context,
                     Collections.singletonList(userMessage),
                     Collections.emptyList(),
                     false,
-                    0.01);
-
-            // 4. 解析响应
-            String llmResponse = summaryFuture.get();
-            log.info("requestId: {} task:{} generateDigitalEmployee: {}", context.getRequestId(), task, llmResponse);
-            JSONObject jsonObject = parseDigitalEmployee(llmResponse);
-            if (jsonObject != null) {
-                log.info("requestId:{} generateDigitalEmployee: {}", context.getRequestId(), jsonObject);
-                context.getToolCollection().updateDigitalEmployee(jsonObject);
-                context.getToolCollection().setCurrentTask(task);
-                // 更新 availableTools 添加数字员工
-                availableTools = context.getToolCollection();
-            } else {
-                log.error("requestId: {} generateDigitalEmployee failed", context.getRequestId());
-            }
-
+                    0.01).thenApply(llmResponse -> {
+                log.info("requestId: {} task:{} generateDigitalEmployee: {}", context.getRequestId(), task, llmResponse);
+                JSONObject jsonObject = parseDigitalEmployee(llmResponse);
+                if (jsonObject != null) {
+                    log.info("requestId:{} generateDigitalEmployee: {}", context.getRequestId(), jsonObject);
+                } else {
+                    log.error("requestId: {} generateDigitalEmployee failed", context.getRequestId());
+                }
+                return jsonObject;
+            }).exceptionally(e -> {
+                log.error("requestId: {} in generateDigitalEmployee failed,", context.getRequestId(), e);
+                return null;
+            });
         } catch (Exception e) {
             log.error("requestId: {} in generateDigitalEmployee failed,", context.getRequestId(), e);
+            return CompletableFuture.completedFuture(null);
         }
     }
 
@@ -125,16 +135,12 @@ public abstract class ReActAgent extends BaseAgent {
             throw new IllegalStateException("System prompt is not configured");
         }
 
-        StringBuilder toolPrompt = new StringBuilder();
-        for (BaseTool tool : context.getToolCollection().getToolMap().values()) {
-            toolPrompt.append(String.format("工具名：%s 工具描述：%s\n", tool.getName(), tool.getDescription()));
-        }
-
         // 替换占位符
-        return digitalEmployeePrompt
-                .replace("{{task}}", task)
-                .replace("{{ToolsDesc}}", toolPrompt.toString())
-                .replace("{{query}}", context.getQuery());
+        Map<String, String> values = new HashMap<>();
+        values.put("task", task);
+        values.put("ToolsDesc", AgentBlueprint.toolPrompt(context.getToolCollection()));
+        values.put("query", context.getQuery());
+        return PromptTemplate.compile(digitalEmployeePrompt).render(values);
     }
 
 }
\ No newline at end of file
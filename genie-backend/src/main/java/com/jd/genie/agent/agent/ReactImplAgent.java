@@ -3,12 +3,12 @@ package com.jd.genie.agent.agent;
 import com.alibaba.fastjson.JSON;
 import com.jd.genie.agent.dto.Message;
 import com.jd.genie.agent.dto.tool.ToolCall;
+import com.jd.genie.agent.dto.tool.ToolResult;
 import com.jd.genie.agent.dto.tool.ToolChoice;
 import com.jd.genie.agent.enums.AgentState;
 import com.jd.genie.agent.enums.RoleType;
 import com.jd.genie.agent.llm.LLM;
-import com.jd.genie.agent.prompt.ToolCallPrompt;
-import com.jd.genie.agent.tool.BaseTool;
+import com.jd.genie.agent.prompt.PromptTemplate;
 import com.jd.genie.agent.util.FileUtil;
 import com.jd.genie.agent.util.SpringContextHolder;
 import com.jd.genie.config.GenieConfig;
@@ -34,8 +34,8 @@ public class ReactImplAgent extends ReActAgent {
 
     private List<ToolCall> toolCalls; // 当前步骤的工具调用列表
     private Integer maxObserve; // 观察结果的最大长度限制
-    private String systemPromptSnapshot; // 系统提示词快照
-    private String nextStepPromptSnapshot; // 下一步提示词快照
+    private PromptTemplate systemPromptTemplate; // 系统提示词模板（仅剩 {{files}} 占位）
+    private PromptTemplate nextStepPromptTemplate; // 下一步提示词模板（仅剩 {{files}} 占位）
 
     public ReactImplAgent(AgentContext context) {
         setName("react");
@@ -43,36 +43,17 @@ public class ReactImplAgent extends ReActAgent {
         ApplicationContext applicationContext = SpringContextHolder.getApplicationContext();
         GenieConfig genieConfig = applicationContext.getBean(GenieConfig.class);
 
-        // 构建工具描述字符串
-        StringBuilder toolPrompt = new StringBuilder();
-        for (BaseTool tool : context.getToolCollection().getToolMap().values()) {
-            toolPrompt.append(String.format("工具名：%s 工具描述：%s\n", tool.getName(), tool.getDescription()));
-        }
-
-        // 构造系统提示词和下一步提示词
-        String promptKey = "default";
-        String nextPromptKey = "default";
-
-        setSystemPrompt(genieConfig.getReactSystemPromptMap().getOrDefault(promptKey, ToolCallPrompt.SYSTEM_PROMPT)
-                .replace("{{tools}}", toolPrompt.toString())
-                .replace("{{query}}", context.getQuery())
-                .replace("{{date}}", context.getDateInfo())
-                .replace("{{basePrompt}}", context.getBasePrompt()));
-        setNextStepPrompt(
-                genieConfig.getReactNextStepPromptMap().getOrDefault(nextPromptKey, ToolCallPrompt.NEXT_STEP_PROMPT)
-                        .replace("{{tools}}", toolPrompt.toString())
-                        .replace("{{query}}", context.getQuery())
-                        .replace("{{date}}", context.getDateInfo())
-                        .replace("{{basePrompt}}", context.getBasePrompt()));
-
-        // 保存提示词快照，用于后续动态更新
-        setSystemPromptSnapshot(getSystemPrompt());
-        setNextStepPromptSnapshot(getNextStepPrompt());
+        // 构造系统提示词和下一步提示词：模板按配置与工具集缓存，这里只绑定请求级变量，{{files}} 每步渲染
+        AgentBlueprint blueprint = AgentBlueprint.of(AgentBlueprint.Kind.REACT, genieConfig, context.getToolCollection());
+        setSystemPromptTemplate(blueprint.bindSystemPrompt(context));
+        setNextStepPromptTemplate(blueprint.bindNextStepPrompt(context));
+        setSystemPrompt(getSystemPromptTemplate().toString());
+        setNextStepPrompt(getNextStepPromptTemplate().toString());
 
         // 初始化智能体配置
         setPrinter(context.printer);
-        setMaxSteps(genieConfig.getReactMaxSteps());
-        setLlm(new LLM(genieConfig.getReactModelName(), ""));
+        setMaxSteps(blueprint.getMaxSteps());
+        setLlm(new LLM(blueprint.getModelName(), ""));
         setContext(context);
 
         // 初始化工具集合
@@ -84,8 +65,8 @@ public class ReactImplAgent extends ReActAgent {
     public boolean think() {
         // 获取文件内容摘要，注入到提示词中
         String filesStr = FileUtil.formatFileInfo(context.getProductFiles(), true);
-        setSystemPrompt(getSystemPromptSnapshot().replace("{{files}}", filesStr));
-        setNextStepPrompt(getNextStepPromptSnapshot().replace("{{files}}", filesStr));
+        setSystemPrompt(getSystemPromptTemplate().render("files", filesStr));
+        setNextStepPrompt(getNextStepPromptTemplate().render("files", filesStr));
 
         // 构造用户消息（如果不是用户消息）
         if (!getMemory().getLastMessage().getRole().equals(RoleType.USER)) {
@@ -96,15 +77,18 @@ public class ReactImplAgent extends ReActAgent {
             // 获取带工具选项的响应（可流式）
             context.setStreamMessageType("tool_thought");
 
-            // 调用LLM获取思考和工具调用
+            // 调用LLM获取思考和工具调用（开启 stream_dispatch 时参数完整的工具调用在流式阶段即开始执行）
+            getDispatchedTools().clear();
             CompletableFuture<LLM.ToolCallResponse> future = getLlm().askTool(
                     context,
                     getMemory().getMessages(),
                     Message.systemMessage(getSystemPrompt(), null),
                     availableTools,
-                    ToolChoice.AUTO, null, context.getIsStream(), 300);
+                    ToolChoice.AUTO, null, context.getIsStream(), 300,
+                    isToolStreamDispatch() ? this::dispatchTool : null);
 
             LLM.ToolCallResponse response = future.get();
+            cancelDispatchedTools(response.getToolCalls());
 
             setToolCalls(response.getToolCalls());
 
@@ -124,6 +108,7 @@ public class ReactImplAgent extends ReActAgent {
         } catch (Exception e) {
 
             log.error("{} react think error", context.getRequestId(), e);
+            cancelDispatchedTools(Collections.emptyList());
             getMemory().addMessage(Message.assistantMessage(
                     "Error encountered while processing: " + e.getMessage(), null));
             setState(AgentState.FINISHED);
@@ -142,10 +127,10 @@ public class ReactImplAgent extends ReActAgent {
         }
 
         // 执行所有工具调用
-        Map<String, String> toolResults = executeTools(toolCalls);
+        Map<String, ToolResult> toolResults = executeTools(toolCalls);
         List<String> results = new ArrayList<>();
         for (ToolCall command : toolCalls) {
-            String result = toolResults.get(command.getId());
+            String result = toObservation(toolResults.get(command.getId()));
 
             // 发送工具执行结果（排除某些内部工具）
             if (!Arrays.asList("code_interpreter", "report_tool", "file_tool", "deep_search")
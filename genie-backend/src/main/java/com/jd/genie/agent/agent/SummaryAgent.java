@@ -4,6 +4,8 @@ import com.jd.genie.agent.dto.File;
 import com.jd.genie.agent.dto.Message;
 import com.jd.genie.agent.dto.TaskSummaryResult;
 import com.jd.genie.agent.llm.LLM;
+import com.jd.genie.agent.printer.AgentStream;
+import com.jd.genie.agent.prompt.PromptTemplate;
 import com.jd.genie.agent.util.SpringContextHolder;
 import com.jd.genie.config.GenieConfig;
 import lombok.Data;
@@ -15,7 +17,9 @@ import org.springframework.util.CollectionUtils;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
@@ -26,7 +30,9 @@ public class SummaryAgent extends BaseAgent {
     // 任务执行过程总结与最终交付物提取
     private String requestId;
     private Integer messageSizeLimit;
+    private Boolean isSummaryStream;            // 是否流式输出总结
     public static final String logFlag = "summaryTaskResult";
+    private static final String FILE_SEPARATOR = "$$$";
 
     public SummaryAgent(AgentContext context) {
         ApplicationContext applicationContext = SpringContextHolder.getApplicationContext();
@@ -37,6 +43,7 @@ public class SummaryAgent extends BaseAgent {
         setRequestId(context.getRequestId());
         setLlm(new LLM(context.getAgentType() == 3 ? genieConfig.getPlannerModelName() : genieConfig.getReactModelName(), ""));
         setMessageSizeLimit(genieConfig.getMessageSizeLimit());
+        setIsSummaryStream("1".equals(genieConfig.getSummaryStream()) && Boolean.TRUE.equals(context.getIsStream()));
     }
 
     /**
@@ -71,11 +78,34 @@ public class SummaryAgent extends BaseAgent {
             throw new IllegalStateException("System prompt is not configured");
         }
 
-        // 替换占位符
-        return systemPrompt
-                .replace("{{taskHistory}}", taskHistory)
-                .replace("{{fileNameDesc}}", createFileInfo())
-                .replace("{{query}}", query);
+        // 替换占位符（任务历史较长，按段拼接一次，不再多次整段 replace）
+        Map<String, String> values = new HashMap<>();
+        values.put("taskHistory", taskHistory);
+        values.put("fileNameDesc", createFileInfo());
+        values.put("query", query);
+        return PromptTemplate.parse(systemPrompt).render(values);
+    }
+
+    /**
+     * 拼接任务历史：先按截断后的长度算出总长，一次分配
+     */
+    private String formatTaskHistory(List<Message> messages) {
+        int limit = getMessageSizeLimit();
+        int capacity = 0;
+        for (Message message : messages) {
+            String content = message.getContent();
+            capacity += 32 + (content == null ? 4 : Math.min(content.length(), limit));
+        }
+        StringBuilder sb = new StringBuilder(capacity);
+        for (Message message : messages) {
+            String content = message.getContent();
+            if (content != null && content.length() > limit) {
+                log.info("requestId: {} message truncate,{}", requestId, message);
+                content = content.substring(0, limit);
+            }
+            sb.append("role:").append(message.getRole()).append(" content:").append(content).append('\n');
+        }
+        return sb.toString();
     }
 
     // 构造用户消息（此处简化为 userMessage，便于统一 ask 接口）
@@ -97,10 +127,13 @@ public class SummaryAgent extends BaseAgent {
         if (parts1.length < 2) {
             return TaskSummaryResult.builder().taskSummary(parts1[0]).build();
         }
+        return matchFiles(parts1[0], parts1[1], llmResponse);
+    }
 
-        String summary = parts1[0];
-        String fileNames = parts1[1];
-
+    /**
+     * 按 $$$ 之后的文件名列表（、分隔）匹配上下文中的产物文件
+     */
+    private TaskSummaryResult matchFiles(String summary, String fileNames, String llmResponse) {
         List<File> files = context.getProductFiles();
         if (!CollectionUtils.isEmpty(files)) {
             Collections.reverse(files);
@@ -141,30 +174,29 @@ public class SummaryAgent extends BaseAgent {
         try {
             // 2. 构建系统消息（提取为独立方法）
             log.info("requestId: {} summaryTaskResult: messages:{}", requestId, messages.size());
-            StringBuilder sb = new StringBuilder();
-            for (Message message : messages) {
-                String content = message.getContent();
-                if (content != null && content.length() > getMessageSizeLimit()) {
-                    log.info("requestId: {} message truncate,{}", requestId, message);
-                    content = content.substring(0, getMessageSizeLimit());
-                }
-                sb.append(String.format("role:%s content:%s\n", message.getRole(), content));
-            }
-            String formattedPrompt = formatSystemPrompt(sb.toString(), query);
+            String formattedPrompt = formatSystemPrompt(formatTaskHistory(messages), query);
             Message userMessage = createSystemMessage(formattedPrompt);
 
-            // 3. 调用LLM并处理结果
+            // 3. 调用LLM并处理结果（流式时总结内容边生成边输出）
+            SummaryStream summaryStream = isSummaryStream ? new SummaryStream(context) : null;
             CompletableFuture<String> summaryFuture = getLlm().ask(
                     context,
                     Collections.singletonList(userMessage),
                     Collections.emptyList(),
-                    false,
-                    0.01);
+                    isSummaryStream,
+                    0.01,
+                    isSummaryStream ? summaryStream::feed : null);
 
             // 5. 解析响应
             String llmResponse = summaryFuture.get();
             log.info("requestId: {} summaryTaskResult: {}", requestId, llmResponse);
 
+            if (summaryStream != null) {
+                summaryStream.finish();
+                return summaryStream.fileNames == null
+                        ? TaskSummaryResult.builder().taskSummary(summaryStream.summary.toString()).build()
+                        : matchFiles(summaryStream.summary.toString(), summaryStream.fileNames.toString(), llmResponse);
+            }
             return parseLlmResponse(llmResponse);
         } catch (Exception e) {
             log.error("requestId: {} in summaryTaskResult failed,", requestId, e);
@@ -172,4 +204,45 @@ public class SummaryAgent extends BaseAgent {
             return TaskSummaryResult.builder().taskSummary("任务执行失败，请联系管理员！").build();
         }
     }
+
+    /**
+     * 流式总结：$$$ 之前的总结内容按 message_interval 节流输出为 agent_stream 事件，之后的文件名列表只收集不输出
+     * 分隔符可能被拆在相邻两段内容中，末尾的 $ 暂不输出，直到确认不是分隔符
+     */
+    static class SummaryStream {
+        private final AgentStream stream;
+        private final StringBuilder summary = new StringBuilder();
+        private StringBuilder fileNames;     // 遇到分隔符后才创建
+
+        SummaryStream(AgentContext context) {
+            this.stream = new AgentStream(context.getPrinter());
+        }
+
+        void feed(String content) {
+            if (fileNames != null) {
+                fileNames.append(content);
+                return;
+            }
+            int from = Math.max(0, summary.length() - FILE_SEPARATOR.length() + 1);
+            summary.append(content);
+            int separator = summary.indexOf(FILE_SEPARATOR, from);
+            if (separator >= 0) {
+                fileNames = new StringBuilder(summary.substring(separator + FILE_SEPARATOR.length()));
+                summary.setLength(separator);
+            }
+            stream.tick(summary, fileNames != null ? summary.length() : safeEnd());
+        }
+
+        void finish() {
+            stream.finish(summary);
+        }
+
+        private int safeEnd() {
+            int end = summary.length();
+            while (end > 0 && summary.length() - end < FILE_SEPARATOR.length() - 1 && summary.charAt(end - 1) == '$') {
+                end--;
+            }
+            return end;
+        }
+    }
 }
\ No newline at end of file
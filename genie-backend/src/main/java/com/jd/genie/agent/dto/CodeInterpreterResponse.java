@@ -1,6 +1,7 @@
 package com.jd.genie.agent.dto;
 
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -9,6 +10,7 @@ import lombok.NoArgsConstructor;
 import java.util.List;
 
 @Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
@@ -25,6 +27,7 @@ public class CodeInterpreterResponse {
     private Boolean isFinal;
 
     @Data
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     @Builder
     @NoArgsConstructor
     @AllArgsConstructor
@@ -1,5 +1,6 @@
 package com.jd.genie.agent.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -8,6 +9,7 @@ import lombok.NoArgsConstructor;
 import java.util.List;
 
 @Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
@@ -21,6 +23,7 @@ public class DeepSearchrResponse {
     private String messageType; // extend、search、report
 
     @Data
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     @Builder
     @NoArgsConstructor
     @AllArgsConstructor
@@ -30,6 +33,7 @@ public class DeepSearchrResponse {
     }
 
     @Data
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     @Builder
     @NoArgsConstructor
     @AllArgsConstructor
@@ -1,66 +1,161 @@
 package com.jd.genie.agent.dto;
 
 import com.jd.genie.agent.enums.RoleType;
-import lombok.Data;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 
 /**
  * 记忆类 - 管理代理的消息历史
+ * - 消息由只读段链（base，可被多个记忆共享）与自有尾部（tail）组成
+ * - fork 冻结当前尾部后与子记忆共享段链，O(1)；merge 把子记忆 fork 之后新增的尾部直接挂到段链末尾，O(1)，并释放子记忆
+ * - 段链过深时合并为单段，随机访问代价有界
  */
-@Data
 public class Memory {
-    // 对话历史
-    private List<Message> messages = new ArrayList<>();
+    private static final int MAX_SEGMENT_DEPTH = 32;
+
+    // 只读段链（可为 null），段内列表冻结后不再修改
+    private Segment base;
+    // 自有尾部，只被当前记忆持有
+    private List<Message> tail = new ArrayList<>();
+    // fork 时继承的消息条数，merge 只合并其后的消息
+    private int inheritedSize;
+
+    private final List<Message> view = new MessageView();
 
     /**
      * 添加消息
      */
     public void addMessage(Message message) {
-        messages.add(message);
+        tail.add(message);
     }
 
     /**
      * 添加多条消息
      */
     public void addMessages(List<Message> newMessages) {
-        messages.addAll(newMessages);
+        tail.addAll(newMessages);
+    }
+
+    /**
+     * 对话历史（只读视图，随记忆变化）
+     */
+    public List<Message> getMessages() {
+        return view;
     }
 
     /**
      * 获取最后一条消息
      */
     public Message getLastMessage() {
-        return messages.isEmpty() ? null : messages.get(messages.size() - 1);
+        int size = size();
+        return size == 0 ? null : get(size - 1);
+    }
+
+    /**
+     * 派生子记忆：与当前记忆共享已有消息，双方之后的追加互不可见
+     */
+    public Memory fork() {
+        freeze();
+        Memory child = new Memory();
+        child.base = base;
+        child.inheritedSize = baseSize();
+        return child;
+    }
+
+    /**
+     * 合并子记忆在 fork 之后新增的消息，合并后子记忆被清空
+     */
+    public void merge(Memory child) {
+        if (child.baseSize() == child.inheritedSize) {
+            // 子记忆未再冻结，新增消息全部在尾部，直接挂接
+            appendSegment(child.tail);
+        } else {
+            appendSegment(new ArrayList<>(child.view.subList(child.inheritedSize, child.size())));
+        }
+        child.clear();
+    }
+
+    /**
+     * 用一条消息替换 [from, from + expected.size()) 区间，区间内消息与 expected 不是同一批对象
+     * 或区间跨越 fork 继承边界时不替换并返回 false
+     */
+    public boolean replaceRange(int from, List<Message> expected, Message replacement) {
+        int to = from + expected.size();
+        if (from < 0 || to > size() || (from < inheritedSize && to > inheritedSize)) {
+            return false;
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            if (get(from + i) != expected.get(i)) {
+                return false;
+            }
+        }
+        List<Message> rebuilt = new ArrayList<>(size() - expected.size() + 1);
+        rebuilt.addAll(view.subList(0, from));
+        rebuilt.add(replacement);
+        rebuilt.addAll(view.subList(to, size()));
+        int newInheritedSize = to <= inheritedSize ? inheritedSize - expected.size() + 1 : inheritedSize;
+        base = newInheritedSize == 0 ? null : new Segment(null, new ArrayList<>(rebuilt.subList(0, newInheritedSize)));
+        tail = new ArrayList<>(rebuilt.subList(newInheritedSize, rebuilt.size()));
+        inheritedSize = newInheritedSize;
+        return true;
+    }
+
+    /**
+     * fork 时继承的消息条数（非 fork 出的记忆为 0）
+     */
+    public int getInheritedSize() {
+        return inheritedSize;
     }
 
     /**
      * 清空记忆
      */
     public void clear() {
-        messages.clear();
+        base = null;
+        tail = new ArrayList<>();
+        inheritedSize = 0;
     }
 
     /**
      * 清空工具执行历史
      */
     public void clearToolContext() {
-        Iterator<Message> iterator = messages.iterator();
-        while (iterator.hasNext()) {
-            Message message = iterator.next();
-            if (message.getRole() == RoleType.TOOL) {
-                iterator.remove();
-            }
-            if (message.getRole() == RoleType.ASSISTANT && Objects.nonNull(message.getToolCalls()) && !message.getToolCalls().isEmpty()) {
-                iterator.remove();
-            }
-            if (Objects.nonNull(message.getContent()) && message.getContent().startsWith("根据当前状态和可用工具，确定下一步行动")) {
-                iterator.remove();
+        List<Message> kept = new ArrayList<>();
+        int inheritedKept = 0;
+        int index = 0;
+        for (Message message : view) {
+            if (!isToolContext(message)) {
+                kept.add(message);
+                if (index < inheritedSize) {
+                    inheritedKept++;
+                }
             }
+            index++;
         }
+        if (kept.size() == size()) {
+            return;
+        }
+        // 继承部分与自有部分分开保存，保证 merge 仍只合并自有消息
+        List<Message> inherited = new ArrayList<>(kept.subList(0, inheritedKept));
+        base = inherited.isEmpty() ? null : new Segment(null, inherited);
+        tail = new ArrayList<>(kept.subList(inheritedKept, kept.size()));
+        inheritedSize = inheritedKept;
+    }
+
+    private boolean isToolContext(Message message) {
+        if (message.getRole() == RoleType.TOOL) {
+            return true;
+        }
+        if (message.getRole() == RoleType.ASSISTANT && Objects.nonNull(message.getToolCalls()) && !message.getToolCalls().isEmpty()) {
+            return true;
+        }
+        return Objects.nonNull(message.getContent()) && message.getContent().startsWith("根据当前状态和可用工具，确定下一步行动");
     }
 
     /**
@@ -68,7 +163,7 @@ public class Memory {
      */
     public String getFormatMessage() {
         StringBuilder sb = new StringBuilder();
-        for (Message message : messages) {
+        for (Message message : view) {
             sb.append(String.format("role:%s content:%s\n", message.getRole(), message.getContent()));
         }
         return sb.toString();
@@ -79,18 +174,142 @@ public class Memory {
      * 获取消息数量
      */
     public int size() {
-        return messages.size();
+        return baseSize() + tail.size();
     }
 
     /**
      * 检查是否为空
      */
     public boolean isEmpty() {
-        return messages.isEmpty();
+        return size() == 0;
     }
 
 
     public Message get(int index) {
-        return messages.get(index);
+        int baseSize = baseSize();
+        if (index >= baseSize) {
+            return tail.get(index - baseSize);
+        }
+        if (index < 0) {
+            throw new IndexOutOfBoundsException("Index: " + index);
+        }
+        return base.get(index);
+    }
+
+    private int baseSize() {
+        return base == null ? 0 : base.size;
+    }
+
+    /**
+     * 冻结自有尾部为只读段
+     */
+    private void freeze() {
+        if (!tail.isEmpty()) {
+            appendToBase(tail);
+            tail = new ArrayList<>();
+        }
+    }
+
+    private void appendSegment(List<Message> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+        freeze();
+        appendToBase(items);
+    }
+
+    private void appendToBase(List<Message> items) {
+        base = new Segment(base, items);
+        if (base.depth > MAX_SEGMENT_DEPTH) {
+            List<Message> flat = new ArrayList<>(base.size);
+            for (Segment segment : base.chain()) {
+                flat.addAll(segment.items);
+            }
+            base = new Segment(null, flat);
+        }
+    }
+
+    /**
+     * 只读段：parent 之后追加 items，size 为截至本段的累计条数
+     */
+    private static final class Segment {
+        private final Segment parent;
+        private final List<Message> items;
+        private final int size;
+        private final int depth;
+
+        Segment(Segment parent, List<Message> items) {
+            this.parent = parent;
+            this.items = items;
+            this.size = (parent == null ? 0 : parent.size) + items.size();
+            this.depth = parent == null ? 1 : parent.depth + 1;
+        }
+
+        Message get(int index) {
+            Segment segment = this;
+            while (index < segment.size - segment.items.size()) {
+                segment = segment.parent;
+            }
+            return segment.items.get(index - (segment.size - segment.items.size()));
+        }
+
+        /**
+         * 从根到当前段的段序列
+         */
+        List<Segment> chain() {
+            List<Segment> chain = new ArrayList<>(depth);
+            for (Segment segment = this; segment != null; segment = segment.parent) {
+                chain.add(segment);
+            }
+            Collections.reverse(chain);
+            return chain;
+        }
+    }
+
+    /**
+     * 段链 + 尾部的只读列表视图，顺序遍历按段进行
+     */
+    private class MessageView extends AbstractList<Message> {
+        @Override
+        public Message get(int index) {
+            return Memory.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return Memory.this.size();
+        }
+
+        @Override
+        public Iterator<Message> iterator() {
+            List<List<Message>> parts = new ArrayList<>();
+            if (base != null) {
+                for (Segment segment : base.chain()) {
+                    parts.add(segment.items);
+                }
+            }
+            parts.add(tail);
+            return new Iterator<>() {
+                private int part = 0;
+                private int index = 0;
+
+                @Override
+                public boolean hasNext() {
+                    while (part < parts.size() && index >= parts.get(part).size()) {
+                        part++;
+                        index = 0;
+                    }
+                    return part < parts.size();
+                }
+
+                @Override
+                public Message next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return parts.get(part).get(index++);
+                }
+            };
+        }
     }
-}
\ No newline at end of file
+}
@@ -3,10 +3,14 @@ package com.jd.genie.agent.dto;
 
 import com.jd.genie.agent.dto.tool.ToolCall;
 import com.jd.genie.agent.enums.RoleType;
-import lombok.AllArgsConstructor;
+import lombok.AccessLevel;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
 
 import java.util.List;
 
@@ -14,9 +18,7 @@ import java.util.List;
  * 消息类 - 表示代理系统中的各种消息
  */
 @Data
-@Builder
 @NoArgsConstructor
-@AllArgsConstructor
 public class Message {
     private RoleType role;           // 消息角色
     private String content;          // 消息内容
@@ -24,6 +26,131 @@ public class Message {
     private String toolCallId;       // 工具调用ID
     private List<ToolCall> toolCalls; // 工具调用列表
 
+    /**
+     * 按模型格式缓存的序列化结果（0: openai, 1: claude）
+     * 通过 setter 修改消息时失效；直接修改 toolCalls 列表内容不会失效
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private transient String[] formatCache;
+
+    /**
+     * token 数缓存（按编码），随 formatCache 一同失效
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private transient TokenCountCache tokenCountCache;
+
+    /**
+     * 脱敏后的内容缓存，随 formatCache 一同失效
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private transient String desensitizedContent;
+
+    @Builder
+    public Message(RoleType role, String content, String base64Image, String toolCallId, List<ToolCall> toolCalls) {
+        this.role = role;
+        this.content = content;
+        this.base64Image = base64Image;
+        this.toolCallId = toolCallId;
+        this.toolCalls = toolCalls;
+    }
+
+    public void setRole(RoleType role) {
+        this.role = role;
+        invalidateCache();
+    }
+
+    public void setContent(String content) {
+        this.content = content;
+        invalidateCache();
+    }
+
+    public void setBase64Image(String base64Image) {
+        this.base64Image = base64Image;
+        invalidateCache();
+    }
+
+    public void setToolCallId(String toolCallId) {
+        this.toolCallId = toolCallId;
+        invalidateCache();
+    }
+
+    public void setToolCalls(List<ToolCall> toolCalls) {
+        this.toolCalls = toolCalls;
+        invalidateCache();
+    }
+
+    private void invalidateCache() {
+        this.formatCache = null;
+        this.tokenCountCache = null;
+        this.desensitizedContent = null;
+    }
+
+    /**
+     * 获取缓存的序列化结果，未缓存返回 null
+     */
+    public String getFormatCache(boolean isClaude) {
+        String[] cache = formatCache;
+        return cache == null ? null : cache[isClaude ? 1 : 0];
+    }
+
+    /**
+     * 缓存序列化结果
+     */
+    public void putFormatCache(boolean isClaude, String json) {
+        String[] cache = formatCache;
+        String[] newCache = cache == null ? new String[2] : cache.clone();
+        newCache[isClaude ? 1 : 0] = json;
+        formatCache = newCache;
+    }
+
+    /**
+     * 获取缓存的 token 数，未缓存返回 -1
+     */
+    public int getTokenCountCache(String encoding) {
+        TokenCountCache cache = tokenCountCache;
+        return cache != null && cache.encoding.equals(encoding) ? cache.count : -1;
+    }
+
+    /**
+     * 缓存 token 数
+     */
+    public void putTokenCountCache(String encoding, int count) {
+        tokenCountCache = new TokenCountCache(encoding, count);
+    }
+
+    /**
+     * 获取缓存的脱敏内容，未缓存返回 null
+     */
+    public String getDesensitizedContent() {
+        return desensitizedContent;
+    }
+
+    /**
+     * 缓存脱敏内容
+     */
+    public void putDesensitizedContent(String desensitizedContent) {
+        this.desensitizedContent = desensitizedContent;
+    }
+
+    private static class TokenCountCache {
+        private final String encoding;
+        private final int count;
+
+        private TokenCountCache(String encoding, int count) {
+            this.encoding = encoding;
+            this.count = count;
+        }
+    }
+
     /**
      * 创建用户消息
      */
@@ -7,6 +7,8 @@ import lombok.NoArgsConstructor;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * 计划类
@@ -17,6 +19,8 @@ import java.util.List;
 @AllArgsConstructor
 public class Plan {
 
+    private static final Pattern ORDER_PATTERN = Pattern.compile("^\\s*执行顺序\\s*(\\d+)");
+
     private String title;           // 计划标题
     private List<String> steps;     // 计划步骤列表
 
@@ -27,11 +31,20 @@ public class Plan {
     // "blocked"     // 被阻塞
     private List<String> stepStatus;// 步骤状态列表
     private List<String> notes;     // 步骤备注列表
+    private List<List<Integer>> dependencies; // 步骤依赖（dependencies[i] 为步骤 i 依赖的步骤下标），为空时按执行顺序推断
+    private List<List<Integer>> completedTasks; // 各步骤已完成的子任务（按 <sep> 拆分后的下标），步骤重新调度时只执行其余子任务
 
     /**
      * 创建新计划
      */
     public static Plan create(String title, List<String> steps) {
+        return create(title, steps, null);
+    }
+
+    /**
+     * 创建带依赖关系的计划
+     */
+    public static Plan create(String title, List<String> steps, List<List<Integer>> dependencies) {
         List<String> status = new ArrayList<>();
         List<String> notes = new ArrayList<>();
 
@@ -46,6 +59,7 @@ public class Plan {
                 .steps(steps)
                 .stepStatus(status)
                 .notes(notes)
+                .dependencies(dependencies)
                 .build();
     }
 
@@ -53,6 +67,13 @@ public class Plan {
      * 更新计划
      */
     public void update(String title, List<String> newSteps) {
+        update(title, newSteps, null);
+    }
+
+    /**
+     * 更新计划，步骤变更时依赖关系一并替换
+     */
+    public void update(String title, List<String> newSteps, List<List<Integer>> newDependencies) {
         if (title != null) {
             this.title = title;
         }
@@ -60,23 +81,58 @@ public class Plan {
         if (newSteps != null) {
             List<String> newStatuses = new ArrayList<>();
             List<String> newNotes = new ArrayList<>();
+            List<List<Integer>> newCompletedTasks = new ArrayList<>();
 
             for (int i = 0; i < newSteps.size(); i++) {
                 // 智能状态保持：相同步骤保持原有状态，新步骤重置
                 if (i < this.steps.size() && newSteps.get(i).equals(this.steps.get(i))) {
-                    // 保持原有状态和备注
+                    // 保持原有状态、备注与已完成的子任务
                     newStatuses.add(this.stepStatus.get(i));
                     newNotes.add(this.notes.get(i));
+                    newCompletedTasks.add(new ArrayList<>(getCompletedTasks(i)));
                 } else {
                     // 新步骤使用默认状态和空备注
                     newStatuses.add("not_started");
                     newNotes.add("");
+                    newCompletedTasks.add(new ArrayList<>());
                 }
             }
 
             this.steps = newSteps;
             this.stepStatus = newStatuses;
             this.notes = newNotes;
+            this.completedTasks = newCompletedTasks;
+            this.dependencies = newDependencies;
+        }
+    }
+
+    /**
+     * 步骤中已完成的子任务下标
+     */
+    public List<Integer> getCompletedTasks(int stepIndex) {
+        if (completedTasks == null || stepIndex >= completedTasks.size() || completedTasks.get(stepIndex) == null) {
+            return new ArrayList<>();
+        }
+        return completedTasks.get(stepIndex);
+    }
+
+    /**
+     * 记录步骤中一个子任务已完成
+     */
+    public void markTaskCompleted(int stepIndex, int taskIndex) {
+        if (completedTasks == null) {
+            completedTasks = new ArrayList<>();
+        }
+        while (completedTasks.size() < steps.size()) {
+            completedTasks.add(new ArrayList<>());
+        }
+        List<Integer> completed = completedTasks.get(stepIndex);
+        if (completed == null) {
+            completed = new ArrayList<>();
+            completedTasks.set(stepIndex, completed);
+        }
+        if (!completed.contains(taskIndex)) {
+            completed.add(taskIndex);
         }
     }
 
@@ -114,7 +170,7 @@ public class Plan {
      *
      */
     public void stepPlan() {
-        if (steps.isEmpty()) {
+        if (steps.isEmpty() || isAllCompleted()) {
             return;
         }
         // 如果没有正在进行的任务，开始第一个任务
@@ -134,6 +190,70 @@ public class Plan {
         }
     }
 
+    /**
+     * 是否全部步骤已完成
+     */
+    public boolean isAllCompleted() {
+        for (String status : stepStatus) {
+            if (!"completed".equals(status)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 步骤 i 的前置步骤下标（只保留 i 之前的步骤，保证无环）
+     * - 显式给出 dependencies 时使用显式依赖
+     * - 否则全部步骤带“执行顺序N”编号时，依赖编号小于 N 的最大编号的全部步骤，同编号步骤并行
+     * - 否则依赖上一个步骤
+     */
+    public List<Integer> getStepDependencies(int stepIndex) {
+        List<Integer> result = new ArrayList<>();
+        if (dependencies != null && stepIndex < dependencies.size() && dependencies.get(stepIndex) != null) {
+            for (Integer dependency : dependencies.get(stepIndex)) {
+                if (dependency != null && dependency >= 0 && dependency < stepIndex && !result.contains(dependency)) {
+                    result.add(dependency);
+                }
+            }
+            return result;
+        }
+        int[] orders = stepOrders();
+        if (orders == null) {
+            if (stepIndex > 0) {
+                result.add(stepIndex - 1);
+            }
+            return result;
+        }
+        int previousOrder = -1;
+        for (int i = 0; i < stepIndex; i++) {
+            if (orders[i] < orders[stepIndex]) {
+                previousOrder = Math.max(previousOrder, orders[i]);
+            }
+        }
+        for (int i = 0; i < stepIndex; i++) {
+            if (orders[i] == previousOrder) {
+                result.add(i);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 解析全部步骤的“执行顺序N”编号，任一步骤缺少编号时返回 null
+     */
+    private int[] stepOrders() {
+        int[] orders = new int[steps.size()];
+        for (int i = 0; i < steps.size(); i++) {
+            Matcher matcher = ORDER_PATTERN.matcher(steps.get(i));
+            if (!matcher.find()) {
+                return null;
+            }
+            orders[i] = Integer.parseInt(matcher.group(1));
+        }
+        return orders;
+    }
+
     /**
      * 格式化计划显示
      */
@@ -0,0 +1,30 @@
+package com.jd.genie.agent.dto;
+
+import com.jd.genie.model.req.AgentRequest;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * PlanSolve 运行检查点：一轮规划-执行迭代开始前的完整状态，用于进程重启后从该轮继续
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RunCheckpoint {
+    private AgentRequest request;            // 原始请求（query 已拼接输出样式）
+    private Integer stepIdx;                 // 迭代索引
+    private String planningResult;           // 本轮待执行的规划结果
+    private String planningState;            // 规划智能体状态
+    private String executorState;            // 执行智能体状态
+    private Plan plan;                       // 当前计划
+    private List<Message> planningMessages;  // 规划智能体记忆
+    private List<Message> executorMessages;  // 执行智能体记忆
+    private List<File> productFiles;         // 全局产品文件
+    private List<File> taskProductFiles;     // 当前任务产品文件
+    private Long createTime;                 // 检查点时间
+}
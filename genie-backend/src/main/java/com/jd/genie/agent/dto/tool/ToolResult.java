@@ -43,6 +43,16 @@ public class ToolResult {
      */
     private Object parameters;
 
+    /**
+     * 是否复用了同一请求内相同调用的结果
+     */
+    private boolean cached;
+
+    /**
+     * 同一智能体内相同调用（工具名与参数均相同）的次数，含本次
+     */
+    private Integer repeatCount;
+
     /**
      * 执行状态枚举
      */
@@ -0,0 +1,281 @@
+package com.jd.genie.agent.llm;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 纯 Java BPE 分词器（tiktoken 词表格式）
+ * - 词表从 classpath 的 tokenizer/{encoding}.tiktoken 加载（随 src/main/resources/tokenizer 打包，为 tiktoken 官方发布文件），每行 "base64(token) rank"
+ * - 先按编码对应的正则预切分，再对每段 UTF-8 字节做 byte pair merge
+ * - 只计数不输出 token id，rank 查找使用开放寻址表，避免为每个字节片段创建对象
+ * 词表不存在时 forEncoding 返回 empty，由 TokenCounter 降级为估算
+ */
+@Slf4j
+public class BpeTokenizer {
+    public static final String CL100K_BASE = "cl100k_base";
+    public static final String O200K_BASE = "o200k_base";
+
+    private static final Map<String, String> PATTERNS = new HashMap<>();
+
+    static {
+        PATTERNS.put(CL100K_BASE, "(?i:'s|'t|'re|'ve|'m|'ll|'d)|[^\\r\\n\\p{L}\\p{N}]?\\p{L}+|\\p{N}{1,3}| ?[^\\s\\p{L}\\p{N}]+[\\r\\n]*|\\s*[\\r\\n]+|\\s+(?!\\S)|\\s+");
+        PATTERNS.put(O200K_BASE, String.join("|",
+                "[^\\r\\n\\p{L}\\p{N}]?[\\p{Lu}\\p{Lt}\\p{Lm}\\p{Lo}\\p{M}]*[\\p{Ll}\\p{Lm}\\p{Lo}\\p{M}]+(?i:'s|'t|'re|'ve|'m|'ll|'d)?",
+                "[^\\r\\n\\p{L}\\p{N}]?[\\p{Lu}\\p{Lt}\\p{Lm}\\p{Lo}\\p{M}]+[\\p{Ll}\\p{Lm}\\p{Lo}\\p{M}]*(?i:'s|'t|'re|'ve|'m|'ll|'d)?",
+                "\\p{N}{1,3}",
+                " ?[^\\s\\p{L}\\p{N}]+[\\r\\n/]*",
+                "\\s*[\\r\\n]+",
+                "\\s+(?!\\S)",
+                "\\s+"));
+    }
+
+    // 已加载的分词器，词表缺失时缓存 empty
+    private static final Map<String, Optional<BpeTokenizer>> tokenizers = new ConcurrentHashMap<>();
+
+    private final String encoding;
+    private final Pattern pattern;
+    private final RankTable ranks;
+
+    private BpeTokenizer(String encoding, Pattern pattern, RankTable ranks) {
+        this.encoding = encoding;
+        this.pattern = pattern;
+        this.ranks = ranks;
+    }
+
+    /**
+     * 获取编码对应的分词器
+     */
+    public static Optional<BpeTokenizer> forEncoding(String encoding) {
+        if (Objects.isNull(encoding) || !PATTERNS.containsKey(encoding)) {
+            return Optional.empty();
+        }
+        return tokenizers.computeIfAbsent(encoding, BpeTokenizer::load);
+    }
+
+    private static Optional<BpeTokenizer> load(String encoding) {
+        String resource = "tokenizer/" + encoding + ".tiktoken";
+        try (InputStream in = BpeTokenizer.class.getClassLoader().getResourceAsStream(resource)) {
+            if (in == null) {
+                log.warn("tokenizer vocab {} not found in classpath, fallback to estimation", resource);
+                return Optional.empty();
+            }
+            long start = System.currentTimeMillis();
+            RankTable ranks = RankTable.load(in);
+            Pattern pattern = Pattern.compile(PATTERNS.get(encoding), Pattern.UNICODE_CHARACTER_CLASS);
+            log.info("load tokenizer {} size {} cost {}ms", encoding, ranks.size(), System.currentTimeMillis() - start);
+            return Optional.of(new BpeTokenizer(encoding, pattern, ranks));
+        } catch (Exception e) {
+            log.error("load tokenizer {} error", resource, e);
+            return Optional.empty();
+        }
+    }
+
+    public String getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * 计算文本的 token 数量
+     */
+    public int count(CharSequence text) {
+        if (text == null || text.length() == 0) {
+            return 0;
+        }
+        int count = 0;
+        byte[] buffer = new byte[64];
+        int[] bounds = new int[65];
+        int[] pairRanks = new int[65];
+        Matcher matcher = pattern.matcher(text);
+        while (matcher.find()) {
+            int maxLength = (matcher.end() - matcher.start()) * 3;
+            if (buffer.length < maxLength) {
+                buffer = new byte[maxLength];
+                bounds = new int[maxLength + 1];
+                pairRanks = new int[maxLength + 1];
+            }
+            int length = encodeUtf8(text, matcher.start(), matcher.end(), buffer);
+            count += countPiece(buffer, length, bounds, pairRanks);
+        }
+        return count;
+    }
+
+    /**
+     * 对一个预切分片段做 byte pair merge，返回合并后的 token 数
+     */
+    private int countPiece(byte[] bytes, int length, int[] bounds, int[] pairRanks) {
+        if (length == 0) {
+            return 0;
+        }
+        if (ranks.get(bytes, 0, length) >= 0) {
+            return 1;
+        }
+
+        // parts 为 [bounds[i], bounds[i+1]) ，pairRanks[i] 为合并 part i 与 i+1 的 rank
+        int parts = length;
+        for (int i = 0; i <= length; i++) {
+            bounds[i] = i;
+        }
+        for (int i = 0; i < parts - 1; i++) {
+            pairRanks[i] = ranks.get(bytes, bounds[i], bounds[i + 2] - bounds[i]);
+        }
+
+        while (parts > 1) {
+            int minIndex = -1;
+            int minRank = Integer.MAX_VALUE;
+            for (int i = 0; i < parts - 1; i++) {
+                int rank = pairRanks[i];
+                if (rank >= 0 && rank < minRank) {
+                    minRank = rank;
+                    minIndex = i;
+                }
+            }
+            if (minIndex < 0) {
+                break;
+            }
+            // 合并 part minIndex 与 minIndex+1：删除边界 minIndex+1
+            System.arraycopy(bounds, minIndex + 2, bounds, minIndex + 1, parts - minIndex - 1);
+            System.arraycopy(pairRanks, minIndex + 1, pairRanks, minIndex, parts - minIndex - 2);
+            parts--;
+            if (minIndex < parts - 1) {
+                pairRanks[minIndex] = ranks.get(bytes, bounds[minIndex], bounds[minIndex + 2] - bounds[minIndex]);
+            }
+            if (minIndex > 0) {
+                pairRanks[minIndex - 1] = ranks.get(bytes, bounds[minIndex - 1], bounds[minIndex + 1] - bounds[minIndex - 1]);
+            }
+        }
+        return parts;
+    }
+
+    private static int encodeUtf8(CharSequence text, int start, int end, byte[] out) {
+        int pos = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                out[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                out[pos++] = (byte) (0xC0 | (c >> 6));
+                out[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                out[pos++] = (byte) (0xF0 | (codePoint >> 18));
+                out[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                out[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                out[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // 孤立代理项按 '?' 处理，与 String.getBytes 一致
+                out[pos++] = (byte) '?';
+            } else {
+                out[pos++] = (byte) (0xE0 | (c >> 12));
+                out[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                out[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * 字节序列 -> rank 的开放寻址表，所有 token 字节存放在一个数组中
+     */
+    private static class RankTable {
+        private byte[] data = new byte[1 << 20];
+        private int dataSize = 0;
+        private int[] offsets = new int[1 << 17];
+        private int[] lengths = new int[1 << 17];
+        private int[] rankValues = new int[1 << 17];
+        private int size = 0;
+        private int[] slots;
+
+        static RankTable load(InputStream in) throws IOException {
+            RankTable table = new RankTable();
+            Base64.Decoder decoder = Base64.getDecoder();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int space = line.indexOf(' ');
+                if (space <= 0) {
+                    continue;
+                }
+                byte[] token = decoder.decode(line.substring(0, space));
+                table.add(token, Integer.parseInt(line.substring(space + 1).trim()));
+            }
+            table.buildIndex();
+            return table;
+        }
+
+        private void add(byte[] token, int rank) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+                lengths = Arrays.copyOf(lengths, size * 2);
+                rankValues = Arrays.copyOf(rankValues, size * 2);
+            }
+            if (dataSize + token.length > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, dataSize + token.length));
+            }
+            System.arraycopy(token, 0, data, dataSize, token.length);
+            offsets[size] = dataSize;
+            lengths[size] = token.length;
+            rankValues[size] = rank;
+            dataSize += token.length;
+            size++;
+        }
+
+        private void buildIndex() {
+            int capacity = Integer.highestOneBit(Math.max(size, 1) * 2) << 1;
+            slots = new int[capacity];
+            Arrays.fill(slots, -1);
+            int mask = capacity - 1;
+            for (int i = 0; i < size; i++) {
+                int slot = hash(data, offsets[i], lengths[i]) & mask;
+                while (slots[slot] >= 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = i;
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * 查找 rank，不存在返回 -1
+         */
+        int get(byte[] bytes, int offset, int length) {
+            int mask = slots.length - 1;
+            int slot = hash(bytes, offset, length) & mask;
+            while (true) {
+                int index = slots[slot];
+                if (index < 0) {
+                    return -1;
+                }
+                if (lengths[index] == length && Arrays.equals(data, offsets[index], offsets[index] + length, bytes, offset, offset + length)) {
+                    return rankValues[index];
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        private static int hash(byte[] bytes, int offset, int length) {
+            int h = 0x811C9DC5;
+            for (int i = offset; i < offset + length; i++) {
+                h ^= bytes[i];
+                h *= 0x01000193;
+            }
+            return h ^ (h >>> 16);
+        }
+    }
+}
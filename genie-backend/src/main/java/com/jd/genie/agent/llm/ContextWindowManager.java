@@ -0,0 +1,254 @@
+package com.jd.genie.agent.llm;
+
+import com.jd.genie.agent.dto.Message;
+import com.jd.genie.agent.dto.tool.ToolCall;
+import com.jd.genie.agent.enums.RoleType;
+import com.jd.genie.agent.exception.TokenLimitExceeded;
+import lombok.Builder;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 上下文窗口管理：每次调用 LLM 前按 maxInputTokens 裁剪历史消息
+ * - 系统提示词、第一条用户消息（任务）和最后一组消息始终保留
+ * - assistant 的 tool_calls 与对应的 tool 结果作为一组，整体省略或丢弃，不会拆散
+ * - 先从最旧的组开始省略工具结果正文，仍超限再从最旧的组开始丢弃，最后才省略保留组的工具结果
+ * - 全部手段用尽仍超限时抛出 TokenLimitExceeded
+ * 裁剪只作用于本次请求的消息副本，不修改 Memory
+ */
+@Slf4j
+public class ContextWindowManager {
+    private static final String ELIDED_SUFFIX = "\n...[内容过长已省略]";
+
+    // 裁剪统计
+    private static final AtomicLong calls = new AtomicLong();
+    private static final AtomicLong trimmedCalls = new AtomicLong();
+    private static final AtomicLong elidedMessages = new AtomicLong();
+    private static final AtomicLong droppedMessages = new AtomicLong();
+    private static final AtomicLong savedTokens = new AtomicLong();
+    private static final AtomicLong limitExceeded = new AtomicLong();
+
+    private final TokenCounter tokenCounter;
+    private final int elideKeepChars;
+
+    public ContextWindowManager(TokenCounter tokenCounter, int elideKeepChars) {
+        this.tokenCounter = tokenCounter;
+        this.elideKeepChars = elideKeepChars;
+    }
+
+    /**
+     * 裁剪消息以满足 token 预算
+     *
+     * @param requestId      请求 ID
+     * @param systemMsgs     系统消息（始终保留）
+     * @param messages       历史消息
+     * @param reservedTokens 工具定义等额外占用
+     * @param maxInputTokens 最大输入 token，<= 0 不裁剪
+     */
+    public FitResult fit(String requestId, List<Message> systemMsgs, List<Message> messages, int reservedTokens, int maxInputTokens) {
+        calls.incrementAndGet();
+        int fixedTokens = tokenCounter.countMessages(systemMsgs) + reservedTokens;
+        int messageTokens = 0;
+        for (Message message : messages) {
+            messageTokens += tokenCounter.countMessage(message);
+        }
+        int originalTokens = fixedTokens + messageTokens;
+        if (maxInputTokens <= 0 || originalTokens <= maxInputTokens || messages.isEmpty()) {
+            return FitResult.builder().messages(messages).tokens(originalTokens).build();
+        }
+
+        List<Group> groups = group(messages);
+        int total = originalTokens;
+        int elided = 0;
+        int dropped = 0;
+
+        // 1. 由旧到新省略非保留组的工具结果
+        for (Group group : groups) {
+            if (total <= maxInputTokens) {
+                break;
+            }
+            if (!group.pinned) {
+                int before = group.tokens;
+                elided += elide(group);
+                total -= before - group.tokens;
+            }
+        }
+        // 2. 由旧到新丢弃非保留组
+        for (Group group : groups) {
+            if (total <= maxInputTokens) {
+                break;
+            }
+            if (!group.pinned && !group.dropped) {
+                group.dropped = true;
+                dropped += group.messages.size();
+                total -= group.tokens;
+            }
+        }
+        // 3. 省略保留组的工具结果
+        for (Group group : groups) {
+            if (total <= maxInputTokens) {
+                break;
+            }
+            if (group.pinned) {
+                int before = group.tokens;
+                elided += elide(group);
+                total -= before - group.tokens;
+            }
+        }
+
+        List<Message> fitted = new ArrayList<>();
+        for (Group group : groups) {
+            if (!group.dropped) {
+                fitted.addAll(group.messages);
+            }
+        }
+
+        trimmedCalls.incrementAndGet();
+        elidedMessages.addAndGet(elided);
+        droppedMessages.addAndGet(dropped);
+        savedTokens.addAndGet(originalTokens - total);
+        log.info("{} context window trimmed tokens {} -> {} max {} elided {} dropped {}",
+                requestId, originalTokens, total, maxInputTokens, elided, dropped);
+
+        if (total > maxInputTokens) {
+            limitExceeded.incrementAndGet();
+            throw new TokenLimitExceeded(total, maxInputTokens, largestType(systemMsgs, fixedTokens, groups));
+        }
+        return FitResult.builder()
+                .messages(fitted)
+                .tokens(total)
+                .elidedMessages(elided)
+                .droppedMessages(dropped)
+                .build();
+    }
+
+    /**
+     * 分组：assistant tool_calls 与其后对应的 tool 结果为一组，其余每条消息一组
+     */
+    private List<Group> group(List<Message> messages) {
+        List<Group> groups = new ArrayList<>();
+        Group current = null;
+        Set<String> pendingToolCallIds = new HashSet<>();
+        for (Message message : messages) {
+            boolean toolResult = RoleType.TOOL == message.getRole()
+                    && Objects.nonNull(current) && pendingToolCallIds.contains(message.getToolCallId());
+            if (toolResult) {
+                current.add(message, tokenCounter.countMessage(message));
+                pendingToolCallIds.remove(message.getToolCallId());
+                continue;
+            }
+            current = new Group();
+            current.add(message, tokenCounter.countMessage(message));
+            groups.add(current);
+            pendingToolCallIds.clear();
+            if (Objects.nonNull(message.getToolCalls())) {
+                for (ToolCall toolCall : message.getToolCalls()) {
+                    pendingToolCallIds.add(toolCall.getId());
+                }
+            }
+        }
+
+        // 保留第一条用户消息与最后一组
+        for (Group group : groups) {
+            if (RoleType.USER == group.messages.get(0).getRole()) {
+                group.pinned = true;
+                break;
+            }
+        }
+        groups.get(groups.size() - 1).pinned = true;
+        return groups;
+    }
+
+    /**
+     * 省略组内工具结果正文（替换为副本），返回省略的消息数
+     */
+    private int elide(Group group) {
+        int count = 0;
+        for (int i = 0; i < group.messages.size(); i++) {
+            Message message = group.messages.get(i);
+            String content = message.getContent();
+            if (RoleType.TOOL != message.getRole() || Objects.isNull(content) || content.length() <= elideKeepChars) {
+                continue;
+            }
+            Message copy = Message.builder()
+                    .role(message.getRole())
+                    .content(content.substring(0, elideKeepChars) + ELIDED_SUFFIX)
+                    .toolCallId(message.getToolCallId())
+                    .base64Image(message.getBase64Image())
+                    .build();
+            int copyTokens = tokenCounter.countMessage(copy);
+            group.tokens -= tokenCounter.countMessage(message) - copyTokens;
+            group.messages.set(i, copy);
+            count++;
+        }
+        return count;
+    }
+
+    private TokenLimitExceeded.MessageType largestType(List<Message> systemMsgs, int fixedTokens, List<Group> groups) {
+        RoleType largestRole = systemMsgs.isEmpty() ? null : RoleType.SYSTEM;
+        int largest = systemMsgs.isEmpty() ? 0 : fixedTokens;
+        for (Group group : groups) {
+            if (group.dropped) {
+                continue;
+            }
+            for (Message message : group.messages) {
+                int tokens = tokenCounter.countMessage(message);
+                if (tokens > largest) {
+                    largest = tokens;
+                    largestRole = message.getRole();
+                }
+            }
+        }
+        if (Objects.isNull(largestRole)) {
+            return TokenLimitExceeded.MessageType.UNKNOWN;
+        }
+        return TokenLimitExceeded.MessageType.valueOf(largestRole.name());
+    }
+
+    /**
+     * 裁剪统计
+     */
+    public static Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("calls", calls.get());
+        stats.put("trimmedCalls", trimmedCalls.get());
+        stats.put("elidedMessages", elidedMessages.get());
+        stats.put("droppedMessages", droppedMessages.get());
+        stats.put("savedTokens", savedTokens.get());
+        stats.put("limitExceeded", limitExceeded.get());
+        return stats;
+    }
+
+    private static class Group {
+        private final List<Message> messages = new ArrayList<>();
+        private int tokens;
+        private boolean pinned;
+        private boolean dropped;
+
+        private void add(Message message, int messageTokens) {
+            messages.add(message);
+            tokens += messageTokens;
+        }
+    }
+
+    /**
+     * 裁剪结果
+     */
+    @Data
+    @Builder
+    public static class FitResult {
+        private List<Message> messages;
+        private int tokens;
+        private int elidedMessages;
+        private int droppedMessages;
+    }
+}
@@ -5,8 +5,10 @@ import com.alibaba.fastjson.JSONObject;
 import com.alibaba.fastjson.TypeReference;
 import com.alibaba.fastjson.serializer.SerializerFeature;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
 import com.jd.genie.agent.agent.AgentContext;
 import com.jd.genie.agent.dto.Message;
 import com.jd.genie.agent.dto.tool.McpToolInfo;
@@ -25,14 +27,12 @@ import lombok.extern.slf4j.Slf4j;
 import okhttp3.*;
 import org.apache.commons.lang3.StringUtils;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -55,9 +55,15 @@ public class LLM {
     private final TokenCounter tokenCounter;
     private final ObjectMapper objectMapper;
     private final Map<String, Object> extParams;
+    private final OkHttpClient httpClient;
+    private final boolean responseCache;
+    private final ContextWindowManager contextWindowManager;
+    private final double inputPrice;   // 每千 prompt token 单价
+    private final double outputPrice;  // 每千 completion token 单价
 
     private int totalInputTokens;
     private Integer maxInputTokens;
+    private transient volatile LLM budgetFallbackLlm; // 预算降级模型实例，首次降级时创建后复用
 
     public LLM(String modelName, String llmErp) {
         this.llmErp = llmErp;
@@ -74,10 +80,17 @@ public class LLM {
         this.totalInputTokens = 0;
         this.maxInputTokens = config.getMaxInputTokens();
         this.extParams = config.getExtParams();
+        // 共享连接池的 http 客户端
+        this.httpClient = LLMClientRegistry.getClient(config);
+        this.responseCache = Boolean.TRUE.equals(config.getResponseCache());
+        this.inputPrice = Objects.nonNull(config.getInputPrice()) ? config.getInputPrice() : 0;
+        this.outputPrice = Objects.nonNull(config.getOutputPrice()) ? config.getOutputPrice() : 0;
 
         // 初始化 tokenizer
-        this.tokenCounter = new TokenCounter();
+        this.tokenCounter = new TokenCounter(TokenCounter.resolveEncoding(config.getModel(), config.getTokenizer()));
         this.objectMapper = new ObjectMapper();
+        GenieConfig genieConfig = SpringContextHolder.getApplicationContext().getBean(GenieConfig.class);
+        this.contextWindowManager = new ContextWindowManager(tokenCounter, genieConfig.getContextElideKeepChars());
     }
 
     /**
@@ -85,79 +98,129 @@ public class LLM {
      */
     public static List<Map<String, Object>> formatMessages(List<Message> messages, boolean isClaude) {
         List<Map<String, Object>> formattedMessages = new ArrayList<>();
+        for (Message message : messages) {
+            formattedMessages.add(formatMessage(message, isClaude));
+        }
+        return formattedMessages;
+    }
 
+    /**
+     * 序列化消息，优先使用消息上缓存的结果，只有新增或修改过的消息才需要重新序列化
+     */
+    private List<RawValue> serializeMessages(List<Message> messages, boolean isClaude) throws JsonProcessingException {
+        List<RawValue> serializedMessages = new ArrayList<>(messages.size());
         for (Message message : messages) {
-            Map<String, Object> messageMap = new HashMap<>();
-            // 处理 base64 图像
-            if (message.getBase64Image() != null && !message.getBase64Image().isEmpty()) {
-                List<Map<String, Object>> multimodalContent = new ArrayList<>();
-                // 创建内层的 image_url Map
-                Map<String, String> imageUrlMap = new HashMap<>();
-                imageUrlMap.put("url", "data:image/jpeg;base64," + message.getBase64Image());
-                // 创建外层的 Map
-                Map<String, Object> outerMap = new HashMap<>();
-                outerMap.put("type", "image_url");
-                outerMap.put("image_url", imageUrlMap);
-                // 将创建好的 Map 添加到 multimodalContent 中
-                multimodalContent.add(outerMap);
-
-                Map<String, Object> contentMap = new HashMap<>();
-                outerMap.put("type", "text");
-                outerMap.put("text", message.getContent());
-                multimodalContent.add(contentMap);
+            String json = message.getFormatCache(isClaude);
+            if (Objects.isNull(json)) {
+                json = objectMapper.writeValueAsString(formatMessage(message, isClaude));
+                message.putFormatCache(isClaude, json);
+            }
+            serializedMessages.add(new RawValue(json));
+        }
+        return serializedMessages;
+    }
 
+    /**
+     * 格式化单条消息
+     */
+    private static Map<String, Object> formatMessage(Message message, boolean isClaude) {
+        Map<String, Object> messageMap = new HashMap<>();
+        // 处理 base64 图像
+        if (message.getBase64Image() != null && !message.getBase64Image().isEmpty()) {
+            List<Map<String, Object>> multimodalContent = new ArrayList<>();
+            // 创建内层的 image_url Map
+            Map<String, String> imageUrlMap = new HashMap<>();
+            imageUrlMap.put("url", "data:image/jpeg;base64," + message.getBase64Image());
+            // 创建外层的 Map
+            Map<String, Object> outerMap = new HashMap<>();
+            outerMap.put("type", "image_url");
+            outerMap.put("image_url", imageUrlMap);
+            // 将创建好的 Map 添加到 multimodalContent 中
+            multimodalContent.add(outerMap);
+
+            Map<String, Object> contentMap = new HashMap<>();
+            outerMap.put("type", "text");
+            outerMap.put("text", message.getContent());
+            multimodalContent.add(contentMap);
+
+            messageMap.put("role", message.getRole().getValue());
+            messageMap.put("content", multimodalContent);
+
+        } else if (message.getToolCalls() != null && !message.getToolCalls().isEmpty()) {
+            if (isClaude) {
+                // Claude格式的工具调用处理
                 messageMap.put("role", message.getRole().getValue());
-                messageMap.put("content", multimodalContent);
-
-            } else if (message.getToolCalls() != null && !message.getToolCalls().isEmpty()) {
-                if (isClaude) {
-                    // Claude格式的工具调用处理
-                    messageMap.put("role", message.getRole().getValue());
-                    List<Map<String, Object>> claudeToolCalls = new ArrayList<>();
-                    for (ToolCall toolCall : message.getToolCalls()) {
-                        Map<String, Object> claudeToolCall = new HashMap<>();
-                        claudeToolCall.put("type", "tool_use");
-                        claudeToolCall.put("id", toolCall.getId());
-                        claudeToolCall.put("name", toolCall.getFunction().getName());
-                        claudeToolCall.put("input", JSON.parseObject(toolCall.getFunction().getArguments()));
-                        claudeToolCalls.add(claudeToolCall);
-                    }
-                    messageMap.put("content", claudeToolCalls);
-                } else {
-                    messageMap.put("role", message.getRole().getValue());
-                    List<Map<String, Object>> toolCallsMap = JSON.parseObject(JSON.toJSONString(message.getToolCalls()),
-                            new TypeReference<List<Map<String, Object>>>() {
-                            });
-                    messageMap.put("tool_calls", toolCallsMap);
-                }
-            } else if (message.getToolCallId() != null && !message.getToolCallId().isEmpty()) {
-                // 敏感词过滤
-                GenieConfig genieConfig = SpringContextHolder.getApplicationContext().getBean(GenieConfig.class);
-                String content = StringUtil.textDesensitization(message.getContent(), genieConfig.getSensitivePatterns());
-                if (isClaude) {
-                    // Claude格式的工具调用结果处理
-                    messageMap.put("role", "user");
-                    List<Map<String, Object>> claudeToolCalls = new ArrayList<>();
+                List<Map<String, Object>> claudeToolCalls = new ArrayList<>();
+                for (ToolCall toolCall : message.getToolCalls()) {
                     Map<String, Object> claudeToolCall = new HashMap<>();
-                    claudeToolCall.put("type", "tool_result");
-                    claudeToolCall.put("tool_use_id", message.getToolCallId());
-                    claudeToolCall.put("content", content);
+                    claudeToolCall.put("type", "tool_use");
+                    claudeToolCall.put("id", toolCall.getId());
+                    claudeToolCall.put("name", toolCall.getFunction().getName());
+                    claudeToolCall.put("input", JSON.parseObject(toolCall.getFunction().getArguments()));
                     claudeToolCalls.add(claudeToolCall);
-                    messageMap.put("content", claudeToolCalls);
-                } else {
-                    messageMap.put("role", message.getRole().getValue());
-                    messageMap.put("content", content);
-                    messageMap.put("tool_call_id", message.getToolCallId());
                 }
+                messageMap.put("content", claudeToolCalls);
             } else {
                 messageMap.put("role", message.getRole().getValue());
-                messageMap.put("content", message.getContent());
+                List<Map<String, Object>> toolCallsMap = new ArrayList<>();
+                for (ToolCall toolCall : message.getToolCalls()) {
+                    toolCallsMap.add(formatToolCall(toolCall));
+                }
+                messageMap.put("tool_calls", toolCallsMap);
             }
-
-            formattedMessages.add(messageMap);
+        } else if (message.getToolCallId() != null && !message.getToolCallId().isEmpty()) {
+            // 敏感词过滤，结果缓存在消息上，每条工具结果只扫描一次
+            String content = message.getDesensitizedContent();
+            if (Objects.isNull(content) && Objects.nonNull(message.getContent())) {
+                GenieConfig genieConfig = SpringContextHolder.getApplicationContext().getBean(GenieConfig.class);
+                content = StringUtil.textDesensitization(message.getContent(), genieConfig.getSensitivePatterns());
+                message.putDesensitizedContent(content);
+            }
+            if (isClaude) {
+                // Claude格式的工具调用结果处理
+                messageMap.put("role", "user");
+                List<Map<String, Object>> claudeToolCalls = new ArrayList<>();
+                Map<String, Object> claudeToolCall = new HashMap<>();
+                claudeToolCall.put("type", "tool_result");
+                claudeToolCall.put("tool_use_id", message.getToolCallId());
+                claudeToolCall.put("content", content);
+                claudeToolCalls.add(claudeToolCall);
+                messageMap.put("content", claudeToolCalls);
+            } else {
+                messageMap.put("role", message.getRole().getValue());
+                messageMap.put("content", content);
+                messageMap.put("tool_call_id", message.getToolCallId());
+            }
+        } else {
+            messageMap.put("role", message.getRole().getValue());
+            messageMap.put("content", message.getContent());
         }
 
-        return formattedMessages;
+        return messageMap;
+    }
+
+    /**
+     * OpenAI 格式的工具调用，忽略空字段
+     */
+    private static Map<String, Object> formatToolCall(ToolCall toolCall) {
+        Map<String, Object> toolCallMap = new HashMap<>();
+        if (Objects.nonNull(toolCall.getId())) {
+            toolCallMap.put("id", toolCall.getId());
+        }
+        if (Objects.nonNull(toolCall.getType())) {
+            toolCallMap.put("type", toolCall.getType());
+        }
+        if (Objects.nonNull(toolCall.getFunction())) {
+            Map<String, Object> functionMap = new HashMap<>();
+            if (Objects.nonNull(toolCall.getFunction().getName())) {
+                functionMap.put("name", toolCall.getFunction().getName());
+            }
+            if (Objects.nonNull(toolCall.getFunction().getArguments())) {
+                functionMap.put("arguments", toolCall.getFunction().getArguments());
+            }
+            toolCallMap.put("function", functionMap);
+        }
+        return toolCallMap;
     }
 
     public List<Map<String, Object>> truncateMessage(AgentContext context, List<Map<String, Object>> messages, int maxInputTokens) {
@@ -201,6 +264,55 @@ public class LLM {
         return truncatedMessages;
     }
 
+    /**
+     * 裁剪上下文，返回本次请求使用的消息
+     */
+    private ContextWindowManager.FitResult fitContextWindow(AgentContext context, List<Message> systemMsgs, List<Message> messages, int reservedTokens) {
+        ContextWindowManager.FitResult fitResult = contextWindowManager.fit(context.getRequestId(), systemMsgs, messages,
+                reservedTokens, Objects.nonNull(maxInputTokens) ? maxInputTokens : 0);
+        totalInputTokens += fitResult.getTokens();
+        return fitResult;
+    }
+
+    /**
+     * 预算进入 LOW 后使用的降级模型，未配置、与当前模型相同或工具调用方式不同时返回 null
+     */
+    private LLM budgetFallback(AgentContext context) {
+        RequestBudget budget = context.getBudget();
+        if (Objects.isNull(budget) || budget.level() == RequestBudget.Level.NORMAL || StringUtils.isEmpty(budget.getFallbackModel())) {
+            return null;
+        }
+        LLMSettings settings = Config.getLLMConfig(budget.getFallbackModel());
+        if (model.equals(settings.getModel()) || !Objects.equals(functionCallType, settings.getFunctionCallType())) {
+            return null;
+        }
+        LLM fallback = budgetFallbackLlm;
+        if (Objects.isNull(fallback) || !fallback.getModel().equals(settings.getModel())) {
+            log.info("{} request budget low, switch model {} -> {}", context.getRequestId(), model, settings.getModel());
+            fallback = new LLM(budget.getFallbackModel(), llmErp);
+            budgetFallbackLlm = fallback;
+        }
+        return fallback;
+    }
+
+    /**
+     * 计入请求预算：优先使用模型返回的 usage，未返回时使用本地估算
+     */
+    private void recordUsage(AgentContext context, Integer promptTokens, Integer completionTokens, int promptEstimate, String completion) {
+        RequestBudget budget = context.getBudget();
+        if (Objects.isNull(budget)) {
+            return;
+        }
+        int prompt = Objects.nonNull(promptTokens) ? promptTokens : promptEstimate;
+        int output = Objects.nonNull(completionTokens) ? completionTokens : tokenCounter.countText(StringUtils.defaultString(completion));
+        budget.record(context, model, prompt, output, inputPrice, outputPrice);
+    }
+
+    private static Integer usageField(JsonNode response, String field) {
+        JsonNode value = response.path("usage").path(field);
+        return value.isNumber() ? value.asInt() : null;
+    }
+
     /**
      * 向 LLM 发送请求并获取响应
      */
@@ -211,16 +323,36 @@ public class LLM {
             boolean stream,
             Double temperature
     ) {
+        return ask(context, messages, systemMsgs, stream, temperature, null);
+    }
+
+    /**
+     * 向 LLM 发送请求，流式请求时每收到一段内容回调 contentListener（在读流线程中执行，不应阻塞）
+     */
+    public CompletableFuture<String> ask(
+            AgentContext context,
+            List<Message> messages,
+            List<Message> systemMsgs,
+            boolean stream,
+            Double temperature,
+            Consumer<String> contentListener
+    ) {
+        LLM fallback = budgetFallback(context);
+        if (Objects.nonNull(fallback)) {
+            return fallback.ask(context, messages, systemMsgs, stream, temperature, contentListener);
+        }
         try {
-            List<Map<String, Object>> formattedMessages;
+            // 按 maxInputTokens 裁剪历史消息
+            ContextWindowManager.FitResult fitResult = fitContextWindow(context, systemMsgs != null ? systemMsgs : Collections.emptyList(), messages, 0);
+            messages = fitResult.getMessages();
+            int promptEstimate = fitResult.getTokens();
+
+            List<RawValue> formattedMessages = new ArrayList<>();
             // 格式化系统和用户消息
             if (systemMsgs != null && !systemMsgs.isEmpty()) {
-                List<Map<String, Object>> formattedSystemMsgs = formatMessages(systemMsgs, false);
-                formattedMessages = new ArrayList<>(formattedSystemMsgs);
-                formattedMessages.addAll(formatMessages(messages, model.contains("claude")));
-            } else {
-                formattedMessages = formatMessages(messages, model.contains("claude"));
+                formattedMessages.addAll(serializeMessages(systemMsgs, false));
             }
+            formattedMessages.addAll(serializeMessages(messages, model.contains("claude")));
 
             // 准备请求参数
             Map<String, Object> params = new HashMap<>();
@@ -237,16 +369,19 @@ public class LLM {
                 params.putAll(extParams);
             }
 
-            log.info("{} call llm ask request {}", context.getRequestId(), JSONObject.toJSONString(params));
+            params.put("stream", stream);
+            // 已序列化的消息以原始 JSON 片段写入，请求体只序列化一次
+            String requestBody = objectMapper.writeValueAsString(params);
+            log.info("{} call llm ask request {}", context.getRequestId(), requestBody);
             // 处理非流式请求
             if (!stream) {
-                params.put("stream", false);
-
                 // 调用 API
-                CompletableFuture<String> future = callOpenAI(params);
+                CompletableFuture<RawResponse> future = callOpenAIWithCache(context, requestBody, LLMClientRegistry.DEFAULT_TIMEOUT,
+                        temperature != null ? temperature : this.temperature);
 
-                return future.thenApply(response -> {
+                return future.thenApply(raw -> {
                     try {
+                        String response = raw.body;
                         // 解析响应
                         log.info("{} call llm response {}", context.getRequestId(), response);
                         JsonNode jsonResponse = objectMapper.readTree(response);
@@ -256,16 +391,23 @@ public class LLM {
                             throw new IllegalArgumentException("Empty or invalid response from LLM");
                         }
 
-                        return choices.get(0).get("message").get("content").asText();
+                        String content = choices.get(0).get("message").get("content").asText();
+                        // 缓存命中没有实际消耗，不计入预算
+                        if (!raw.cached) {
+                            recordUsage(context, usageField(jsonResponse, "prompt_tokens"), usageField(jsonResponse, "completion_tokens"),
+                                    promptEstimate, content);
+                        }
+                        return content;
                     } catch (IOException e) {
                         throw new CompletionException(e);
                     }
                 });
             } else {
-                // 处理流式请求
-                params.put("stream", true);
                 // 调用流式 API
-                return callOpenAIStream(params);
+                return callOpenAIStream(requestBody, contentListener).thenApply(content -> {
+                    recordUsage(context, null, null, promptEstimate, content);
+                    return content;
+                });
             }
         } catch (Exception e) {
             log.error("{} Unexpected error in ask: {}", e.getMessage(), e);
@@ -355,6 +497,64 @@ public class LLM {
         return newParameters;
     }
 
+    /**
+     * 构建 struct_parse 模式的工具提示词
+     */
+    private String buildStructParseToolPrompt(ToolCollection tools) {
+        StringBuilder stringBuilder = new StringBuilder();
+        GenieConfig genieConfig = SpringContextHolder.getApplicationContext().getBean(GenieConfig.class);
+        stringBuilder.append(genieConfig.getStructParseToolSystemPrompt());
+        // base tool
+        for (BaseTool tool : tools.getToolMap().values()) {
+            Map<String, Object> functionMap = new HashMap<>();
+            functionMap.put("name", tool.getName());
+            functionMap.put("description", tool.getDescription());
+            functionMap.put("parameters", addFunctionNameParam(tool.toParams(), tool.getName()));
+            stringBuilder.append(String.format("- `%s`\n```json %s ```\n", tool.getName(), JSON.toJSONString(functionMap)));
+        }
+        // mcp tool
+        for (McpToolInfo tool : tools.getMcpToolMap().values()) {
+            Map<String, Object> parameters = JSON.parseObject(tool.getParameters(), new TypeReference<Map<String, Object>>() {});
+            Map<String, Object> functionMap = new HashMap<>();
+            functionMap.put("name", tool.getName());
+            functionMap.put("description", tool.getDesc());
+            functionMap.put("parameters", addFunctionNameParam(parameters, tool.getName()));
+            stringBuilder.append(String.format("- `%s`\n```json %s ```\n", tool.getName(), JSON.toJSONString(functionMap)));
+        }
+        return stringBuilder.toString();
+    }
+
+    /**
+     * 构建 function_call 模式的工具列表
+     */
+    private List<Map<String, Object>> buildFunctionCallTools(ToolCollection tools) {
+        List<Map<String, Object>> formattedTools = new ArrayList<>();
+        // base tool
+        for (BaseTool tool : tools.getToolMap().values()) {
+            Map<String, Object> functionMap = new HashMap<>();
+            functionMap.put("name", tool.getName());
+            functionMap.put("description", tool.getDescription());
+            functionMap.put("parameters", tool.toParams());
+            Map<String, Object> toolMap = new HashMap<>();
+            toolMap.put("type", "function");
+            toolMap.put("function", functionMap);
+            formattedTools.add(toolMap);
+        }
+        // mcp tool
+        for (McpToolInfo tool : tools.getMcpToolMap().values()) {
+            Map<String, Object> parameters = JSON.parseObject(tool.getParameters(), new TypeReference<Map<String, Object>>() {});
+            Map<String, Object> functionMap = new HashMap<>();
+            functionMap.put("name", tool.getName());
+            functionMap.put("description", tool.getDesc());
+            functionMap.put("parameters", parameters);
+            Map<String, Object> toolMap = new HashMap<>();
+            toolMap.put("type", "function");
+            toolMap.put("function", functionMap);
+            formattedTools.add(toolMap);
+        }
+        return formattedTools;
+    }
+
     /**
      * 向 LLM 发送工具请求并获取响应
      */
@@ -368,6 +568,48 @@ public class LLM {
             boolean stream,
             int timeout
     ) {
+        return askTool(context, messages, systemMsgs, tools, toolChoice, temperature, stream, timeout, context.getStreamMessageType(), null);
+    }
+
+    /**
+     * 请求 LLM 并获取工具调用，流式内容按 context 当前的流式消息类型输出
+     */
+    public CompletableFuture<ToolCallResponse> askTool(
+            AgentContext context,
+            List<Message> messages,
+            Message systemMsgs,
+            ToolCollection tools,
+            ToolChoice toolChoice,
+            Double temperature,
+            boolean stream,
+            int timeout,
+            Consumer<ToolCall> toolCallListener
+    ) {
+        return askTool(context, messages, systemMsgs, tools, toolChoice, temperature, stream, timeout, context.getStreamMessageType(), toolCallListener);
+    }
+
+    /**
+     * 请求 LLM 并获取工具调用，流式时每个参数已完整的工具调用会立即回调 toolCallListener
+     *
+     * @param streamMessageType 流式内容输出的消息类型，为空时流式阶段不输出内容；随调用传入，并行子任务不共用 context 上的状态
+     * @param toolCallListener 可为 null；在读流线程中回调，实现方不应阻塞
+     */
+    public CompletableFuture<ToolCallResponse> askTool(
+            AgentContext context,
+            List<Message> messages,
+            Message systemMsgs,
+            ToolCollection tools,
+            ToolChoice toolChoice,
+            Double temperature,
+            boolean stream,
+            int timeout,
+            String streamMessageType,
+            Consumer<ToolCall> toolCallListener
+    ) {
+        LLM fallback = budgetFallback(context);
+        if (Objects.nonNull(fallback)) {
+            return fallback.askTool(context, messages, systemMsgs, tools, toolChoice, temperature, stream, timeout, streamMessageType, toolCallListener);
+        }
         try {
             // 验证 toolChoice
             if (!ToolChoice.isValid(toolChoice)) {
@@ -378,73 +620,39 @@ public class LLM {
             // 设置 API 请求
             Map<String, Object> params = new HashMap<>();
 
-            // tools
-            StringBuilder stringBuilder = new StringBuilder();
+            // tools：工具集合未变更时复用缓存，不再每步重建
+            String toolPrompt = "";
             List<Map<String, Object>> formattedTools = new ArrayList<>();
             if ("struct_parse".equals(functionCallType)) {
-                GenieConfig genieConfig = SpringContextHolder.getApplicationContext().getBean(GenieConfig.class);
-                stringBuilder.append(genieConfig.getStructParseToolSystemPrompt());
-                // base tool
-                for (BaseTool tool : tools.getToolMap().values()) {
-                    Map<String, Object> functionMap = new HashMap<>();
-                    functionMap.put("name", tool.getName());
-                    functionMap.put("description", tool.getDescription());
-                    functionMap.put("parameters", addFunctionNameParam(tool.toParams(), tool.getName()));
-                    stringBuilder.append(String.format("- `%s`\n```json %s ```\n", tool.getName(), JSON.toJSONString(functionMap)));
-                }
-                // mcp tool
-                for (McpToolInfo tool : tools.getMcpToolMap().values()) {
-                    Map<String, Object> parameters = JSON.parseObject(tool.getParameters(), new TypeReference<Map<String, Object>>() {});
-                    Map<String, Object> functionMap = new HashMap<>();
-                    functionMap.put("name", tool.getName());
-                    functionMap.put("description", tool.getDesc());
-                    functionMap.put("parameters", addFunctionNameParam(parameters, tool.getName()));
-                    stringBuilder.append(String.format("- `%s`\n```json %s ```\n", tool.getName(), JSON.toJSONString(functionMap)));
-                }
-
+                toolPrompt = tools.getOrBuildSchema("struct_parse", () -> buildStructParseToolPrompt(tools));
+            } else if (model.contains("claude")) {
+                formattedTools = tools.getOrBuildSchema("claude", () -> Collections.unmodifiableList(gptToClaudeTool(buildFunctionCallTools(tools))));
             } else { // function_call
-                // base tool
-                for (BaseTool tool : tools.getToolMap().values()) {
-                    Map<String, Object> functionMap = new HashMap<>();
-                    functionMap.put("name", tool.getName());
-                    functionMap.put("description", tool.getDescription());
-                    functionMap.put("parameters", tool.toParams());
-                    Map<String, Object> toolMap = new HashMap<>();
-                    toolMap.put("type", "function");
-                    toolMap.put("function", functionMap);
-                    formattedTools.add(toolMap);
-                }
-                // mcp tool
-                for (McpToolInfo tool : tools.getMcpToolMap().values()) {
-                    Map<String, Object> parameters = JSON.parseObject(tool.getParameters(), new TypeReference<Map<String, Object>>() {});
-                    Map<String, Object> functionMap = new HashMap<>();
-                    functionMap.put("name", tool.getName());
-                    functionMap.put("description", tool.getDesc());
-                    functionMap.put("parameters", parameters);
-                    Map<String, Object> toolMap = new HashMap<>();
-                    toolMap.put("type", "function");
-                    toolMap.put("function", functionMap);
-                    formattedTools.add(toolMap);
-                }
+                formattedTools = tools.getOrBuildSchema("function_call", () -> Collections.unmodifiableList(buildFunctionCallTools(tools)));
+            }
 
-                if (model.contains("claude")) {
-                    formattedTools = gptToClaudeTool(formattedTools);
-                }
+            if (Objects.nonNull(systemMsgs) && "struct_parse".equals(functionCallType)) {
+                systemMsgs.setContent(systemMsgs.getContent() + "\n" + toolPrompt);
             }
 
+            // 按 maxInputTokens 裁剪历史消息，工具定义按缓存的 token 数预留
+            List<Map<String, Object>> toolsForCount = formattedTools;
+            int toolTokens = toolsForCount.isEmpty() ? 0 : tools.getOrBuildSchema("tokens:" + tokenCounter.getEncoding() + ":" + model.contains("claude"),
+                    () -> tokenCounter.countText(JSON.toJSONString(toolsForCount)));
+            ContextWindowManager.FitResult fitResult = fitContextWindow(context, Objects.nonNull(systemMsgs) ? List.of(systemMsgs) : Collections.emptyList(), messages, toolTokens);
+            messages = fitResult.getMessages();
+            int promptEstimate = fitResult.getTokens();
+
             // 格式化消息
-            List<Map<String, Object>> formattedMessages = new ArrayList<>();
+            List<RawValue> formattedMessages = new ArrayList<>();
             if (Objects.nonNull(systemMsgs)) {
-                if ("struct_parse".equals(functionCallType)) {
-                    systemMsgs.setContent(systemMsgs.getContent() + "\n" + stringBuilder);
-                }
                 if (model.contains("claude")) {
                     params.put("system", systemMsgs.getContent());
                 } else {
-                    formattedMessages.addAll(formatMessages(List.of(systemMsgs), model.contains("claude")));
+                    formattedMessages.addAll(serializeMessages(List.of(systemMsgs), model.contains("claude")));
                 }
             }
-            formattedMessages.addAll(formatMessages(messages, model.contains("claude")));
+            formattedMessages.addAll(serializeMessages(messages, model.contains("claude")));
 
             params.put("model", model);
             if (StringUtils.isNotEmpty(llmErp)) {
@@ -473,13 +681,17 @@ public class LLM {
                 params.putAll(extParams);
             }
 
-            log.info("{} call llm request {}", context.getRequestId(), JSONObject.toJSONString(params));
+            params.put("stream", stream);
+            // 已序列化的消息以原始 JSON 片段写入，请求体只序列化一次
+            String requestBody = objectMapper.writeValueAsString(params);
+            log.info("{} call llm request {}", context.getRequestId(), requestBody);
             if (!stream) {
-                params.put("stream", false);
                 // 调用 API
-                CompletableFuture<String> future = callOpenAI(params, timeout);
-                return future.thenApply(responseJson -> {
+                CompletableFuture<RawResponse> future = callOpenAIWithCache(context, requestBody, timeout,
+                        temperature != null ? temperature : this.temperature);
+                return future.thenApply(raw -> {
                     try {
+                        String responseJson = raw.body;
                         // 解析响应
                         log.info("{} call llm response {}", context.getRequestId(), responseJson);
                         JsonNode jsonResponse = objectMapper.readTree(responseJson);
@@ -531,20 +743,30 @@ public class LLM {
 
                         long endTime = System.currentTimeMillis();
                         long duration = endTime - startTime;
-                        return new ToolCallResponse(content, toolCalls, finishReason, totalTokens, duration);
+                        ToolCallResponse toolCallResponse = ToolCallResponse.builder()
+                                .content(content)
+                                .toolCalls(toolCalls)
+                                .finishReason(finishReason)
+                                .totalTokens(totalTokens)
+                                .promptTokens(usageField(jsonResponse, "prompt_tokens"))
+                                .completionTokens(usageField(jsonResponse, "completion_tokens"))
+                                .duration(duration)
+                                .build();
+                        // 缓存命中没有实际消耗，不计入预算
+                        return raw.cached ? toolCallResponse : recordToolCallUsage(context, toolCallResponse, promptEstimate);
                     } catch (IOException e) {
                         throw new CompletionException(e);
                     }
                 });
             } else {
                 // 处理流式请求
-                params.put("stream", true);
-
                 if (model.contains("claude")) {
-                    return callClaudeFunctionCallStream(context, params);
+                    return callClaudeFunctionCallStream(context, requestBody, streamMessageType)
+                            .thenApply(response -> recordToolCallUsage(context, response, promptEstimate));
                 }
                 // 调用流式 API
-                return callOpenAIFunctionCallStream(context, params);
+                return callOpenAIFunctionCallStream(context, requestBody, streamMessageType, toolCallListener)
+                        .thenApply(response -> recordToolCallUsage(context, response, promptEstimate));
             }
 
         } catch (Exception e) {
@@ -555,31 +777,83 @@ public class LLM {
         }
     }
 
+    private ToolCallResponse recordToolCallUsage(AgentContext context, ToolCallResponse response, int promptEstimate) {
+        Integer completionTokens = response.getCompletionTokens();
+        if (Objects.isNull(completionTokens) && Objects.nonNull(context.getBudget())) {
+            // 估算时工具调用参数也计入输出
+            int argumentTokens = 0;
+            if (Objects.nonNull(response.getToolCalls())) {
+                for (ToolCall toolCall : response.getToolCalls()) {
+                    argumentTokens += tokenCounter.countText(StringUtils.defaultString(toolCall.getFunction().getArguments()));
+                }
+            }
+            completionTokens = tokenCounter.countText(StringUtils.defaultString(response.getContent())) + argumentTokens;
+        }
+        recordUsage(context, response.getPromptTokens(), completionTokens, promptEstimate, null);
+        return response;
+    }
+
+    /**
+     * 非流式响应体，cached 为 true 表示来自响应缓存
+     */
+    private static class RawResponse {
+        private final String body;
+        private final boolean cached;
+
+        private RawResponse(String body, boolean cached) {
+            this.body = body;
+            this.cached = cached;
+        }
+    }
+
+    /**
+     * 调用 OpenAI API，模型开启响应缓存且温度足够低时先查缓存
+     */
+    private CompletableFuture<RawResponse> callOpenAIWithCache(AgentContext context, String requestBody, int timeout, double temperature) {
+        GenieConfig genieConfig = SpringContextHolder.getApplicationContext().getBean(GenieConfig.class);
+        if (!responseCache || temperature > genieConfig.getLlmCacheMaxTemperature()) {
+            return callOpenAI(requestBody, timeout).thenApply(response -> new RawResponse(response, false));
+        }
+
+        LLMResponseCache cache = LLMResponseCache.getInstance();
+        String key = LLMResponseCache.key(requestBody);
+        String cached = cache.get(key);
+        if (Objects.nonNull(cached)) {
+            log.info("{} llm response cache hit {}", context.getRequestId(), key);
+            return CompletableFuture.completedFuture(new RawResponse(cached, true));
+        }
+        return callOpenAI(requestBody, timeout).thenApply(response -> {
+            // 只缓存有效响应
+            try {
+                if (!objectMapper.readTree(response).path("choices").isEmpty()) {
+                    cache.put(key, response);
+                }
+            } catch (Exception e) {
+                log.warn("{} skip caching invalid llm response", context.getRequestId());
+            }
+            return new RawResponse(response, false);
+        });
+    }
+
     /**
      * 调用 OpenAI API（抽象方法，实际实现需要在子类中提供）
      */
-    protected CompletableFuture<String> callOpenAI(Map<String, Object> params) {
-        return callOpenAI(params, 300); // 默认超时时间为 300 秒
+    protected CompletableFuture<String> callOpenAI(String requestBody) {
+        return callOpenAI(requestBody, LLMClientRegistry.DEFAULT_TIMEOUT); // 默认超时时间为 300 秒
     }
 
     /**
      * 调用 OpenAI API（抽象方法，实际实现需要在子类中提供）
      */
-    protected CompletableFuture<String> callOpenAI(Map<String, Object> params, int timeout) {
+    protected CompletableFuture<String> callOpenAI(String requestBody, int timeout) {
         CompletableFuture<String> future = new CompletableFuture<>();
 
         try {
-            OkHttpClient client = new OkHttpClient.Builder()
-                    .connectTimeout(timeout, TimeUnit.SECONDS)
-                    .readTimeout(timeout, TimeUnit.SECONDS)
-                    .writeTimeout(timeout, TimeUnit.SECONDS)
-                    .build();
-
             String apiEndpoint = baseUrl + interfaceUrl;
 
             RequestBody body = RequestBody.create(
                     MediaType.parse("application/json"),
-                    objectMapper.writeValueAsString(params)
+                    requestBody
             );
 
             Request.Builder requestBuilder = new Request.Builder()
@@ -591,7 +865,7 @@ public class LLM {
 
             Request request = requestBuilder.build();
 
-            client.newCall(request).enqueue(new Callback() {
+            LLMClientRegistry.newCall(httpClient, request, timeout).enqueue(new Callback() {
                 @Override
                 public void onFailure(Call call, IOException e) {
                     future.completeExceptionally(e);
@@ -620,19 +894,30 @@ public class LLM {
     /**
      * 调用 OpenAI 流式 API（抽象方法，实际实现需要在子类中提供）
      */
-    public CompletableFuture<ToolCallResponse> callOpenAIFunctionCallStream(AgentContext context, Map<String, Object> params) {
+    public CompletableFuture<ToolCallResponse> callOpenAIFunctionCallStream(AgentContext context, String requestBody) {
+        return callOpenAIFunctionCallStream(context, requestBody, context.getStreamMessageType(), null);
+    }
+
+    /**
+     * 输出一段流式内容，streamMessageType 为空时不输出（由调用方在拿到完整响应后自行决定如何展示）
+     */
+    private static void sendStream(AgentContext context, String messageId, String streamMessageType, String content, boolean isFinal) {
+        if (Objects.nonNull(streamMessageType)) {
+            context.getPrinter().send(messageId, streamMessageType, content, isFinal);
+        }
+    }
+
+    /**
+     * 调用 OpenAI 流式 API，内容按 streamMessageType 输出，参数已闭合的工具调用在流结束前回调 toolCallListener
+     */
+    public CompletableFuture<ToolCallResponse> callOpenAIFunctionCallStream(AgentContext context, String requestBody, String streamMessageType,
+                                                                           Consumer<ToolCall> toolCallListener) {
         CompletableFuture<ToolCallResponse> future = new CompletableFuture<>();
         try {
-            OkHttpClient client = new OkHttpClient.Builder()
-                    .connectTimeout(300, TimeUnit.SECONDS)
-                    .readTimeout(300, TimeUnit.SECONDS)
-                    .writeTimeout(300, TimeUnit.SECONDS)
-                    .build();
-
             String apiEndpoint = baseUrl + interfaceUrl;
             RequestBody body = RequestBody.create(
                     MediaType.parse("application/json"),
-                    objectMapper.writeValueAsString(params)
+                    requestBody
             );
             Request.Builder requestBuilder = new Request.Builder()
                     .url(apiEndpoint)
@@ -646,7 +931,7 @@ public class LLM {
             int firstInterval = "struct_parse".equals(functionCallType) ? Math.max(3, Integer.parseInt(interval[0])) : Integer.parseInt(interval[0]);
             int sendInterval = Integer.parseInt(interval[1]);
 
-            client.newCall(request).enqueue(new Callback() {
+            httpClient.newCall(request).enqueue(new Callback() {
                 @Override
                 public void onFailure(Call call, IOException e) {
                     future.completeExceptionally(e);
@@ -654,8 +939,6 @@ public class LLM {
 
                 @Override
                 public void onResponse(Call call, Response response) {
-                    boolean isFirstToken = true;
-                    boolean isContent = true;
                     try (ResponseBody responseBody = response.body()) {
                         if (!response.isSuccessful() || responseBody == null) {
                             log.error("{} ask tool stream response error or empty", context.getRequestId());
@@ -666,124 +949,53 @@ public class LLM {
                         String messageId = StringUtil.getUUID();
                         StringBuilder stringBuilder = new StringBuilder();
                         StringBuilder stringBuilderAll = new StringBuilder();
-                        int index = 1;
-                        Map<Integer, OpenAIToolCall> openToolCallsMap = new HashMap<>();
-                        String line;
-                        BufferedReader reader = new BufferedReader(
-                                new InputStreamReader(responseBody.byteStream())
-                        );
-                        while ((line = reader.readLine()) != null) {
-                            if (line.startsWith("data: ")) {
-                                String data = line.substring(6);
-                                if (data.equals("[DONE]")) {
-                                    break;
-                                }
-                                if (isFirstToken) {
-                                    isFirstToken = false;
-                                }
-                                try {
-                                    JsonNode chunk = objectMapper.readTree(data);
-                                    if (chunk.has("choices") && !chunk.get("choices").isEmpty()) {
-                                        for (JsonNode element : chunk.get("choices")) {
-                                            OpenAIChoice choice = objectMapper.convertValue(element, OpenAIChoice.class);
-                                            // content
-                                            if (Objects.nonNull(choice.delta.content)) {
-                                                String content = choice.delta.content;
-                                                // log.info("{} recv content data: >>{}<<", context.getRequestId(), content);
-                                                if (!isContent) { // 忽略json内容
-                                                    stringBuilderAll.append(content);
-                                                    continue;
-                                                }
-                                                stringBuilder.append(content);
-                                                stringBuilderAll.append(content);
-                                                if ("struct_parse".equals(functionCallType)) {
-                                                    if (stringBuilderAll.toString().contains("```json")) {
-                                                        isContent = false;
-                                                    }
-                                                }
-                                                if (index == firstInterval || index % sendInterval == 0) {
-                                                    context.getPrinter().send(messageId, context.getStreamMessageType(), stringBuilder.toString(), false);
-                                                    stringBuilder.setLength(0);
-                                                }
-                                                index++;
-                                            }
-                                            // tool call
-                                            if (Objects.nonNull(choice.delta.tool_calls)) {
-                                                List<OpenAIToolCall> openAIToolCalls = choice.delta.tool_calls;
-                                                // log.info("{} recv tool call data: {}", context.getRequestId(), openAIToolCalls);
-                                                for (OpenAIToolCall toolCall : openAIToolCalls) {
-                                                    OpenAIToolCall currentToolCall = openToolCallsMap.get(toolCall.index);
-                                                    if (Objects.isNull(currentToolCall)) {
-                                                        currentToolCall = new OpenAIToolCall();
-                                                    }
-                                                    // [{"index":0,"id":"call_j74R8JMFWTC4rW5wHJ0TtmNU","type":"function","function":{"name":"planning","arguments":""}}]
-                                                    if (Objects.nonNull(toolCall.id)) {
-                                                        currentToolCall.id = toolCall.id;
-                                                    }
-                                                    if (Objects.nonNull(toolCall.type)) {
-                                                        currentToolCall.type = toolCall.type;
-                                                    }
-                                                    if (Objects.nonNull(toolCall.function)) {
-                                                        if (Objects.nonNull(toolCall.function.name)) {
-                                                            currentToolCall.function = toolCall.function;
-                                                        }
-                                                        if (Objects.nonNull(toolCall.function.arguments)) {
-                                                            currentToolCall.function.arguments += toolCall.function.arguments;
-                                                        }
-                                                    }
-                                                    openToolCallsMap.put(toolCall.index, currentToolCall);
-                                                }
-                                            }
-                                        }
-                                    }
-                                } catch (Exception e) {
-                                    log.error("{} process response error", context.getRequestId(), e);
+                        int[] index = {1};
+                        StructParseScanner scanner = "struct_parse".equals(functionCallType) ? new StructParseScanner() : null;
+                        List<ToolCall> structToolCalls = new ArrayList<>();
+                        int[] parsedBlocks = {0};
+                        LLMStreamDecoder decoder = new LLMStreamDecoder(context.getRequestId(), objectMapper.getFactory(), LLMStreamDecoder.Format.OPENAI);
+                        decoder.setToolCallListener(toolCallListener);
+                        decoder.decode(responseBody.source(), content -> {
+                            stringBuilderAll.append(content);
+                            if (Objects.nonNull(scanner)) {
+                                if (scanner.isFenceFound()) { // 忽略json内容
+                                    scanner.feed(content, null);
+                                    parsedBlocks[0] = parseStructBlocks(context, scanner, parsedBlocks[0], structToolCalls, toolCallListener);
+                                    return;
                                 }
+                                scanner.feed(content, stringBuilder);
+                                parsedBlocks[0] = parseStructBlocks(context, scanner, parsedBlocks[0], structToolCalls, toolCallListener);
+                            } else {
+                                stringBuilder.append(content);
                             }
-                        }
+                            if (index[0] == firstInterval || index[0] % sendInterval == 0) {
+                                sendStream(context, messageId, streamMessageType, stringBuilder.toString(), false);
+                                stringBuilder.setLength(0);
+                            }
+                            index[0]++;
+                        });
 
                         String contentAll = stringBuilderAll.toString();
-                        if ("struct_parse".equals(functionCallType)) {
-                            int stopPos = stringBuilder.indexOf("```json");
-                            context.getPrinter().send(messageId, context.getStreamMessageType(),
-                                    stringBuilder.substring(0, stopPos >= 0 ? stopPos : stringBuilder.length()),
-                                    false);
-                            stopPos = stringBuilderAll.indexOf("```json");
-                            contentAll = stringBuilderAll.substring(0, stopPos >= 0 ? stopPos : stringBuilderAll.length());
+                        if (Objects.nonNull(scanner)) {
+                            scanner.finish(stringBuilder);
+                            sendStream(context, messageId, streamMessageType, stringBuilder.toString(), false);
+                            contentAll = scanner.getContent();
                             if (!contentAll.isEmpty()) {
-                                context.getPrinter().send(messageId, context.getStreamMessageType(), contentAll, true);
+                                sendStream(context, messageId, streamMessageType, contentAll, true);
                             }
                         } else { // function_call
                             if (!contentAll.isEmpty()) {
-                                context.getPrinter().send(messageId, context.getStreamMessageType(), stringBuilder.toString(), false);
-                                context.getPrinter().send(messageId, context.getStreamMessageType(), stringBuilderAll.toString(), true);
+                                sendStream(context, messageId, streamMessageType, stringBuilder.toString(), false);
+                                sendStream(context, messageId, streamMessageType, stringBuilderAll.toString(), true);
                             }
                         }
 
                         List<ToolCall> toolCalls = new ArrayList<>();
-                        if ("struct_parse".equals(functionCallType)) {
-                            // 匹配方式: 直接匹配 ```json ... ``` 代码块
-                            String pattern = "```json\\s*([\\s\\S]*?)\\s*```";
-                            List<String> matches = findMatches(stringBuilderAll.toString(), pattern);
-                            if (!matches.isEmpty()) {
-                                for (String match : matches) {
-                                    ToolCall oneToolCall = parseToolCall(context, match);
-                                    if (Objects.nonNull(oneToolCall)) {
-                                        toolCalls.add(oneToolCall);
-                                    }
-                                }
-                            }
+                        if (Objects.nonNull(scanner)) {
+                            // 流式扫描时已逐块解析的 ```json ... ``` 代码块
+                            toolCalls.addAll(structToolCalls);
                         } else { // function call
-                            for (OpenAIToolCall toolCall : openToolCallsMap.values()) {
-                                toolCalls.add(ToolCall.builder()
-                                        .id(toolCall.id)
-                                        .type(toolCall.type)
-                                        .function(ToolCall.Function.builder()
-                                                .name(toolCall.function.name)
-                                                .arguments(toolCall.function.arguments)
-                                                .build())
-                                        .build());
-                            }
+                            toolCalls.addAll(decoder.getToolCalls());
                         }
 
                         log.info("{} call llm stream response {} {}", context.getRequestId(), stringBuilderAll, JSON.toJSONString(toolCalls, SerializerFeature.PrettyFormat));
@@ -791,6 +1003,9 @@ public class LLM {
                         ToolCallResponse fullResponse = ToolCallResponse.builder()
                                 .toolCalls(toolCalls)
                                 .content(contentAll)
+                                .finishReason(decoder.getFinishReason())
+                                .promptTokens(decoder.getPromptTokens())
+                                .completionTokens(decoder.getCompletionTokens())
                                 .build();
                         future.complete(fullResponse);
 
@@ -812,19 +1027,20 @@ public class LLM {
     /**
      * 调用 OpenAI 流式 API（抽象方法，实际实现需要在子类中提供）
      */
-    public CompletableFuture<ToolCallResponse> callClaudeFunctionCallStream(AgentContext context, Map<String, Object> params) {
+    public CompletableFuture<ToolCallResponse> callClaudeFunctionCallStream(AgentContext context, String requestBody) {
+        return callClaudeFunctionCallStream(context, requestBody, context.getStreamMessageType());
+    }
+
+    /**
+     * 调用 Claude 流式 API，内容按 streamMessageType 输出
+     */
+    public CompletableFuture<ToolCallResponse> callClaudeFunctionCallStream(AgentContext context, String requestBody, String streamMessageType) {
         CompletableFuture<ToolCallResponse> future = new CompletableFuture<>();
         try {
-            OkHttpClient client = new OkHttpClient.Builder()
-                    .connectTimeout(300, TimeUnit.SECONDS)
-                    .readTimeout(300, TimeUnit.SECONDS)
-                    .writeTimeout(300, TimeUnit.SECONDS)
-                    .build();
-
             String apiEndpoint = baseUrl + interfaceUrl;
             RequestBody body = RequestBody.create(
                     MediaType.parse("application/json"),
-                    objectMapper.writeValueAsString(params)
+                    requestBody
             );
             Request.Builder requestBuilder = new Request.Builder()
                     .url(apiEndpoint)
@@ -838,7 +1054,7 @@ public class LLM {
             int firstInterval = "struct_parse".equals(functionCallType) ? Math.max(3, Integer.parseInt(interval[0])) : Integer.parseInt(interval[0]);
             int sendInterval = Integer.parseInt(interval[1]);
 
-            client.newCall(request).enqueue(new Callback() {
+            httpClient.newCall(request).enqueue(new Callback() {
                 @Override
                 public void onFailure(Call call, IOException e) {
                     future.completeExceptionally(e);
@@ -846,8 +1062,6 @@ public class LLM {
 
                 @Override
                 public void onResponse(Call call, Response response) {
-                    boolean isFirstToken = true;
-                    boolean isContent = true;
                     try (ResponseBody responseBody = response.body()) {
                         if (!response.isSuccessful() || responseBody == null) {
                             log.error("{} ask tool stream response error or empty", context.getRequestId());
@@ -858,122 +1072,63 @@ public class LLM {
                         String messageId = StringUtil.getUUID();
                         StringBuilder stringBuilder = new StringBuilder();
                         StringBuilder stringBuilderAll = new StringBuilder();
-                        StringBuilder stringBuilderTool = new StringBuilder();
-
-                        Integer index = 1;
-                        Map<Integer, OpenAIToolCall> openToolCallsMap = new HashMap<>();
-                        String line;
-                        BufferedReader reader = new BufferedReader(
-                                new InputStreamReader(responseBody.byteStream())
-                        );
-                        String id = "";
-                        while ((line = reader.readLine()) != null) {
-                            if (line.startsWith("data: ")) {
-                                String data = line.substring(6);
-                                if (data.equals("[DONE]")) {
-                                    break;
-                                }
-
-                                try {
-                                    // log.info("{} recv data: >>{}<<", context.getRequestId(), data);
-                                    JsonNode chunk = objectMapper.readTree(data);
-                                    ClaudeResponse claudeResponse = objectMapper.convertValue(chunk, ClaudeResponse.class);
-
-                                    if (Objects.isNull(claudeResponse.delta)) {
-                                        continue;
-                                    }
-
-                                    if (isFirstToken) {
-                                        isFirstToken = false;
-                                    }
-
-                                    // content
-                                    if ("text_delta".equals(claudeResponse.delta.type)) {
-                                        String content = claudeResponse.delta.text;
-
-                                        if (!isContent) { // 忽略json内容
-                                            stringBuilderAll.append(content);
-                                            continue;
-                                        }
-                                        // log.info("{} recv content data: >>{}<<", context.getRequestId(), content);
-                                        stringBuilder.append(content);
-                                        stringBuilderAll.append(content);
-                                        if ("struct_parse".equals(functionCallType)) {
-                                            if (stringBuilderAll.toString().contains("```json")) {
-                                                isContent = false;
-                                            }
-                                        }
-                                        if (index == firstInterval || index % sendInterval == 0) {
-                                            context.getPrinter().send(messageId, context.getStreamMessageType(), stringBuilder.toString(), false);
-                                            stringBuilder.setLength(0);
-                                        }
-                                        index++;
-                                    }
-                                    // tool call
-                                    if ("input_json_delta".equals(claudeResponse.delta.type)) {
-                                        String content = claudeResponse.delta.partial_json;
-                                        // log.info("{} recv tool call data: >>{}<<", context.getRequestId(), content);
-                                        stringBuilderTool.append(content);
-                                    }
-                                    // id
-                                    id = claudeResponse.id;
-
-                                } catch (Exception e) {
-                                    log.error("{} process response error", context.getRequestId(), e);
+                        int[] index = {1};
+                        StructParseScanner scanner = "struct_parse".equals(functionCallType) ? new StructParseScanner() : null;
+                        LLMStreamDecoder decoder = new LLMStreamDecoder(context.getRequestId(), objectMapper.getFactory(), LLMStreamDecoder.Format.CLAUDE);
+                        decoder.decode(responseBody.source(), content -> {
+                            stringBuilderAll.append(content);
+                            if (Objects.nonNull(scanner)) {
+                                if (scanner.isFenceFound()) { // 忽略json内容
+                                    scanner.feed(content, null);
+                                    return;
                                 }
+                                scanner.feed(content, stringBuilder);
+                            } else {
+                                stringBuilder.append(content);
                             }
-                        }
+                            if (index[0] == firstInterval || index[0] % sendInterval == 0) {
+                                sendStream(context, messageId, streamMessageType, stringBuilder.toString(), false);
+                                stringBuilder.setLength(0);
+                            }
+                            index[0]++;
+                        });
 
                         String contentAll = stringBuilderAll.toString();
-                        if ("struct_parse".equals(functionCallType)) {
-                            int stopPos = stringBuilder.indexOf("```json");
-                            context.getPrinter().send(messageId, context.getStreamMessageType(),
-                                    stringBuilder.substring(0, stopPos >= 0 ? stopPos : stringBuilder.length()),
-                                    false);
-                            stopPos = stringBuilderAll.indexOf("```json");
-                            contentAll = stringBuilderAll.substring(0, stopPos >= 0 ? stopPos : stringBuilderAll.length());
+                        if (Objects.nonNull(scanner)) {
+                            scanner.finish(stringBuilder);
+                            sendStream(context, messageId, streamMessageType, stringBuilder.toString(), false);
+                            contentAll = scanner.getContent();
                             if (!contentAll.isEmpty()) {
-                                context.getPrinter().send(messageId, context.getStreamMessageType(), contentAll, true);
+                                sendStream(context, messageId, streamMessageType, contentAll, true);
                             }
                         } else { // function call
                             if (!contentAll.isEmpty()) {
-                                context.getPrinter().send(messageId, context.getStreamMessageType(), stringBuilder.toString(), false);
-                                context.getPrinter().send(messageId, context.getStreamMessageType(), stringBuilderAll.toString(), true);
+                                sendStream(context, messageId, streamMessageType, stringBuilder.toString(), false);
+                                sendStream(context, messageId, streamMessageType, stringBuilderAll.toString(), true);
                             }
                         }
                         List<ToolCall> toolCalls = new ArrayList<>();
-                        if ("struct_parse".equals(functionCallType)) {
-                            // 匹配方式: 直接匹配 ```json ... ``` 代码块
-                            String pattern = "```json\\s*([\\s\\S]*?)\\s*```";
-                            List<String> matches = findMatches(stringBuilderAll.toString(), pattern);
-                            if (!matches.isEmpty()) {
-                                for (String match : matches) {
-                                    ToolCall oneToolCall = parseToolCall(context, match);
-                                    if (Objects.nonNull(oneToolCall)) {
-                                        toolCalls.add(oneToolCall);
-                                    }
+                        if (Objects.nonNull(scanner)) {
+                            // 流式扫描得到的 ```json ... ``` 代码块
+                            for (String match : scanner.getBlocks()) {
+                                ToolCall oneToolCall = parseToolCall(context, match);
+                                if (Objects.nonNull(oneToolCall)) {
+                                    toolCalls.add(oneToolCall);
                                 }
                             }
                         } else { // function_call
-                            JsonNode arguments = objectMapper.readTree(stringBuilderTool.toString());
-                            if (!stringBuilderTool.toString().isEmpty() && arguments.hasNonNull("function_name")) {
-                                OpenAIToolCall currentToolCall = new OpenAIToolCall();
-                                currentToolCall.id = id;
-                                currentToolCall.type = "function";
-                                currentToolCall.function = new OpenAIFunction();
-                                currentToolCall.function.name = arguments.get("function_name").asText();
-                                currentToolCall.function.arguments = stringBuilderTool.toString();
-                                openToolCallsMap.put(0, currentToolCall); // claude only call one function
-                                for (OpenAIToolCall toolCall : openToolCallsMap.values()) {
-                                    toolCalls.add(ToolCall.builder()
-                                            .id(toolCall.id)
-                                            .type(toolCall.type)
-                                            .function(ToolCall.Function.builder()
-                                                    .name(toolCall.function.name)
-                                                    .arguments(toolCall.function.arguments)
-                                                    .build())
-                                            .build());
-                                }
+                            String toolArguments = decoder.getClaudeArguments();
+                            JsonNode arguments = objectMapper.readTree(toolArguments);
+                            if (!toolArguments.isEmpty() && arguments.hasNonNull("function_name")) {
+                                // claude only call one function
+                                toolCalls.add(ToolCall.builder()
+                                        .id(decoder.getId())
+                                        .type("function")
+                                        .function(ToolCall.Function.builder()
+                                                .name(arguments.get("function_name").asText())
+                                                .arguments(toolArguments)
+                                                .build())
+                                        .build());
                             }
                         }
 
@@ -982,6 +1137,9 @@ public class LLM {
                         future.complete(ToolCallResponse.builder()
                                 .content(contentAll)
                                 .toolCalls(toolCalls)
+                                .finishReason(decoder.getFinishReason())
+                                .promptTokens(decoder.getPromptTokens())
+                                .completionTokens(decoder.getCompletionTokens())
                                 .build());
 
                     } catch (Exception e) {
@@ -1002,23 +1160,24 @@ public class LLM {
     /**
      * 调用 OpenAI 流式 API（抽象方法，实际实现需要在子类中提供）
      */
-    protected CompletableFuture<String> callOpenAIStream(Map<String, Object> params) {
+    protected CompletableFuture<String> callOpenAIStream(String requestBody) {
+        return callOpenAIStream(requestBody, null);
+    }
+
+    /**
+     * 调用 OpenAI 流式 API，每收到一段内容回调 contentListener
+     */
+    protected CompletableFuture<String> callOpenAIStream(String requestBody, Consumer<String> contentListener) {
         // 这里是一个简化的流式请求实现示例
         CompletableFuture<String> future = new CompletableFuture<>();
         StringBuilder collectedMessages = new StringBuilder();
 
         try {
-            OkHttpClient client = new OkHttpClient.Builder()
-                    .connectTimeout(300, TimeUnit.SECONDS)
-                    .readTimeout(300, TimeUnit.SECONDS)
-                    .writeTimeout(300, TimeUnit.SECONDS)
-                    .build();
-
             String apiEndpoint = baseUrl + interfaceUrl;
 
             RequestBody body = RequestBody.create(
                     MediaType.parse("application/json"),
-                    objectMapper.writeValueAsString(params)
+                    requestBody
             );
 
             Request.Builder requestBuilder = new Request.Builder()
@@ -1030,7 +1189,7 @@ public class LLM {
 
             Request request = requestBuilder.build();
 
-            client.newCall(request).enqueue(new Callback() {
+            httpClient.newCall(request).enqueue(new Callback() {
                 @Override
                 public void onFailure(Call call, IOException e) {
                     future.completeExceptionally(e);
@@ -1047,34 +1206,14 @@ public class LLM {
                         }
 
                         if (responseBody != null) {
-                            String line;
-
-                            BufferedReader reader = new BufferedReader(
-                                    new InputStreamReader(responseBody.byteStream())
-                            );
-
-                            while ((line = reader.readLine()) != null) {
-                                if (line.startsWith("data: ")) {
-                                    String data = line.substring(6);
-                                    if (data.equals("[DONE]")) {
-                                        break;
-                                    }
-
-                                    try {
-                                        JsonNode chunk = objectMapper.readTree(data);
-                                        if (chunk.has("choices") && !chunk.get("choices").isEmpty()) {
-                                            JsonNode choice = chunk.get("choices").get(0);
-                                            if (choice.has("delta") && choice.get("delta").has("content")) {
-                                                String content = choice.get("delta").get("content").asText();
-                                                collectedMessages.append(content);
-                                                log.info("recv data: {}", content);
-                                            }
-                                        }
-                                    } catch (Exception e) {
-                                        // 忽略非 JSON 数据
-                                    }
+                            LLMStreamDecoder decoder = new LLMStreamDecoder("", objectMapper.getFactory(), LLMStreamDecoder.Format.OPENAI);
+                            decoder.decode(responseBody.source(), content -> {
+                                collectedMessages.append(content);
+                                log.info("recv data: {}", content);
+                                if (Objects.nonNull(contentListener)) {
+                                    contentListener.accept(content.toString());
                                 }
-                            }
+                            });
 
                             String fullResponse = collectedMessages.toString().trim();
 
@@ -1101,6 +1240,25 @@ public class LLM {
     }
 
 
+    /**
+     * 解析扫描器中新闭合的代码块，已解析的工具调用立即回调 toolCallListener
+     *
+     * @return 已解析的代码块数
+     */
+    private int parseStructBlocks(AgentContext context, StructParseScanner scanner, int parsedBlocks, List<ToolCall> toolCalls, Consumer<ToolCall> toolCallListener) {
+        List<String> blocks = scanner.getBlocks();
+        for (int i = parsedBlocks; i < blocks.size(); i++) {
+            ToolCall oneToolCall = parseToolCall(context, blocks.get(i));
+            if (Objects.nonNull(oneToolCall)) {
+                toolCalls.add(oneToolCall);
+                if (Objects.nonNull(toolCallListener)) {
+                    toolCallListener.accept(oneToolCall);
+                }
+            }
+        }
+        return blocks.size();
+    }
+
     /**
      * 查找匹配的工具调用
      */
@@ -1147,6 +1305,8 @@ public class LLM {
         private List<ToolCall> toolCalls;
         private String finishReason;
         private Integer totalTokens;
+        private Integer promptTokens;       // 模型返回的 usage，未返回时为 null
+        private Integer completionTokens;
         private long duration;
     }
 
@@ -0,0 +1,134 @@
+package com.jd.genie.agent.llm;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LLM HTTP 客户端注册表
+ * - 按 LLMSettings（baseUrl、超时、并发限制）复用 OkHttpClient
+ * - 同一 key 共享连接池与调度器，开启 keep-alive 与 HTTP/2 多路复用
+ * - 单次调用指定超时时按原语义设置连接/读/写超时（不是整体调用超时，长输出不会被截断），
+ *   通过 newBuilder 派生客户端，共享连接池与调度器
+ */
+@Slf4j
+public class LLMClientRegistry {
+    // 默认超时（秒）与连接池/调度器参数
+    public static final int DEFAULT_TIMEOUT = 300;
+    private static final int DEFAULT_MAX_REQUESTS = 256;
+    private static final int DEFAULT_MAX_REQUESTS_PER_HOST = 64;
+    private static final int DEFAULT_MAX_IDLE_CONNECTIONS = 32;
+    private static final int DEFAULT_KEEP_ALIVE_SECONDS = 300;
+    private static final int DEFAULT_PING_INTERVAL_SECONDS = 30;
+
+    private static final Map<ClientKey, OkHttpClient> clients = new ConcurrentHashMap<>();
+
+    private LLMClientRegistry() {
+    }
+
+    /**
+     * 获取（或创建）与配置对应的共享客户端
+     */
+    public static OkHttpClient getClient(LLMSettings settings) {
+        return clients.computeIfAbsent(ClientKey.of(settings), LLMClientRegistry::createClient);
+    }
+
+    /**
+     * 创建调用，timeoutSeconds > 0 时本次调用的连接/读/写超时均为该值
+     */
+    public static Call newCall(OkHttpClient client, Request request, int timeoutSeconds) {
+        long timeoutMillis = TimeUnit.SECONDS.toMillis(timeoutSeconds);
+        if (timeoutSeconds <= 0 || (client.connectTimeoutMillis() == timeoutMillis
+                && client.readTimeoutMillis() == timeoutMillis && client.writeTimeoutMillis() == timeoutMillis)) {
+            return client.newCall(request);
+        }
+        return client.newBuilder()
+                .connectTimeout(timeoutSeconds, TimeUnit.SECONDS)
+                .readTimeout(timeoutSeconds, TimeUnit.SECONDS)
+                .writeTimeout(timeoutSeconds, TimeUnit.SECONDS)
+                .build()
+                .newCall(request);
+    }
+
+    /**
+     * 连接池与调度器统计，key 为 baseUrl
+     */
+    public static Map<String, Map<String, Object>> stats() {
+        Map<String, Map<String, Object>> result = new LinkedHashMap<>();
+        clients.forEach((key, client) -> {
+            ConnectionPool pool = client.connectionPool();
+            Dispatcher dispatcher = client.dispatcher();
+            Map<String, Object> stat = new LinkedHashMap<>();
+            stat.put("connectionCount", pool.connectionCount());
+            stat.put("idleConnectionCount", pool.idleConnectionCount());
+            stat.put("runningCalls", dispatcher.runningCallsCount());
+            stat.put("queuedCalls", dispatcher.queuedCallsCount());
+            stat.put("maxRequests", dispatcher.getMaxRequests());
+            stat.put("maxRequestsPerHost", dispatcher.getMaxRequestsPerHost());
+            stat.put("readTimeout", key.getReadTimeout());
+            result.put(key.getBaseUrl() + "#" + key.hashCode(), stat);
+        });
+        return result;
+    }
+
+    private static OkHttpClient createClient(ClientKey key) {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(key.getMaxRequests());
+        dispatcher.setMaxRequestsPerHost(key.getMaxRequestsPerHost());
+
+        log.info("create llm http client {}", key);
+        return new OkHttpClient.Builder()
+                .connectTimeout(key.getConnectTimeout(), TimeUnit.SECONDS)
+                .readTimeout(key.getReadTimeout(), TimeUnit.SECONDS)
+                .writeTimeout(key.getWriteTimeout(), TimeUnit.SECONDS)
+                .connectionPool(new ConnectionPool(key.getMaxIdleConnections(), key.getKeepAliveSeconds(), TimeUnit.SECONDS))
+                .dispatcher(dispatcher)
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .pingInterval(DEFAULT_PING_INTERVAL_SECONDS, TimeUnit.SECONDS)
+                .retryOnConnectionFailure(true)
+                .build();
+    }
+
+    private static int orDefault(Integer value, int defaultValue) {
+        return Objects.nonNull(value) && value > 0 ? value : defaultValue;
+    }
+
+    /**
+     * 客户端复用 key：相同 baseUrl 与超时/并发配置共享同一个客户端
+     */
+    @Value
+    static class ClientKey {
+        String baseUrl;
+        int connectTimeout;
+        int readTimeout;
+        int writeTimeout;
+        int maxRequests;
+        int maxRequestsPerHost;
+        int maxIdleConnections;
+        int keepAliveSeconds;
+
+        static ClientKey of(LLMSettings settings) {
+            return new ClientKey(
+                    Objects.toString(settings.getBaseUrl(), ""),
+                    orDefault(settings.getConnectTimeout(), DEFAULT_TIMEOUT),
+                    orDefault(settings.getReadTimeout(), DEFAULT_TIMEOUT),
+                    orDefault(settings.getWriteTimeout(), DEFAULT_TIMEOUT),
+                    orDefault(settings.getMaxRequests(), DEFAULT_MAX_REQUESTS),
+                    orDefault(settings.getMaxRequestsPerHost(), DEFAULT_MAX_REQUESTS_PER_HOST),
+                    orDefault(settings.getMaxIdleConnections(), DEFAULT_MAX_IDLE_CONNECTIONS),
+                    orDefault(settings.getKeepAliveSeconds(), DEFAULT_KEEP_ALIVE_SECONDS));
+        }
+    }
+}
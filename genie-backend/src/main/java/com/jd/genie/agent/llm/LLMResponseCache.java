@@ -0,0 +1,221 @@
+package com.jd.genie.agent.llm;
+
+import com.jd.genie.agent.util.SpringContextHolder;
+import com.jd.genie.config.GenieConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * LLM 响应缓存（仅非流式调用）
+ * - key：请求体（模型、消息、工具、采样参数）的 sha256
+ * - 一级：堆内 LRU + TTL
+ * - 二级：磁盘文件（可选），重启后仍可命中，命中后回填一级
+ * 是否启用由 LLMSettings.responseCache 按模型控制
+ */
+@Slf4j
+public class LLMResponseCache {
+    private static volatile LLMResponseCache instance;
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final Path diskDir;
+    private final Map<String, Entry> memory;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong puts = new AtomicLong();
+
+    LLMResponseCache(int maxEntries, long ttlSeconds, String diskDir) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlSeconds * 1000L;
+        this.diskDir = StringUtils.isEmpty(diskDir) ? null : Paths.get(diskDir);
+        this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > LLMResponseCache.this.maxEntries;
+            }
+        };
+        initDiskDir();
+    }
+
+    public static LLMResponseCache getInstance() {
+        if (instance == null) {
+            synchronized (LLMResponseCache.class) {
+                if (instance == null) {
+                    GenieConfig genieConfig = SpringContextHolder.getApplicationContext().getBean(GenieConfig.class);
+                    instance = new LLMResponseCache(genieConfig.getLlmCacheMaxEntries(),
+                            genieConfig.getLlmCacheTtlSeconds(), genieConfig.getLlmCacheDiskDir());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 计算缓存 key
+     */
+    public static String key(String requestBody) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(requestBody.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 查询缓存，未命中或已过期返回 null
+     */
+    public String get(String key) {
+        long now = System.currentTimeMillis();
+        synchronized (memory) {
+            Entry entry = memory.get(key);
+            if (entry != null) {
+                if (entry.expireAt > now) {
+                    memoryHits.incrementAndGet();
+                    return entry.response;
+                }
+                memory.remove(key);
+            }
+        }
+
+        Entry entry = readDisk(key, now);
+        if (entry != null) {
+            diskHits.incrementAndGet();
+            synchronized (memory) {
+                memory.put(key, entry);
+            }
+            return entry.response;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * 写入缓存
+     */
+    public void put(String key, String response) {
+        Entry entry = new Entry(response, System.currentTimeMillis() + ttlMillis);
+        synchronized (memory) {
+            memory.put(key, entry);
+        }
+        puts.incrementAndGet();
+        writeDisk(key, entry);
+    }
+
+    /**
+     * 命中率统计
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long hits = memoryHits.get() + diskHits.get();
+        long total = hits + misses.get();
+        stats.put("memoryHits", memoryHits.get());
+        stats.put("diskHits", diskHits.get());
+        stats.put("misses", misses.get());
+        stats.put("puts", puts.get());
+        stats.put("hitRate", total == 0 ? 0D : (double) hits / total);
+        synchronized (memory) {
+            stats.put("memorySize", memory.size());
+        }
+        stats.put("diskEnabled", diskDir != null);
+        return stats;
+    }
+
+    private void initDiskDir() {
+        if (diskDir == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(diskDir);
+            // 清理过期文件：按修改时间（即写入时间）判断，不读取内容；查询时仍以文件内的过期时间为准
+            long expireBefore = System.currentTimeMillis() - ttlMillis;
+            try (Stream<Path> files = Files.list(diskDir)) {
+                files.filter(path -> path.toString().endsWith(".cache"))
+                        .forEach(path -> deleteIfModifiedBefore(path, expireBefore));
+            }
+        } catch (IOException e) {
+            log.error("init llm response cache dir {} error", diskDir, e);
+        }
+    }
+
+    private void deleteIfModifiedBefore(Path file, long expireBefore) {
+        try {
+            if (Files.getLastModifiedTime(file).toMillis() <= expireBefore) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            log.error("expire llm response cache {} error", file, e);
+        }
+    }
+
+    /**
+     * 磁盘文件格式：第一行过期时间戳，其余为响应内容
+     */
+    private Entry readDisk(String key, long now) {
+        if (diskDir == null) {
+            return null;
+        }
+        Path file = diskDir.resolve(key + ".cache");
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            String data = Files.readString(file, StandardCharsets.UTF_8);
+            int pos = data.indexOf('\n');
+            long expireAt = Long.parseLong(data.substring(0, pos));
+            if (expireAt <= now) {
+                Files.deleteIfExists(file);
+                return null;
+            }
+            return new Entry(data.substring(pos + 1), expireAt);
+        } catch (Exception e) {
+            log.error("read llm response cache {} error", file, e);
+            return null;
+        }
+    }
+
+    private void writeDisk(String key, Entry entry) {
+        if (diskDir == null) {
+            return;
+        }
+        Path file = diskDir.resolve(key + ".cache");
+        try {
+            Path tmp = Files.createTempFile(diskDir, key, ".tmp");
+            Files.writeString(tmp, entry.expireAt + "\n" + entry.response, StandardCharsets.UTF_8);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("write llm response cache {} error", file, e);
+        }
+    }
+
+    private static class Entry {
+        private final String response;
+        private final long expireAt;
+
+        private Entry(String response, long expireAt) {
+            this.response = Objects.requireNonNull(response);
+            this.expireAt = expireAt;
+        }
+    }
+}
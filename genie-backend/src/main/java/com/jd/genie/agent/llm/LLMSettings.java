@@ -70,4 +70,59 @@ public class LLMSettings {
      */
     private Map<String, Object> extParams;
 
+    /**
+     * 连接超时（秒）
+     */
+    private Integer connectTimeout;
+
+    /**
+     * 读取超时（秒）
+     */
+    private Integer readTimeout;
+
+    /**
+     * 写入超时（秒）
+     */
+    private Integer writeTimeout;
+
+    /**
+     * 调度器最大并发请求数
+     */
+    private Integer maxRequests;
+
+    /**
+     * 调度器单 host 最大并发请求数
+     */
+    private Integer maxRequestsPerHost;
+
+    /**
+     * 连接池最大空闲连接数
+     */
+    private Integer maxIdleConnections;
+
+    /**
+     * 空闲连接保活时间（秒）
+     */
+    private Integer keepAliveSeconds;
+
+    /**
+     * 是否启用响应缓存（仅非流式、低温度调用）
+     */
+    private Boolean responseCache;
+
+    /**
+     * token 计数使用的 BPE 编码（cl100k_base / o200k_base），为空时按模型名选择
+     */
+    private String tokenizer;
+
+    /**
+     * 每千 prompt token 单价，用于请求预算的费用估算，为空时按 0 计
+     */
+    private Double inputPrice;
+
+    /**
+     * 每千 completion token 单价
+     */
+    private Double outputPrice;
+
 }
\ No newline at end of file
@@ -0,0 +1,430 @@
+package com.jd.genie.agent.llm;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.jd.genie.agent.dto.tool.ToolCall;
+import lombok.extern.slf4j.Slf4j;
+import okio.BufferedSource;
+import okio.ByteString;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * LLM 流式响应（SSE）解码器
+ * - 直接在 okio BufferedSource 上按行切分 data 帧，不经过 BufferedReader/String
+ * - 使用 Jackson JsonParser 流式读取 delta.content、delta.tool_calls、finish_reason，不构建 JsonNode 树
+ * - content 通过可复用缓冲回调，tool_calls 参数直接累加到 StringBuilder
+ * - 设置 toolCallListener 后，某个 tool_call 的参数 JSON 一旦闭合即回调，无需等待整个流结束
+ * 非线程安全，每个流式响应使用一个实例
+ */
+@Slf4j
+public class LLMStreamDecoder {
+    private static final ByteString DATA_PREFIX = ByteString.encodeUtf8("data: ");
+    private static final ByteString DONE = ByteString.encodeUtf8("[DONE]");
+
+    /**
+     * 响应格式
+     */
+    public enum Format {
+        OPENAI,
+        CLAUDE
+    }
+
+    /**
+     * content 增量回调，参数为复用缓冲，回调返回后内容即失效
+     */
+    public interface ContentHandler {
+        void onContent(CharSequence content);
+    }
+
+    private final String requestId;
+    private final JsonFactory jsonFactory;
+    private final Format format;
+
+    // 复用缓冲
+    private byte[] lineBuffer = new byte[4096];
+    private final StringBuilder textScratch = new StringBuilder(256);
+    private final StringBuilder argsScratch = new StringBuilder(256);
+
+    // 解码结果
+    private final Map<Integer, ToolCallBuilder> toolCallBuilders = new TreeMap<>();
+    private final StringBuilder claudeArguments = new StringBuilder();
+    private String id;
+    private String finishReason;
+    private Integer promptTokens;
+    private Integer completionTokens;
+    private Consumer<ToolCall> toolCallListener;
+
+    public LLMStreamDecoder(String requestId, JsonFactory jsonFactory, Format format) {
+        this.requestId = requestId;
+        this.jsonFactory = jsonFactory;
+        this.format = format;
+    }
+
+    /**
+     * 工具调用参数完整时的回调（仅 OpenAI 格式），在读流线程中调用，实现方不应阻塞
+     */
+    public void setToolCallListener(Consumer<ToolCall> toolCallListener) {
+        this.toolCallListener = toolCallListener;
+    }
+
+    /**
+     * 读取整个流，直到 [DONE] 或流结束
+     */
+    public void decode(BufferedSource source, ContentHandler handler) throws IOException {
+        while (true) {
+            long newline = source.indexOf((byte) '\n');
+            long lineLength;
+            if (newline == -1) {
+                // 流结束，剩余内容为最后一行
+                lineLength = source.getBuffer().size();
+                if (lineLength == 0) {
+                    return;
+                }
+            } else {
+                lineLength = newline;
+            }
+
+            boolean done = decodeLine(source, lineLength, handler);
+            if (done || newline == -1) {
+                return;
+            }
+            source.skip(1);
+        }
+    }
+
+    /**
+     * 处理一行（不含换行符），返回是否读到 [DONE]
+     */
+    private boolean decodeLine(BufferedSource source, long lineLength, ContentHandler handler) throws IOException {
+        if (lineLength < DATA_PREFIX.size() || !source.rangeEquals(0, DATA_PREFIX)) {
+            source.skip(lineLength);
+            return false;
+        }
+        source.skip(DATA_PREFIX.size());
+        int length = (int) (lineLength - DATA_PREFIX.size());
+        if (length == DONE.size() && source.rangeEquals(0, DONE)) {
+            source.skip(length);
+            return true;
+        }
+
+        if (lineBuffer.length < length) {
+            lineBuffer = new byte[Math.max(length, lineBuffer.length * 2)];
+        }
+        int read = 0;
+        while (read < length) {
+            read += source.read(lineBuffer, read, length - read);
+        }
+        // 兼容 \r\n
+        if (length > 0 && lineBuffer[length - 1] == '\r') {
+            length--;
+        }
+
+        try (JsonParser parser = jsonFactory.createParser(lineBuffer, 0, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return false;
+            }
+            if (format == Format.CLAUDE) {
+                readClaudeChunk(parser, handler);
+            } else {
+                readOpenAIChunk(parser, handler);
+            }
+        } catch (Exception e) {
+            log.error("{} process response error", requestId, e);
+        }
+        return false;
+    }
+
+    private void readOpenAIChunk(JsonParser parser, ContentHandler handler) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if ("choices".equals(field) && token == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    readOpenAIChoice(parser, handler);
+                }
+            } else if ("usage".equals(field) && token == JsonToken.START_OBJECT) {
+                readUsage(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void readOpenAIChoice(JsonParser parser, ContentHandler handler) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if ("delta".equals(field) && token == JsonToken.START_OBJECT) {
+                readOpenAIDelta(parser, handler);
+            } else if ("finish_reason".equals(field) && token == JsonToken.VALUE_STRING) {
+                finishReason = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void readOpenAIDelta(JsonParser parser, ContentHandler handler) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if ("content".equals(field) && token == JsonToken.VALUE_STRING) {
+                copyText(parser, textScratch);
+                handler.onContent(textScratch);
+            } else if ("tool_calls".equals(field) && token == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    readOpenAIToolCall(parser);
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * 读取单个 tool_call 增量并合并
+     * [{"index":0,"id":"call_xxx","type":"function","function":{"name":"planning","arguments":""}}]
+     */
+    private void readOpenAIToolCall(JsonParser parser) throws IOException {
+        int index = 0;
+        String callId = null;
+        String type = null;
+        String name = null;
+        boolean hasArguments = false;
+        argsScratch.setLength(0);
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if ("index".equals(field) && token == JsonToken.VALUE_NUMBER_INT) {
+                index = parser.getIntValue();
+            } else if ("id".equals(field) && token == JsonToken.VALUE_STRING) {
+                callId = parser.getText();
+            } else if ("type".equals(field) && token == JsonToken.VALUE_STRING) {
+                type = parser.getText();
+            } else if ("function".equals(field) && token == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String functionField = parser.currentName();
+                    JsonToken functionToken = parser.nextToken();
+                    if ("name".equals(functionField) && functionToken == JsonToken.VALUE_STRING) {
+                        name = parser.getText();
+                    } else if ("arguments".equals(functionField) && functionToken == JsonToken.VALUE_STRING) {
+                        argsScratch.append(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+                        hasArguments = true;
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        ToolCallBuilder builder = toolCallBuilders.computeIfAbsent(index, k -> new ToolCallBuilder());
+        if (Objects.nonNull(callId)) {
+            builder.id = callId;
+        }
+        if (Objects.nonNull(type)) {
+            builder.type = type;
+        }
+        if (Objects.nonNull(name)) {
+            builder.name = name;
+        }
+        if (hasArguments) {
+            builder.appendArguments(argsScratch);
+        }
+        if (Objects.nonNull(toolCallListener) && builder.isComplete() && !builder.dispatched
+                && Objects.nonNull(builder.id) && Objects.nonNull(builder.name)) {
+            builder.dispatched = true;
+            toolCallListener.accept(builder.build());
+        }
+    }
+
+    private void readClaudeChunk(JsonParser parser, ContentHandler handler) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if ("delta".equals(field) && token == JsonToken.START_OBJECT) {
+                readClaudeDelta(parser, handler);
+            } else if ("id".equals(field) && token == JsonToken.VALUE_STRING) {
+                id = parser.getText();
+            } else if ("usage".equals(field) && token == JsonToken.START_OBJECT) {
+                // message_delta 携带 output_tokens
+                readUsage(parser);
+            } else if ("message".equals(field) && token == JsonToken.START_OBJECT) {
+                // message_start 携带 input_tokens
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String messageField = parser.currentName();
+                    if (parser.nextToken() == JsonToken.START_OBJECT && "usage".equals(messageField)) {
+                        readUsage(parser);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * 读取 usage（OpenAI：prompt_tokens/completion_tokens，Claude：input_tokens/output_tokens），后到的值覆盖先到的值
+     */
+    private void readUsage(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if (token != JsonToken.VALUE_NUMBER_INT) {
+                parser.skipChildren();
+            } else if ("prompt_tokens".equals(field) || "input_tokens".equals(field)) {
+                promptTokens = parser.getIntValue();
+            } else if ("completion_tokens".equals(field) || "output_tokens".equals(field)) {
+                completionTokens = parser.getIntValue();
+            }
+        }
+    }
+
+    /**
+     * delta 字段顺序不固定，先收集再按 type 分发
+     */
+    private void readClaudeDelta(JsonParser parser, ContentHandler handler) throws IOException {
+        String type = null;
+        boolean hasText = false;
+        boolean hasPartialJson = false;
+        textScratch.setLength(0);
+        argsScratch.setLength(0);
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if ("type".equals(field) && token == JsonToken.VALUE_STRING) {
+                type = parser.getText();
+            } else if ("text".equals(field) && token == JsonToken.VALUE_STRING) {
+                copyText(parser, textScratch);
+                hasText = true;
+            } else if ("partial_json".equals(field) && token == JsonToken.VALUE_STRING) {
+                copyText(parser, argsScratch);
+                hasPartialJson = true;
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        if ("text_delta".equals(type) && hasText) {
+            handler.onContent(textScratch);
+        } else if ("input_json_delta".equals(type) && hasPartialJson) {
+            claudeArguments.append(argsScratch);
+        }
+    }
+
+    private static void copyText(JsonParser parser, StringBuilder target) throws IOException {
+        target.setLength(0);
+        target.append(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+    }
+
+    /**
+     * OpenAI 格式合并后的工具调用（按 index 排序）
+     */
+    public List<ToolCall> getToolCalls() {
+        List<ToolCall> toolCalls = new ArrayList<>(toolCallBuilders.size());
+        for (ToolCallBuilder builder : toolCallBuilders.values()) {
+            toolCalls.add(builder.build());
+        }
+        return toolCalls;
+    }
+
+    /**
+     * Claude 格式累计的 input_json_delta
+     */
+    public String getClaudeArguments() {
+        return claudeArguments.toString();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * 流中返回的 prompt token 数，未返回时为 null
+     */
+    public Integer getPromptTokens() {
+        return promptTokens;
+    }
+
+    /**
+     * 流中返回的 completion token 数，未返回时为 null
+     */
+    public Integer getCompletionTokens() {
+        return completionTokens;
+    }
+
+    public String getFinishReason() {
+        return finishReason;
+    }
+
+    /**
+     * 合并中的工具调用，追加参数时同步跟踪 JSON 括号深度，判断参数是否已闭合
+     */
+    private static class ToolCallBuilder {
+        private String id;
+        private String type;
+        private String name;
+        private final StringBuilder arguments = new StringBuilder();
+
+        private int depth = 0;
+        private boolean started = false;
+        private boolean closed = false;
+        private boolean inString = false;
+        private boolean escape = false;
+        private boolean dispatched = false;
+
+        private void appendArguments(CharSequence chunk) {
+            arguments.append(chunk);
+            for (int i = 0, n = chunk.length(); i < n && !closed; i++) {
+                char c = chunk.charAt(i);
+                if (inString) {
+                    if (escape) {
+                        escape = false;
+                    } else if (c == '\\') {
+                        escape = true;
+                    } else if (c == '"') {
+                        inString = false;
+                    }
+                } else if (c == '"') {
+                    inString = true;
+                } else if (c == '{' || c == '[') {
+                    started = true;
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                    if (started && depth == 0) {
+                        closed = true;
+                    }
+                }
+            }
+        }
+
+        private boolean isComplete() {
+            return closed;
+        }
+
+        private ToolCall build() {
+            return ToolCall.builder()
+                    .id(id)
+                    .type(type)
+                    .function(ToolCall.Function.builder()
+                            .name(name)
+                            .arguments(arguments.toString())
+                            .build())
+                    .build();
+        }
+    }
+}
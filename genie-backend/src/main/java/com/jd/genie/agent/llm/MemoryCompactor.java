@@ -0,0 +1,258 @@
+package com.jd.genie.agent.llm;
+
+import com.jd.genie.agent.agent.AgentContext;
+import com.jd.genie.agent.dto.Memory;
+import com.jd.genie.agent.dto.Message;
+import com.jd.genie.agent.enums.RoleType;
+import com.jd.genie.agent.prompt.CompactionPrompt;
+import com.jd.genie.agent.util.SpringContextHolder;
+import com.jd.genie.agent.util.ThreadUtil;
+import com.jd.genie.config.GenieConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 记忆滚动压缩（每个请求一个实例，挂在 AgentContext 上）
+ * - 每步结束后检查历史 token 数，超过阈值时在后台用 LLM 把较早的轮次压缩为一条“截至目前的状态”消息
+ * - 首条用户消息（任务）和最近 keep_recent_turns 轮原样保留；组装压缩输入超长时优先截断工具结果
+ * - 压缩不阻塞当前步骤，结果在之后的步骤边界应用；期间区间内的消息发生变化则丢弃结果
+ * - 同一请求内 fork 自同一历史的多个执行器共享同一次压缩
+ */
+@Slf4j
+public class MemoryCompactor {
+    // 压缩输入中单条消息的最短保留长度
+    private static final int MIN_MESSAGE_CHARS = 200;
+
+    // 压缩统计
+    private static final AtomicLong scheduled = new AtomicLong();
+    private static final AtomicLong applied = new AtomicLong();
+    private static final AtomicLong stale = new AtomicLong();
+    private static final AtomicLong failed = new AtomicLong();
+    private static final AtomicLong compactedMessages = new AtomicLong();
+    private static final AtomicLong savedTokens = new AtomicLong();
+
+    private final AgentContext context;
+    private final GenieConfig genieConfig;
+    private final Map<RegionKey, CompletableFuture<String>> summaries = new ConcurrentHashMap<>();
+
+    private MemoryCompactor(AgentContext context, GenieConfig genieConfig) {
+        this.context = context;
+        this.genieConfig = genieConfig;
+    }
+
+    /**
+     * 获取请求对应的压缩器，未开启压缩时返回 null
+     */
+    public static MemoryCompactor of(AgentContext context) {
+        GenieConfig genieConfig = SpringContextHolder.getApplicationContext().getBean(GenieConfig.class);
+        if (!"1".equals(genieConfig.getCompactionEnable())) {
+            return null;
+        }
+        synchronized (context) {
+            if (context.getMemoryCompactor() == null) {
+                context.setMemoryCompactor(new MemoryCompactor(context, genieConfig));
+            }
+            return context.getMemoryCompactor();
+        }
+    }
+
+    /**
+     * 历史超过阈值时在后台启动压缩，返回待应用的压缩；无需压缩或执行器饱和时返回 null
+     */
+    public Pending schedule(Memory memory, LLM llm) {
+        TokenCounter tokenCounter = llm.getTokenCounter();
+        List<Message> messages = memory.getMessages();
+        int totalTokens = tokenCounter.countMessages(messages);
+        if (totalTokens < genieConfig.getCompactionThresholdTokens()) {
+            return null;
+        }
+
+        // 轮次起点：除 tool 结果外的每条消息开始新的一轮（tool_calls 与其结果同属一轮）
+        List<Integer> turnStarts = new ArrayList<>();
+        int firstUser = -1;
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            if (message.getRole() != RoleType.TOOL) {
+                turnStarts.add(i);
+            }
+            if (firstUser < 0 && message.getRole() == RoleType.USER) {
+                firstUser = i;
+            }
+        }
+        int keepTurns = genieConfig.getCompactionKeepRecentTurns();
+        if (turnStarts.size() <= keepTurns) {
+            return null;
+        }
+        int start = firstUser + 1;
+        int end = turnStarts.get(turnStarts.size() - keepTurns);
+        // 不跨越 fork 继承边界，保证合并时只合并自有消息
+        if (start < memory.getInheritedSize() && end > memory.getInheritedSize()) {
+            end = memory.getInheritedSize();
+        }
+        if (end - start < 2) {
+            return null;
+        }
+
+        List<Message> region = new ArrayList<>(messages.subList(start, end));
+        int regionTokens = tokenCounter.countMessages(region);
+        RegionKey key = new RegionKey(region);
+        CompletableFuture<String> future = summaries.get(key);
+        if (future == null) {
+            CompletableFuture<String> created = new CompletableFuture<>();
+            future = summaries.putIfAbsent(key, created);
+            if (future == null) {
+                future = created;
+                if (!ThreadUtil.tryExecute(() -> summarize(region, llm, created))) {
+                    summaries.remove(key, created);
+                    return null;
+                }
+                scheduled.incrementAndGet();
+                log.info("{} memory compaction scheduled messages {} tokens {}/{}", context.getRequestId(),
+                        region.size(), regionTokens, totalTokens);
+            }
+        }
+        return new Pending(start, region, regionTokens, future);
+    }
+
+    /**
+     * 压缩完成时应用到记忆，返回是否已处理（应用、过期或失败）；未完成时返回 false，下一步再试
+     */
+    public boolean apply(Memory memory, Pending pending, LLM llm) {
+        if (!pending.future.isDone()) {
+            return false;
+        }
+        String summary = pending.future.isCompletedExceptionally() ? null : pending.future.join();
+        if (StringUtils.isBlank(summary)) {
+            failed.incrementAndGet();
+            return true;
+        }
+        Message summaryMessage = Message.userMessage(CompactionPrompt.SUMMARY_PREFIX + summary, null);
+        if (!memory.replaceRange(pending.start, pending.region, summaryMessage)) {
+            stale.incrementAndGet();
+            log.info("{} memory compaction stale, history changed", context.getRequestId());
+            return true;
+        }
+        int saved = pending.regionTokens - llm.getTokenCounter().countMessage(summaryMessage);
+        applied.incrementAndGet();
+        compactedMessages.addAndGet(pending.region.size());
+        savedTokens.addAndGet(saved);
+        log.info("{} memory compaction applied messages {} tokens {} -> {} saved {}", context.getRequestId(),
+                pending.region.size(), pending.regionTokens, pending.regionTokens - saved, saved);
+        return true;
+    }
+
+    private void summarize(List<Message> region, LLM llm, CompletableFuture<String> future) {
+        try {
+            LLM compactionLlm = StringUtils.isEmpty(genieConfig.getCompactionModelName())
+                    ? llm : new LLM(genieConfig.getCompactionModelName(), "");
+            String prompt = CompactionPrompt.PROMPT
+                    .replace("{{query}}", StringUtils.defaultString(context.getQuery()))
+                    .replace("{{history}}", formatHistory(region, genieConfig.getCompactionInputMaxChars()))
+                    .replace("{{maxChars}}", String.valueOf(genieConfig.getCompactionSummaryMaxChars()));
+            String summary = compactionLlm.ask(context,
+                    Collections.singletonList(Message.userMessage(prompt, null)),
+                    Collections.emptyList(),
+                    false,
+                    0.01).get();
+            future.complete(summary);
+        } catch (Exception e) {
+            log.error("{} memory compaction failed", context.getRequestId(), e);
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * 组装压缩输入，总长超过 maxChars 时先逐步截断工具结果，再截断其他消息
+     */
+    static String formatHistory(List<Message> region, int maxChars) {
+        String[] contents = new String[region.size()];
+        int total = 0;
+        for (int i = 0; i < region.size(); i++) {
+            contents[i] = StringUtils.defaultString(region.get(i).getContent());
+            total += contents[i].length();
+        }
+        for (boolean toolOnly : new boolean[]{true, false}) {
+            int limit = maxChars;
+            while (total > maxChars && limit > MIN_MESSAGE_CHARS) {
+                limit = Math.max(MIN_MESSAGE_CHARS, limit / 2);
+                for (int i = 0; i < contents.length && total > maxChars; i++) {
+                    if ((!toolOnly || region.get(i).getRole() == RoleType.TOOL) && contents[i].length() > limit) {
+                        total -= contents[i].length() - limit;
+                        contents[i] = contents[i].substring(0, limit);
+                    }
+                }
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < region.size(); i++) {
+            sb.append(String.format("role:%s content:%s\n", region.get(i).getRole(), contents[i]));
+        }
+        return sb.toString();
+    }
+
+    public static Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("scheduled", scheduled.get());
+        stats.put("applied", applied.get());
+        stats.put("stale", stale.get());
+        stats.put("failed", failed.get());
+        stats.put("compactedMessages", compactedMessages.get());
+        stats.put("savedTokens", savedTokens.get());
+        return stats;
+    }
+
+    /**
+     * 待应用的压缩：被压缩区间的起点、区间内的消息（按引用校验）与 token 数
+     */
+    public static class Pending {
+        private final int start;
+        private final List<Message> region;
+        private final int regionTokens;
+        private final CompletableFuture<String> future;
+
+        Pending(int start, List<Message> region, int regionTokens, CompletableFuture<String> future) {
+            this.start = start;
+            this.region = region;
+            this.regionTokens = regionTokens;
+            this.future = future;
+        }
+    }
+
+    /**
+     * 按消息引用标识区间，fork 自同一历史的执行器得到相同的 key
+     */
+    private static class RegionKey {
+        private final Message first;
+        private final Message last;
+        private final int size;
+
+        RegionKey(List<Message> region) {
+            this.first = region.get(0);
+            this.last = region.get(region.size() - 1);
+            this.size = region.size();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof RegionKey)) {
+                return false;
+            }
+            RegionKey other = (RegionKey) o;
+            return first == other.first && last == other.last && size == other.size;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * System.identityHashCode(first) + System.identityHashCode(last)) + size;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.jd.genie.agent.llm;
+
+import com.jd.genie.agent.agent.AgentContext;
+import com.jd.genie.config.GenieConfig;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * 请求级预算（每个请求一个实例，挂在 AgentContext 上）
+ * - 按模型返回的 usage 累计 prompt/completion token（流式未返回 usage 时按本地 tokenizer 估算），按模型单价累计费用
+ * - 已用比例取 token、耗时、费用三者中的最大值（上限 <= 0 表示不限制）
+ * - 已用比例达到 low_ratio 进入 LOW：智能体收紧剩余步数、LLM 切换到 fallback_model；达到 1 进入 EXHAUSTED：停止迭代，直接总结
+ * - 预算状态变化时（进入 LOW / EXHAUSTED）通过 printer 推送一次 budget 事件，事件中带 fallbackModel，为空表示不切换模型
+ */
+@Slf4j
+public class RequestBudget {
+
+    public enum Level {
+        NORMAL, LOW, EXHAUSTED
+    }
+
+    private final long startTime = System.currentTimeMillis();
+    private final long maxTokens;
+    private final long maxMillis;
+    private final double maxCost;
+    private final double lowRatio;
+    @Getter
+    private final int lowSteps;
+    @Getter
+    private final String fallbackModel;
+
+    private final AtomicLong promptTokens = new AtomicLong();
+    private final AtomicLong completionTokens = new AtomicLong();
+    private final AtomicLong llmCalls = new AtomicLong();
+    private final DoubleAdder cost = new DoubleAdder();
+    private volatile Level reportedLevel = Level.NORMAL;
+
+    private RequestBudget(GenieConfig genieConfig) {
+        this.maxTokens = genieConfig.getBudgetMaxTokens();
+        this.maxMillis = genieConfig.getBudgetMaxSeconds() * 1000L;
+        this.maxCost = genieConfig.getBudgetMaxCost();
+        this.lowRatio = genieConfig.getBudgetLowRatio();
+        this.lowSteps = genieConfig.getBudgetLowSteps();
+        this.fallbackModel = genieConfig.getBudgetFallbackModel();
+    }
+
+    /**
+     * 按配置创建预算，未开启时返回 null
+     */
+    public static RequestBudget create(GenieConfig genieConfig) {
+        return "1".equals(genieConfig.getBudgetEnable()) ? new RequestBudget(genieConfig) : null;
+    }
+
+    /**
+     * 记录一次 LLM 调用的用量，预算状态变化时推送最新状态
+     *
+     * @param inputPrice  每千 prompt token 单价
+     * @param outputPrice 每千 completion token 单价
+     */
+    public void record(AgentContext context, String model, int prompt, int completion, double inputPrice, double outputPrice) {
+        promptTokens.addAndGet(prompt);
+        completionTokens.addAndGet(completion);
+        llmCalls.incrementAndGet();
+        cost.add(prompt / 1000.0 * inputPrice + completion / 1000.0 * outputPrice);
+
+        Level level = level();
+        synchronized (this) {
+            // 并行子任务同时记录时只推送一次
+            if (level == reportedLevel) {
+                return;
+            }
+            reportedLevel = level;
+        }
+        log.info("{} request budget {} after {} prompt {} completion {} cost {} elapsed {}ms", context.getRequestId(),
+                level, model, promptTokens.get(), completionTokens.get(), cost.sum(), elapsedMillis());
+        if (Objects.nonNull(context.getPrinter())) {
+            context.getPrinter().send("budget", snapshot());
+        }
+    }
+
+    public Level level() {
+        double ratio = usedRatio();
+        if (ratio >= 1) {
+            return Level.EXHAUSTED;
+        }
+        return ratio >= lowRatio ? Level.LOW : Level.NORMAL;
+    }
+
+    /**
+     * 已用比例：token、耗时、费用中最接近上限的一项
+     */
+    public double usedRatio() {
+        double ratio = 0;
+        if (maxTokens > 0) {
+            ratio = Math.max(ratio, (double) totalTokens() / maxTokens);
+        }
+        if (maxMillis > 0) {
+            ratio = Math.max(ratio, (double) elapsedMillis() / maxMillis);
+        }
+        if (maxCost > 0) {
+            ratio = Math.max(ratio, cost.sum() / maxCost);
+        }
+        return ratio;
+    }
+
+    public long totalTokens() {
+        return promptTokens.get() + completionTokens.get();
+    }
+
+    public long elapsedMillis() {
+        return System.currentTimeMillis() - startTime;
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("level", level().name());
+        snapshot.put("usedRatio", Math.round(usedRatio() * 1000) / 1000.0);
+        snapshot.put("promptTokens", promptTokens.get());
+        snapshot.put("completionTokens", completionTokens.get());
+        snapshot.put("maxTokens", maxTokens);
+        snapshot.put("elapsedMillis", elapsedMillis());
+        snapshot.put("maxMillis", maxMillis);
+        snapshot.put("cost", Math.round(cost.sum() * 10000) / 10000.0);
+        snapshot.put("maxCost", maxCost);
+        snapshot.put("llmCalls", llmCalls.get());
+        snapshot.put("fallbackModel", Objects.isNull(fallbackModel) ? "" : fallbackModel);
+        snapshot.put("lowSteps", lowSteps);
+        return snapshot;
+    }
+}
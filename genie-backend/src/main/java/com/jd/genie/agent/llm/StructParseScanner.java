@@ -0,0 +1,161 @@
+package com.jd.genie.agent.llm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * struct_parse 模式下的流式代码块扫描器
+ * - 逐字符状态机识别 ```json 开始与 ``` 结束，跨 chunk 的部分匹配暂存，不对全文 toString
+ * - 第一个 ```json 之前的内容为可展示内容，之后的内容全部视为工具调用
+ * - 每个闭合的代码块去掉首尾空白后作为一个工具调用 JSON，与正则 ```json\s*([\s\S]*?)\s*``` 等价
+ * 非线程安全，每个流式响应使用一个实例
+ */
+public class StructParseScanner {
+    private static final String OPEN_FENCE = "```json";
+    private static final String CLOSE_FENCE = "```";
+    private static final int[] OPEN_FAILURE = failure(OPEN_FENCE);
+    private static final int[] CLOSE_FAILURE = failure(CLOSE_FENCE);
+
+    // 是否在代码块内
+    private boolean inBlock = false;
+    // 是否已出现过 ```json
+    private boolean fenceFound = false;
+    // 当前 fence 已匹配的字符数
+    private int matched = 0;
+
+    private final StringBuilder content = new StringBuilder();
+    private final StringBuilder block = new StringBuilder();
+    private final List<String> blocks = new ArrayList<>();
+
+    /**
+     * 输入一个增量片段，确认可展示的字符同时追加到 visibleOut（可为 null）
+     */
+    public void feed(CharSequence chunk, StringBuilder visibleOut) {
+        for (int i = 0, n = chunk.length(); i < n; i++) {
+            char c = chunk.charAt(i);
+            if (inBlock) {
+                feedBlock(c);
+            } else {
+                feedText(c, visibleOut);
+            }
+        }
+    }
+
+    /**
+     * 流结束：释放暂存的部分匹配字符
+     */
+    public void finish(StringBuilder visibleOut) {
+        if (!inBlock && !fenceFound && matched > 0) {
+            appendVisible(OPEN_FENCE, matched, visibleOut);
+        }
+        matched = 0;
+    }
+
+    private void feedText(char c, StringBuilder visibleOut) {
+        int previous = matched;
+        while (matched > 0 && OPEN_FENCE.charAt(matched) != c) {
+            matched = OPEN_FAILURE[matched - 1];
+        }
+        boolean hit = OPEN_FENCE.charAt(matched) == c;
+        if (!fenceFound) {
+            // 回退释放的前缀字符确认不属于 fence
+            appendVisible(OPEN_FENCE, previous - matched, visibleOut);
+            if (!hit) {
+                appendVisible(c, visibleOut);
+            }
+        }
+        if (hit && ++matched == OPEN_FENCE.length()) {
+            fenceFound = true;
+            inBlock = true;
+            matched = 0;
+            block.setLength(0);
+        }
+    }
+
+    private void feedBlock(char c) {
+        int previous = matched;
+        while (matched > 0 && CLOSE_FENCE.charAt(matched) != c) {
+            matched = CLOSE_FAILURE[matched - 1];
+        }
+        block.append(CLOSE_FENCE, 0, previous - matched);
+        if (CLOSE_FENCE.charAt(matched) != c) {
+            block.append(c);
+            return;
+        }
+        if (++matched == CLOSE_FENCE.length()) {
+            blocks.add(trim(block));
+            inBlock = false;
+            matched = 0;
+        }
+    }
+
+    private void appendVisible(CharSequence s, int length, StringBuilder visibleOut) {
+        if (length <= 0) {
+            return;
+        }
+        content.append(s, 0, length);
+        if (Objects.nonNull(visibleOut)) {
+            visibleOut.append(s, 0, length);
+        }
+    }
+
+    private void appendVisible(char c, StringBuilder visibleOut) {
+        content.append(c);
+        if (Objects.nonNull(visibleOut)) {
+            visibleOut.append(c);
+        }
+    }
+
+    /**
+     * 是否已出现 ```json，出现后不再有可展示内容
+     */
+    public boolean isFenceFound() {
+        return fenceFound;
+    }
+
+    /**
+     * 第一个 ```json 之前的可展示内容
+     */
+    public String getContent() {
+        return content.toString();
+    }
+
+    /**
+     * 已闭合的代码块内容（工具调用 JSON）
+     */
+    public List<String> getBlocks() {
+        return blocks;
+    }
+
+    private static String trim(StringBuilder sb) {
+        int start = 0;
+        int end = sb.length();
+        while (start < end && isWhitespace(sb.charAt(start))) {
+            start++;
+        }
+        while (end > start && isWhitespace(sb.charAt(end - 1))) {
+            end--;
+        }
+        return sb.substring(start, end);
+    }
+
+    // 与正则 \s 一致
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static int[] failure(String pattern) {
+        int[] failure = new int[pattern.length()];
+        for (int i = 1, k = 0; i < pattern.length(); i++) {
+            while (k > 0 && pattern.charAt(i) != pattern.charAt(k)) {
+                k = failure[k - 1];
+            }
+            if (pattern.charAt(i) == pattern.charAt(k)) {
+                k++;
+            }
+            failure[i] = k;
+        }
+        return failure;
+    }
+}
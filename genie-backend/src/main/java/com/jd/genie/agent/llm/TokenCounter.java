@@ -1,9 +1,14 @@
 package com.jd.genie.agent.llm;
 
+import com.jd.genie.agent.dto.Message;
+import com.jd.genie.agent.dto.tool.ToolCall;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 /**
  * Token 计数器类
@@ -21,14 +26,107 @@ public class TokenCounter {
     private static final int HIGH_DETAIL_TARGET_SHORT_SIDE = 768;
     private static final int TILE_SIZE = 512;
 
+    // 无词表时的估算编码名
+    public static final String HEURISTIC = "heuristic";
+
+    private final BpeTokenizer tokenizer;
+    private final String encoding;
+
     public TokenCounter() {
+        this(null);
+    }
+
+    /**
+     * @param encoding BPE 编码（cl100k_base / o200k_base），词表不可用时降级为估算
+     */
+    public TokenCounter(String encoding) {
+        this.tokenizer = BpeTokenizer.forEncoding(encoding).orElse(null);
+        this.encoding = Objects.nonNull(tokenizer) ? tokenizer.getEncoding() : HEURISTIC;
+    }
+
+    /**
+     * 按模型选择默认编码：配置优先，gpt-4o / o 系列使用 o200k_base，其余使用 cl100k_base
+     */
+    public static String resolveEncoding(String model, String configured) {
+        if (StringUtils.isNotEmpty(configured)) {
+            return configured;
+        }
+        String name = StringUtils.defaultString(model).toLowerCase();
+        if (name.contains("gpt-4o") || name.startsWith("o1") || name.startsWith("o3") || name.startsWith("o4")) {
+            return BpeTokenizer.O200K_BASE;
+        }
+        return BpeTokenizer.CL100K_BASE;
+    }
+
+    public String getEncoding() {
+        return encoding;
     }
 
     /**
      * 计算文本的 token 数量
      */
     public int countText(String text) {
-        return text == null ? 0 : text.length();
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        return Objects.nonNull(tokenizer) ? tokenizer.count(text) : estimateText(text);
+    }
+
+    /**
+     * 无词表时的估算：CJK 等宽字符约 1 token/字，其余约 4 字符/token
+     */
+    private int estimateText(String text) {
+        int wide = 0;
+        int narrow = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 0x2E80) {
+                wide++;
+            } else {
+                narrow++;
+            }
+        }
+        return wide + (narrow + 3) / 4;
+    }
+
+    /**
+     * 计算单条消息的 token 数量，结果缓存在消息上，消息未修改时重复计数为 O(1)
+     */
+    public int countMessage(Message message) {
+        int cached = message.getTokenCountCache(encoding);
+        if (cached >= 0) {
+            return cached;
+        }
+        int tokens = BASE_MESSAGE_TOKENS;
+        if (Objects.nonNull(message.getRole())) {
+            tokens += countText(message.getRole().getValue());
+        }
+        tokens += countText(message.getContent());
+        if (StringUtils.isNotEmpty(message.getBase64Image())) {
+            tokens += countImage(Collections.emptyMap());
+        }
+        if (Objects.nonNull(message.getToolCalls())) {
+            for (ToolCall toolCall : message.getToolCalls()) {
+                if (Objects.nonNull(toolCall.getFunction())) {
+                    tokens += countText(toolCall.getFunction().getName());
+                    tokens += countText(toolCall.getFunction().getArguments());
+                }
+            }
+        }
+        tokens += countText(message.getToolCallId());
+        message.putTokenCountCache(encoding, tokens);
+        return tokens;
+    }
+
+    /**
+     * 计算消息列表的总 token 数量
+     */
+    public int countMessages(List<Message> messages) {
+        int totalTokens = FORMAT_TOKENS;
+        for (Message message : messages) {
+            totalTokens += countMessage(message);
+        }
+        return totalTokens;
     }
 
     /**
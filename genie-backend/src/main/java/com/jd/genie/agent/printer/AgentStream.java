@@ -0,0 +1,67 @@
+package com.jd.genie.agent.printer;
+
+import com.jd.genie.agent.util.SpringContextHolder;
+import com.jd.genie.agent.util.StringUtil;
+import com.jd.genie.config.GenieConfig;
+
+/**
+ * agent_stream 流式输出
+ * - 调用方维护不断增长的文本，每收到一段内容调用 tick，按 message_interval 的 llm 配置节流输出新增部分
+ * - finish 输出剩余部分后再以 isFinal 输出一次全文；clear 撤回已输出的内容（以空全文结束），之后不再输出
+ * LLM 读流线程与调用线程都会调用，方法均加锁
+ */
+public class AgentStream {
+    private final Printer printer;
+    private final String messageId = StringUtil.getUUID();
+    private final int firstInterval;
+    private final int sendInterval;
+    private int sent;                    // 文本中已输出的长度
+    private int index = 1;
+    private boolean closed;
+
+    public AgentStream(Printer printer) {
+        this.printer = printer;
+        GenieConfig genieConfig = SpringContextHolder.getApplicationContext().getBean(GenieConfig.class);
+        String[] interval = genieConfig.getMessageInterval().getOrDefault("llm", "1,3").split(",");
+        this.firstInterval = Integer.parseInt(interval[0]);
+        this.sendInterval = Integer.parseInt(interval[1]);
+    }
+
+    /**
+     * 收到一段内容后调用，达到输出间隔时输出 text 中 [已输出, end) 的部分
+     */
+    public synchronized void tick(CharSequence text, int end) {
+        if (index == firstInterval || index % sendInterval == 0) {
+            send(text, end);
+        }
+        index++;
+    }
+
+    /**
+     * 输出剩余部分，并以 isFinal 输出全文
+     */
+    public synchronized void finish(CharSequence text) {
+        send(text, text.length());
+        if (!closed && text.length() > 0) {
+            printer.send(messageId, "agent_stream", text.toString(), true);
+        }
+        closed = true;
+    }
+
+    /**
+     * 撤回已输出的内容：以空全文结束本条流式消息，之后的 tick/finish 不再输出
+     */
+    public synchronized void clear() {
+        if (!closed && sent > 0) {
+            printer.send(messageId, "agent_stream", "", true);
+        }
+        closed = true;
+    }
+
+    private void send(CharSequence text, int end) {
+        if (!closed && end > sent) {
+            printer.send(messageId, "agent_stream", text.subSequence(sent, end).toString(), false);
+            sent = end;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.jd.genie.agent.printer;
+
+import com.jd.genie.model.req.AgentRequest;
+import com.jd.genie.model.response.AgentResponse;
+
+import java.util.function.Consumer;
+
+/**
+ * 进程内事件桥打印器
+ * 与 SSEPrinter 封装相同的 AgentResponse，但不写 SSE，直接交给 UI 层的 AgentResponseHandler 处理
+ * 省去回环 HTTP 连接以及逐帧 JSON 序列化、按行读取、再反序列化的开销
+ */
+public class EventBridgePrinter extends SSEPrinter {
+    private final Consumer<AgentResponse> listener; // 事件接收方，在智能体线程中调用（并行任务时可能并发）
+
+    public EventBridgePrinter(Consumer<AgentResponse> listener, AgentRequest request, Integer agentType) {
+        super(null, request, agentType);
+        this.listener = listener;
+    }
+
+    @Override
+    protected void emit(AgentResponse response) {
+        listener.accept(response);
+    }
+
+    /**
+     * 连接由 UI 层在收到最终结果后关闭
+     */
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,72 @@
+package com.jd.genie.agent.printer;
+
+import com.jd.genie.agent.util.StringUtil;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * 记录执行线程上输出的事件，用于工具结果复用时重放前端事件
+ * - 只记录发起记录的线程上的输出，在回调线程中输出事件的工具（如 deep_search）无法完整记录
+ * - 重放时原消息ID按一一对应关系重新生成，避免与原事件合并
+ */
+public final class PrinterRecorder {
+    private static final ThreadLocal<List<Event>> RECORDING = new ThreadLocal<>();
+
+    private PrinterRecorder() {
+    }
+
+    /**
+     * 记录的事件，参数与 Printer.send 完整版本一致
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Event {
+        private final String messageId;
+        private final String messageType;
+        private final Object message;
+        private final String digitalEmployee;
+        private final Boolean isFinal;
+    }
+
+    /**
+     * 执行 call，期间当前线程输出的事件追加到 events
+     */
+    public static <T> T record(List<Event> events, Supplier<T> call) {
+        List<Event> previous = RECORDING.get();
+        RECORDING.set(events);
+        try {
+            return call.get();
+        } finally {
+            if (Objects.isNull(previous)) {
+                RECORDING.remove();
+            } else {
+                RECORDING.set(previous);
+            }
+        }
+    }
+
+    static void record(String messageId, String messageType, Object message, String digitalEmployee, Boolean isFinal) {
+        List<Event> events = RECORDING.get();
+        if (Objects.nonNull(events)) {
+            events.add(new Event(messageId, messageType, message, digitalEmployee, isFinal));
+        }
+    }
+
+    /**
+     * 按记录顺序重放事件
+     */
+    public static void replay(Printer printer, List<Event> events) {
+        Map<String, String> messageIds = new HashMap<>();
+        for (Event event : events) {
+            String messageId = Objects.isNull(event.getMessageId())
+                    ? null : messageIds.computeIfAbsent(event.getMessageId(), id -> StringUtil.getUUID());
+            printer.send(messageId, event.getMessageType(), event.getMessage(), event.getDigitalEmployee(), event.getIsFinal());
+        }
+    }
+}
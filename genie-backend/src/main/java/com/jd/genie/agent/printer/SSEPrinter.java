@@ -1,20 +1,23 @@
 package com.jd.genie.agent.printer;
 
-import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.serializer.SerializerFeature;
 import com.jd.genie.agent.enums.AgentType;
 import com.jd.genie.agent.util.StringUtil;
 import com.jd.genie.model.req.AgentRequest;
 import com.jd.genie.model.response.AgentResponse;
+import com.jd.genie.util.SseHeartbeat;
+import com.jd.genie.util.SseJson;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.BeanUtils;
+import org.springframework.cglib.beans.BeanMap;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * SSE打印器实现类
@@ -29,6 +32,9 @@ public class SSEPrinter implements Printer {
     private SseEmitter emitter; // SSE发射器，用于发送消息到客户端
     private AgentRequest request; // 原始请求对象
     private Integer agentType; // 智能体类型，用于标识消息来源
+    private SseHeartbeat.Handle heartbeat; // 连接心跳，写出后记录时间，流式输出期间不再发送心跳
+
+    private static final Map<Class<?>, BeanMap> BEAN_MAPS = new ConcurrentHashMap<>(); // 各消息类型的属性访问器
 
     /**
      * 构造函数
@@ -57,6 +63,8 @@ public class SSEPrinter implements Printer {
      */
     @Override
     public void send(String messageId, String messageType, Object message, String digitalEmployee, Boolean isFinal) {
+        // 工具执行期间的输出记录下来，结果被复用时重放
+        PrinterRecorder.record(messageId, messageType, message, digitalEmployee, isFinal);
         try {
             // 如果消息ID为空，生成唯一标识
             if (Objects.isNull(messageId)) {
@@ -140,11 +148,19 @@ public class SSEPrinter implements Printer {
                 case "file":
                 case "knowledge":
                 case "deep_search":
-                    // 各种输出格式的结果，以JSON格式存储
-                    response.setResultMap(JSON.parseObject(JSON.toJSONString(message)));
+                    // 各种输出格式的结果，按属性展开为 Map（不经过 JSON 编解码），最终只在写出时序列化一次
+                    response.setResultMap(toResultMap(message));
                     response.getResultMap().put("agentType", agentType);
                     break;
 
+                case "budget":
+                    // 请求预算状态
+                    @SuppressWarnings("unchecked")
+                    Map<String, Object> budget = new HashMap<>((Map<String, Object>) message);
+                    budget.put("agentType", agentType);
+                    response.setResultMap(budget);
+                    break;
+
                 case "agent_stream":
                     // 智能体流式输出结果
                     response.setResult((String) message);
@@ -161,9 +177,8 @@ public class SSEPrinter implements Printer {
                         response.setResultMap(taskResult);
                         response.setResult(summary != null ? summary.toString() : null);
                     } else {
-                        // 其他格式转为Map处理
-                        Map<String, Object> taskResult = JSON
-                                .parseObject(JSON.toJSONString(message));
+                        // 其他格式按属性展开为Map处理
+                        Map<String, Object> taskResult = toResultMap(message);
                         response.setResultMap(taskResult);
                         response.setResult(taskResult.get("taskSummary").toString());
                     }
@@ -176,7 +191,7 @@ public class SSEPrinter implements Printer {
             }
 
             // 通过SSE发射器发送响应到客户端
-            emitter.send(response);
+            emit(response);
 
         } catch (Exception e) {
             // 发送失败时记录错误日志
@@ -184,6 +199,38 @@ public class SSEPrinter implements Printer {
         }
     }
 
+    /**
+     * 把工具输出的结构化对象展开为 resultMap：Map 直接复制，其他对象按属性浅拷贝（忽略空值），嵌套对象保持原类型
+     * 每个类型的属性访问器只生成一次
+     */
+    static Map<String, Object> toResultMap(Object message) {
+        Map<String, Object> resultMap = new HashMap<>();
+        if (message instanceof Map) {
+            ((Map<?, ?>) message).forEach((key, value) -> resultMap.put(String.valueOf(key), value));
+            return resultMap;
+        }
+        BeanMap beanMap = BEAN_MAPS.computeIfAbsent(message.getClass(), type -> BeanMap.create(message)).newInstance(message);
+        for (Object key : beanMap.keySet()) {
+            Object value = beanMap.get(key);
+            if (Objects.nonNull(value)) {
+                resultMap.put((String) key, value);
+            }
+        }
+        return resultMap;
+    }
+
+    /**
+     * 输出封装好的响应，默认通过SSE发射器发送
+     *
+     * @param response 智能体响应
+     */
+    protected void emit(AgentResponse response) throws IOException {
+        SseJson.send(emitter, response);
+        if (Objects.nonNull(heartbeat)) {
+            heartbeat.touch();
+        }
+    }
+
     /**
      * 发送消息（简化版本，包含数字员工标识）
      *
@@ -0,0 +1,10 @@
+package com.jd.genie.agent.prompt;
+
+/**
+ * 记忆压缩的提示词常量
+ */
+public class CompactionPrompt {
+    public static final String PROMPT = "# 角色\n你负责压缩智能体的执行历史。\n\n# 用户任务\n{{query}}\n\n# 需要压缩的历史\n{{history}}\n\n# 要求\n- 输出一段“截至目前的状态”，供智能体继续执行任务时代替上面的历史\n- 工具执行结果只保留结论、关键数据、文件名和链接，删除原始正文、重复和无关内容\n- 保留用户的要求与约束、已完成的子任务及其结论、已生成的文件、失败过的尝试及原因、尚未完成的事项\n- 不要编造历史中没有的信息，不要给出下一步建议\n- 使用中文，纯文本输出，不超过{{maxChars}}字";
+
+    public static final String SUMMARY_PREFIX = "【截至目前的任务状态（由较早的执行历史压缩而来）】\n";
+}
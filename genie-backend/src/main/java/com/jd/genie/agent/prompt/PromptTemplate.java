@@ -0,0 +1,117 @@
+package com.jd.genie.agent.prompt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 提示词模板：把含 {{变量}} 占位的提示词解析为“文本段 + 变量”序列，渲染时按段追加，不再逐个 String.replace 整段提示词
+ * - compile 按原文缓存解析结果，配置中的提示词只解析一次
+ * - bind 绑定部分变量得到新模板（已绑定的变量并入文本段），未绑定的变量渲染时原样保留占位
+ * - 变量值按原样写入，不会再被当作模板解析
+ * - 实例不可变，可在请求、线程间共享
+ */
+public final class PromptTemplate {
+    private static final Pattern VARIABLE = Pattern.compile("\\{\\{([A-Za-z0-9_]+)}}");
+    private static final int MAX_COMPILED = 256;
+    private static final Map<String, PromptTemplate> compiled = new ConcurrentHashMap<>();
+
+    // literals.length == variables.length + 1，渲染结果为 literals[0] + variables[0] + literals[1] + ...
+    private final String[] literals;
+    private final String[] variables;
+
+    private PromptTemplate(List<String> literals, List<String> variables) {
+        this.literals = literals.toArray(new String[0]);
+        this.variables = variables.toArray(new String[0]);
+    }
+
+    /**
+     * 解析模板（按原文缓存）
+     */
+    public static PromptTemplate compile(String text) {
+        if (text == null) {
+            text = "";
+        }
+        PromptTemplate template = compiled.get(text);
+        if (template == null) {
+            template = parse(text);
+            if (compiled.size() < MAX_COMPILED) {
+                compiled.putIfAbsent(text, template);
+            }
+        }
+        return template;
+    }
+
+    /**
+     * 解析模板（不缓存），用于每个请求都不同的文本
+     */
+    public static PromptTemplate parse(String text) {
+        List<String> literals = new ArrayList<>();
+        List<String> variables = new ArrayList<>();
+        Matcher matcher = VARIABLE.matcher(text);
+        int last = 0;
+        while (matcher.find()) {
+            literals.add(text.substring(last, matcher.start()));
+            variables.add(matcher.group(1));
+            last = matcher.end();
+        }
+        literals.add(text.substring(last));
+        return new PromptTemplate(literals, variables);
+    }
+
+    /**
+     * 绑定部分变量，返回新模板；values 中值为 null 的变量视为未绑定
+     */
+    public PromptTemplate bind(Map<String, String> values) {
+        List<String> newLiterals = new ArrayList<>();
+        List<String> newVariables = new ArrayList<>();
+        StringBuilder literal = new StringBuilder(literals[0]);
+        for (int i = 0; i < variables.length; i++) {
+            String value = values.get(variables[i]);
+            if (value != null) {
+                literal.append(value);
+            } else {
+                newLiterals.add(literal.toString());
+                newVariables.add(variables[i]);
+                literal.setLength(0);
+            }
+            literal.append(literals[i + 1]);
+        }
+        newLiterals.add(literal.toString());
+        return new PromptTemplate(newLiterals, newVariables);
+    }
+
+    /**
+     * 渲染模板，未提供值的变量保留 {{变量}} 占位
+     */
+    public String render(Map<String, String> values) {
+        if (variables.length == 0) {
+            return literals[0];
+        }
+        // String.join 先算总长与编码再一次性分配，中文提示词不会像 StringBuilder 那样先按 Latin1 分配再膨胀
+        String[] parts = new String[literals.length + variables.length];
+        parts[0] = literals[0];
+        for (int i = 0; i < variables.length; i++) {
+            String value = values.get(variables[i]);
+            parts[2 * i + 1] = value != null ? value : "{{" + variables[i] + "}}";
+            parts[2 * i + 2] = literals[i + 1];
+        }
+        return String.join("", parts);
+    }
+
+    /**
+     * 只替换一个变量的渲染（如每步注入 {{files}}）
+     */
+    public String render(String name, String value) {
+        return render(Collections.singletonMap(name, value));
+    }
+
+    @Override
+    public String toString() {
+        return render(Collections.emptyMap());
+    }
+}
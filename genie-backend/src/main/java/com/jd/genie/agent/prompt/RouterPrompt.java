@@ -0,0 +1,16 @@
+package com.jd.genie.agent.prompt;
+
+/**
+ * 路由智能体的提示词常量
+ */
+public class RouterPrompt {
+    public static final String CLASSIFY_PROMPT = "你是一个问题分类器，判断用户问题需要哪种处理方式，只输出以下三个标签之一，不要输出其他内容：\n"
+            + "DIRECT：常识、闲聊、简单计算、概念解释等，凭已有知识一次即可回答，不需要搜索、文件或代码\n"
+            + "TOOL：需要搜索最新信息、读写文件、执行代码等工具，但步骤不多\n"
+            + "PLAN：需要多步调研、分析对比或产出报告、表格、网页等交付物的复杂任务\n"
+            + "用户问题：{{query}}";
+
+    public static final String DIRECT_PROMPT = "# 要求\n- 直接、准确、简洁地回答用户问题，不要编造无法确认的实时信息\n"
+            + "- 默认使用中文回答，如用户明确使用其他语言则使用对应语言\n"
+            + "# 当前环境变量\n- 当前日期：{{date}}";
+}
@@ -0,0 +1,46 @@
+package com.jd.genie.agent.tool;
+
+import com.alibaba.fastjson.JSONObject;
+import lombok.Getter;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 任务级数字员工命名（工具名 -> 岗位名）
+ * - 命名由 LLM 异步生成，生成完成前 get 返回 null，之后输出的事件即带上岗位名
+ * - 每个任务（含并行子任务）持有自己的命名，不再共享 ToolCollection 上的单一映射
+ *
+ * {
+ *     "file_tool": "数据记录员",
+ *     "code_interpreter": "数据分析师",
+ *     "deep_search": "信息调研员",
+ *     "report_tool": "报告撰写专家"
+ * }
+ */
+public class DigitalEmployees {
+    public static final DigitalEmployees NONE = new DigitalEmployees(null, CompletableFuture.completedFuture(null));
+
+    @Getter
+    private final String task;
+    private final CompletableFuture<JSONObject> naming;
+
+    public DigitalEmployees(String task, CompletableFuture<JSONObject> naming) {
+        this.task = task;
+        this.naming = naming;
+    }
+
+    /**
+     * 获取工具的岗位名，命名未完成或失败时返回 null（不阻塞）
+     */
+    public String get(String toolName) {
+        if (toolName == null || !naming.isDone() || naming.isCompletedExceptionally()) {
+            return null;
+        }
+        JSONObject employees = naming.join();
+        return employees == null ? null : employees.getString(toolName);
+    }
+
+    CompletableFuture<JSONObject> getNaming() {
+        return naming;
+    }
+}
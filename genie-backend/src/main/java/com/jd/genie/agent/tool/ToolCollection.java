@@ -5,11 +5,17 @@ import com.jd.genie.agent.agent.AgentContext;
 import com.jd.genie.agent.dto.tool.McpToolInfo;
 import com.jd.genie.agent.tool.mcp.McpTool;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 /**
  * 工具集合类 - 管理可用的工具
@@ -24,20 +30,28 @@ public class ToolCollection {
 
     /**
      * 数字员工（工具到岗位名）
-     * - 每个 task 可触发一次命名更新
-     * - 并发情形下需额外处理（TODO）
+     * - 按任务缓存命名（key 为任务内容），同一请求内相同任务只生成一次
+     * - 工具执行期间通过线程上下文获取本任务的命名，并行子任务互不影响
      */
-    private String currentTask; // 当前任务
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final Map<String, DigitalEmployees> digitalEmployeeCache = new ConcurrentHashMap<>();
+    private static final ThreadLocal<DigitalEmployees> currentDigitalEmployees = new ThreadLocal<>();
 
     /**
-     * {
-     *     "file_tool": "数据记录员",
-     *     "code_interpreter": "数据分析师",
-     *     "deep_search": "信息调研员",
-     *     "report_tool": "报告撰写专家"
-     * }
+     * 工具集合版本号：通过 addTool/addMcpTool/setXxxMap 变更工具时递增
+     * 直接修改 getToolMap() 返回的 Map 不会更新版本号
      */
-    private JSONObject digitalEmployees; // 数字员工映射
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * 工具 schema 缓存（key: function_call / claude / struct_parse），版本号不一致时重建
+     */
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final Map<String, SchemaCache> schemaCache = new ConcurrentHashMap<>();
 
     public ToolCollection() {
         this.toolMap = new HashMap<>();
@@ -47,6 +61,7 @@ public class ToolCollection {
     /** 添加内置工具 */
     public void addTool(BaseTool tool) {
         toolMap.put(tool.getName(), tool);
+        version.incrementAndGet();
     }
 
     /** 获取内置工具 */
@@ -62,6 +77,32 @@ public class ToolCollection {
                 .parameters(parameters)
                 .mcpServerUrl(mcpServerUrl)
                 .build());
+        version.incrementAndGet();
+    }
+
+    public void setToolMap(Map<String, BaseTool> toolMap) {
+        this.toolMap = toolMap;
+        version.incrementAndGet();
+    }
+
+    public void setMcpToolMap(Map<String, McpToolInfo> mcpToolMap) {
+        this.mcpToolMap = mcpToolMap;
+        version.incrementAndGet();
+    }
+
+    /**
+     * 获取工具 schema 缓存，工具集合未变更时直接返回，否则调用 builder 重建
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getOrBuildSchema(String key, Supplier<T> builder) {
+        long currentVersion = version.get();
+        SchemaCache cache = schemaCache.get(key);
+        if (cache != null && cache.version == currentVersion) {
+            return (T) cache.value;
+        }
+        T value = builder.get();
+        schemaCache.put(key, new SchemaCache(currentVersion, value));
+        return value;
     }
 
     /** 获取 MCP 工具定义 */
@@ -88,12 +129,51 @@ public class ToolCollection {
         return null;
     }
 
-    /** 更新数字员工命名映射 */
-    public void updateDigitalEmployee(JSONObject digitalEmployee) {
-        if (digitalEmployee == null) {
-            log.error("requestId:{} setDigitalEmployee: {}", agentContext.getRequestId(), digitalEmployee);
+    /**
+     * 在指定任务的数字员工命名下执行工具，工具执行线程内可通过 currentDigitalEmployees 获取
+     */
+    public Object execute(String name, Object toolInput, DigitalEmployees digitalEmployees) {
+        if (digitalEmployees == null) {
+            return execute(name, toolInput);
+        }
+        DigitalEmployees previous = currentDigitalEmployees.get();
+        currentDigitalEmployees.set(digitalEmployees);
+        try {
+            return execute(name, toolInput);
+        } finally {
+            if (previous == null) {
+                currentDigitalEmployees.remove();
+            } else {
+                currentDigitalEmployees.set(previous);
+            }
+        }
+    }
+
+    /**
+     * 获取任务的数字员工命名：已缓存时直接返回，否则调用 generator 异步生成；生成失败的命名不缓存
+     */
+    public DigitalEmployees getOrGenerateDigitalEmployees(String task, Supplier<CompletableFuture<JSONObject>> generator) {
+        boolean[] created = new boolean[1];
+        DigitalEmployees digitalEmployees = digitalEmployeeCache.computeIfAbsent(task, k -> {
+            created[0] = true;
+            return new DigitalEmployees(k, generator.get());
+        });
+        if (created[0]) {
+            digitalEmployees.getNaming().whenComplete((employees, e) -> {
+                if (employees == null) {
+                    digitalEmployeeCache.remove(task, digitalEmployees);
+                }
+            });
         }
-        setDigitalEmployees(digitalEmployee);
+        return digitalEmployees;
+    }
+
+    /**
+     * 当前线程所执行工具的任务命名；工具内的异步回调需在发起调用时获取并持有
+     */
+    public DigitalEmployees currentDigitalEmployees() {
+        DigitalEmployees digitalEmployees = currentDigitalEmployees.get();
+        return digitalEmployees == null ? DigitalEmployees.NONE : digitalEmployees;
     }
 
     /** 获取特定工具的数字员工名称 */
@@ -101,11 +181,24 @@ public class ToolCollection {
         if (StringUtils.isEmpty(toolName)) {
             return null;
         }
+        return currentDigitalEmployees().get(toolName);
+    }
 
-        if (digitalEmployees == null) {
-            return null;
-        }
+    /** 当前线程所执行工具的任务 */
+    public String getCurrentTask() {
+        return currentDigitalEmployees().getTask();
+    }
 
-        return (String) digitalEmployees.get(toolName);
+    /**
+     * 带版本号的 schema 缓存项
+     */
+    private static class SchemaCache {
+        private final long version;
+        private final Object value;
+
+        private SchemaCache(long version, Object value) {
+            this.version = version;
+            this.value = value;
+        }
     }
 }
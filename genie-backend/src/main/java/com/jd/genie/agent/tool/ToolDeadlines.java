@@ -0,0 +1,145 @@
+package com.jd.genie.agent.tool;
+
+import com.jd.genie.agent.dto.tool.ToolResult;
+import com.jd.genie.agent.util.SpringContextHolder;
+import com.jd.genie.config.GenieConfig;
+import org.springframework.context.ApplicationContext;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 工具调用截止时间
+ * - 每个工具维护最近 WINDOW 次调用耗时，样本数达到 min_samples 后超时时间取 p99 * factor，并限制在 [min, 上限] 内
+ * - 样本不足时使用上限：autobots.autoagent.tool.timeout.tools 中按工具配置的值，未配置时为 timeout.max
+ * - 超时的调用按实际耗时计入样本，慢工具的超时时间随之放宽，不会反复误判
+ * - 单步内全部工具调用共享 timeout.step 截止时间
+ */
+public class ToolDeadlines {
+    private static final int WINDOW = 256;
+    private static final int DEFAULT_MAX_SECONDS = 600;
+    private static final int DEFAULT_MIN_SECONDS = 30;
+    private static final int DEFAULT_STEP_SECONDS = 900;
+    private static final int DEFAULT_MIN_SAMPLES = 20;
+    private static final double DEFAULT_FACTOR = 3.0;
+
+    private static final Map<String, LatencyWindow> windows = new ConcurrentHashMap<>();
+
+    private ToolDeadlines() {
+    }
+
+    /**
+     * 单个工具调用的超时时间（毫秒）
+     */
+    public static long toolTimeoutMillis(String toolName) {
+        GenieConfig genieConfig = config();
+        long ceiling = TimeUnit.SECONDS.toMillis(ceilingSeconds(genieConfig, toolName));
+        LatencyWindow window = windows.get(toolName);
+        int minSamples = genieConfig == null ? DEFAULT_MIN_SAMPLES : genieConfig.getToolTimeoutMinSamples();
+        if (window == null || window.size() < minSamples) {
+            return ceiling;
+        }
+        double factor = genieConfig == null ? DEFAULT_FACTOR : genieConfig.getToolTimeoutFactor();
+        long floor = TimeUnit.SECONDS.toMillis(genieConfig == null ? DEFAULT_MIN_SECONDS : genieConfig.getToolTimeoutMin());
+        long adaptive = (long) (window.percentile(0.99) * factor);
+        return Math.min(ceiling, Math.max(Math.min(floor, ceiling), adaptive));
+    }
+
+    /**
+     * 单步全部工具调用的超时时间（毫秒）
+     */
+    public static long stepTimeoutMillis() {
+        GenieConfig genieConfig = config();
+        return TimeUnit.SECONDS.toMillis(genieConfig == null ? DEFAULT_STEP_SECONDS : genieConfig.getToolStepTimeout());
+    }
+
+    /**
+     * 记录一次工具调用结果；成功和超时计入耗时样本，快速失败不计入，避免超时时间被拉低
+     */
+    public static void record(ToolResult result) {
+        if (result == null || result.getToolName() == null || result.isCached()) {
+            return;
+        }
+        LatencyWindow window = windows.computeIfAbsent(result.getToolName(), k -> new LatencyWindow());
+        window.count(result.getStatus());
+        if ((result.isSuccess() || result.isTimeout()) && result.getExecutionTime() != null) {
+            window.add(result.getExecutionTime());
+        }
+    }
+
+    public static Map<String, Object> stats() {
+        Map<String, Object> stats = new TreeMap<>();
+        windows.forEach((toolName, window) -> {
+            Map<String, Object> item = new LinkedHashMap<>(window.counters());
+            item.put("samples", window.size());
+            item.put("p50Ms", window.percentile(0.5));
+            item.put("p99Ms", window.percentile(0.99));
+            item.put("timeoutMs", toolTimeoutMillis(toolName));
+            stats.put(toolName, item);
+        });
+        return stats;
+    }
+
+    private static int ceilingSeconds(GenieConfig genieConfig, String toolName) {
+        if (genieConfig == null) {
+            return DEFAULT_MAX_SECONDS;
+        }
+        Integer configured = genieConfig.getToolTimeoutMap().get(toolName);
+        return configured != null ? configured : genieConfig.getToolTimeoutMax();
+    }
+
+    private static GenieConfig config() {
+        ApplicationContext context = SpringContextHolder.getApplicationContext();
+        return context == null ? null : context.getBean(GenieConfig.class);
+    }
+
+    /**
+     * 最近 WINDOW 次耗时的环形缓冲与各状态计数
+     */
+    private static class LatencyWindow {
+        private final long[] samples = new long[WINDOW];
+        private int next;
+        private int size;
+        private final Map<ToolResult.ExecutionStatus, AtomicLong> statusCounts = new ConcurrentHashMap<>();
+
+        synchronized void add(long millis) {
+            samples[next] = millis;
+            next = (next + 1) % WINDOW;
+            size = Math.min(size + 1, WINDOW);
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized long percentile(double p) {
+            if (size == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(p * size) - 1;
+            return sorted[Math.max(0, Math.min(size - 1, index))];
+        }
+
+        void count(ToolResult.ExecutionStatus status) {
+            if (status != null) {
+                statusCounts.computeIfAbsent(status, k -> new AtomicLong()).incrementAndGet();
+            }
+        }
+
+        Map<String, Object> counters() {
+            Map<String, Object> counters = new LinkedHashMap<>();
+            for (ToolResult.ExecutionStatus status : ToolResult.ExecutionStatus.values()) {
+                AtomicLong count = statusCounts.get(status);
+                counters.put(status.name().toLowerCase(), count == null ? 0L : count.get());
+            }
+            return counters;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.jd.genie.agent.tool;
+
+import com.jd.genie.agent.dto.tool.ToolResult;
+import okhttp3.Call;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 单次工具调用的执行句柄
+ * - 执行期间绑定到执行线程，工具内部发起的 OkHttp Call 通过 track 登记
+ * - cancel 时取消已登记的 Call 并中断执行线程，之后再登记的 Call 立即取消
+ */
+public class ToolExecution {
+    private static final ThreadLocal<ToolExecution> CURRENT = new ThreadLocal<>();
+
+    private final String toolName;
+    private final long startNanos = System.nanoTime();
+    private final List<Call> calls = new ArrayList<>();
+    private Thread runner;
+    private boolean cancelled;
+    private volatile Future<ToolResult> future;
+
+    public ToolExecution(String toolName) {
+        this.toolName = toolName;
+    }
+
+    /**
+     * 登记当前线程所属工具调用发起的 Call，不在工具调用中时原样返回
+     */
+    public static Call track(Call call) {
+        ToolExecution execution = CURRENT.get();
+        if (execution != null) {
+            execution.register(call);
+        }
+        return call;
+    }
+
+    /**
+     * 在当前线程执行工具调用，执行期间绑定本句柄；已取消时直接返回取消结果
+     */
+    public ToolResult run(Supplier<ToolResult> task) {
+        synchronized (this) {
+            if (cancelled) {
+                return ToolResult.cancelled(toolName, null);
+            }
+            runner = Thread.currentThread();
+        }
+        CURRENT.set(this);
+        try {
+            return task.get();
+        } finally {
+            CURRENT.remove();
+            synchronized (this) {
+                runner = null;
+            }
+        }
+    }
+
+    private synchronized void register(Call call) {
+        if (cancelled) {
+            call.cancel();
+            return;
+        }
+        calls.add(call);
+    }
+
+    /**
+     * 取消工具调用：取消底层 Call 并中断执行线程，重复调用无副作用
+     */
+    public synchronized void cancel() {
+        if (cancelled) {
+            return;
+        }
+        cancelled = true;
+        for (Call call : calls) {
+            call.cancel();
+        }
+        if (runner != null) {
+            runner.interrupt();
+        }
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    public String getToolName() {
+        return toolName;
+    }
+
+    public long elapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    public Future<ToolResult> getFuture() {
+        return future;
+    }
+
+    public void setFuture(Future<ToolResult> future) {
+        this.future = future;
+    }
+}
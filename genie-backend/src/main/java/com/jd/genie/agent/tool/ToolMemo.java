@@ -0,0 +1,245 @@
+package com.jd.genie.agent.tool;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.jd.genie.agent.agent.AgentContext;
+import com.jd.genie.agent.dto.tool.ToolResult;
+import com.jd.genie.agent.printer.PrinterRecorder;
+import com.jd.genie.agent.util.SpringContextHolder;
+import com.jd.genie.config.GenieConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 请求内工具结果复用（每个请求一个实例，挂在 AgentContext 上，并行子任务共享）
+ * - key 为工具名 + 规范化参数（对象字段按名称排序），只复用配置中只读工具的成功结果
+ * - 相同调用并发进行时后到者等待先到者的结果，不重复执行；先到者未成功时后到者自行执行
+ * - 同名工具的其他调用（如 file_tool upload）使该工具已复用的结果失效，会产生文件的工具执行前后使 file_tool 的结果失效
+ * - 执行期间输出的前端事件一并记录，复用时重放；在回调线程输出事件或有其他副作用的工具（如 deep_search 上传文件）不应配置为可复用
+ * - 调用签名同时用于智能体统计重复调用、识别循环
+ */
+@Slf4j
+public class ToolMemo {
+    private static final ObjectMapper CANONICAL_MAPPER = new ObjectMapper()
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+    private static final String FILE_TOOL = "file_tool";
+    // 执行后可能产生或覆盖文件的工具
+    private static final Set<String> FILE_WRITERS = new HashSet<>(Arrays.asList(FILE_TOOL, "code_interpreter", "report_tool", "deep_search"));
+
+    // 复用统计
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong invalidations = new AtomicLong();
+    private static final AtomicLong duplicates = new AtomicLong();
+    private static final AtomicLong loops = new AtomicLong();
+
+    private final AgentContext context;
+    private final String requestId;
+    // 工具名 -> 可复用的 command，为空表示该工具全部可复用
+    private final Map<String, Set<String>> memoTools;
+    private final Map<String, CompletableFuture<Entry>> results = new ConcurrentHashMap<>();
+    // 失效版本，执行期间发生失效的结果不保留
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicLong requestHits = new AtomicLong();
+
+    private ToolMemo(AgentContext context, Map<String, Set<String>> memoTools) {
+        this.context = context;
+        this.requestId = context.getRequestId();
+        this.memoTools = memoTools;
+    }
+
+    /**
+     * 复用的结果及执行期间输出的前端事件
+     */
+    private static class Entry {
+        private final ToolResult result;
+        private final List<PrinterRecorder.Event> events;
+
+        private Entry(ToolResult result, List<PrinterRecorder.Event> events) {
+            this.result = result;
+            this.events = events;
+        }
+    }
+
+    /**
+     * 获取请求对应的工具结果复用表，未开启时返回 null
+     */
+    public static ToolMemo of(AgentContext context) {
+        GenieConfig genieConfig = SpringContextHolder.getApplicationContext().getBean(GenieConfig.class);
+        if (!"1".equals(genieConfig.getToolMemoEnable())) {
+            return null;
+        }
+        synchronized (context) {
+            if (context.getToolMemo() == null) {
+                context.setToolMemo(new ToolMemo(context, parseTools(genieConfig.getToolMemoTools())));
+            }
+            return context.getToolMemo();
+        }
+    }
+
+    /**
+     * 解析可复用工具配置：file_tool:get
+     */
+    static Map<String, Set<String>> parseTools(String config) {
+        Map<String, Set<String>> tools = new HashMap<>();
+        for (String item : StringUtils.split(StringUtils.defaultString(config), ',')) {
+            String name = StringUtils.substringBefore(item, ":").trim();
+            String command = item.contains(":") ? StringUtils.substringAfter(item, ":").trim() : "";
+            if (name.isEmpty()) {
+                continue;
+            }
+            Set<String> commands = tools.computeIfAbsent(name, k -> new HashSet<>());
+            if (!command.isEmpty()) {
+                commands.add(command);
+            }
+        }
+        return tools;
+    }
+
+    /**
+     * 执行工具调用：可复用的调用先查复用表，其他调用使同名工具（产生文件的工具还有 file_tool）已复用的结果失效
+     */
+    public ToolResult execute(String name, Object args, Supplier<ToolResult> call) {
+        if (!isMemoizable(name, args)) {
+            // 执行前后各失效一次，执行期间开始的读取不会缓存写入前的内容
+            invalidateAffected(name);
+            try {
+                return call.get();
+            } finally {
+                invalidateAffected(name);
+            }
+        }
+
+        String key = key(name, args);
+        CompletableFuture<Entry> created = new CompletableFuture<>();
+        CompletableFuture<Entry> existing = results.putIfAbsent(key, created);
+        if (existing != null) {
+            Entry previous = await(existing);
+            if (Objects.nonNull(previous) && Objects.nonNull(previous.result) && previous.result.isSuccess()) {
+                hits.incrementAndGet();
+                log.info("{} tool memo hit {} {} request hits {}", requestId, name, args, requestHits.incrementAndGet());
+                PrinterRecorder.replay(context.getPrinter(), previous.events);
+                ToolResult toolResult = ToolResult.success(name, previous.result.getResult(), args);
+                toolResult.setCached(true);
+                toolResult.setExecutionTime(0L);
+                return toolResult;
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                return ToolResult.cancelled(name, args);
+            }
+            return call.get();
+        }
+
+        misses.incrementAndGet();
+        long startVersion = version.get();
+        List<PrinterRecorder.Event> events = new ArrayList<>();
+        ToolResult toolResult = null;
+        try {
+            toolResult = PrinterRecorder.record(events, call);
+            return toolResult;
+        } finally {
+            if (Objects.isNull(toolResult) || !toolResult.isSuccess() || version.get() != startVersion) {
+                results.remove(key, created);
+            }
+            created.complete(new Entry(toolResult, events));
+        }
+    }
+
+    private Entry await(CompletableFuture<Entry> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    private boolean isMemoizable(String name, Object args) {
+        Set<String> commands = memoTools.get(name);
+        if (commands == null) {
+            return false;
+        }
+        if (commands.isEmpty()) {
+            return true;
+        }
+        return args instanceof Map && commands.contains(String.valueOf(((Map<?, ?>) args).get("command")));
+    }
+
+    private void invalidateAffected(String name) {
+        if (memoTools.containsKey(name)) {
+            invalidate(name);
+        }
+        if (!FILE_TOOL.equals(name) && FILE_WRITERS.contains(name) && memoTools.containsKey(FILE_TOOL)) {
+            invalidate(FILE_TOOL);
+        }
+    }
+
+    private void invalidate(String name) {
+        version.incrementAndGet();
+        String prefix = name + ":";
+        if (results.keySet().removeIf(key -> key.startsWith(prefix))) {
+            invalidations.incrementAndGet();
+            log.info("{} tool memo invalidated {}", requestId, name);
+        }
+    }
+
+    /**
+     * 调用签名：工具名 + 规范化参数，参数字段顺序或空白不同的相同调用得到相同签名
+     */
+    public static String signature(String name, String arguments) {
+        try {
+            return key(name, CANONICAL_MAPPER.readValue(arguments, Object.class));
+        } catch (Exception e) {
+            return name + ":" + arguments;
+        }
+    }
+
+    private static String key(String name, Object args) {
+        try {
+            return name + ":" + CANONICAL_MAPPER.writeValueAsString(args);
+        } catch (JsonProcessingException e) {
+            return name + ":" + args;
+        }
+    }
+
+    /**
+     * 记录一次重复调用（loop 为 true 表示已达到循环上限）
+     */
+    public static void recordDuplicate(boolean loop) {
+        duplicates.incrementAndGet();
+        if (loop) {
+            loops.incrementAndGet();
+        }
+    }
+
+    public static Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        stats.put("hits", hitCount);
+        stats.put("misses", misses.get());
+        stats.put("hitRate", total == 0 ? 0 : Math.round(hitCount * 1000.0 / total) / 1000.0);
+        stats.put("invalidations", invalidations.get());
+        stats.put("duplicates", duplicates.get());
+        stats.put("loops", loops.get());
+        return stats;
+    }
+}
@@ -6,6 +6,8 @@ import com.jd.genie.agent.dto.CodeInterpreterRequest;
 import com.jd.genie.agent.dto.CodeInterpreterResponse;
 import com.jd.genie.agent.dto.File;
 import com.jd.genie.agent.tool.BaseTool;
+import com.jd.genie.agent.tool.DigitalEmployees;
+import com.jd.genie.agent.tool.ToolExecution;
 import com.jd.genie.agent.util.SpringContextHolder;
 import com.jd.genie.config.GenieConfig;
 import lombok.Data;
@@ -91,6 +93,8 @@ public class CodeInterpreterTool implements BaseTool {
      */
     public CompletableFuture<String> callCodeAgentStream(CodeInterpreterRequest codeRequest) {
         CompletableFuture<String> future = new CompletableFuture<>();
+        // 回调线程中无法获取工具执行线程的命名，发起调用时持有
+        DigitalEmployees digitalEmployees = agentContext.getToolCollection().currentDigitalEmployees();
         try {
             OkHttpClient client = new OkHttpClient.Builder()
                     .connectTimeout(60, TimeUnit.SECONDS) // 设置连接超时时间为 60 秒
@@ -113,7 +117,7 @@ public class CodeInterpreterTool implements BaseTool {
                     .post(body);
             Request request = requestBuilder.build();
 
-            client.newCall(request).enqueue(new Callback() {
+            ToolExecution.track(client.newCall(request)).enqueue(new Callback() {
                 @Override
                 public void onFailure(Call call, IOException e) {
                     log.error("{} code_interpreter on failure", agentContext.getRequestId(), e);
@@ -161,9 +165,9 @@ public class CodeInterpreterTool implements BaseTool {
                                         agentContext.getTaskProductFiles().add(file);
                                     }
                                 }
-                                String digitalEmployee = agentContext.getToolCollection().getDigitalEmployee(getName());
+                                String digitalEmployee = digitalEmployees.get(getName());
                                 log.info("requestId:{} task:{} toolName:{} digitalEmployee:{}", agentContext.getRequestId(),
-                                        agentContext.getToolCollection().getCurrentTask(), getName(), digitalEmployee);
+                                        digitalEmployees.getTask(), getName(), digitalEmployee);
                                 agentContext.getPrinter().send("code", codeResponse, digitalEmployee);
                             }
                         }
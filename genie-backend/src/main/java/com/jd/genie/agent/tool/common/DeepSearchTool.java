@@ -8,6 +8,8 @@ import com.jd.genie.agent.dto.DeepSearchRequest;
 import com.jd.genie.agent.dto.DeepSearchrResponse;
 import com.jd.genie.agent.dto.FileRequest;
 import com.jd.genie.agent.tool.BaseTool;
+import com.jd.genie.agent.tool.DigitalEmployees;
+import com.jd.genie.agent.tool.ToolExecution;
 import com.jd.genie.agent.util.SpringContextHolder;
 import com.jd.genie.agent.util.StringUtil;
 import com.jd.genie.config.GenieConfig;
@@ -106,6 +108,8 @@ public class DeepSearchTool implements BaseTool {
      */
     public CompletableFuture<String> callDeepSearchStream(DeepSearchRequest searchRequest) {
         CompletableFuture<String> future = new CompletableFuture<>();
+        // 回调线程中无法获取工具执行线程的命名，发起调用时持有
+        DigitalEmployees digitalEmployees = agentContext.getToolCollection().currentDigitalEmployees();
         try {
             OkHttpClient client = new OkHttpClient.Builder()
                     .connectTimeout(60, TimeUnit.SECONDS) // 设置连接超时时间为 60 秒
@@ -132,7 +136,7 @@ public class DeepSearchTool implements BaseTool {
             int firstInterval = Integer.parseInt(interval[0]);
             int sendInterval = Integer.parseInt(interval[1]);
 
-            client.newCall(request).enqueue(new Callback() {
+            ToolExecution.track(client.newCall(request)).enqueue(new Callback() {
                 @Override
                 public void onFailure(Call call, IOException e) {
                     log.error("{} deep_search on failure", agentContext.getRequestId(), e);
@@ -155,7 +159,6 @@ public class DeepSearchTool implements BaseTool {
                         StringBuilder stringBuilderAll = new StringBuilder();
                         String line;
                         BufferedReader reader = new BufferedReader(new InputStreamReader(responseBody.byteStream()));
-                        String digitalEmployee = agentContext.getToolCollection().getDigitalEmployee(getName());
                         String result = "搜索结果为空"; // 默认输出
                         String messageId = "";
                         while ((line = reader.readLine()) != null) {
@@ -195,7 +198,7 @@ public class DeepSearchTool implements BaseTool {
                                     result = searchResponse.getAnswer().
                                             substring(0, Math.min(searchResponse.getAnswer().length(), genieConfig.getDeepSearchToolMessageTruncateLen()));
 
-                                    agentContext.getPrinter().send(messageId, "deep_search", searchResponse, digitalEmployee, true);
+                                    agentContext.getPrinter().send(messageId, "deep_search", searchResponse, digitalEmployees.get(getName()), true);
 
                                 } else {
                                     Map<String, Object> contentMap = new HashMap<>();
@@ -206,10 +209,10 @@ public class DeepSearchTool implements BaseTool {
                                     if ("extend".equals(searchResponse.getMessageType())) {
                                         messageId = StringUtil.getUUID();
                                         searchResponse.setSearchFinish(false);
-                                        agentContext.getPrinter().send(messageId, "deep_search", searchResponse, digitalEmployee, true);
+                                        agentContext.getPrinter().send(messageId, "deep_search", searchResponse, digitalEmployees.get(getName()), true);
                                     } else if ("search".equals(searchResponse.getMessageType())) {
                                         searchResponse.setSearchFinish(true);
-                                        agentContext.getPrinter().send(messageId, "deep_search", searchResponse, digitalEmployee, true);
+                                        agentContext.getPrinter().send(messageId, "deep_search", searchResponse, digitalEmployees.get(getName()), true);
                                         FileRequest fileRequest = FileRequest.builder()
                                                 .requestId(agentContext.getRequestId())
                                                 .fileName(searchResponse.getQuery() + "_search_result.txt")
@@ -225,7 +228,7 @@ public class DeepSearchTool implements BaseTool {
                                         stringBuilderAll.append(searchResponse.getAnswer());
                                         if (index == firstInterval || index % sendInterval == 0) {
                                             searchResponse.setAnswer(stringBuilderIncr.toString());
-                                            agentContext.getPrinter().send(messageId, "deep_search", searchResponse, digitalEmployee, false);
+                                            agentContext.getPrinter().send(messageId, "deep_search", searchResponse, digitalEmployees.get(getName()), false);
                                             stringBuilderIncr.setLength(0);
                                         }
                                         index++;
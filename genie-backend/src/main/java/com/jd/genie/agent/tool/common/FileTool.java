@@ -8,6 +8,7 @@ import com.jd.genie.agent.dto.File;
 import com.jd.genie.agent.dto.FileRequest;
 import com.jd.genie.agent.dto.FileResponse;
 import com.jd.genie.agent.tool.BaseTool;
+import com.jd.genie.agent.tool.ToolExecution;
 import com.jd.genie.agent.util.SpringContextHolder;
 import com.jd.genie.agent.util.StringUtil;
 import com.jd.genie.config.GenieConfig;
@@ -126,7 +127,7 @@ public class FileTool implements BaseTool {
                 .build();
         try {
             log.info("{} file tool upload request {}", agentContext.getRequestId(), JSON.toJSONString(fileRequest, SerializerFeature.PrettyFormat));
-            Response response = client.newCall(request).execute();
+            Response response = ToolExecution.track(client.newCall(request)).execute();
             if (!response.isSuccessful() || response.body() == null) {
                 log.error("{} upload file faied", agentContext.getRequestId());
                 return null;
@@ -205,7 +206,7 @@ public class FileTool implements BaseTool {
                 .build();
         try {
             log.info("{} file tool get request {}", agentContext.getRequestId(), JSON.toJSONString(getFileRequest, SerializerFeature.PrettyFormat));
-            Response response = client.newCall(request).execute();
+            Response response = ToolExecution.track(client.newCall(request)).execute();
             if (!response.isSuccessful() || response.body() == null) {
                 String errMessage = "获取文件失败 " + fileRequest.getFileName();
                 return errMessage;
@@ -258,7 +259,7 @@ public class FileTool implements BaseTool {
         Request request = new Request.Builder()
                 .url(url)
                 .build();
-        try (Response response = client.newCall(request).execute()) {
+        try (Response response = ToolExecution.track(client.newCall(request)).execute()) {
             if (response.isSuccessful() && response.body() != null) {
                 return response.body().string();
             } else {
@@ -66,6 +66,7 @@ public class PlanningTool implements BaseTool {
         properties.put("step_index", getStepIndexProperty());
         properties.put("step_status", getStepStatusProperty());
         properties.put("step_notes", getStepNotesProperty());
+        properties.put("dependencies", getDependenciesProperty());
         return properties;
     }
 
@@ -122,6 +123,18 @@ public class PlanningTool implements BaseTool {
     }
 
 
+    private Map<String, Object> getDependenciesProperty() {
+        Map<String, Object> indexes = new HashMap<>();
+        indexes.put("type", "array");
+        indexes.put("items", Map.of("type", "integer"));
+        Map<String, Object> dependencies = new HashMap<>();
+        dependencies.put("type", "array");
+        dependencies.put("items", indexes);
+        dependencies.put("description", "Dependencies of each step (0-based indexes of earlier steps it needs), same length as steps. "
+                + "Steps without dependencies between them run in parallel. Optional for create and update command.");
+        return dependencies;
+    }
+
     /*
       {
          command=create,
@@ -166,7 +179,7 @@ public class PlanningTool implements BaseTool {
             throw new IllegalStateException("A plan already exists. Delete the current plan first.");
         }
 
-        plan = Plan.create(title, steps);
+        plan = Plan.create(title, steps, parseDependencies(params.get("dependencies")));
         return "我已创建plan";
     }
 
@@ -178,7 +191,7 @@ public class PlanningTool implements BaseTool {
             throw new IllegalStateException("No plan exists. Create a plan first.");
         }
 
-        plan.update(title, steps);
+        plan.update(title, steps, parseDependencies(params.get("dependencies")));
         return "我已更新plan";
     }
 
@@ -211,6 +224,30 @@ public class PlanningTool implements BaseTool {
         return "我已更新plan为完成状态";
     }
 
+    /**
+     * 解析步骤依赖参数，格式不符的元素忽略，未提供时返回 null（按执行顺序推断）
+     */
+    private List<List<Integer>> parseDependencies(Object value) {
+        if (!(value instanceof List)) {
+            return null;
+        }
+        List<List<Integer>> dependencies = new ArrayList<>();
+        for (Object item : (List<?>) value) {
+            List<Integer> indexes = new ArrayList<>();
+            if (item instanceof List) {
+                for (Object index : (List<?>) item) {
+                    if (index instanceof Number) {
+                        indexes.add(((Number) index).intValue());
+                    }
+                }
+            } else if (item instanceof Number) {
+                indexes.add(((Number) item).intValue());
+            }
+            dependencies.add(indexes);
+        }
+        return dependencies;
+    }
+
     public void stepPlan() {
         plan.stepPlan();
     }
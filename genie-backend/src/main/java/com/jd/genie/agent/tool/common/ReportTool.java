@@ -6,6 +6,8 @@ import com.jd.genie.agent.dto.CodeInterpreterRequest;
 import com.jd.genie.agent.dto.CodeInterpreterResponse;
 import com.jd.genie.agent.dto.File;
 import com.jd.genie.agent.tool.BaseTool;
+import com.jd.genie.agent.tool.DigitalEmployees;
+import com.jd.genie.agent.tool.ToolExecution;
 import com.jd.genie.agent.util.SpringContextHolder;
 import com.jd.genie.agent.util.StringUtil;
 import com.jd.genie.config.GenieConfig;
@@ -113,6 +115,8 @@ public class ReportTool implements BaseTool {
      */
     public CompletableFuture<String> callCodeAgentStream(CodeInterpreterRequest codeRequest) {
         CompletableFuture<String> future = new CompletableFuture<>();
+        // 回调线程中无法获取工具执行线程的命名，发起调用时持有
+        DigitalEmployees digitalEmployees = agentContext.getToolCollection().currentDigitalEmployees();
         try {
             OkHttpClient client = new OkHttpClient.Builder()
                     .connectTimeout(60, TimeUnit.SECONDS) // 设置连接超时时间为 1 分钟
@@ -138,7 +142,7 @@ public class ReportTool implements BaseTool {
             String[] interval = genieConfig.getMessageInterval().getOrDefault("report", "1,4").split(",");
             int firstInterval = Integer.parseInt(interval[0]);
             int sendInterval = Integer.parseInt(interval[1]);
-            client.newCall(request).enqueue(new Callback() {
+            ToolExecution.track(client.newCall(request)).enqueue(new Callback() {
                 @Override
                 public void onFailure(Call call, IOException e) {
                     log.error("{} report_tool on failure", agentContext.getRequestId(), e);
@@ -164,8 +168,6 @@ public class ReportTool implements BaseTool {
                         StringBuilder stringBuilderIncr = new StringBuilder();
                         String line;
                         String messageId = StringUtil.getUUID();
-                        // 获取数字人名称
-                        String digitalEmployee = agentContext.getToolCollection().getDigitalEmployee(getName());
                         BufferedReader reader = new BufferedReader(new InputStreamReader(responseBody.byteStream()));
                         while ((line = reader.readLine()) != null) {
                             if (line.startsWith("data: ")) {
@@ -196,12 +198,12 @@ public class ReportTool implements BaseTool {
                                             agentContext.getTaskProductFiles().add(file);
                                         }
                                     }
-                                    agentContext.getPrinter().send(messageId, codeRequest.getFileType(), codeResponse, digitalEmployee, true);
+                                    agentContext.getPrinter().send(messageId, codeRequest.getFileType(), codeResponse, digitalEmployees.get(getName()), true);
                                 } else {
                                     stringBuilderIncr.append(codeResponse.getData());
                                     if (index == firstInterval || index % sendInterval == 0) {
                                         codeResponse.setData(stringBuilderIncr.toString());
-                                        agentContext.getPrinter().send(messageId, codeRequest.getFileType(), codeResponse, digitalEmployee, false);
+                                        agentContext.getPrinter().send(messageId, codeRequest.getFileType(), codeResponse, digitalEmployees.get(getName()), false);
                                         stringBuilderIncr.setLength(0);
                                     }
                                 }
@@ -0,0 +1,169 @@
+package com.jd.genie.agent.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 有界执行器
+ * - 并发数由信号量显式限制，与底层线程实现无关
+ * - JDK 21+ 且开启时每个任务一个虚拟线程，否则使用按需创建的平台线程（线程数不超过并发上限）
+ * - 达到上限时按策略处理：REJECT 抛出 RejectedExecutionException，CALLER_RUNS 在调用线程执行，任务不会被静默丢弃
+ */
+@Slf4j
+public class BoundedExecutor {
+
+    /**
+     * 达到并发上限时的处理策略
+     */
+    public enum Saturation {
+        REJECT,
+        CALLER_RUNS
+    }
+
+    private final String name;
+    private final int maxConcurrency;
+    private final Saturation saturation;
+    private final Semaphore permits;
+    private final ExecutorService delegate;
+    private final boolean virtual;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong callerRuns = new AtomicLong();
+    private final AtomicInteger peakActive = new AtomicInteger();
+
+    public BoundedExecutor(String name, int maxConcurrency, Saturation saturation, boolean preferVirtual) {
+        this.name = name;
+        this.maxConcurrency = maxConcurrency;
+        this.saturation = saturation;
+        this.permits = new Semaphore(maxConcurrency);
+        ExecutorService virtualExecutor = preferVirtual ? newVirtualThreadExecutor(name) : null;
+        this.virtual = virtualExecutor != null;
+        this.delegate = virtual ? virtualExecutor : newPlatformThreadExecutor(name);
+        log.info("init executor {} maxConcurrency {} saturation {} virtual {}", name, maxConcurrency, saturation, virtual);
+    }
+
+    /**
+     * 提交任务，达到并发上限时按 saturation 处理
+     *
+     * @throws RejectedExecutionException REJECT 策略下达到上限
+     */
+    public void execute(Runnable task) {
+        if (!tryExecute(task)) {
+            if (saturation == Saturation.CALLER_RUNS) {
+                callerRuns.incrementAndGet();
+                run(task);
+                return;
+            }
+            rejected.incrementAndGet();
+            throw new RejectedExecutionException(name + " is saturated, max concurrency " + maxConcurrency);
+        }
+    }
+
+    /**
+     * 提交任务，达到并发上限时总是拒绝，不在调用线程执行（调用方需要任务与自己并发、可被超时取消时使用）
+     *
+     * @throws RejectedExecutionException 达到上限
+     */
+    public void executeOrReject(Runnable task) {
+        if (!tryExecute(task)) {
+            rejected.incrementAndGet();
+            throw new RejectedExecutionException(name + " is saturated, max concurrency " + maxConcurrency);
+        }
+    }
+
+    /**
+     * 尝试提交任务，达到并发上限时返回 false，不执行也不计入拒绝
+     */
+    public boolean tryExecute(Runnable task) {
+        if (!permits.tryAcquire()) {
+            return false;
+        }
+        peakActive.accumulateAndGet(maxConcurrency - permits.availablePermits(), Math::max);
+        try {
+            delegate.execute(() -> {
+                try {
+                    run(task);
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            rejected.incrementAndGet();
+            throw e;
+        }
+        return true;
+    }
+
+    private void run(Runnable task) {
+        submitted.incrementAndGet();
+        try {
+            task.run();
+            completed.incrementAndGet();
+        } catch (Throwable e) {
+            failed.incrementAndGet();
+            log.error("{} task execute error", name, e);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("virtual", virtual);
+        stats.put("maxConcurrency", maxConcurrency);
+        stats.put("saturation", saturation.name());
+        stats.put("active", maxConcurrency - permits.availablePermits());
+        stats.put("peakActive", peakActive.get());
+        stats.put("submitted", submitted.get());
+        stats.put("completed", completed.get());
+        stats.put("failed", failed.get());
+        stats.put("rejected", rejected.get());
+        stats.put("callerRuns", callerRuns.get());
+        return stats;
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * JDK 21+ 通过反射创建虚拟线程执行器，项目仍以 JDK 17 编译
+     */
+    private static ExecutorService newVirtualThreadExecutor(String name) {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method nameMethod = builderClass.getMethod("name", String.class, long.class);
+            builder = nameMethod.invoke(builder, name + "-", 0L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, factory);
+        } catch (NoSuchMethodException | ClassNotFoundException e) {
+            return null;
+        } catch (Exception e) {
+            log.warn("create virtual thread executor {} failed, fallback to platform threads", name, e);
+            return null;
+        }
+    }
+
+    private static ExecutorService newPlatformThreadExecutor(String name) {
+        ThreadFactory threadFactory = new BasicThreadFactory.Builder().namingPattern(name + "-%d").daemon(true).build();
+        // 线程数由信号量限制，这里不再设上限也不排队
+        return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(), threadFactory);
+    }
+}
@@ -0,0 +1,802 @@
+package com.jd.genie.agent.util;
+
+import com.jd.genie.agent.dto.File;
+import com.jd.genie.agent.dto.Message;
+import com.jd.genie.agent.dto.Plan;
+import com.jd.genie.agent.dto.RunCheckpoint;
+import com.jd.genie.agent.dto.tool.ToolCall;
+import com.jd.genie.agent.enums.RoleType;
+import com.jd.genie.config.GenieConfig;
+import com.jd.genie.model.req.AgentRequest;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.FileSystems;
+import java.nio.file.OpenOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * 运行检查点日志
+ * - 每个请求一个追加写文件，记录格式为 [长度][CRC32][二进制载荷]
+ * - 记忆按增量记录：与上一条记录相同的前缀只记条数，只写新增消息（记忆被压缩或清理后自然退化为全量）
+ * - 编码在调用线程完成，写盘由单个写线程按 flush_interval_ms 攒批，每批每个文件只 fsync 一次
+ * - 读取时逐条校验 CRC，遇到截断或损坏的尾部即停止并截掉，续写从最后一条有效记录之后开始
+ * - 失败或中断的运行保留检查点供恢复，超过 ttl_hours 未恢复的由写线程在启动时与每小时清理
+ * - 检查点包含完整对话与工具输出，POSIX 文件系统上目录与文件只对属主可读写（rwx------ / rw-------）
+ * 进程崩溃最多丢失最近一个刷盘周期内的检查点
+ */
+@Slf4j
+public class CheckpointLog {
+    private static final byte FORMAT_VERSION = 2;
+    private static final int MAX_QUEUED = 4096;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final long SWEEP_INTERVAL_MS = TimeUnit.HOURS.toMillis(1);
+    private static final String FILE_PREFIX = "run-";
+    private static final String FILE_SUFFIX = ".ckpt";
+    private static final boolean POSIX = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+    private static final Set<OpenOption> APPEND_OPTIONS = new HashSet<>(Arrays.asList(
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+    private static final FileAttribute<?> OWNER_ONLY_DIR = PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------"));
+    private static final FileAttribute<?> OWNER_ONLY_FILE = PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------"));
+
+    private static final Map<String, RunState> runs = new ConcurrentHashMap<>();
+    private static final BlockingQueue<Write> queue = new LinkedBlockingQueue<>(MAX_QUEUED);
+    private static volatile Thread writer;
+
+    // 检查点统计
+    private static final AtomicLong records = new AtomicLong();
+    private static final AtomicLong bytes = new AtomicLong();
+    private static final AtomicLong batches = new AtomicLong();
+    private static final AtomicLong fsyncs = new AtomicLong();
+    private static final AtomicLong dropped = new AtomicLong();
+    private static final AtomicLong failed = new AtomicLong();
+    private static final AtomicLong loaded = new AtomicLong();
+    private static final AtomicLong expired = new AtomicLong();
+
+    private CheckpointLog() {
+    }
+
+    /**
+     * 应用启动时调用：开启时启动写线程，清理过期的检查点文件
+     */
+    public static void start() {
+        if (isEnabled()) {
+            ensureWriter();
+        }
+    }
+
+    public static boolean isEnabled() {
+        return "1".equals(config().getCheckpointEnable());
+    }
+
+    /**
+     * 登记运行中的请求，同一请求已在本进程运行时返回 false
+     */
+    public static boolean begin(String requestId) {
+        return runs.putIfAbsent(requestId, new RunState()) == null;
+    }
+
+    /**
+     * 追加一个检查点（异步落盘），未登记或未开启时忽略
+     */
+    public static void record(String requestId, RunCheckpoint checkpoint) {
+        RunState state = runs.get(requestId);
+        if (state == null || !isEnabled()) {
+            return;
+        }
+        synchronized (state) {
+            if (state.reset) {
+                // 写盘失败后文件已丢弃，下一条记录写全量
+                state.reset = false;
+                state.planning.clear();
+                state.executor.clear();
+            }
+            List<Message> planningMessages = new ArrayList<>(checkpoint.getPlanningMessages());
+            List<Message> executorMessages = new ArrayList<>(checkpoint.getExecutorMessages());
+            byte[] payload;
+            try {
+                payload = encode(checkpoint, planningMessages, state.planning, executorMessages, state.executor);
+            } catch (IOException e) {
+                log.error("{} checkpoint encode failed", requestId, e);
+                return;
+            }
+            if (!offer(new Write(requestId, frame(payload), payload[1] == 1, false))) {
+                // 丢弃时不更新基线，下一条记录相对最后写入的记录编码
+                dropped.incrementAndGet();
+                log.warn("{} checkpoint dropped, writer queue full", requestId);
+                return;
+            }
+            state.planning.update(planningMessages);
+            state.executor.update(executorMessages);
+        }
+    }
+
+    /**
+     * 结束运行：completed 为 true 时删除检查点文件，否则保留供恢复
+     */
+    public static void end(String requestId, boolean completed) {
+        if (runs.remove(requestId) == null) {
+            return;
+        }
+        try {
+            ensureWriter();
+            queue.put(new Write(requestId, null, false, completed));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 读取请求的最新检查点，文件不存在或没有有效记录时返回 null；截掉损坏的尾部
+     */
+    public static RunCheckpoint load(String requestId) {
+        Path path = path(requestId);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+            List<Message> planningMessages = new ArrayList<>();
+            List<Message> executorMessages = new ArrayList<>();
+            RunCheckpoint checkpoint = null;
+            int valid = 0;
+            while (buffer.remaining() >= RECORD_HEADER_BYTES) {
+                int length = buffer.getInt();
+                int crc = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                buffer.get(payload);
+                if (crc32(payload) != crc) {
+                    break;
+                }
+                try {
+                    checkpoint = new Decoder(payload).decode(planningMessages, executorMessages);
+                } catch (RuntimeException e) {
+                    log.warn("{} checkpoint record corrupt at {}", requestId, valid, e);
+                    break;
+                }
+                valid = buffer.position();
+            }
+            if (valid < buffer.capacity()) {
+                log.warn("{} checkpoint truncated {} -> {} bytes", requestId, buffer.capacity(), valid);
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    channel.truncate(valid);
+                }
+            }
+            if (checkpoint != null) {
+                loaded.incrementAndGet();
+            }
+            return checkpoint;
+        } catch (IOException e) {
+            log.error("{} checkpoint load failed", requestId, e);
+            return null;
+        }
+    }
+
+    public static Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("activeRuns", runs.size());
+        stats.put("queued", queue.size());
+        stats.put("records", records.get());
+        stats.put("bytes", bytes.get());
+        stats.put("batches", batches.get());
+        stats.put("fsyncs", fsyncs.get());
+        stats.put("dropped", dropped.get());
+        stats.put("failed", failed.get());
+        stats.put("loaded", loaded.get());
+        stats.put("expired", expired.get());
+        return stats;
+    }
+
+    private static boolean offer(Write write) {
+        ensureWriter();
+        return queue.offer(write);
+    }
+
+    private static GenieConfig config() {
+        return SpringContextHolder.getApplicationContext().getBean(GenieConfig.class);
+    }
+
+    private static Path path(String requestId) {
+        return Paths.get(config().getCheckpointDir(), FILE_PREFIX + URLEncoder.encode(requestId, StandardCharsets.UTF_8) + FILE_SUFFIX);
+    }
+
+    private static byte[] frame(byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_BYTES + payload.length);
+        buffer.putInt(payload.length);
+        buffer.putInt(crc32(payload));
+        buffer.put(payload);
+        return buffer.array();
+    }
+
+    private static int crc32(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    // ==================== 写线程 ====================
+
+    private static void ensureWriter() {
+        if (writer != null) {
+            return;
+        }
+        synchronized (CheckpointLog.class) {
+            if (writer == null) {
+                Thread thread = new Thread(CheckpointLog::writeLoop, "checkpoint-writer");
+                thread.setDaemon(true);
+                thread.start();
+                writer = thread;
+            }
+        }
+    }
+
+    private static void writeLoop() {
+        Map<String, FileChannel> channels = new HashMap<>();
+        Set<String> broken = new HashSet<>();
+        long lastSweep = 0;
+        while (true) {
+            try {
+                if (System.currentTimeMillis() - lastSweep >= SWEEP_INTERVAL_MS) {
+                    sweep(channels.keySet());
+                    lastSweep = System.currentTimeMillis();
+                }
+                Write first = queue.poll(SWEEP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                List<Write> batch = new ArrayList<>();
+                batch.add(first);
+                // 攒批：一个刷盘周期内到达的记录一起写入，每个文件只 fsync 一次
+                long deadline = System.currentTimeMillis() + config().getCheckpointFlushInterval();
+                long remaining;
+                while ((remaining = deadline - System.currentTimeMillis()) > 0) {
+                    Write write = queue.poll(remaining, TimeUnit.MILLISECONDS);
+                    if (write == null) {
+                        break;
+                    }
+                    batch.add(write);
+                }
+                Set<String> dirty = new HashSet<>();
+                for (Write write : batch) {
+                    if (write.data == null) {
+                        close(write.requestId, channels, dirty, broken, write.delete);
+                    } else {
+                        append(write, channels, dirty, broken);
+                    }
+                }
+                for (String requestId : dirty) {
+                    try {
+                        channels.get(requestId).force(false);
+                        fsyncs.incrementAndGet();
+                    } catch (IOException e) {
+                        fail(requestId, channels, broken, e);
+                    }
+                }
+                batches.incrementAndGet();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("checkpoint writer error", e);
+            }
+        }
+    }
+
+    /**
+     * 删除超过保留时长的检查点文件，运行中或仍在写入的请求跳过
+     */
+    static void sweep(Set<String> writing) {
+        Path dir = Paths.get(config().getCheckpointDir());
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        long deadline = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(config().getCheckpointTtlHours());
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String requestId = URLDecoder.decode(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()), StandardCharsets.UTF_8);
+                if (runs.containsKey(requestId) || writing.contains(requestId)) {
+                    continue;
+                }
+                try {
+                    if (Files.getLastModifiedTime(file).toMillis() < deadline && Files.deleteIfExists(file)) {
+                        expired.incrementAndGet();
+                        log.info("{} checkpoint expired", requestId);
+                    }
+                } catch (IOException e) {
+                    log.warn("{} checkpoint expire failed: {}", requestId, e.toString());
+                }
+            }
+        } catch (IOException e) {
+            log.warn("checkpoint sweep failed: {}", e.toString());
+        }
+    }
+
+    private static void append(Write write, Map<String, FileChannel> channels, Set<String> dirty, Set<String> broken) {
+        if (broken.contains(write.requestId)) {
+            if (!write.full) {
+                // 文件已丢弃，增量记录无法还原，等待下一条全量记录
+                return;
+            }
+            broken.remove(write.requestId);
+        }
+        try {
+            FileChannel channel = channels.get(write.requestId);
+            if (channel == null) {
+                Path path = path(write.requestId);
+                if (POSIX) {
+                    Files.createDirectories(path.getParent(), OWNER_ONLY_DIR);
+                    channel = FileChannel.open(path, APPEND_OPTIONS, OWNER_ONLY_FILE);
+                } else {
+                    Files.createDirectories(path.getParent());
+                    channel = FileChannel.open(path, APPEND_OPTIONS);
+                }
+                channels.put(write.requestId, channel);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(write.data);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            dirty.add(write.requestId);
+            records.incrementAndGet();
+            bytes.addAndGet(write.data.length);
+        } catch (IOException e) {
+            fail(write.requestId, channels, broken, e);
+        }
+    }
+
+    private static void close(String requestId, Map<String, FileChannel> channels, Set<String> dirty, Set<String> broken, boolean delete) {
+        broken.remove(requestId);
+        FileChannel channel = channels.remove(requestId);
+        try {
+            if (channel != null) {
+                if (dirty.remove(requestId) && !delete) {
+                    channel.force(false);
+                    fsyncs.incrementAndGet();
+                }
+                channel.close();
+            }
+            if (delete) {
+                Files.deleteIfExists(path(requestId));
+            }
+        } catch (IOException e) {
+            log.error("{} checkpoint close failed", requestId, e);
+        }
+    }
+
+    private static void fail(String requestId, Map<String, FileChannel> channels, Set<String> broken, IOException e) {
+        log.error("{} checkpoint write failed, discarding log", requestId, e);
+        failed.incrementAndGet();
+        FileChannel channel = channels.remove(requestId);
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+            Files.deleteIfExists(path(requestId));
+        } catch (IOException ignored) {
+        }
+        broken.add(requestId);
+        RunState state = runs.get(requestId);
+        if (state != null) {
+            state.reset = true;
+        }
+    }
+
+    // ==================== 编码 ====================
+
+    private static byte[] encode(RunCheckpoint checkpoint, List<Message> planningMessages, Baseline planningBaseline,
+                                 List<Message> executorMessages, Baseline executorBaseline) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(4096);
+        DataOutputStream out = new DataOutputStream(bos);
+        int planningKeep = planningBaseline.commonPrefix(planningMessages);
+        int executorKeep = executorBaseline.commonPrefix(executorMessages);
+        out.writeByte(FORMAT_VERSION);
+        out.writeByte(planningKeep == 0 && executorKeep == 0 ? 1 : 0); // 是否全量（不依赖之前的记录）
+        out.writeLong(checkpoint.getCreateTime());
+        writeVarInt(out, checkpoint.getStepIdx());
+        writeString(out, checkpoint.getPlanningResult());
+        writeString(out, checkpoint.getPlanningState());
+        writeString(out, checkpoint.getExecutorState());
+        writeRequest(out, checkpoint.getRequest());
+        writePlan(out, checkpoint.getPlan());
+        writeMessages(out, planningMessages, planningKeep);
+        writeMessages(out, executorMessages, executorKeep);
+        writeFiles(out, checkpoint.getProductFiles());
+        writeFiles(out, checkpoint.getTaskProductFiles());
+        out.flush();
+        return bos.toByteArray();
+    }
+
+    private static void writeRequest(DataOutputStream out, AgentRequest request) throws IOException {
+        writeString(out, request.getRequestId());
+        writeString(out, request.getErp());
+        writeString(out, request.getQuery());
+        writeNullableInt(out, request.getAgentType());
+        writeString(out, request.getBasePrompt());
+        writeString(out, request.getSopPrompt());
+        writeNullableBoolean(out, request.getIsStream());
+        writeString(out, request.getOutputStyle());
+    }
+
+    private static void writePlan(DataOutputStream out, Plan plan) throws IOException {
+        out.writeBoolean(plan != null);
+        if (plan == null) {
+            return;
+        }
+        writeString(out, plan.getTitle());
+        writeStrings(out, plan.getSteps());
+        writeStrings(out, plan.getStepStatus());
+        writeStrings(out, plan.getNotes());
+        writeIndexLists(out, plan.getDependencies());
+        writeIndexLists(out, plan.getCompletedTasks());
+    }
+
+    private static void writeIndexLists(DataOutputStream out, List<List<Integer>> lists) throws IOException {
+        writeNullableLength(out, lists == null ? -1 : lists.size());
+        if (lists != null) {
+            for (List<Integer> list : lists) {
+                writeNullableLength(out, list == null ? -1 : list.size());
+                if (list != null) {
+                    for (Integer index : list) {
+                        writeVarInt(out, index);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void writeMessages(DataOutputStream out, List<Message> messages, int keep) throws IOException {
+        writeVarInt(out, keep);
+        writeVarInt(out, messages.size() - keep);
+        for (int i = keep; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            out.writeByte(message.getRole() == null ? -1 : message.getRole().ordinal());
+            writeString(out, message.getContent());
+            writeString(out, message.getBase64Image());
+            writeString(out, message.getToolCallId());
+            List<ToolCall> toolCalls = message.getToolCalls();
+            writeNullableLength(out, toolCalls == null ? -1 : toolCalls.size());
+            if (toolCalls != null) {
+                for (ToolCall toolCall : toolCalls) {
+                    writeString(out, toolCall.getId());
+                    writeString(out, toolCall.getType());
+                    ToolCall.Function function = toolCall.getFunction();
+                    out.writeBoolean(function != null);
+                    if (function != null) {
+                        writeString(out, function.getName());
+                        writeString(out, function.getArguments());
+                    }
+                }
+            }
+        }
+    }
+
+    private static void writeFiles(DataOutputStream out, List<File> files) throws IOException {
+        writeNullableLength(out, files == null ? -1 : files.size());
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            writeString(out, file.getOssUrl());
+            writeString(out, file.getDomainUrl());
+            writeString(out, file.getFileName());
+            writeNullableInt(out, file.getFileSize());
+            writeString(out, file.getDescription());
+            writeString(out, file.getOriginFileName());
+            writeString(out, file.getOriginOssUrl());
+            writeString(out, file.getOriginDomainUrl());
+            writeNullableBoolean(out, file.getIsInternalFile());
+        }
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+        writeNullableLength(out, values == null ? -1 : values.size());
+        if (values != null) {
+            for (String value : values) {
+                writeString(out, value);
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeNullableLength(out, -1);
+            return;
+        }
+        byte[] data = value.getBytes(StandardCharsets.UTF_8);
+        writeNullableLength(out, data.length);
+        out.write(data);
+    }
+
+    private static void writeNullableInt(DataOutputStream out, Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeInt(value);
+        }
+    }
+
+    private static void writeNullableBoolean(DataOutputStream out, Boolean value) throws IOException {
+        out.writeByte(value == null ? -1 : (value ? 1 : 0));
+    }
+
+    /**
+     * 长度编码：-1 表示 null，按 length + 1 写 varint
+     */
+    private static void writeNullableLength(DataOutputStream out, int length) throws IOException {
+        writeVarInt(out, length + 1);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * 单条记录的解码，记忆在上一条记录的基础上还原
+     */
+    private static class Decoder {
+        private final ByteBuffer buffer;
+
+        Decoder(byte[] payload) {
+            this.buffer = ByteBuffer.wrap(payload);
+        }
+
+        RunCheckpoint decode(List<Message> planningMessages, List<Message> executorMessages) {
+            byte version = buffer.get();
+            if (version != FORMAT_VERSION) {
+                throw new IllegalStateException("unsupported checkpoint version " + version);
+            }
+            buffer.get(); // 是否全量，读取时不需要
+            RunCheckpoint checkpoint = new RunCheckpoint();
+            checkpoint.setCreateTime(buffer.getLong());
+            checkpoint.setStepIdx(readVarInt());
+            checkpoint.setPlanningResult(readString());
+            checkpoint.setPlanningState(readString());
+            checkpoint.setExecutorState(readString());
+            checkpoint.setRequest(readRequest());
+            checkpoint.setPlan(readPlan());
+            readMessages(planningMessages);
+            readMessages(executorMessages);
+            checkpoint.setPlanningMessages(new ArrayList<>(planningMessages));
+            checkpoint.setExecutorMessages(new ArrayList<>(executorMessages));
+            checkpoint.setProductFiles(readFiles());
+            checkpoint.setTaskProductFiles(readFiles());
+            return checkpoint;
+        }
+
+        private AgentRequest readRequest() {
+            AgentRequest request = new AgentRequest();
+            request.setRequestId(readString());
+            request.setErp(readString());
+            request.setQuery(readString());
+            request.setAgentType(readNullableInt());
+            request.setBasePrompt(readString());
+            request.setSopPrompt(readString());
+            request.setIsStream(readNullableBoolean());
+            request.setOutputStyle(readString());
+            return request;
+        }
+
+        private Plan readPlan() {
+            if (buffer.get() == 0) {
+                return null;
+            }
+            Plan plan = new Plan();
+            plan.setTitle(readString());
+            plan.setSteps(readStrings());
+            plan.setStepStatus(readStrings());
+            plan.setNotes(readStrings());
+            plan.setDependencies(readIndexLists());
+            plan.setCompletedTasks(readIndexLists());
+            return plan;
+        }
+
+        private List<List<Integer>> readIndexLists() {
+            int size = readNullableLength();
+            if (size < 0) {
+                return null;
+            }
+            List<List<Integer>> lists = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                int count = readNullableLength();
+                List<Integer> list = null;
+                if (count >= 0) {
+                    list = new ArrayList<>(count);
+                    for (int j = 0; j < count; j++) {
+                        list.add(readVarInt());
+                    }
+                }
+                lists.add(list);
+            }
+            return lists;
+        }
+
+        private void readMessages(List<Message> messages) {
+            int keep = readVarInt();
+            int added = readVarInt();
+            if (keep > messages.size()) {
+                throw new IllegalStateException("checkpoint memory keep " + keep + " exceeds " + messages.size());
+            }
+            messages.subList(keep, messages.size()).clear();
+            for (int i = 0; i < added; i++) {
+                byte role = buffer.get();
+                Message message = Message.builder()
+                        .role(role < 0 ? null : RoleType.values()[role])
+                        .content(readString())
+                        .base64Image(readString())
+                        .toolCallId(readString())
+                        .build();
+                int count = readNullableLength();
+                if (count >= 0) {
+                    List<ToolCall> toolCalls = new ArrayList<>(count);
+                    for (int j = 0; j < count; j++) {
+                        ToolCall toolCall = new ToolCall();
+                        toolCall.setId(readString());
+                        toolCall.setType(readString());
+                        if (buffer.get() != 0) {
+                            toolCall.setFunction(new ToolCall.Function(readString(), readString()));
+                        }
+                        toolCalls.add(toolCall);
+                    }
+                    message.setToolCalls(toolCalls);
+                }
+                messages.add(message);
+            }
+        }
+
+        private List<File> readFiles() {
+            int size = readNullableLength();
+            if (size < 0) {
+                return null;
+            }
+            List<File> files = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                files.add(File.builder()
+                        .ossUrl(readString())
+                        .domainUrl(readString())
+                        .fileName(readString())
+                        .fileSize(readNullableInt())
+                        .description(readString())
+                        .originFileName(readString())
+                        .originOssUrl(readString())
+                        .originDomainUrl(readString())
+                        .isInternalFile(readNullableBoolean())
+                        .build());
+            }
+            return files;
+        }
+
+        private List<String> readStrings() {
+            int size = readNullableLength();
+            if (size < 0) {
+                return null;
+            }
+            List<String> values = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                values.add(readString());
+            }
+            return values;
+        }
+
+        private String readString() {
+            int length = readNullableLength();
+            if (length < 0) {
+                return null;
+            }
+            String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return value;
+        }
+
+        private Integer readNullableInt() {
+            return buffer.get() == 0 ? null : buffer.getInt();
+        }
+
+        private Boolean readNullableBoolean() {
+            byte value = buffer.get();
+            return value < 0 ? null : value == 1;
+        }
+
+        private int readNullableLength() {
+            return readVarInt() - 1;
+        }
+
+        private int readVarInt() {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                byte b = buffer.get();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalStateException("malformed varint");
+        }
+    }
+
+    /**
+     * 上一条已入队记录中的记忆（消息引用与内容引用），用于计算增量
+     * 消息内容被原地修改（setContent）时内容引用不同，该条及之后的消息会重新写入
+     */
+    private static class Baseline {
+        private final List<Message> messages = new ArrayList<>();
+        private final List<String> contents = new ArrayList<>();
+
+        int commonPrefix(List<Message> current) {
+            int limit = Math.min(messages.size(), current.size());
+            int keep = 0;
+            while (keep < limit && current.get(keep) == messages.get(keep)
+                    && current.get(keep).getContent() == contents.get(keep)) {
+                keep++;
+            }
+            return keep;
+        }
+
+        void update(List<Message> current) {
+            messages.clear();
+            contents.clear();
+            for (Message message : current) {
+                messages.add(message);
+                contents.add(message.getContent());
+            }
+        }
+
+        void clear() {
+            messages.clear();
+            contents.clear();
+        }
+    }
+
+    private static class RunState {
+        private final Baseline planning = new Baseline();
+        private final Baseline executor = new Baseline();
+        private volatile boolean reset;
+    }
+
+    private static class Write {
+        private final String requestId;
+        private final byte[] data;      // null 表示关闭
+        private final boolean full;
+        private final boolean delete;
+
+        Write(String requestId, byte[] data, boolean full, boolean delete) {
+            this.requestId = requestId;
+            this.data = data;
+            this.full = full;
+            this.delete = delete;
+        }
+    }
+}
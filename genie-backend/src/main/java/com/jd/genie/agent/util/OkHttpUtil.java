@@ -1,5 +1,6 @@
 package com.jd.genie.agent.util;
 
+import com.jd.genie.agent.tool.ToolExecution;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.*;
 
@@ -50,7 +51,7 @@ public class OkHttpUtil {
             }
         }
         Request request = requestBuilder.build();
-        try (Response response = client.newCall(request).execute()) {
+        try (Response response = ToolExecution.track(client.newCall(request)).execute()) {
             if (response.isSuccessful() && response.body() != null) {
                 return response.body().string();
             }
@@ -80,7 +81,7 @@ public class OkHttpUtil {
 
         Request request = requestBuilder.build();
 
-        client.newCall(request).enqueue(new Callback() {
+        ToolExecution.track(client.newCall(request)).enqueue(new Callback() {
             @Override
             public void onFailure(Call call, IOException e) {
                 eventListener.onError(e);
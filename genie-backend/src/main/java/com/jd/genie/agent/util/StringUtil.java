@@ -2,8 +2,6 @@ package com.jd.genie.agent.util;
 
 import java.security.SecureRandom;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class StringUtil {
     private static final String CHAR_LOWER = "abcdefghijklmnopqrstuvwxyz";
@@ -24,91 +22,11 @@ public class StringUtil {
         return sb.toString();
     }
 
-    // 银行卡Luhn校验算法
-    private static boolean luhnBankCardVerify(String cardNumber) {
-        int sum = 0;
-        boolean alternate = false;
-        for (int i = cardNumber.length() - 1; i >= 0; i--) {
-            int digit = Character.getNumericValue(cardNumber.charAt(i));
-            if (alternate) {
-                digit *= 2;
-                if (digit > 9) {
-                    digit -= 9;
-                }
-            }
-            sum += digit;
-            alternate = !alternate;
-        }
-        return (sum % 10 == 0);
-    }
-
+    /**
+     * 文本脱敏（邮箱、身份证号、手机号、银行卡号及配置的敏感词），由预编译的 TextDesensitizer 一次扫描完成
+     */
     public static String textDesensitization(String content, Map<String, String> sensitivePatternsMapping) {
-        // 邮箱地址脱敏
-        Pattern emailPattern = Pattern.compile("[a-zA-Z0-9\\._%\\+\\-]+@[a-zA-Z0-9\\.-]+\\.[a-zA-Z]{2,}");
-        Matcher emailMatcher = emailPattern.matcher(content);
-        while (emailMatcher.find()) {
-            String snippet = emailMatcher.group();
-            int maskIdx = snippet.indexOf("@");
-            // 内部邮箱不处理
-            if (content.contains("@jd.com")) {
-                continue;
-            }
-            content = content.replace(snippet, snippet.substring(0, maskIdx) + "＠" + snippet.substring(maskIdx + 1));
-        }
-
-        // 身份证号脱敏
-        Pattern idPattern = Pattern.compile("(?:[^\\dA-Za-z_]|^)((?:[1-6][1-7]|50|71|81|82)\\d{4}(?:19|20)\\d{2}(?:0[1-9]|10|11|12)(?:[0-2][1-9]|10|20|30|31)\\d{3}[0-9Xx])(?:[^\\dA-Za-z_]|$)");
-        Matcher idMatcher = idPattern.matcher(content);
-        while (idMatcher.find()) {
-            String snippet = idMatcher.group(1);
-            content = content.replace(snippet, snippet.substring(0, 12) + "✿✿✿✿✿✿");
-        }
-
-        // 手机号脱敏
-        Pattern phonePattern = Pattern.compile("(?:[^\\dA-Za-z_]|^)(1[3456789]\\d{9})(?:[^\\dA-Za-z_]|$)");
-        Matcher phoneMatcher = phonePattern.matcher(content);
-        while (phoneMatcher.find()) {
-            String snippet = phoneMatcher.group(1);
-            content = content.replace(snippet, snippet.substring(0, 3) + "✿✿✿✿" + snippet.substring(7));
-        }
-
-        // 银行卡号脱敏
-        Pattern bankcardPattern = Pattern.compile("(?:[^\\dA-Za-z_]|^)(62(?:\\d{14}|\\d{17}))(?:[^\\dA-Za-z_]|$)");
-        Matcher bankcardMatcher = bankcardPattern.matcher(content);
-        while (bankcardMatcher.find()) {
-            String snippet = bankcardMatcher.group(1);
-            if (luhnBankCardVerify(snippet)) {
-                content = content.replace(snippet, snippet.substring(0, 12) + "✿✿✿✿✿✿");
-            }
-        }
-
-        // 密码及其他敏感词脱敏
-        for (Map.Entry<String, String> entry : sensitivePatternsMapping.entrySet()) {
-            String pattern = entry.getKey();
-            String wordMapping = entry.getValue();
-
-            int startIndex = pattern.indexOf("^)") + 2;
-            int endIndex = pattern.lastIndexOf("[^");
-
-            if (startIndex + 1 < endIndex) {
-                String sensitiveWord = pattern.substring(startIndex, endIndex);
-                Pattern sensitivePattern = Pattern.compile(pattern);
-                Matcher sensitiveMatcher = sensitivePattern.matcher(content);
-
-                while (sensitiveMatcher.find()) {
-                    String snippet = sensitiveMatcher.group();
-                    if (content.startsWith(sensitiveWord)) {
-                        content = content.replace(snippet, wordMapping + snippet.substring(snippet.length() - 1));
-                    } else {
-                        content = content.replace(snippet, snippet.charAt(0) + wordMapping + snippet.substring(snippet.length() - 1));
-                    }
-                }
-            } else {
-                content = content.replace(pattern, wordMapping);
-            }
-        }
-
-        return content;
+        return TextDesensitizer.of(sensitivePatternsMapping).mask(content);
     }
 
     public static String removeSpecialChars(String input) {
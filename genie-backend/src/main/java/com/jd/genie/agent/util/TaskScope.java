@@ -0,0 +1,60 @@
+package com.jd.genie.agent.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 结构化并发作用域
+ * - fork 的子任务在有界执行器上运行，执行器饱和时直接拒绝，由调用方决定如何处理；
+ *   不在当前线程执行，否则调用方的超时等待与取消、以及子任务之间的并行都会失效
+ * - join 等待全部子任务结束；close 时取消（中断）仍未结束的子任务，子任务不会泄漏到作用域之外
+ * 用法：try (TaskScope scope = ThreadUtil.openScope()) { scope.fork(...); scope.join(); }
+ */
+public class TaskScope implements AutoCloseable {
+    private final BoundedExecutor executor;
+    private final List<Future<?>> futures = new ArrayList<>();
+
+    TaskScope(BoundedExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * 启动子任务
+     *
+     * @throws RejectedExecutionException 执行器已饱和，子任务未启动
+     */
+    public <T> Future<T> fork(Callable<T> task) {
+        FutureTask<T> future = new FutureTask<>(task);
+        executor.executeOrReject(future);
+        futures.add(future);
+        return future;
+    }
+
+    /**
+     * 等待全部子任务结束，子任务的异常保留在各自的 Future 中
+     */
+    public void join() throws InterruptedException {
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException | CancellationException e) {
+                // 由调用方通过 Future 获取
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Future<?> future : futures) {
+            if (!future.isDone()) {
+                future.cancel(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,476 @@
+package com.jd.genie.agent.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * 文本脱敏引擎
+ * - 邮箱以 @ 为锚点扩展识别；身份证号、手机号、银行卡号的正则全部预编译
+ * - 身份证号/手机号/银行卡号只可能是完整的 [0-9A-Za-z_] 词，一次扫描按词长筛选后再校验
+ * - 配置的敏感词（sensitive_patterns）抽取字面量后构建 Aho-Corasick 自动机，一次扫描找出全部候选，再按原正则的边界条件校验
+ * - 所有命中区间合并后一次性重写文本，不再逐个 content.replace
+ * 引擎按 sensitivePatterns 配置实例缓存，线程安全
+ */
+@Slf4j
+public class TextDesensitizer {
+    private static final Pattern ID_PATTERN = Pattern.compile("(?:[1-6][1-7]|50|71|81|82)\\d{4}(?:19|20)\\d{2}(?:0[1-9]|10|11|12)(?:[0-2][1-9]|10|20|30|31)\\d{3}[0-9Xx]");
+    private static final Pattern PHONE_PATTERN = Pattern.compile("1[3456789]\\d{9}");
+    private static final Pattern BANKCARD_PATTERN = Pattern.compile("62(?:\\d{14}|\\d{17})");
+    private static final String REGEX_META = "\\[](){}.*+?^$|";
+
+    private static volatile TextDesensitizer cached;
+
+    private final Map<String, String> sensitivePatternsMapping;
+    private final List<SensitiveWord> words = new ArrayList<>();
+    private final List<SensitiveWord> regexWords = new ArrayList<>();
+    private final AhoCorasick automaton;
+
+    private TextDesensitizer(Map<String, String> sensitivePatternsMapping) {
+        this.sensitivePatternsMapping = sensitivePatternsMapping;
+        for (Map.Entry<String, String> entry : sensitivePatternsMapping.entrySet()) {
+            SensitiveWord word = SensitiveWord.of(entry.getKey(), entry.getValue());
+            if (word.literal == null) {
+                regexWords.add(word);
+            } else {
+                words.add(word);
+            }
+        }
+        List<String> literals = new ArrayList<>(words.size());
+        for (SensitiveWord word : words) {
+            literals.add(word.literal);
+        }
+        this.automaton = new AhoCorasick(literals);
+    }
+
+    /**
+     * 获取配置对应的引擎，配置对象不变时复用
+     */
+    public static TextDesensitizer of(Map<String, String> sensitivePatternsMapping) {
+        TextDesensitizer desensitizer = cached;
+        if (desensitizer == null || desensitizer.sensitivePatternsMapping != sensitivePatternsMapping) {
+            desensitizer = new TextDesensitizer(sensitivePatternsMapping);
+            cached = desensitizer;
+        }
+        return desensitizer;
+    }
+
+    /**
+     * 脱敏
+     */
+    public String mask(String content) {
+        if (content == null || content.isEmpty()) {
+            return content;
+        }
+        List<Span> spans = new ArrayList<>();
+        findEmails(content, spans);
+        findNumbers(content, spans);
+        findWords(content, spans);
+        if (spans.isEmpty()) {
+            return content;
+        }
+        return rewrite(content, spans);
+    }
+
+    /**
+     * 邮箱：@ 替换为全角＠，内部邮箱不处理
+     * 以 @ 为锚点向两侧扩展，结果与正则 [a-zA-Z0-9._%+-]+@[a-zA-Z0-9.-]+\.[a-zA-Z]{2,} 逐个 find 一致，但不必在每个位置尝试匹配
+     */
+    private void findEmails(String content, List<Span> spans) {
+        int length = content.length();
+        int searchFrom = 0;
+        int at;
+        while ((at = content.indexOf('@', searchFrom)) >= 0) {
+            // 用户名：@ 左侧连续的 [a-zA-Z0-9._%+-]，不越过上一个匹配
+            int start = at;
+            while (start > searchFrom && isEmailLocalChar(content.charAt(start - 1))) {
+                start--;
+            }
+            // 域名：@ 右侧连续的 [a-zA-Z0-9.-]，回溯找最后一个后跟至少两个字母的 '.'
+            int runEnd = at + 1;
+            while (runEnd < length && isEmailDomainChar(content.charAt(runEnd))) {
+                runEnd++;
+            }
+            int end = -1;
+            if (start < at) {
+                for (int dot = runEnd - 3; dot >= at + 2; dot--) {
+                    if (content.charAt(dot) == '.' && isLetter(content.charAt(dot + 1)) && isLetter(content.charAt(dot + 2))) {
+                        end = dot + 3;
+                        while (end < runEnd && isLetter(content.charAt(end))) {
+                            end++;
+                        }
+                        break;
+                    }
+                }
+            }
+            if (end < 0) {
+                searchFrom = at + 1;
+                continue;
+            }
+            if (!content.substring(start, end).contains("@jd.com")) {
+                spans.add(new Span(at, at + 1, "＠"));
+            }
+            searchFrom = end;
+        }
+    }
+
+    /**
+     * 身份证号、手机号、银行卡号：前后均不能是 [0-9A-Za-z_]，即必须是一个完整的词
+     */
+    private void findNumbers(String content, List<Span> spans) {
+        int length = content.length();
+        int i = 0;
+        while (i < length) {
+            if (!isWordChar(content.charAt(i))) {
+                i++;
+                continue;
+            }
+            int start = i;
+            boolean digits = true;
+            while (i < length && isWordChar(content.charAt(i))) {
+                char c = content.charAt(i);
+                // 身份证号最后一位可以是 X
+                if ((c < '0' || c > '9') && !(i - start == 17 && (c == 'X' || c == 'x'))) {
+                    digits = false;
+                }
+                i++;
+            }
+            int wordLength = i - start;
+            if (!digits) {
+                continue;
+            }
+            if (wordLength == 18 && ID_PATTERN.matcher(content).region(start, i).matches()) {
+                spans.add(new Span(start + 12, i, "✿✿✿✿✿✿"));
+            } else if (wordLength == 11 && PHONE_PATTERN.matcher(content).region(start, i).matches()) {
+                spans.add(new Span(start + 3, start + 7, "✿✿✿✿"));
+            } else if ((wordLength == 16 || wordLength == 19)
+                    && BANKCARD_PATTERN.matcher(content).region(start, i).matches()
+                    && luhnBankCardVerify(content, start, i)) {
+                spans.add(new Span(start + 12, i, "✿✿✿✿✿✿"));
+            }
+        }
+    }
+
+    /**
+     * 配置的敏感词：字面量经 Aho-Corasick 一次扫描，正则形式的再按边界校验
+     */
+    private void findWords(String content, List<Span> spans) {
+        if (!words.isEmpty()) {
+            automaton.scan(content, (index, start, end) -> {
+                SensitiveWord word = words.get(index);
+                if (word.verify(content, start, end)) {
+                    spans.add(new Span(start, end, word.mapping));
+                }
+            });
+        }
+        for (SensitiveWord word : regexWords) {
+            word.findAll(content, spans);
+        }
+    }
+
+    /**
+     * 按起点排序，重叠时保留先出现（同起点取更长）的区间，一次性输出
+     */
+    private static String rewrite(String content, List<Span> spans) {
+        spans.sort((a, b) -> a.start != b.start ? Integer.compare(a.start, b.start) : Integer.compare(b.end, a.end));
+        StringBuilder sb = new StringBuilder(content.length() + 16);
+        int pos = 0;
+        for (Span span : spans) {
+            if (span.start < pos) {
+                continue;
+            }
+            sb.append(content, pos, span.start).append(span.replacement);
+            pos = span.end;
+        }
+        sb.append(content, pos, content.length());
+        return sb.toString();
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isEmailLocalChar(char c) {
+        return isLetter(c) || (c >= '0' && c <= '9') || c == '.' || c == '_' || c == '%' || c == '+' || c == '-';
+    }
+
+    private static boolean isEmailDomainChar(char c) {
+        return isLetter(c) || (c >= '0' && c <= '9') || c == '.' || c == '-';
+    }
+
+    private static boolean isWordChar(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+
+    // 银行卡Luhn校验算法
+    private static boolean luhnBankCardVerify(String content, int start, int end) {
+        int sum = 0;
+        boolean alternate = false;
+        for (int i = end - 1; i >= start; i--) {
+            int digit = content.charAt(i) - '0';
+            if (alternate) {
+                digit *= 2;
+                if (digit > 9) {
+                    digit -= 9;
+                }
+            }
+            sum += digit;
+            alternate = !alternate;
+        }
+        return (sum % 10 == 0);
+    }
+
+    private static class Span {
+        private final int start;
+        private final int end;
+        private final String replacement;
+
+        private Span(int start, int end, String replacement) {
+            this.start = start;
+            this.end = end;
+            this.replacement = replacement;
+        }
+    }
+
+    /**
+     * 一条敏感词配置
+     * - "(?:边界|^)word边界" 形式：word 为字面量时走自动机，命中后用环视版正则校验边界；word 含正则元字符时直接用环视版正则查找
+     * - 其他形式：整体作为字面量替换
+     */
+    private static class SensitiveWord {
+        private final String mapping;
+        private final String literal;
+        private final Pattern boundary;
+        // 无法改写为环视时，按原正则查找，命中片段首尾各含一个边界字符
+        private final String legacyWord;
+
+        private SensitiveWord(String mapping, String literal, Pattern boundary, String legacyWord) {
+            this.mapping = mapping;
+            this.literal = literal;
+            this.boundary = boundary;
+            this.legacyWord = legacyWord;
+        }
+
+        private static SensitiveWord of(String pattern, String mapping) {
+            int startIndex = pattern.indexOf("^)") + 2;
+            int endIndex = pattern.lastIndexOf("[^");
+            if (startIndex + 1 >= endIndex) {
+                return new SensitiveWord(mapping, pattern, null, null);
+            }
+            String word = pattern.substring(startIndex, endIndex);
+            try {
+                // 前后边界改写为环视，匹配区间即敏感词本身，相邻的敏感词也能分别命中
+                Pattern boundary = Pattern.compile("(?<=" + pattern.substring(0, startIndex) + ")(?:" + word + ")(?=" + pattern.substring(endIndex) + ")");
+                return new SensitiveWord(mapping, isLiteral(word) ? word : null, boundary, null);
+            } catch (PatternSyntaxException e) {
+                log.warn("sensitive pattern {} can not be rewritten with lookaround, fallback to plain regex", pattern);
+                return new SensitiveWord(mapping, null, Pattern.compile(pattern), word);
+            }
+        }
+
+        private static boolean isLiteral(String word) {
+            for (int i = 0; i < word.length(); i++) {
+                if (REGEX_META.indexOf(word.charAt(i)) >= 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean verify(String content, int start, int end) {
+            if (boundary == null) {
+                return true;
+            }
+            Matcher matcher = boundary.matcher(content);
+            matcher.useTransparentBounds(true).useAnchoringBounds(false).region(start, content.length());
+            return matcher.lookingAt() && matcher.end() == end;
+        }
+
+        private void findAll(String content, List<Span> spans) {
+            Matcher matcher = boundary.matcher(content);
+            while (matcher.find()) {
+                int start = matcher.start();
+                int end = matcher.end();
+                if (legacyWord != null) {
+                    start += start == 0 && content.startsWith(legacyWord) ? 0 : 1;
+                    end -= 1;
+                }
+                if (end > start) {
+                    spans.add(new Span(start, end, mapping));
+                }
+            }
+        }
+    }
+
+    /**
+     * Aho-Corasick 多模式匹配，转移表为 (节点, 字符) -> 节点 的开放寻址表
+     */
+    static class AhoCorasick {
+        interface MatchHandler {
+            void onMatch(int patternIndex, int start, int end);
+        }
+
+        private long[] keys = new long[64];
+        private int[] values = new int[64];
+        private int edgeCount = 0;
+
+        private int nodeCount = 1;
+        private int[] fail = new int[16];
+        private int[] output = new int[16];      // 节点对应的模式下标，-1 表示无
+        private int[] dictLink = new int[16];    // 沿失败链最近的有输出节点，-1 表示无
+        private final int[] patternLengths;
+
+        AhoCorasick(List<String> patterns) {
+            Arrays.fill(keys, -1L);
+            Arrays.fill(output, -1);
+            patternLengths = new int[patterns.size()];
+            for (int p = 0; p < patterns.size(); p++) {
+                String pattern = patterns.get(p);
+                patternLengths[p] = pattern.length();
+                if (pattern.isEmpty()) {
+                    continue;
+                }
+                int node = 0;
+                for (int i = 0; i < pattern.length(); i++) {
+                    int next = get(node, pattern.charAt(i));
+                    if (next < 0) {
+                        next = newNode();
+                        put(node, pattern.charAt(i), next);
+                    }
+                    node = next;
+                }
+                // 重复配置时保留第一条
+                if (output[node] < 0) {
+                    output[node] = p;
+                }
+            }
+            buildLinks();
+        }
+
+        /**
+         * 按 BFS 顺序计算失败链与输出链
+         */
+        private void buildLinks() {
+            Arrays.fill(dictLink, 0, nodeCount, -1);
+            int[] queue = new int[nodeCount];
+            int head = 0;
+            int tail = 0;
+            // 由转移表还原各节点的子节点
+            List<List<int[]>> children = new ArrayList<>(nodeCount);
+            for (int i = 0; i < nodeCount; i++) {
+                children.add(new ArrayList<>());
+            }
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] >= 0) {
+                    int parent = (int) (keys[slot] >>> 16);
+                    char c = (char) (keys[slot] & 0xFFFF);
+                    children.get(parent).add(new int[]{c, values[slot]});
+                }
+            }
+            for (int[] child : children.get(0)) {
+                fail[child[1]] = 0;
+                queue[tail++] = child[1];
+            }
+            while (head < tail) {
+                int node = queue[head++];
+                for (int[] child : children.get(node)) {
+                    char c = (char) child[0];
+                    int next = child[1];
+                    int f = fail[node];
+                    int target;
+                    while ((target = get(f, c)) < 0 && f != 0) {
+                        f = fail[f];
+                    }
+                    fail[next] = target >= 0 ? target : 0;
+                    dictLink[next] = output[fail[next]] >= 0 ? fail[next] : dictLink[fail[next]];
+                    queue[tail++] = next;
+                }
+            }
+        }
+
+        void scan(CharSequence text, MatchHandler handler) {
+            if (nodeCount == 1) {
+                return;
+            }
+            int node = 0;
+            for (int i = 0, n = text.length(); i < n; i++) {
+                char c = text.charAt(i);
+                int next;
+                while ((next = get(node, c)) < 0 && node != 0) {
+                    node = fail[node];
+                }
+                node = next < 0 ? 0 : next;
+                int match = output[node] >= 0 ? node : dictLink[node];
+                while (match > 0) {
+                    int p = output[match];
+                    handler.onMatch(p, i + 1 - patternLengths[p], i + 1);
+                    match = dictLink[match];
+                }
+            }
+        }
+
+        private int newNode() {
+            if (nodeCount == fail.length) {
+                int size = nodeCount * 2;
+                fail = Arrays.copyOf(fail, size);
+                dictLink = Arrays.copyOf(dictLink, size);
+                int old = output.length;
+                output = Arrays.copyOf(output, size);
+                Arrays.fill(output, old, size, -1);
+            }
+            return nodeCount++;
+        }
+
+        private int get(int node, char c) {
+            long key = ((long) node << 16) | c;
+            int mask = keys.length - 1;
+            int slot = (int) (mix(key) & mask);
+            while (keys[slot] >= 0) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        private void put(int node, char c, int value) {
+            if ((edgeCount + 1) * 2 > keys.length) {
+                long[] oldKeys = keys;
+                int[] oldValues = values;
+                keys = new long[oldKeys.length * 2];
+                values = new int[oldKeys.length * 2];
+                Arrays.fill(keys, -1L);
+                edgeCount = 0;
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldKeys[i] >= 0) {
+                        insert(oldKeys[i], oldValues[i]);
+                    }
+                }
+            }
+            insert(((long) node << 16) | c, value);
+        }
+
+        private void insert(long key, int value) {
+            int mask = keys.length - 1;
+            int slot = (int) (mix(key) & mask);
+            while (keys[slot] >= 0) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            edgeCount++;
+        }
+
+        private static long mix(long key) {
+            key *= 0x9E3779B97F4A7C15L;
+            return key ^ (key >>> 32);
+        }
+    }
+}
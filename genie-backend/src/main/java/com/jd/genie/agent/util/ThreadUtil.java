@@ -1,43 +1,94 @@
 package com.jd.genie.agent.util;
 
-import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import com.jd.genie.config.GenieConfig;
+import org.springframework.context.ApplicationContext;
 
-import java.util.concurrent.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
+/**
+ * 执行层
+ * - 请求级执行器：AutoAgent 主流程，达到上限时拒绝（RejectedExecutionException），由入口返回繁忙
+ * - 任务级执行器：工具调用、并行子任务
+ *   execute 达到上限时在调用线程执行，任务不会丢失，嵌套等待也不会死锁；
+ *   openScope 中 fork 达到上限时拒绝，工具调用直接返回失败、计划子任务按失败处理，不会在协调线程上绕过超时串行执行；
+ *   需要更高并行度时调大 autobots.autoagent.executor.max_tasks，executor/stats 中的 callerRuns、rejected 反映发生次数
+ * 并发上限与是否使用虚拟线程由 autobots.autoagent.executor.* 配置，未初始化时首次使用按配置（或默认值）初始化
+ */
 public class ThreadUtil {
-    private static ThreadPoolExecutor executor = null;
+    private static final int DEFAULT_MAX_REQUESTS = 200;
+    private static final int DEFAULT_MAX_TASKS = 1000;
+
+    private static volatile BoundedExecutor requestExecutor = null;
+    private static volatile BoundedExecutor taskExecutor = null;
 
     private ThreadUtil() {
     }
 
-    public static synchronized void initPool(int poolSize) {
-        if (executor == null) {
-            ThreadFactory threadFactory = (new BasicThreadFactory.Builder()).namingPattern("exe-pool-%d").daemon(true).build();
-            RejectedExecutionHandler handler = (r, executor) -> {
-            };
-            int maxPoolSize = Math.max(poolSize, 1000);
-            executor = new ThreadPoolExecutor(poolSize, maxPoolSize, 60000L, TimeUnit.MILLISECONDS, new SynchronousQueue(), threadFactory, handler);
+    /**
+     * 初始化执行器，已初始化时忽略
+     */
+    public static synchronized void init(int maxRequests, int maxTasks, boolean virtualThreads) {
+        if (taskExecutor == null) {
+            requestExecutor = new BoundedExecutor("agent-request", maxRequests, BoundedExecutor.Saturation.REJECT, virtualThreads);
+            taskExecutor = new BoundedExecutor("agent-task", maxTasks, BoundedExecutor.Saturation.CALLER_RUNS, virtualThreads);
+        }
+    }
+
+    private static void ensureInit() {
+        if (taskExecutor != null) {
+            return;
+        }
+        ApplicationContext context = SpringContextHolder.getApplicationContext();
+        if (context == null) {
+            init(DEFAULT_MAX_REQUESTS, DEFAULT_MAX_TASKS, true);
+            return;
         }
+        GenieConfig genieConfig = context.getBean(GenieConfig.class);
+        init(genieConfig.getExecutorMaxRequests(), genieConfig.getExecutorMaxTasks(), "1".equals(genieConfig.getExecutorVirtualThreads()));
+    }
 
+    /**
+     * 提交请求级任务
+     *
+     * @throws RejectedExecutionException 并发请求数已达上限
+     */
+    public static void executeRequest(Runnable runnable) {
+        ensureInit();
+        requestExecutor.execute(runnable);
     }
 
+    /**
+     * 提交任务级任务，执行器饱和时在调用线程执行
+     */
     public static void execute(Runnable runnable) {
-        if (executor == null) {
-            initPool(100);
-        }
+        ensureInit();
+        taskExecutor.execute(runnable);
+    }
 
-        executor.execute(runnable);
+    /**
+     * 尝试提交任务级任务，执行器饱和时返回 false（调用线程不能阻塞时使用）
+     */
+    public static boolean tryExecute(Runnable runnable) {
+        ensureInit();
+        return taskExecutor.tryExecute(runnable);
     }
 
-    public static CountDownLatch getCountDownLatch(int count) {
-        return new CountDownLatch(count);
+    /**
+     * 打开结构化并发作用域，子任务运行在任务级执行器上，饱和时 fork 抛出 RejectedExecutionException
+     */
+    public static TaskScope openScope() {
+        ensureInit();
+        return new TaskScope(taskExecutor);
     }
 
-    public static void await(CountDownLatch latch) {
-        try {
-            latch.await();
-        } catch (Exception var2) {
-        }
+    public static Map<String, Object> stats() {
+        ensureInit();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("request", requestExecutor.stats());
+        stats.put("task", taskExecutor.stats());
+        return stats;
     }
 
     public static void sleep(long millis) {
@@ -155,9 +155,79 @@ public class GenieConfig {
     @Value("${autobots.autoagent.tool.clear_tool_message:1}")
     private String clearToolMessage;
 
+    @Value("${autobots.autoagent.tool.stream_dispatch:0}")
+    private String toolStreamDispatch; // 1：流式输出时参数已完整的工具调用立即执行，不等待整个响应结束
+
+    @Value("${autobots.autoagent.tool.timeout.max:600}")
+    private Integer toolTimeoutMax; // 单个工具调用超时上限（秒），耗时样本不足时即为超时时间
+
+    @Value("${autobots.autoagent.tool.timeout.min:30}")
+    private Integer toolTimeoutMin; // 自适应超时下限（秒）
+
+    @Value("${autobots.autoagent.tool.timeout.factor:3}")
+    private Double toolTimeoutFactor; // 自适应超时 = 最近耗时 p99 * factor
+
+    @Value("${autobots.autoagent.tool.timeout.min_samples:20}")
+    private Integer toolTimeoutMinSamples; // 启用自适应超时所需的最少样本数
+
+    @Value("${autobots.autoagent.tool.timeout.step:900}")
+    private Integer toolStepTimeout; // 单步全部工具调用的超时时间（秒）
+
+    private Map<String, Integer> toolTimeoutMap = new HashMap<>(); // 按工具配置的超时上限（工具名->秒）
+    @Value("${autobots.autoagent.tool.timeout.tools:{}}")
+    public void setToolTimeoutMap(String jsonStr) {
+        this.toolTimeoutMap = JSON.parseObject(jsonStr, new TypeReference<Map<String, Integer>>() {
+        });
+    }
+
+    @Value("${autobots.autoagent.tool.memo.enable:1}")
+    private String toolMemoEnable; // 1：同一请求内相同参数的只读工具调用复用结果（并行子任务间共享）
+
+    @Value("${autobots.autoagent.tool.memo.tools:file_tool:get}")
+    private String toolMemoTools; // 可复用结果的工具，逗号分隔，"工具名:command" 表示只复用该 command；只配置无副作用、在执行线程输出事件的调用
+
+    @Value("${autobots.autoagent.tool.memo.loop_max_repeats:4}")
+    private Integer toolLoopMaxRepeats; // 同一智能体相同调用达到该次数视为陷入循环，结束当前智能体
+
     @Value("${autobots.autoagent.planner.close_update:1}")
     private String planningCloseUpdate;
 
+    @Value("${autobots.autoagent.planner.dag_schedule:0}")
+    private String planningDagSchedule; // 1：按步骤依赖调度子任务，依赖就绪即执行，不再按步骤逐批等待（改变 PlanSolve 执行方式，默认关闭）
+
+    @Value("${autobots.autoagent.budget.enable:1}")
+    private String budgetEnable; // 1：按请求累计 token、耗时与费用，接近上限时收紧步数、切换模型或直接总结
+
+    @Value("${autobots.autoagent.budget.max_tokens:3000000}")
+    private Long budgetMaxTokens; // 单个请求的 token 上限（prompt + completion），<= 0 不限制
+
+    @Value("${autobots.autoagent.budget.max_seconds:3300}")
+    private Integer budgetMaxSeconds; // 单个请求的耗时上限（秒），<= 0 不限制
+
+    @Value("${autobots.autoagent.budget.max_cost:0}")
+    private Double budgetMaxCost; // 单个请求的费用上限（按 llm.settings 中的 input_price/output_price 估算），<= 0 不限制
+
+    @Value("${autobots.autoagent.budget.low_ratio:0.8}")
+    private Double budgetLowRatio; // 已用比例达到该值后进入预算紧张状态
+
+    @Value("${autobots.autoagent.budget.low_steps:3}")
+    private Integer budgetLowSteps; // 预算紧张时每个智能体本轮最多再执行的步数
+
+    @Value("${autobots.autoagent.budget.fallback_model:}")
+    private String budgetFallbackModel; // 预算紧张时切换的模型，为空不切换
+
+    @Value("${autobots.autoagent.checkpoint.enable:0}")
+    private String checkpointEnable; // 1：PlanSolve 每轮迭代前写检查点，进程重启后可通过 /AutoAgent/resume 继续（检查点含完整对话与工具输出，默认关闭）
+
+    @Value("${autobots.autoagent.checkpoint.dir:${java.io.tmpdir}/genie-checkpoint}")
+    private String checkpointDir; // 检查点文件目录（开启时建议配置为专用目录，新建的目录与文件只对属主可读写）
+
+    @Value("${autobots.autoagent.checkpoint.flush_interval_ms:200}")
+    private Integer checkpointFlushInterval; // 攒批刷盘周期（毫秒）
+
+    @Value("${autobots.autoagent.checkpoint.ttl_hours:24}")
+    private Integer checkpointTtlHours; // 失败或中断后未恢复的检查点保留时长（小时），启动时与每小时清理一次
+
     @Value("${autobots.autoagent.deep_search_page_count:5}")
     private String deepSearchPageCount;
 
@@ -211,6 +281,24 @@ public class GenieConfig {
     @Value("${autobots.autoagent.summary.message_size_limit:1000}")
     private Integer messageSizeLimit;
 
+    @Value("${autobots.autoagent.summary.stream:1}")
+    private String summaryStream; // 1：流式请求时最终总结边生成边输出（agent_stream 事件），$$$ 之后的文件列表不输出
+
+    @Value("${autobots.autoagent.router.enable:0}")
+    private String routerEnable; // 1：UI 请求先经 ROUTER 分类，简单问题直接回答，其余按原模式或升级为 PLAN_SOLVE 执行
+
+    @Value("${autobots.autoagent.router.model_name:}")
+    private String routerModelName; // 规则无法判定时用于分类的小模型，为空则只用规则（此时只有简单计算、问候直接回答）
+
+    @Value("${autobots.autoagent.router.timeout_ms:3000}")
+    private Long routerTimeoutMs; // 小模型分类超时，超时按原模式执行
+
+    @Value("${autobots.autoagent.router.direct_max_length:30}")
+    private Integer routerDirectMaxLength; // 规则无法判定且不超过该长度的问题交给小模型分类，更长的按原模式
+
+    @Value("${autobots.autoagent.router.complex_min_length:200}")
+    private Integer routerComplexMinLength; // 超过该长度的问题升级为 PLAN_SOLVE
+
     private Map<String, String> sensitivePatterns = new HashMap<>(); // 敏感词/模式配置
     @Value("${autobots.autoagent.sensitive_patterns:{}}")
     public void setSensitivePatterns(String jsonStr) {
@@ -244,6 +332,12 @@ public class GenieConfig {
 	@Value("${autobots.multiagent.sseClient.connectTimeout:1800}")
 	private Integer sseClientConnectTimeout;
 
+    @Value("${autobots.multiagent.remote.enable:0}")
+    private String multiAgentRemoteEnable; // 1：UI 层经 HTTP 调用 /AutoAgent（UI 与智能体拆分部署时使用），0：进程内事件桥
+
+    @Value("${autobots.multiagent.remote.url:http://127.0.0.1:8080/AutoAgent}")
+    private String multiAgentRemoteUrl; // 远程模式下 /AutoAgent 地址
+
 	@Value("${autobots.autoagent.genie_sop_prompt:}")
 	private String genieSopPrompt;
 
@@ -253,5 +347,50 @@ public class GenieConfig {
     @Value("${autobots.autoagent.tool.task_complete_desc:当前task完成，请将当前task标记为 completed}")
     private String taskCompleteDesc;
 
+    @Value("${autobots.autoagent.compaction.enable:0}")
+    private String compactionEnable; // 1：历史超过阈值时在后台把较早的轮次压缩为一条状态消息（有损且额外调用模型，默认关闭）
+
+    @Value("${autobots.autoagent.compaction.threshold_tokens:32000}")
+    private Integer compactionThresholdTokens; // 触发压缩的历史 token 数
+
+    @Value("${autobots.autoagent.compaction.keep_recent_turns:6}")
+    private Integer compactionKeepRecentTurns; // 原样保留的最近轮数
+
+    @Value("${autobots.autoagent.compaction.model_name:}")
+    private String compactionModelName; // 压缩使用的模型，为空时使用当前智能体的模型
+
+    @Value("${autobots.autoagent.compaction.input_max_chars:60000}")
+    private Integer compactionInputMaxChars; // 压缩输入的最大字符数，超出时优先截断工具结果
+
+    @Value("${autobots.autoagent.compaction.summary_max_chars:2000}")
+    private Integer compactionSummaryMaxChars; // 状态消息的最大字数
+
+    @Value("${autobots.autoagent.llm_cache.max_entries:1000}")
+    private Integer llmCacheMaxEntries; // LLM 响应缓存堆内最大条数
+
+    @Value("${autobots.autoagent.llm_cache.ttl_seconds:86400}")
+    private Integer llmCacheTtlSeconds; // LLM 响应缓存有效期（秒）
+
+    @Value("${autobots.autoagent.llm_cache.disk_dir:}")
+    private String llmCacheDiskDir; // LLM 响应缓存磁盘目录，为空不启用磁盘缓存
+
+    @Value("${autobots.autoagent.llm_cache.max_temperature:0.1}")
+    private Double llmCacheMaxTemperature; // 温度不高于该值的请求才缓存
+
+    @Value("${autobots.autoagent.context.elide_keep_chars:1000}")
+    private Integer contextElideKeepChars; // 上下文超限时工具结果省略后保留的字符数
+
+    @Value("${autobots.autoagent.executor.max_requests:200}")
+    private Integer executorMaxRequests; // 同时执行的 AutoAgent 请求上限，超出返回繁忙
+
+    @Value("${autobots.autoagent.executor.max_tasks:1000}")
+    private Integer executorMaxTasks; // 工具调用/并行子任务的并发上限，超出在调用线程执行（子任务退化为串行）
+
+    @Value("${autobots.autoagent.executor.virtual_threads:1}")
+    private String executorVirtualThreads; // 1：JDK 21+ 使用虚拟线程
+
+    @Value("${autobots.autoagent.sse.heartbeat_threads:8}")
+    private Integer sseHeartbeatThreads; // SSE 心跳发送线程数，即最多容忍多少个写阻塞的连接而不拖慢其他连接的心跳
+
 
 }
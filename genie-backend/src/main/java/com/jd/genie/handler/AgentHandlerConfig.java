@@ -23,6 +23,8 @@ public class AgentHandlerConfig {
                 map.put(AgentType.PLAN_SOLVE, handler);
             } else if (handler instanceof ReactAgentResponseHandler) {
                 map.put(AgentType.REACT, handler);
+            } else if (handler instanceof RouterAgentResponseHandler) {
+                map.put(AgentType.ROUTER, handler);
             }
             // 可扩展更多 handler
         }
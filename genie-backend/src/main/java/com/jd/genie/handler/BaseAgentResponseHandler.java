@@ -1,14 +1,12 @@
 package com.jd.genie.handler;
 
-import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.JSONObject;
-import com.alibaba.fastjson.serializer.SerializerFeature;
 import com.jd.genie.agent.enums.ResponseTypeEnum;
 import com.jd.genie.model.multi.EventMessage;
 import com.jd.genie.model.multi.EventResult;
 import com.jd.genie.model.req.AgentRequest;
 import com.jd.genie.model.response.AgentResponse;
 import com.jd.genie.model.response.GptProcessResult;
+import com.jd.genie.util.SseJson;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
@@ -91,7 +89,7 @@ public class BaseAgentResponseHandler {
                 // 处理计划思考类型的消息
                 message.setMessageType(agentResponse.getMessageType());
                 message.setMessageOrder(eventResult.getAndIncrOrder(agentResponse.getMessageType()));
-                message.setResultMap(JSON.parseObject(JSONObject.toJSONString(agentResponse)));
+                message.setResultMap(agentResponse);
 
                 // 如果是最终消息且结果映射中不包含plan_thought，则添加进去
                 if (isFinal && !eventResult.getResultMap().containsKey("plan_thought")) {
@@ -117,27 +115,34 @@ public class BaseAgentResponseHandler {
                     message.setTaskOrder(eventResult.getTaskOrder().getAndIncrement());
                     message.setMessageType("task");
                     message.setMessageOrder(1);
-                    message.setResultMap(JSON.parseObject(JSONObject.toJSONString(agentResponse)));
+                    message.setResultMap(agentResponse);
 
-                    // 如果是最终消息，设置子任务结果
+                    // 如果是最终消息，保存子任务结果副本（原对象之后仍可能被修改）
                     if (isFinal) {
-                        eventResult.setResultMapSubTask(message.getResultMap());
+                        eventResult.setResultMapSubTask(SseJson.snapshot(agentResponse));
                     }
                 }
                 break;
 
+            case "budget":
+                // 预算状态：独立计数，不计入任务结果
+                message.setMessageType(agentResponse.getMessageType());
+                message.setMessageOrder(eventResult.getAndIncrOrder(agentResponse.getMessageType()));
+                message.setResultMap(agentResponse.getResultMap());
+                break;
+
             case "task":
                 // 处理任务类型的消息
                 message.setTaskId(eventResult.renewTaskId());
                 message.setTaskOrder(eventResult.getTaskOrder().getAndIncrement());
                 message.setMessageType(agentResponse.getMessageType());
                 message.setMessageOrder(1);
-                message.setResultMap(JSON.parseObject(JSONObject.toJSONString(agentResponse)));
+                message.setResultMap(agentResponse);
 
                 // 如果是最终消息，创建任务列表并设置
                 if (isFinal) {
                     List<Object> task = new ArrayList<>();
-                    task.add(message.getResultMap());
+                    task.add(SseJson.snapshot(agentResponse));
                     eventResult.setResultMapTask(task);
                 }
                 break;
@@ -155,17 +160,17 @@ public class BaseAgentResponseHandler {
                     message.setMessageOrder(eventResult.getAndIncrOrder(orderKey));
                 }
 
-                message.setResultMap(JSON.parseObject(JSONObject.toJSONString(agentResponse)));
+                message.setResultMap(agentResponse);
 
-                // 如果是最终消息且不是过滤的最终消息，设置子任务结果
+                // 如果是最终消息且不是过滤的最终消息，保存子任务结果副本
                 if (isFinal && !isFilterFinal) {
-                    eventResult.setResultMapSubTask(message.getResultMap());
+                    eventResult.setResultMapSubTask(SseJson.snapshot(agentResponse));
                 }
                 break;
         }
 
-        // 将增量数据添加到结果映射中
-        resultMap.put("eventData", JSONObject.parseObject(JSON.toJSONString(message)));
+        // 将增量数据添加到结果映射中（AgentResponse / EventMessage 原样挂载，由 SseJson 写出时只序列化一次，空字段不输出）
+        resultMap.put("eventData", message);
         streamResult.setResultMap(resultMap);
 
         // 返回构建完成的增量结果
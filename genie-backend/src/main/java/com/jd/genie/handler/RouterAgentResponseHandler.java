@@ -0,0 +1,26 @@
+package com.jd.genie.handler;
+
+import com.jd.genie.model.multi.EventResult;
+import com.jd.genie.model.req.AgentRequest;
+import com.jd.genie.model.response.AgentResponse;
+import com.jd.genie.model.response.GptProcessResult;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Component
+@Slf4j
+public class RouterAgentResponseHandler extends BaseAgentResponseHandler implements AgentResponseHandler {
+    @Override
+    public GptProcessResult handle(AgentRequest request, AgentResponse response, List<AgentResponse> agentRespList, EventResult eventResult) {
+        try {
+            // 直接回答与升级后的 ReAct / PlanSolve 事件格式一致，按同一方式组装
+            return buildIncrResult(request, eventResult, response);
+        } catch (Exception e) {
+            log.error("{} RouterAgentResponseHandler handle error", request.getRequestId(), e);
+            return null;
+        }
+    }
+}
@@ -65,6 +65,7 @@ public class EventResult {
             add("markdown");
             add("deep_search");
             add("tool_thought");
+            add("agent_stream");
         }
     };
 
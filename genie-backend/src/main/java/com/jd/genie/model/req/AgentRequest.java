@@ -25,6 +25,7 @@ public class AgentRequest {
     private String erp; // 用户标识（企业账号）
     private String query; // 用户问题
     private Integer agentType; // 智能体类型（React/PlanSolve等）
+    private Integer fallbackAgentType; // ROUTER 模式下不直接回答时使用的智能体类型（为空时 REACT）
     private String basePrompt; // 基础提示词（React使用）
     private String sopPrompt; // 规划SOP提示词（Plan使用）
     private Boolean isStream; // 是否流式输出
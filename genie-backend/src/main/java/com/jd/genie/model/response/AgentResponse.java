@@ -1,5 +1,6 @@
 package com.jd.genie.model.response;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -18,6 +19,7 @@ import java.util.regex.Pattern;
  * - plan/toolResult：结构化计划与工具结果
  */
 @Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
@@ -40,6 +42,7 @@ public class AgentResponse {
     private Map<String, String> ext; // 扩展字段
 
     @Data
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     @Builder
     @NoArgsConstructor
     @AllArgsConstructor
@@ -52,6 +55,7 @@ public class AgentResponse {
     }
 
     @Data
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     @Builder
     @NoArgsConstructor
     @AllArgsConstructor
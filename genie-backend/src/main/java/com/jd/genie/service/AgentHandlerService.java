@@ -1,6 +1,7 @@
 package com.jd.genie.service;
 
 import com.jd.genie.agent.agent.AgentContext;
+import com.jd.genie.agent.dto.RunCheckpoint;
 import com.jd.genie.model.req.AgentRequest;
 
 public interface AgentHandlerService {
@@ -19,4 +20,22 @@ public interface AgentHandlerService {
      */
     Boolean support(AgentContext context, AgentRequest request);
 
+    /**
+     * 是否支持从检查点恢复，支持时需实现 resume
+     */
+    default boolean supportResume() {
+        return false;
+    }
+
+    /**
+     * 从检查点恢复执行，调用方先按 supportResume 检查
+     * @param context 新建的运行上下文
+     * @param request 检查点中的原始请求
+     * @param checkpoint 最近一次检查点
+     * @return 同 handle
+     */
+    default String resume(AgentContext context, AgentRequest request, RunCheckpoint checkpoint) {
+        throw new UnsupportedOperationException("resume is not supported for agentType " + request.getAgentType());
+    }
+
 }
\ No newline at end of file
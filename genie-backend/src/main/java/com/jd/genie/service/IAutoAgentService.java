@@ -0,0 +1,39 @@
+package com.jd.genie.service;
+
+import com.jd.genie.agent.agent.AgentContext;
+import com.jd.genie.agent.dto.RunCheckpoint;
+import com.jd.genie.agent.printer.Printer;
+import com.jd.genie.model.req.AgentRequest;
+
+public interface IAutoAgentService {
+
+    /**
+     * 按请求构建上下文并执行对应模式的智能体，事件经 printer 输出
+     * @param request 请求（query 已追加输出样式提示词）
+     * @param printer 输出器（SSE 或进程内事件桥）
+     */
+    void execute(AgentRequest request, Printer printer);
+
+    /**
+     * 请求对应的处理器是否支持从检查点恢复
+     */
+    boolean supportResume(AgentRequest request);
+
+    /**
+     * 从检查点恢复执行
+     * @param request 检查点中的原始请求
+     * @param checkpoint 最近一次检查点
+     * @param printer 输出器
+     */
+    void resume(AgentRequest request, RunCheckpoint checkpoint, Printer printer);
+
+    /**
+     * 构建智能体上下文（含工具集合）
+     */
+    AgentContext buildAgentContext(AgentRequest request, Printer printer);
+
+    /**
+     * 按输出样式为 query 追加提示词
+     */
+    String handleOutputStyle(AgentRequest request);
+}
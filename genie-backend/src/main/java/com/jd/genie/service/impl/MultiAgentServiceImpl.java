@@ -6,6 +6,8 @@ import com.alibaba.fastjson.serializer.SerializerFeature;
 import com.jd.genie.agent.enums.AgentType;
 import com.jd.genie.agent.enums.AutoBotsResultStatus;
 import com.jd.genie.agent.enums.ResponseTypeEnum;
+import com.jd.genie.agent.printer.EventBridgePrinter;
+import com.jd.genie.agent.util.ThreadUtil;
 import com.jd.genie.config.GenieConfig;
 import com.jd.genie.handler.AgentResponseHandler;
 import com.jd.genie.model.dto.AutoBotsResult;
@@ -14,10 +16,14 @@ import com.jd.genie.model.req.AgentRequest;
 import com.jd.genie.model.req.GptQueryReq;
 import com.jd.genie.model.response.AgentResponse;
 import com.jd.genie.model.response.GptProcessResult;
+import com.jd.genie.service.IAutoAgentService;
 import com.jd.genie.service.IMultiAgentService;
 import com.jd.genie.util.ChateiUtils;
+import com.jd.genie.util.SseHeartbeat;
+import com.jd.genie.util.SseJson;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.*;
+import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
@@ -26,7 +32,10 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 @Slf4j
 @Component
@@ -35,6 +44,10 @@ public class MultiAgentServiceImpl implements IMultiAgentService {
     private GenieConfig genieConfig;
     @Autowired
     private Map<AgentType, AgentResponseHandler> handlerMap; // 按 AgentType 分发 UI 层增量事件的处理器
+    @Autowired
+    private IAutoAgentService autoAgentService; // 进程内执行智能体
+
+    private static final long HEARTBEAT_INTERVAL = 10_000L; // 心跳间隔（毫秒）
 
     @Override
     /**
@@ -59,9 +72,103 @@ public class MultiAgentServiceImpl implements IMultiAgentService {
     }
 
     /**
-     * 通过 OkHttp 建立到后端 /AutoAgent 的SSE连接，并逐行转发给前端
+     * 执行智能体并把事件转发给前端：默认进程内执行，拆分部署时经 HTTP 调用 /AutoAgent
      */
     public void handleMultiAgentRequest(AgentRequest autoReq, SseEmitter sseEmitter) {
+        if ("1".equals(genieConfig.getMultiAgentRemoteEnable())) {
+            handleRemoteAgentRequest(autoReq, sseEmitter);
+        } else {
+            handleLocalAgentRequest(autoReq, sseEmitter);
+        }
+    }
+
+    /**
+     * 进程内执行：智能体事件经 EventBridgePrinter 直接交给 AgentResponseHandler，组装后写入前端SSE
+     */
+    private void handleLocalAgentRequest(AgentRequest autoReq, SseEmitter sseEmitter) {
+        long startTime = System.currentTimeMillis();
+        String requestId = autoReq.getRequestId();
+        AgentResponseHandler handler = handlerMap.get(AgentType.fromCode(autoReq.getAgentType()));
+        List<AgentResponse> agentRespList = new ArrayList<>();
+        EventResult eventResult = new EventResult();
+        AtomicBoolean finished = new AtomicBoolean(false);
+
+        // 执行侧使用请求副本：与 /AutoAgent 一致追加输出样式提示词，路由改写 agentType 不影响 UI 侧
+        AgentRequest request = new AgentRequest();
+        BeanUtils.copyProperties(autoReq, request);
+        request.setQuery(autoAgentService.handleOutputStyle(request));
+
+        // 前端连接空闲满一个间隔才发送心跳，心跳包每个连接只构建一次
+        GptProcessResult heartbeatData = buildHeartbeatData(requestId);
+        SseHeartbeat.Handle heartbeat = SseHeartbeat.register(requestId, HEARTBEAT_INTERVAL, () -> {
+            synchronized (eventResult) {
+                if (!finished.get()) {
+                    SseJson.send(sseEmitter, heartbeatData);
+                }
+            }
+        });
+
+        // 并行子任务会并发输出事件，按到达顺序逐个组装并写入
+        Consumer<AgentResponse> listener = agentResponse -> {
+            synchronized (eventResult) {
+                if (finished.get()) {
+                    return;
+                }
+                try {
+                    GptProcessResult result = handler.handle(autoReq, agentResponse, agentRespList, eventResult);
+                    if (Objects.isNull(result)) {
+                        return;
+                    }
+                    SseJson.send(sseEmitter, result);
+                    heartbeat.touch();
+                    if (result.isFinished()) {
+                        finished.set(true);
+                        log.info("{} task total cost time:{}ms", requestId, System.currentTimeMillis() - startTime);
+                        sseEmitter.complete();
+                    }
+                } catch (Exception e) {
+                    log.error("{} send agent event error", requestId, e);
+                }
+            }
+        };
+
+        try {
+            ThreadUtil.executeRequest(() -> {
+                try {
+                    autoAgentService.execute(request, new EventBridgePrinter(listener, request, request.getAgentType()));
+                } catch (Exception e) {
+                    log.error("{} auto agent error", requestId, e);
+                } finally {
+                    heartbeat.cancel();
+                    // 未输出最终结果（执行异常）时返回失败，关闭连接
+                    finishWithError(autoReq, sseEmitter, eventResult, finished, "任务执行失败");
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("{} auto agent rejected: {}", requestId, e.getMessage());
+            heartbeat.cancel();
+            finishWithError(autoReq, sseEmitter, eventResult, finished, "系统繁忙，请稍后重试");
+        }
+    }
+
+    private void finishWithError(AgentRequest autoReq, SseEmitter sseEmitter, EventResult eventResult, AtomicBoolean finished, String errMsg) {
+        synchronized (eventResult) {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                SseJson.send(sseEmitter, buildDefaultAutobotsResult(autoReq, errMsg));
+            } catch (Exception e) {
+                log.error("{} send error result failed", autoReq.getRequestId(), e);
+            }
+            sseEmitter.complete();
+        }
+    }
+
+    /**
+     * 远程模式：通过 OkHttp 建立到后端 /AutoAgent 的SSE连接，并逐行转发给前端
+     */
+    private void handleRemoteAgentRequest(AgentRequest autoReq, SseEmitter sseEmitter) {
         // 记录请求开始时间，用于性能监控
         long startTime = System.currentTimeMillis();
 
@@ -108,6 +215,9 @@ public class MultiAgentServiceImpl implements IMultiAgentService {
                         return;
                     }
 
+                    // 上游只在空闲时发送心跳，透传时复用同一个心跳包
+                    GptProcessResult heartbeatData = buildHeartbeatData(autoReq.getRequestId());
+
                     // 创建流式读取器
                     String line;
                     BufferedReader reader = new BufferedReader(
@@ -132,8 +242,7 @@ public class MultiAgentServiceImpl implements IMultiAgentService {
                         // 处理心跳数据
                         if (data.startsWith("heartbeat")) {
                             // 透传心跳到前端，保持连接活性
-                            GptProcessResult result = buildHeartbeatData(autoReq.getRequestId());
-                            sseEmitter.send(result);
+                            SseJson.send(sseEmitter, heartbeatData);
                             // log.info("{} heartbeat-data: {}", autoReq.getRequestId(), data);
                             continue;
                         }
@@ -148,7 +257,7 @@ public class MultiAgentServiceImpl implements IMultiAgentService {
 
                         // 处理响应数据，组装前端可消费的数据结构
                         GptProcessResult result = handler.handle(autoReq, agentResponse, agentRespList, eventResult);
-                        sseEmitter.send(result);
+                        SseJson.send(sseEmitter, result);
 
                         // 检查任务是否完成
                         if (result.isFinished()) {
@@ -170,7 +279,7 @@ public class MultiAgentServiceImpl implements IMultiAgentService {
     private Request buildHttpRequest(AgentRequest autoReq) {
         String reqId = autoReq.getRequestId();
         autoReq.setRequestId(autoReq.getRequestId());
-        String url = "http://127.0.0.1:8080/AutoAgent";
+        String url = genieConfig.getMultiAgentRemoteUrl();
         RequestBody body = RequestBody.create(
                 MediaType.parse("application/json"),
                 JSONObject.toJSONString(autoReq));
@@ -228,6 +337,13 @@ public class MultiAgentServiceImpl implements IMultiAgentService {
         request.setIsStream(true);
         // 设置输出样式，直接使用前端传递的样式配置
         request.setOutputStyle(req.getOutputStyle());
+        // 开启路由时先由 ROUTER 分类：简单问题直接回答，其余按上面选择的模式（复杂问题升级为类型3）执行，两种提示词都需要
+        if ("1".equals(genieConfig.getRouterEnable())) {
+            request.setFallbackAgentType(request.getAgentType());
+            request.setAgentType(AgentType.ROUTER.getValue());
+            request.setSopPrompt(genieConfig.getGenieSopPrompt());
+            request.setBasePrompt(genieConfig.getGenieBasePrompt());
+        }
         // 返回构建完成的Agent请求对象
         return request;
     }
@@ -3,12 +3,18 @@ package com.jd.genie.service.impl;
 
 import com.jd.genie.agent.agent.AgentContext;
 import com.jd.genie.agent.agent.ExecutorAgent;
+import com.jd.genie.agent.agent.PlanDagScheduler;
 import com.jd.genie.agent.agent.PlanningAgent;
 import com.jd.genie.agent.agent.SummaryAgent;
 import com.jd.genie.agent.dto.File;
+import com.jd.genie.agent.dto.Plan;
+import com.jd.genie.agent.dto.RunCheckpoint;
 import com.jd.genie.agent.dto.TaskSummaryResult;
 import com.jd.genie.agent.enums.AgentState;
 import com.jd.genie.agent.enums.AgentType;
+import com.jd.genie.agent.llm.RequestBudget;
+import com.jd.genie.agent.util.CheckpointLog;
+import com.jd.genie.agent.util.TaskScope;
 import com.jd.genie.agent.util.ThreadUtil;
 import com.jd.genie.config.GenieConfig;
 import com.jd.genie.model.req.AgentRequest;
@@ -20,7 +26,7 @@ import org.springframework.util.CollectionUtils;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -44,16 +50,88 @@ public class PlanSolveHandlerImpl implements AgentHandlerService {
         SummaryAgent summary = new SummaryAgent(agentContext);
         summary.setSystemPrompt(summary.getSystemPrompt().replace("{{query}}", request.getQuery()));
 
+        // 同一请求已在本进程执行中时不重复执行，避免两次运行写同一个检查点
+        if (!CheckpointLog.begin(agentContext.getRequestId())) {
+            log.warn("{} plan solve already running", agentContext.getRequestId());
+            agentContext.getPrinter().send("result", "任务正在执行中，请勿重复提交。");
+            return "";
+        }
         // 计划智能体 初次规划
-        String planningResult = planning.run(agentContext.getQuery());
+        String planningResult;
+        try {
+            planningResult = planning.run(agentContext.getQuery());
+        } catch (RuntimeException e) {
+            CheckpointLog.end(agentContext.getRequestId(), true);
+            throw e;
+        }
+
+        return solve(agentContext, request, planning, executor, summary, planningResult, 0);
+    }
+
+    @Override
+    public boolean supportResume() {
+        return true;
+    }
 
-        // 迭代索引
-        int stepIdx = 0;
+    @Override
+    public String resume(AgentContext agentContext, AgentRequest request, RunCheckpoint checkpoint) {
+        PlanningAgent planning = new PlanningAgent(agentContext);
+        ExecutorAgent executor = new ExecutorAgent(agentContext);
+        SummaryAgent summary = new SummaryAgent(agentContext);
+        summary.setSystemPrompt(summary.getSystemPrompt().replace("{{query}}", request.getQuery()));
+
+        // 还原检查点时的记忆、计划、文件与状态
+        planning.getMemory().addMessages(checkpoint.getPlanningMessages());
+        executor.getMemory().addMessages(checkpoint.getExecutorMessages());
+        planning.getPlanningTool().setPlan(checkpoint.getPlan());
+        planning.setState(AgentState.valueOf(checkpoint.getPlanningState()));
+        executor.setState(AgentState.valueOf(checkpoint.getExecutorState()));
+        if (Objects.nonNull(checkpoint.getProductFiles())) {
+            agentContext.getProductFiles().addAll(checkpoint.getProductFiles());
+        }
+        if (Objects.nonNull(checkpoint.getTaskProductFiles())) {
+            agentContext.getTaskProductFiles().addAll(checkpoint.getTaskProductFiles());
+        }
+        log.info("{} resume plan solve from step {} checkpoint at {}", agentContext.getRequestId(),
+                checkpoint.getStepIdx(), checkpoint.getCreateTime());
+        if (Objects.nonNull(checkpoint.getPlan())) {
+            agentContext.getPrinter().send("plan", checkpoint.getPlan());
+        }
+
+        return solve(agentContext, request, planning, executor, summary, checkpoint.getPlanningResult(), checkpoint.getStepIdx());
+    }
+
+    /**
+     * 规划-执行迭代，每轮开始前写检查点；正常结束时删除检查点，异常退出时保留供恢复
+     */
+    private String solve(AgentContext agentContext, AgentRequest request, PlanningAgent planning, ExecutorAgent executor,
+                         SummaryAgent summary, String planningResult, int stepIdx) {
         // 最大迭代次数
         int maxStepNum = genieConfig.getPlannerMaxSteps();
+        boolean completed = false;
+        try {
+            iterate(agentContext, request, planning, executor, summary, planningResult, stepIdx, maxStepNum);
+            completed = true;
+        } finally {
+            CheckpointLog.end(agentContext.getRequestId(), completed);
+        }
+        return "";
+    }
 
+    private void iterate(AgentContext agentContext, AgentRequest request, PlanningAgent planning, ExecutorAgent executor,
+                         SummaryAgent summary, String planningResult, int stepIdx, int maxStepNum) {
         // 不断循环直到最大次数
         while (stepIdx <= maxStepNum) {
+            checkpoint(agentContext, request, planning, executor, planningResult, stepIdx);
+
+            RequestBudget budget = agentContext.getBudget();
+            if (Objects.nonNull(budget) && budget.level() == RequestBudget.Level.EXHAUSTED) {
+                // 预算耗尽：不再规划与执行，基于已有执行结果直接总结
+                log.info("{} request budget exhausted at iteration {}, summarize directly", agentContext.getRequestId(), stepIdx);
+                sendTaskResult(agentContext, request, executor, summary);
+                break;
+            }
+
             // 将规划结果拆解成可执行任务列表
             List<String> planningResults = Arrays.stream(planningResult.split("<sep>"))
                     .map(task -> "你的任务是：" + task)
@@ -63,44 +141,60 @@ public class PlanSolveHandlerImpl implements AgentHandlerService {
             // 执行前清除任务文件
             agentContext.getTaskProductFiles().clear();
 
-             // 单任务串行执行
-            if (planningResults.size() == 1) {
+            Plan plan = planning.getPlanningTool().getPlan();
+            if (planning.getIsDagSchedule() && Objects.nonNull(plan) && !plan.getSteps().isEmpty()) {
+                // 按依赖调度：依赖就绪的子任务立即执行，全部完成或有子任务失败时才回到规划器
+                PlanDagScheduler.Result dagResult = new PlanDagScheduler(agentContext, executor).run(plan);
+                executorResult = dagResult.getOutput();
+                if (dagResult.isFailed() && planning.getIsColseUpdate()) {
+                    // 关闭动态更新时规划器无法重新规划，按执行异常结束
+                    executor.setState(AgentState.ERROR);
+                }
+            } else if (planningResults.size() == 1) {
+                // 单任务串行执行
                 log.info("单任务------");
                 executorResult = executor.run(planningResults.get(0));
             } else {
                 log.info("多任务------");
-                // 多任务并行执行：每个子任务复制当前记忆，执行完毕合并回主执行器
+                // 多任务并行执行：每个子任务 fork 当前记忆，执行完毕合并回主执行器
                 Map<String, String> tmpTaskResult = new ConcurrentHashMap<>();
-                // 定义线程计数器
-                CountDownLatch taskCount = ThreadUtil.getCountDownLatch(planningResults.size());
-                // 记忆 条数
-                int memoryIndex = executor.getMemory().size();
                 // 创建从执行器副本，每个任务独立执行
                 List<ExecutorAgent> slaveExecutors = new ArrayList<>();
-                for (String task : planningResults) {
-                    ExecutorAgent slaveExecutor = new ExecutorAgent(agentContext);
-                    slaveExecutor.setState(executor.getState());
-                    slaveExecutor.getMemory().addMessages(executor.getMemory().getMessages()); // 复制记忆
-                    slaveExecutors.add(slaveExecutor);
-
-                    // 并行执行每个任务
-                    ThreadUtil.execute(() -> {
-                        String taskResult = slaveExecutor.run(task);
-                        tmpTaskResult.put(task, taskResult);
-                        taskCount.countDown();
-                    });
+                boolean rejected = false;
+                try (TaskScope scope = ThreadUtil.openScope()) {
+                    for (String task : planningResults) {
+                        ExecutorAgent slaveExecutor = new ExecutorAgent(agentContext);
+                        slaveExecutor.setState(executor.getState());
+                        slaveExecutor.setMemory(executor.getMemory().fork()); // 共享当前记忆
+                        slaveExecutors.add(slaveExecutor);
+
+                        // 并行执行每个任务，执行器饱和时该任务按执行异常处理
+                        try {
+                            scope.fork(() -> {
+                                String taskResult = slaveExecutor.run(task);
+                                tmpTaskResult.put(task, taskResult);
+                                return taskResult;
+                            });
+                        } catch (RejectedExecutionException e) {
+                            log.warn("{} plan solve subtask rejected, task executor saturated", agentContext.getRequestId());
+                            rejected = true;
+                        }
+                    }
+                    // 等待所有任务完成
+                    scope.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    log.error("{} plan solve subtasks interrupted", agentContext.getRequestId());
                 }
-                // 等待所有任务完成
-                ThreadUtil.await(taskCount);
 
                 // 合并从执行器的记忆到主执行器
                 for (ExecutorAgent slaveExecutor : slaveExecutors) {
-                    for (int i = memoryIndex; i < slaveExecutor.getMemory().size(); i++) {
-                        executor.getMemory().addMessage(slaveExecutor.getMemory().get(i));
-                    }
-                    slaveExecutor.getMemory().clear();
+                    executor.getMemory().merge(slaveExecutor.getMemory());
                     executor.setState(slaveExecutor.getState());
                 }
+                if (rejected) {
+                    executor.setState(AgentState.ERROR);
+                }
                 executorResult = String.join("\n", tmpTaskResult.values());
             }
             // 基于执行结果继续迭代规划
@@ -108,26 +202,7 @@ public class PlanSolveHandlerImpl implements AgentHandlerService {
 
             if ("finish".equals(planningResult)) {
                 //任务成功结束，总结任务
-                TaskSummaryResult result = summary.summaryTaskResult(executor.getMemory().getMessages(), request.getQuery());
-
-                Map<String, Object> taskResult = new HashMap<>();
-                taskResult.put("taskSummary", result.getTaskSummary());
-
-                if (CollectionUtils.isEmpty(result.getFiles())) {
-                    if (!CollectionUtils.isEmpty(agentContext.getProductFiles())) {
-                        List<File> fileResponses = agentContext.getProductFiles();
-                        // 过滤中间搜索结果文件
-                        fileResponses.removeIf(file -> Objects.nonNull(file) && file.getIsInternalFile());
-                        Collections.reverse(fileResponses);
-                        taskResult.put("fileList", fileResponses);
-                    }
-                } else {
-                    taskResult.put("fileList", result.getFiles());
-                }
-
-                agentContext.getPrinter().send("result", taskResult); // 输出最终结果
-
-
+                sendTaskResult(agentContext, request, executor, summary);
                 break;
             }
             if (planning.getState() == AgentState.IDLE || executor.getState() == AgentState.IDLE) {
@@ -140,8 +215,47 @@ public class PlanSolveHandlerImpl implements AgentHandlerService {
             }
             stepIdx++;
         }
+    }
 
-        return "";
+    /**
+     * 总结执行结果并输出最终结果
+     */
+    private void sendTaskResult(AgentContext agentContext, AgentRequest request, ExecutorAgent executor, SummaryAgent summary) {
+        TaskSummaryResult result = summary.summaryTaskResult(executor.getMemory().getMessages(), request.getQuery());
+
+        Map<String, Object> taskResult = new HashMap<>();
+        taskResult.put("taskSummary", result.getTaskSummary());
+
+        if (CollectionUtils.isEmpty(result.getFiles())) {
+            if (!CollectionUtils.isEmpty(agentContext.getProductFiles())) {
+                List<File> fileResponses = agentContext.getProductFiles();
+                // 过滤中间搜索结果文件
+                fileResponses.removeIf(file -> Objects.nonNull(file) && file.getIsInternalFile());
+                Collections.reverse(fileResponses);
+                taskResult.put("fileList", fileResponses);
+            }
+        } else {
+            taskResult.put("fileList", result.getFiles());
+        }
+
+        agentContext.getPrinter().send("result", taskResult); // 输出最终结果
+    }
+
+    private void checkpoint(AgentContext agentContext, AgentRequest request, PlanningAgent planning, ExecutorAgent executor,
+                            String planningResult, int stepIdx) {
+        CheckpointLog.record(agentContext.getRequestId(), RunCheckpoint.builder()
+                .request(request)
+                .stepIdx(stepIdx)
+                .planningResult(planningResult)
+                .planningState(planning.getState().name())
+                .executorState(executor.getState().name())
+                .plan(planning.getPlanningTool().getPlan())
+                .planningMessages(planning.getMemory().getMessages())
+                .executorMessages(executor.getMemory().getMessages())
+                .productFiles(agentContext.getProductFiles())
+                .taskProductFiles(agentContext.getTaskProductFiles())
+                .createTime(System.currentTimeMillis())
+                .build());
     }
 
     @Override
@@ -0,0 +1,113 @@
+package com.jd.genie.service.impl;
+
+import com.jd.genie.agent.agent.AgentContext;
+import com.jd.genie.agent.agent.QueryRouter;
+import com.jd.genie.agent.dto.Message;
+import com.jd.genie.agent.enums.AgentType;
+import com.jd.genie.agent.llm.LLM;
+import com.jd.genie.agent.printer.AgentStream;
+import com.jd.genie.agent.prompt.PromptTemplate;
+import com.jd.genie.agent.prompt.RouterPrompt;
+import com.jd.genie.config.GenieConfig;
+import com.jd.genie.model.req.AgentRequest;
+import com.jd.genie.service.AgentHandlerService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+@Slf4j
+@Component
+public class RouterHandlerImpl implements AgentHandlerService {
+
+    // ROUTER 模式：简单问题一次 LLM 调用直接回答，其余交给 ReAct / PlanSolve 处理器
+
+    @Autowired
+    private GenieConfig genieConfig;
+
+    @Autowired
+    private ReactHandlerImpl reactHandler;
+
+    @Autowired
+    private PlanSolveHandlerImpl planSolveHandler;
+
+    @Override
+    public String handle(AgentContext agentContext, AgentRequest request) {
+        long start = System.currentTimeMillis();
+        QueryRouter.Decision decision = QueryRouter.route(agentContext, request, genieConfig);
+        log.info("{} router route: {} fallback: {} reason: {} cost: {}ms", agentContext.getRequestId(),
+                decision.getRoute(), decision.getFallback(), decision.getReason(), decision.getCostMs());
+        try {
+            if (decision.getRoute() == QueryRouter.Route.DIRECT) {
+                try {
+                    return answer(agentContext, request);
+                } catch (Exception e) {
+                    // 直接回答失败时按原模式执行
+                    log.warn("{} router direct answer failed, fallback to {}", agentContext.getRequestId(), decision.getFallback(), e);
+                    decision = new QueryRouter.Decision(decision.getFallback(), decision.getFallback(), "directFailed", decision.getCostMs());
+                }
+            }
+            return escalate(agentContext, request, decision.getRoute());
+        } finally {
+            QueryRouter.record(decision, System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * 直接回答：一次 LLM 调用，流式请求时内容按 agent_stream 事件边生成边输出
+     * 失败时撤回已输出的部分内容，再由调用方回退到原模式
+     */
+    private String answer(AgentContext agentContext, AgentRequest request) throws Exception {
+        boolean stream = Boolean.TRUE.equals(agentContext.getIsStream());
+        String systemPrompt = PromptTemplate.compile(RouterPrompt.DIRECT_PROMPT).render("date", agentContext.getDateInfo());
+        AgentStream agentStream = stream ? new AgentStream(agentContext.getPrinter()) : null;
+        StringBuilder streamed = new StringBuilder();
+        String answer;
+        try {
+            answer = new LLM(genieConfig.getReactModelName(), "").ask(
+                    agentContext,
+                    Collections.singletonList(Message.userMessage(request.getQuery(), null)),
+                    Collections.singletonList(Message.systemMessage(systemPrompt, null)),
+                    stream,
+                    0.01,
+                    stream ? content -> {
+                        streamed.append(content);
+                        agentStream.tick(streamed, streamed.length());
+                    } : null).get();
+        } catch (Exception e) {
+            if (agentStream != null) {
+                agentStream.clear();
+            }
+            throw e;
+        }
+        if (agentStream != null) {
+            agentStream.finish(streamed);
+        }
+
+        Map<String, Object> taskResult = new HashMap<>();
+        taskResult.put("taskSummary", answer);
+        agentContext.getPrinter().send("result", taskResult);
+        return "";
+    }
+
+    /**
+     * 按路由交给对应处理器，后续事件与检查点均按该智能体类型输出
+     */
+    private String escalate(AgentContext agentContext, AgentRequest request, QueryRouter.Route route) {
+        AgentType agentType = route == QueryRouter.Route.PLAN_SOLVE ? AgentType.PLAN_SOLVE : AgentType.REACT;
+        request.setAgentType(agentType.getValue());
+        agentContext.setAgentType(agentType.getValue());
+        agentContext.getPrinter().updateAgentType(agentType);
+        return agentType == AgentType.PLAN_SOLVE
+                ? planSolveHandler.handle(agentContext, request)
+                : reactHandler.handle(agentContext, request);
+    }
+
+    @Override
+    public Boolean support(AgentContext agentContext, AgentRequest request) {
+        return AgentType.ROUTER.getValue().equals(request.getAgentType());
+    }
+}
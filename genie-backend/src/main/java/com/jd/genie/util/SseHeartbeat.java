@@ -0,0 +1,257 @@
+package com.jd.genie.util;
+
+import com.jd.genie.agent.util.SpringContextHolder;
+import com.jd.genie.config.GenieConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationContext;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SSE 心跳时间轮：所有连接共用一个时间轮线程，不再每个连接一个定时任务
+ * - 每个连接记录最近一次写出时间（touch），到期时只有空闲满一个心跳间隔才发送心跳，流式输出期间不发送
+ * - 注册与取消只入队，由时间轮线程挂入/摘除槽位链表，取消为 O(1)
+ * - 心跳发送在独立的发送线程池中执行，写阻塞不影响时间轮计时；每个连接同时最多一个待发送心跳，
+ *   上一次尚未发出时本次跳过，写阻塞的连接不会在队列中堆积任务
+ * - 阻塞写无法中断，写阻塞的连接会占住一个发送线程直到写出或连接关闭；
+ *   同时写阻塞的连接数超过发送线程数（autobots.autoagent.sse.heartbeat_threads）时，其他连接的心跳会延迟
+ */
+@Slf4j
+public final class SseHeartbeat {
+    private static final long TICK_MS = 1000L;       // 时间轮刻度
+    private static final int WHEEL_SIZE = 64;        // 槽位数（2 的幂）
+    private static final int MASK = WHEEL_SIZE - 1;
+    private static final int DEFAULT_SENDER_THREADS = 8;
+
+    private static final Handle[] wheel = new Handle[WHEEL_SIZE];
+    private static final ConcurrentLinkedQueue<Handle> registrations = new ConcurrentLinkedQueue<>();
+    private static final ConcurrentLinkedQueue<Handle> cancellations = new ConcurrentLinkedQueue<>();
+    private static final AtomicBoolean started = new AtomicBoolean(false);
+    private static ExecutorService sender;
+    private static long tick;
+
+    // 心跳统计
+    private static final AtomicInteger active = new AtomicInteger();
+    private static final AtomicLong sent = new AtomicLong();
+    private static final AtomicLong suppressed = new AtomicLong();
+    private static final AtomicLong failures = new AtomicLong();
+    private static final AtomicLong skipped = new AtomicLong();
+
+    private SseHeartbeat() {
+    }
+
+    /**
+     * 心跳发送动作，抛出异常时该连接的心跳自动取消
+     */
+    @FunctionalInterface
+    public interface Sender {
+        void send() throws Exception;
+    }
+
+    /**
+     * 连接的心跳句柄：写出数据后调用 touch，连接结束时调用 cancel
+     */
+    public static final class Handle {
+        private final String requestId;
+        private final long intervalMs;
+        private final Sender action;
+        private final AtomicBoolean cancelled = new AtomicBoolean(false);
+        private final AtomicBoolean sending = new AtomicBoolean(false); // 已提交发送、尚未完成
+        private volatile long lastWrite = System.currentTimeMillis();
+        // 以下字段只由时间轮线程访问
+        private Handle prev;
+        private Handle next;
+        private int bucket = -1;
+        private long rounds;
+
+        private Handle(String requestId, long intervalMs, Sender action) {
+            this.requestId = requestId;
+            this.intervalMs = intervalMs;
+            this.action = action;
+        }
+
+        /**
+         * 记录一次写出
+         */
+        public void touch() {
+            lastWrite = System.currentTimeMillis();
+        }
+
+        /**
+         * 取消心跳（可重复调用）
+         */
+        public void cancel() {
+            if (cancelled.compareAndSet(false, true)) {
+                active.decrementAndGet();
+                cancellations.add(this);
+            }
+        }
+    }
+
+    /**
+     * 注册连接的心跳
+     *
+     * @param requestId  请求ID，用于日志
+     * @param intervalMs 空闲多久发送一次心跳
+     * @param action     发送心跳
+     */
+    public static Handle register(String requestId, long intervalMs, Sender action) {
+        start();
+        Handle handle = new Handle(requestId, intervalMs, action);
+        active.incrementAndGet();
+        registrations.add(handle);
+        return handle;
+    }
+
+    private static void start() {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+        sender = Executors.newFixedThreadPool(senderThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "sse-heartbeat-send");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Thread worker = new Thread(SseHeartbeat::run, "sse-heartbeat-wheel");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private static int senderThreads() {
+        ApplicationContext context = SpringContextHolder.getApplicationContext();
+        if (context == null) {
+            return DEFAULT_SENDER_THREADS;
+        }
+        return Math.max(1, context.getBean(GenieConfig.class).getSseHeartbeatThreads());
+    }
+
+    private static void run() {
+        long startTime = System.currentTimeMillis();
+        while (true) {
+            long sleep = startTime + (tick + 1) * TICK_MS - System.currentTimeMillis();
+            if (sleep > 0) {
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            try {
+                advance(System.currentTimeMillis());
+            } catch (Exception e) {
+                log.error("sse heartbeat wheel error", e);
+            }
+        }
+    }
+
+    /**
+     * 推进一格：处理新注册、取消，检查当前槽位到期的连接
+     */
+    private static void advance(long now) {
+        Handle handle;
+        while ((handle = registrations.poll()) != null) {
+            if (!handle.cancelled.get()) {
+                schedule(handle, handle.intervalMs);
+            }
+        }
+        while ((handle = cancellations.poll()) != null) {
+            unlink(handle);
+        }
+
+        tick++;
+        int bucket = (int) (tick & MASK);
+        handle = wheel[bucket];
+        while (handle != null) {
+            Handle next = handle.next;
+            if (handle.rounds > 0) {
+                handle.rounds--;
+            } else {
+                unlink(handle);
+                if (!handle.cancelled.get()) {
+                    expire(handle, now);
+                }
+            }
+            handle = next;
+        }
+    }
+
+    private static void expire(Handle handle, long now) {
+        long idle = now - handle.lastWrite;
+        if (idle + TICK_MS / 2 < handle.intervalMs) {
+            // 期间有写出，顺延到空闲满一个间隔时
+            suppressed.incrementAndGet();
+            schedule(handle, handle.intervalMs - idle);
+            return;
+        }
+        handle.lastWrite = now;
+        schedule(handle, handle.intervalMs);
+        if (!handle.sending.compareAndSet(false, true)) {
+            // 上一次心跳仍未发出（写阻塞或排队中）
+            skipped.incrementAndGet();
+            return;
+        }
+        sender.execute(() -> {
+            try {
+                if (handle.cancelled.get()) {
+                    return;
+                }
+                handle.action.send();
+                sent.incrementAndGet();
+            } catch (Exception e) {
+                failures.incrementAndGet();
+                log.error("{} heartbeat failed, stop heartbeat", handle.requestId, e);
+                handle.cancel();
+            } finally {
+                handle.sending.set(false);
+            }
+        });
+    }
+
+    private static void schedule(Handle handle, long delayMs) {
+        long ticks = Math.max(1, (delayMs + TICK_MS - 1) / TICK_MS);
+        int bucket = (int) ((tick + ticks) & MASK);
+        handle.rounds = (ticks - 1) / WHEEL_SIZE;
+        handle.bucket = bucket;
+        handle.prev = null;
+        handle.next = wheel[bucket];
+        if (handle.next != null) {
+            handle.next.prev = handle;
+        }
+        wheel[bucket] = handle;
+    }
+
+    private static void unlink(Handle handle) {
+        if (handle.bucket < 0) {
+            return;
+        }
+        if (handle.prev != null) {
+            handle.prev.next = handle.next;
+        } else {
+            wheel[handle.bucket] = handle.next;
+        }
+        if (handle.next != null) {
+            handle.next.prev = handle.prev;
+        }
+        handle.prev = null;
+        handle.next = null;
+        handle.bucket = -1;
+    }
+
+    public static Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("active", active.get());
+        stats.put("sent", sent.get());
+        stats.put("suppressed", suppressed.get());
+        stats.put("failures", failures.get());
+        stats.put("skipped", skipped.get());
+        return stats;
+    }
+}
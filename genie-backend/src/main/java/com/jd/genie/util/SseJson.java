@@ -0,0 +1,63 @@
+package com.jd.genie.util;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jd.genie.agent.util.SpringContextHolder;
+import org.springframework.context.ApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * SSE 事件的 JSON 序列化
+ * - 复制 Spring 的 ObjectMapper，属性与 Map 值中的 null 一律不输出，与原 fastjson 输出一致，嵌套对象无需逐个标注
+ * - 事件对象序列化为文本后直接写出，只序列化一次
+ * - snapshot 把事件转为独立的 Map 副本，用于保存后仍可能被修改的事件（如任务结果）
+ */
+public final class SseJson {
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<Map<String, Object>>() {
+    };
+
+    private static volatile ObjectMapper mapper;
+
+    private SseJson() {
+    }
+
+    private static ObjectMapper mapper() {
+        ObjectMapper current = mapper;
+        if (Objects.isNull(current)) {
+            ApplicationContext context = SpringContextHolder.getApplicationContext();
+            ObjectMapper base = Objects.isNull(context) ? new ObjectMapper()
+                    : context.getBeanProvider(ObjectMapper.class).getIfAvailable(ObjectMapper::new);
+            current = base.copy().setDefaultPropertyInclusion(
+                    JsonInclude.Value.construct(JsonInclude.Include.NON_NULL, JsonInclude.Include.NON_NULL));
+            mapper = current;
+        }
+        return current;
+    }
+
+    /**
+     * 序列化为 JSON 文本
+     */
+    public static String toJson(Object data) throws IOException {
+        return mapper().writeValueAsString(data);
+    }
+
+    /**
+     * 序列化后写出一帧 SSE 数据
+     */
+    public static void send(SseEmitter emitter, Object data) throws IOException {
+        emitter.send(toJson(data), MediaType.APPLICATION_JSON);
+    }
+
+    /**
+     * 事件的独立副本（空值已去除），之后对原对象的修改不影响副本
+     */
+    public static Map<String, Object> snapshot(Object data) {
+        return mapper().convertValue(data, MAP_TYPE);
+    }
+}
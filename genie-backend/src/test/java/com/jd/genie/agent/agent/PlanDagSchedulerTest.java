@@ -0,0 +1,227 @@
+package com.jd.genie.agent.agent;
+
+import com.jd.genie.agent.dto.Message;
+import com.jd.genie.agent.dto.Plan;
+import com.jd.genie.agent.enums.AgentState;
+import com.jd.genie.agent.printer.LogPrinter;
+import com.jd.genie.agent.tool.ToolCollection;
+import com.jd.genie.model.req.AgentRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 计划 DAG 调度：依赖顺序、失败节点阻塞后继步骤、重新调度只执行未完成的子任务、节点记忆的合并顺序
+ */
+@SpringBootTest
+public class PlanDagSchedulerTest {
+
+    private final Set<String> started = ConcurrentHashMap.newKeySet();
+    private final List<String> runs = Collections.synchronizedList(new ArrayList<>());
+    private final Set<String> finished = ConcurrentHashMap.newKeySet();
+    private final Map<String, Set<String>> finishedBeforeStart = new ConcurrentHashMap<>();
+    private final Map<String, List<String>> visibleContents = new ConcurrentHashMap<>();
+
+    @Test
+    public void runsNodesInDependencyOrder() {
+        AgentContext context = context();
+        ExecutorAgent executor = mainExecutor(context);
+        CountDownLatch independentStarted = new CountDownLatch(1);
+        // 步骤 0 拆成 A、B 两个节点；步骤 1 依赖步骤 0；步骤 2 无依赖
+        Plan plan = Plan.create("dag", Arrays.asList("A<sep>B", "C", "D"),
+                Arrays.asList(Collections.emptyList(), Collections.singletonList(0), Collections.emptyList()));
+
+        PlanDagScheduler.Result result = new PlanDagScheduler(context, executor, ctx -> new ScriptedExecutor(ctx, task -> {
+            if ("A".equals(task)) {
+                // 无依赖的步骤 2 不必等待步骤 0 完成
+                await(independentStarted);
+            } else if ("D".equals(task)) {
+                independentStarted.countDown();
+            }
+        })).run(plan);
+
+        assertFalse(result.isFailed());
+        assertEquals(Arrays.asList("completed", "completed", "completed"), plan.getStepStatus());
+        assertEquals(new HashSet<>(Arrays.asList("A", "B")), finishedBeforeStart.get("C").stream()
+                .filter(task -> !"D".equals(task)).collect(Collectors.toSet()));
+        // C 启动时 fork 的记忆已包含 A、B 合并后的结果
+        assertTrue(visibleContents.get("C").containsAll(Arrays.asList("A 结果", "B 结果")));
+        assertFalse(visibleContents.get("A").contains("B 结果"));
+        // 输出按计划顺序，与完成顺序无关
+        assertEquals("A\nB\nC\nD", result.getOutput());
+    }
+
+    @Test
+    public void failedNodeBlocksDependents() {
+        AgentContext context = context();
+        ExecutorAgent executor = mainExecutor(context);
+        Plan plan = Plan.create("dag", Arrays.asList("X", "Y", "Z"),
+                Arrays.asList(Collections.emptyList(), Collections.singletonList(0), Collections.emptyList()));
+
+        PlanDagScheduler.Result result = new PlanDagScheduler(context, executor, ctx -> new ScriptedExecutor(ctx, task -> {
+            if ("X".equals(task)) {
+                throw new IllegalStateException("boom");
+            }
+        })).run(plan);
+
+        assertTrue(result.isFailed());
+        assertEquals("blocked", plan.getStepStatus().get(0));
+        assertEquals("boom", plan.getNotes().get(0));
+        // 依赖失败步骤的节点不会启动，已在途的无依赖节点正常完成
+        assertFalse(started.contains("Y"));
+        assertEquals("not_started", plan.getStepStatus().get(1));
+        assertEquals("completed", plan.getStepStatus().get(2));
+        assertEquals("Z", result.getOutput());
+    }
+
+    @Test
+    public void rerunSkipsCompletedSubtasks() {
+        AgentContext context = context();
+        ExecutorAgent executor = mainExecutor(context);
+        Plan plan = Plan.create("dag", Arrays.asList("A<sep>B", "C"), null);
+
+        PlanDagScheduler.Result first = new PlanDagScheduler(context, executor, ctx -> new ScriptedExecutor(ctx, task -> {
+            if ("B".equals(task)) {
+                throw new IllegalStateException("boom");
+            }
+        })).run(plan);
+        assertTrue(first.isFailed());
+        assertEquals(Arrays.asList("blocked", "not_started"), plan.getStepStatus());
+        assertEquals(Collections.singletonList(0), plan.getCompletedTasks(0));
+
+        runs.clear();
+        PlanDagScheduler.Result second = new PlanDagScheduler(context, executor, ctx -> new ScriptedExecutor(ctx, task -> {
+        })).run(plan);
+
+        // 已成功的子任务 A 不再执行，只重跑失败的 B
+        assertFalse(second.isFailed());
+        assertEquals(Arrays.asList("B", "C"), runs);
+        assertEquals(Arrays.asList("completed", "completed"), plan.getStepStatus());
+    }
+
+    @Test
+    public void errorStateCountsAsFailure() {
+        AgentContext context = context();
+        ExecutorAgent executor = mainExecutor(context);
+        Plan plan = Plan.create("dag", Arrays.asList("X", "Y"), null);
+
+        PlanDagScheduler.Result result = new PlanDagScheduler(context, executor, ctx -> new ScriptedExecutor(ctx, task -> {
+            if ("X".equals(task)) {
+                throw new ErrorState();
+            }
+        })).run(plan);
+
+        assertTrue(result.isFailed());
+        assertEquals(Arrays.asList("blocked", "not_started"), plan.getStepStatus());
+        assertFalse(started.contains("Y"));
+        // 失败节点的记忆同样合并回主执行器，主执行器状态不被失败节点覆盖
+        assertEquals(AgentState.IDLE, executor.getState());
+        assertEquals(Arrays.asList("主任务", "X 结果"), contents(executor));
+    }
+
+    @Test
+    public void mergesNodeMemoryAfterDependencies() {
+        AgentContext context = context();
+        ExecutorAgent executor = mainExecutor(context);
+        Plan plan = Plan.create("dag", Arrays.asList("A", "B<sep>C", "D"), null);
+
+        new PlanDagScheduler(context, executor, ctx -> new ScriptedExecutor(ctx, task -> {
+        })).run(plan);
+
+        // 未声明依赖时按步骤顺序串行，记忆按合并顺序追加在主记忆之后，每个节点只合并自己新增的消息
+        List<String> contents = contents(executor);
+        assertEquals("主任务", contents.get(0));
+        assertEquals("A 结果", contents.get(1));
+        assertEquals(new HashSet<>(Arrays.asList("B 结果", "C 结果")), new HashSet<>(contents.subList(2, 4)));
+        assertEquals("D 结果", contents.get(4));
+        assertEquals(5, contents.size());
+    }
+
+    private AgentContext context() {
+        AgentRequest request = AgentRequest.builder().requestId("plan-dag-test").query("测试").build();
+        return AgentContext.builder()
+                .requestId(request.getRequestId())
+                .query(request.getQuery())
+                .printer(new LogPrinter(request))
+                .toolCollection(new ToolCollection())
+                .productFiles(new ArrayList<>())
+                .taskProductFiles(new ArrayList<>())
+                .build();
+    }
+
+    private ExecutorAgent mainExecutor(AgentContext context) {
+        ExecutorAgent executor = new ExecutorAgent(context);
+        executor.getMemory().addMessage(Message.userMessage("主任务", null));
+        return executor;
+    }
+
+    private static List<String> contents(BaseAgent agent) {
+        return agent.getMemory().getMessages().stream().map(Message::getContent).collect(Collectors.toList());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS), "independent node not started concurrently");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 标记节点以 ERROR 状态结束
+     */
+    private static class ErrorState extends RuntimeException {
+    }
+
+    private interface Script {
+        void run(String task);
+    }
+
+    /**
+     * 不调用模型的执行器：记录启动/完成情况，向记忆追加一条结果消息后返回任务名
+     */
+    private class ScriptedExecutor extends ExecutorAgent {
+        private final Script script;
+
+        ScriptedExecutor(AgentContext context, Script script) {
+            super(context);
+            this.script = script;
+        }
+
+        @Override
+        public String run(String request) {
+            String task = request.substring("你的任务是：".length());
+            started.add(task);
+            runs.add(task);
+            finishedBeforeStart.put(task, Collections.unmodifiableSet(new HashSet<>(finished)));
+            visibleContents.put(task, contents(this));
+            try {
+                script.run(task);
+            } catch (ErrorState e) {
+                getMemory().addMessage(Message.assistantMessage(task + " 结果", null));
+                setState(AgentState.ERROR);
+                return task;
+            }
+            getMemory().addMessage(Message.assistantMessage(task + " 结果", null));
+            setState(AgentState.FINISHED);
+            finished.add(task);
+            return task;
+        }
+    }
+}
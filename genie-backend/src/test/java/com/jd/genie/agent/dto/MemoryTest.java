@@ -0,0 +1,141 @@
+package com.jd.genie.agent.dto;
+
+import com.jd.genie.agent.dto.tool.ToolCall;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 记忆段链：fork/merge/clearToolContext 后的继承边界，以及段链过深时的扁平化
+ */
+public class MemoryTest {
+
+    @Test
+    public void forkAndMergeTrackInheritedSize() {
+        Memory parent = memory("系统", "用户");
+        Memory child = parent.fork();
+        assertEquals(2, child.getInheritedSize());
+        assertEquals(0, parent.getInheritedSize());
+
+        child.addMessage(Message.assistantMessage("子任务一", null));
+        parent.addMessage(Message.assistantMessage("主任务", null));
+        Memory grandchild = child.fork();
+        assertEquals(3, grandchild.getInheritedSize());
+        grandchild.addMessage(Message.assistantMessage("孙任务", null));
+        // 父记忆在 fork 之后的追加对子记忆不可见
+        assertEquals(Arrays.asList("系统", "用户", "子任务一"), contents(child));
+
+        child.merge(grandchild);
+        assertEquals(2, child.getInheritedSize());
+        assertEquals(0, grandchild.size());
+        assertEquals(0, grandchild.getInheritedSize());
+
+        parent.merge(child);
+        assertEquals(Arrays.asList("系统", "用户", "主任务", "子任务一", "孙任务"), contents(parent));
+        assertEquals(0, child.size());
+        assertEquals(0, child.getInheritedSize());
+    }
+
+    @Test
+    public void clearToolContextKeepsInheritedBoundary() {
+        Memory parent = memory("用户");
+        parent.addMessages(toolRound("call_1"));
+        Memory child = parent.fork();
+        assertEquals(3, child.getInheritedSize());
+
+        child.addMessages(toolRound("call_2"));
+        child.addMessage(Message.assistantMessage("子任务结论", null));
+        child.clearToolContext();
+        // 继承部分只剩用户消息，自有部分只剩结论
+        assertEquals(1, child.getInheritedSize());
+        assertEquals(Arrays.asList("用户", "子任务结论"), contents(child));
+
+        parent.merge(child);
+        assertEquals(Arrays.asList("用户", "", "搜索结果 call_1", "子任务结论"), contents(parent));
+    }
+
+    @Test
+    public void mergeAfterReplaceInsideInheritedPart() {
+        Memory parent = memory("a", "b", "c");
+        Memory child = parent.fork();
+        child.addMessage(Message.assistantMessage("d", null));
+        List<Message> expected = new ArrayList<>(child.getMessages().subList(0, 2));
+        assertTrue(child.replaceRange(0, expected, Message.userMessage("ab", null)));
+        assertEquals(2, child.getInheritedSize());
+
+        parent.merge(child);
+        assertEquals(Arrays.asList("a", "b", "c", "d"), contents(parent));
+    }
+
+    @Test
+    public void flattensDeepSegmentChain() throws Exception {
+        Memory memory = new Memory();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            memory.addMessage(Message.userMessage("主" + i, null));
+            expected.add("主" + i);
+            Memory child = memory.fork();
+            child.addMessage(Message.assistantMessage("子" + i, null));
+            memory.merge(child);
+            expected.add("子" + i);
+            assertTrue(depth(memory) <= maxSegmentDepth(), "segment chain not flattened at round " + i);
+        }
+
+        assertEquals(expected, contents(memory));
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), memory.get(i).getContent());
+        }
+        Memory child = memory.fork();
+        assertEquals(expected.size(), child.getInheritedSize());
+        assertEquals(expected.get(expected.size() - 1), child.getLastMessage().getContent());
+    }
+
+    private static Memory memory(String... contents) {
+        Memory memory = new Memory();
+        for (String content : contents) {
+            memory.addMessage(Message.userMessage(content, null));
+        }
+        return memory;
+    }
+
+    private static List<Message> toolRound(String callId) {
+        ToolCall toolCall = ToolCall.builder()
+                .id(callId)
+                .type("function")
+                .function(ToolCall.Function.builder().name("search").arguments("{}").build())
+                .build();
+        return Arrays.asList(
+                Message.fromToolCalls("", Collections.singletonList(toolCall)),
+                Message.toolMessage("搜索结果 " + callId, callId, null));
+    }
+
+    private static List<String> contents(Memory memory) {
+        return memory.getMessages().stream().map(Message::getContent).collect(Collectors.toList());
+    }
+
+    private static int depth(Memory memory) throws Exception {
+        Field baseField = Memory.class.getDeclaredField("base");
+        baseField.setAccessible(true);
+        Object base = baseField.get(memory);
+        if (base == null) {
+            return 0;
+        }
+        Field depthField = base.getClass().getDeclaredField("depth");
+        depthField.setAccessible(true);
+        return depthField.getInt(base);
+    }
+
+    private static int maxSegmentDepth() throws Exception {
+        Field field = Memory.class.getDeclaredField("MAX_SEGMENT_DEPTH");
+        field.setAccessible(true);
+        return field.getInt(null);
+    }
+}
@@ -0,0 +1,48 @@
+package com.jd.genie.agent.llm;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * BPE 分词计数与 tiktoken 参考实现对照，期望值取自 tiktoken 文档与 OpenAI cookbook 示例
+ */
+public class BpeTokenizerTest {
+
+    @Test
+    public void cl100kMatchesTiktoken() {
+        BpeTokenizer tokenizer = BpeTokenizer.forEncoding(BpeTokenizer.CL100K_BASE).orElseThrow(AssertionError::new);
+        assertEquals(2, tokenizer.count("hello world"));
+        assertEquals(6, tokenizer.count("tiktoken is great!"));
+        assertEquals(6, tokenizer.count("antidisestablishmentarianism"));
+        assertEquals(7, tokenizer.count("2 + 2 = 4"));
+        assertEquals(9, tokenizer.count("お誕生日おめでとう"));
+        assertEquals(0, tokenizer.count(""));
+    }
+
+    @Test
+    public void o200kMatchesTiktoken() {
+        BpeTokenizer tokenizer = BpeTokenizer.forEncoding(BpeTokenizer.O200K_BASE).orElseThrow(AssertionError::new);
+        assertEquals(2, tokenizer.count("hello world"));
+        assertEquals(6, tokenizer.count("antidisestablishmentarianism"));
+        assertEquals(7, tokenizer.count("2 + 2 = 4"));
+        assertEquals(8, tokenizer.count("お誕生日おめでとう"));
+    }
+
+    @Test
+    public void tokenCounterUsesVocabWhenPresent() {
+        assertEquals(BpeTokenizer.CL100K_BASE, new TokenCounter(BpeTokenizer.CL100K_BASE).getEncoding());
+        assertEquals(BpeTokenizer.O200K_BASE, new TokenCounter(TokenCounter.resolveEncoding("gpt-4o-mini", null)).getEncoding());
+        assertEquals(6, new TokenCounter(BpeTokenizer.CL100K_BASE).countText("tiktoken is great!"));
+    }
+
+    @Test
+    public void unknownEncodingFallsBackToEstimate() {
+        assertFalse(BpeTokenizer.forEncoding("unknown_base").isPresent());
+        TokenCounter counter = new TokenCounter("unknown_base");
+        assertEquals(TokenCounter.HEURISTIC, counter.getEncoding());
+        assertTrue(counter.countText("分析新能源汽车市场") >= 9);
+    }
+}
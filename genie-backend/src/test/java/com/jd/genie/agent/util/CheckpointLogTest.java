@@ -0,0 +1,215 @@
+package com.jd.genie.agent.util;
+
+import com.jd.genie.agent.dto.File;
+import com.jd.genie.agent.dto.Message;
+import com.jd.genie.agent.dto.Plan;
+import com.jd.genie.agent.dto.RunCheckpoint;
+import com.jd.genie.agent.dto.tool.ToolCall;
+import com.jd.genie.config.GenieConfig;
+import com.jd.genie.model.req.AgentRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 检查点日志：增量记录的还原、截断尾部与 CRC 损坏时回退到最后一条有效记录
+ */
+@SpringBootTest(properties = "autobots.autoagent.checkpoint.enable=1")
+public class CheckpointLogTest {
+
+    @Autowired
+    private GenieConfig genieConfig;
+
+    private final String requestId = "test-" + UUID.randomUUID();
+
+    @AfterEach
+    public void cleanup() throws IOException {
+        CheckpointLog.end(requestId, true);
+        Files.deleteIfExists(path());
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        List<Message> planning = new ArrayList<>(Arrays.asList(
+                Message.systemMessage("规划提示词", null),
+                Message.userMessage("分析新能源汽车市场", null)));
+        List<Message> executor = new ArrayList<>(Collections.singletonList(Message.userMessage("执行任务一", null)));
+        writeTwo(planning, executor);
+
+        RunCheckpoint checkpoint = CheckpointLog.load(requestId);
+        assertNotNull(checkpoint);
+        assertEquals(2, checkpoint.getStepIdx());
+        assertEquals("任务二", checkpoint.getPlanningResult());
+        assertEquals("分析新能源汽车市场", checkpoint.getRequest().getQuery());
+        assertEquals(3, checkpoint.getRequest().getAgentType());
+        assertEquals(Arrays.asList("步骤一", "步骤二"), checkpoint.getPlan().getSteps());
+        assertEquals(Arrays.asList("completed", "not_started"), checkpoint.getPlan().getStepStatus());
+        assertEquals(Collections.singletonList(Collections.singletonList(0)), checkpoint.getPlan().getDependencies().subList(1, 2));
+
+        // 第二条记录只写了新增消息，读取时与第一条的前缀拼接还原
+        assertEquals(3, checkpoint.getPlanningMessages().size());
+        assertEquals("规划提示词", checkpoint.getPlanningMessages().get(0).getContent());
+        assertEquals("任务一已完成", checkpoint.getPlanningMessages().get(2).getContent());
+        assertEquals(2, checkpoint.getExecutorMessages().size());
+        Message toolCallMessage = checkpoint.getExecutorMessages().get(1);
+        assertEquals("search", toolCallMessage.getToolCalls().get(0).getFunction().getName());
+        assertEquals("{\"query\":\"市场份额\"}", toolCallMessage.getToolCalls().get(0).getFunction().getArguments());
+        assertEquals("report.md", checkpoint.getProductFiles().get(0).getFileName());
+    }
+
+    @Test
+    public void truncatesTornTail() throws Exception {
+        writeTwo(initialPlanning(), initialExecutor());
+        long length = Files.size(path());
+
+        // 模拟写到一半崩溃：头部声明的长度超过剩余字节
+        ByteBuffer torn = ByteBuffer.allocate(12);
+        torn.putInt(100).putInt(0).putInt(7);
+        Files.write(path(), torn.array(), StandardOpenOption.APPEND);
+
+        RunCheckpoint checkpoint = CheckpointLog.load(requestId);
+        assertNotNull(checkpoint);
+        assertEquals(2, checkpoint.getStepIdx());
+        assertEquals(length, Files.size(path()));
+    }
+
+    @Test
+    public void stopsAtCrcMismatch() throws Exception {
+        writeOne(initialPlanning(), initialExecutor());
+        long first = Files.size(path());
+        List<Message> planning = initialPlanning();
+        planning.add(Message.assistantMessage("任务一已完成", null));
+        writeSecond(planning, initialExecutor());
+        assertTrue(Files.size(path()) > first);
+
+        // 损坏第二条记录的最后一个字节
+        try (RandomAccessFile file = new RandomAccessFile(path().toFile(), "rw")) {
+            file.seek(file.length() - 1);
+            int last = file.read();
+            file.seek(file.length() - 1);
+            file.write(last ^ 0xFF);
+        }
+
+        RunCheckpoint checkpoint = CheckpointLog.load(requestId);
+        assertNotNull(checkpoint);
+        assertEquals(1, checkpoint.getStepIdx());
+        assertEquals(2, checkpoint.getPlanningMessages().size());
+        assertEquals(first, Files.size(path()));
+    }
+
+    @Test
+    public void fileIsOwnerOnly() throws Exception {
+        writeOne(initialPlanning(), initialExecutor());
+        if (path().getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(path())));
+        }
+    }
+
+    @Test
+    public void emptyWhenNoValidRecord() throws Exception {
+        Files.createDirectories(path().getParent());
+        Files.write(path(), new byte[]{0, 0, 0, 5, 1, 2});
+        assertNull(CheckpointLog.load(requestId));
+        assertEquals(0, Files.size(path()));
+    }
+
+    private void writeTwo(List<Message> planning, List<Message> executor) throws Exception {
+        writeOne(planning, executor);
+        planning.add(Message.assistantMessage("任务一已完成", null));
+        ToolCall toolCall = ToolCall.builder()
+                .id("call_1")
+                .type("function")
+                .function(ToolCall.Function.builder().name("search").arguments("{\"query\":\"市场份额\"}").build())
+                .build();
+        executor.add(Message.fromToolCalls("", Collections.singletonList(toolCall)));
+        writeSecond(planning, executor);
+    }
+
+    private void writeOne(List<Message> planning, List<Message> executor) throws Exception {
+        assertTrue(CheckpointLog.begin(requestId));
+        long records = records();
+        CheckpointLog.record(requestId, checkpoint(1, "任务一", planning, executor, "not_started"));
+        awaitRecords(records + 1);
+    }
+
+    private void writeSecond(List<Message> planning, List<Message> executor) throws Exception {
+        long records = records();
+        CheckpointLog.record(requestId, checkpoint(2, "任务二", planning, executor, "completed"));
+        awaitRecords(records + 1);
+    }
+
+    private RunCheckpoint checkpoint(int stepIdx, String planningResult, List<Message> planning, List<Message> executor, String firstStatus) {
+        AgentRequest request = AgentRequest.builder()
+                .requestId(requestId)
+                .query("分析新能源汽车市场")
+                .agentType(3)
+                .isStream(true)
+                .build();
+        Plan plan = Plan.builder()
+                .title("市场分析")
+                .steps(Arrays.asList("步骤一", "步骤二"))
+                .stepStatus(Arrays.asList(firstStatus, "not_started"))
+                .notes(Arrays.asList("", ""))
+                .dependencies(Arrays.asList(Collections.emptyList(), Collections.singletonList(0)))
+                .build();
+        return RunCheckpoint.builder()
+                .request(request)
+                .stepIdx(stepIdx)
+                .planningResult(planningResult)
+                .planningState("IDLE")
+                .executorState("IDLE")
+                .plan(plan)
+                .planningMessages(planning)
+                .executorMessages(executor)
+                .productFiles(Collections.singletonList(File.builder().fileName("report.md").ossUrl("oss://report.md").build()))
+                .taskProductFiles(Collections.emptyList())
+                .createTime(System.currentTimeMillis())
+                .build();
+    }
+
+    private List<Message> initialPlanning() {
+        return new ArrayList<>(Arrays.asList(
+                Message.systemMessage("规划提示词", null),
+                Message.userMessage("分析新能源汽车市场", null)));
+    }
+
+    private List<Message> initialExecutor() {
+        return new ArrayList<>(Collections.singletonList(Message.userMessage("执行任务一", null)));
+    }
+
+    private long records() {
+        return (Long) CheckpointLog.stats().get("records");
+    }
+
+    private void awaitRecords(long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (records() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(records() >= expected, "checkpoint not written");
+    }
+
+    private Path path() {
+        return Paths.get(genieConfig.getCheckpointDir(), "run-" + requestId + ".ckpt");
+    }
+}
@@ -212,7 +212,7 @@ const ConclusionSection: FC<{
     <div className="mb-[8px]">
       <div className="mb-[8px]">{summary}</div>
       <AttachmentList
-        files={buildAttachment(chat.conclusion?.resultMap.fileList || [])}
+        files={buildAttachment(chat.conclusion?.resultMap?.fileList || [])}
         preview={true}
         review={changeFile}
       />
@@ -15,12 +15,42 @@ export const combineData = (
       handleTaskMessage(eventData, currentChat);
       break;
     }
+    case "budget": {
+      handleBudgetMessage(eventData, currentChat);
+      break;
+    }
     default:
       break;
   }
   return currentChat;
 };
 
+/**
+ * 处理预算类型的消息（只在预算状态变化时下发），预算紧张或用尽时给出提示
+ * @param eventData 事件数据
+ * @param currentChat 当前聊天对象
+ */
+function handleBudgetMessage(
+  eventData: MESSAGE.EventData,
+  currentChat: CHAT.ChatItem
+) {
+  const budget = eventData.resultMap as unknown as {
+    level?: string;
+    usedRatio?: number;
+    fallbackModel?: string;
+  };
+  const usedPercent = Math.round((budget?.usedRatio || 0) * 100);
+  if (budget?.level === "LOW") {
+    // 未配置降级模型时只收紧剩余步数
+    const action = budget.fallbackModel
+      ? "后续将切换为更经济的模型"
+      : "后续将减少执行步数并尽快总结";
+    currentChat.tip = `本次任务预算已使用约${usedPercent}%，${action}`;
+  } else if (budget?.level === "EXHAUSTED") {
+    currentChat.tip = "本次任务预算已用尽，将基于已有结果直接总结";
+  }
+}
+
 /**
  * 处理计划类型的消息
  * @param eventData 事件数据
@@ -120,6 +150,9 @@ function handleTaskMessageByType(
     case "deep_search":
       handleDeepSearchMessage(eventData, currentChat, taskIndex, toolIndex);
       break;
+    case "agent_stream":
+      handleAgentStreamMessage(eventData, currentChat, taskIndex, toolIndex);
+      break;
     default:
       handleNonStreamingMessage(eventData, currentChat, taskIndex);
       break;
@@ -168,6 +201,39 @@ function handleToolThoughtMessage(
   updateToolThought(tasks[taskIndex][toolIndex], toolThought || '', isFinal);
 }
 
+/**
+ * 处理智能体流式输出消息（流式总结、直接回答），同一 messageId 的分片合并为一条
+ * @param eventData 事件数据
+ * @param currentChat 当前聊天项
+ * @param taskIndex 任务索引
+ * @param toolIndex 工具索引
+ */
+function handleAgentStreamMessage(
+  eventData: MESSAGE.EventData,
+  currentChat: CHAT.ChatItem,
+  taskIndex: number,
+  toolIndex: number
+) {
+  const { tasks } = currentChat.multiAgent;
+  const { taskId, resultMap } = eventData;
+
+  if (taskIndex === -1) {
+    tasks.push([createNewTask(taskId, resultMap)]);
+    return;
+  }
+
+  if (toolIndex === -1) {
+    tasks[taskIndex].push(createNewTask(taskId, resultMap));
+    return;
+  }
+
+  const stream = tasks[taskIndex][toolIndex];
+  stream.result = resultMap.isFinal
+    ? resultMap.result
+    : (stream.result || '') + (resultMap.result || '');
+  stream.isFinal = resultMap.isFinal;
+}
+
 /**
  * 创建新任务对象
  * @param taskId 任务ID
@@ -511,6 +577,7 @@ export const handleTaskData = (
   currentChat.thought = planThought || "";
 
   let conclusion;
+  let streamingConclusion;
   let plan = fullPlan;
   const taskList: MESSAGE.Task[] = [];
 
@@ -555,6 +622,14 @@ export const handleTaskData = (
         ];
       }
 
+      if (task.messageType === "agent_stream") {
+        // 流式输出的结论在最终结果到达前先作为结论展示，不进入时间线；以空全文结束表示已撤回
+        if (task.result || !task.isFinal) {
+          streamingConclusion = task;
+        }
+        return;
+      }
+
       if (task.messageType === "task") {
         chatList[groupIndex].push({
           ...task,
@@ -582,7 +657,7 @@ export const handleTaskData = (
 
   currentChat.tasks = chatList;
   currentChat.plan = plan;
-  currentChat.conclusion = conclusion;
+  currentChat.conclusion = conclusion || streamingConclusion;
   currentChat.planList = plan?.stages?.reduce(
     (result: CHAT.PlanItem[], stage: string, index: number) => {
       const group = result.find((item) => item.name === stage);